@@ -0,0 +1,79 @@
+package client;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+import model.DashboardUpdate;
+import service.DashboardListener;
+import service.DashboardService;
+
+/**
+ * Receives the server's dashboard updates and hands them to the panel on
+ * the Swing thread, so the dashboard stays current without polling.
+ *
+ * The server calls back into this client, so it must be able to reach it:
+ * if the client has several addresses, start it with
+ * -Djava.rmi.server.hostname=<address the server can reach>. When the
+ * subscription fails the dashboard simply refreshes on navigation as
+ * before.
+ *
+ * @author andyb
+ */
+public class LiveDashboard extends UnicastRemoteObject implements DashboardListener {
+
+    // Updates per second asked of the server
+    private static final int UPDATES_PER_SECOND = 2;
+
+    private final DashboardService dashboardService;
+    private final Consumer<DashboardUpdate> handler;
+
+    private LiveDashboard(DashboardService dashboardService, Consumer<DashboardUpdate> handler) throws RemoteException {
+        super();
+        this.dashboardService = dashboardService;
+        this.handler = handler;
+    }
+
+    /**
+     * Subscribe to updates; handler runs on the Swing thread
+     * @return the subscription, or null if the server does not push updates
+     *         or cannot be subscribed to
+     */
+    public static LiveDashboard start(DashboardService dashboardService, Consumer<DashboardUpdate> handler) {
+        LiveDashboard live = null;
+        try {
+            live = new LiveDashboard(dashboardService, handler);
+            if (dashboardService.subscribe(live, UPDATES_PER_SECOND)) {
+                return live;
+            }
+            live.stop();
+        } catch (Exception e) {
+            System.err.println("Live dashboard updates unavailable: " + e.getMessage());
+            if (live != null) {
+                live.stop();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void dashboardUpdated(DashboardUpdate update) throws RemoteException {
+        SwingUtilities.invokeLater(() -> handler.accept(update));
+    }
+
+    /**
+     * Unsubscribe and stop accepting calls
+     */
+    public void stop() {
+        try {
+            dashboardService.unsubscribe(this);
+        } catch (Exception e) {
+            // Server gone; it drops the subscription when calls fail
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (Exception e) {
+            // Not exported
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import model.CustomerSummary;
+import model.OfflineSale;
+import model.ProductSummary;
+import model.SaleLineItem;
+import model.SaleLineResult;
+
+/**
+ * Lets a till keep selling while the server is unreachable.
+ *
+ * Every time the catalog is loaded online, the products and customers the
+ * till needs are written to a local snapshot. While offline the sales panel
+ * reads from the snapshot and every sale is appended to a local journal
+ * (one line per sale, fsynced before the cashier is told it is recorded).
+ *
+ * After a sale fails online the till stays offline (RMIClientManager) and
+ * the sync task below tries the server every 30 seconds.
+ * Once the server answers again the whole journal is sent in one
+ * SalesService.ingestOfflineSales call. Sales the server accepts are removed
+ * from the journal; sales it rejects (e.g. stock ran out while the till was
+ * offline) are moved to rejected.log for a manager to review.
+ *
+ * Files live in ~/.supermarket-till/.
+ *
+ * @author andyb
+ */
+public class OfflineTill {
+
+    // Singleton instance
+    private static OfflineTill instance;
+
+    private static final long SYNC_INTERVAL_MS = 30000;
+
+    private final File directory;
+    private final File journalFile;
+    private final File catalogFile;
+    private final File rejectedFile;
+
+    private final Map<Integer, ProductSummary> products = new LinkedHashMap<>();
+    private final Map<Integer, CustomerSummary> customers = new LinkedHashMap<>();
+
+    // One upload at a time (timer and UI can both trigger one)
+    private final Object syncLock = new Object();
+
+    private Timer syncTimer;
+
+    private OfflineTill() {
+        directory = new File(System.getProperty("user.home"), ".supermarket-till");
+        directory.mkdirs();
+        journalFile = new File(directory, "journal.log");
+        catalogFile = new File(directory, "catalog.dat");
+        rejectedFile = new File(directory, "rejected.log");
+        loadCatalog();
+        startSyncTask();
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized OfflineTill getInstance() {
+        if (instance == null) {
+            instance = new OfflineTill();
+        }
+        return instance;
+    }
+
+    // ---------------------------------------------------------------
+    // Catalog snapshot
+    // ---------------------------------------------------------------
+
+    /**
+     * Remember the products the till can sell. Called after every
+     * successful online load.
+     */
+    public synchronized void saveProducts(List<ProductSummary> list) {
+        if (list == null) {
+            return;
+        }
+        products.clear();
+        for (ProductSummary product : list) {
+            products.put(product.getProductId(), product);
+        }
+        writeCatalog();
+        applyJournalToStock();
+    }
+
+    /**
+     * Remember the customers the till can sell to
+     */
+    public synchronized void saveCustomers(List<CustomerSummary> list) {
+        if (list == null) {
+            return;
+        }
+        customers.clear();
+        for (CustomerSummary customer : list) {
+            customers.put(customer.getCustomerId(), customer);
+        }
+        writeCatalog();
+    }
+
+    public synchronized List<ProductSummary> getCachedProducts() {
+        return new ArrayList<>(products.values());
+    }
+
+    public synchronized List<CustomerSummary> getCachedCustomers() {
+        return new ArrayList<>(customers.values());
+    }
+
+    /**
+     * Product from the snapshot, with stock already reduced by the sales
+     * journaled since the snapshot was taken
+     */
+    public synchronized ProductSummary findCachedProduct(int productId) {
+        return products.get(productId);
+    }
+
+    // ---------------------------------------------------------------
+    // Journal
+    // ---------------------------------------------------------------
+
+    /**
+     * Append a single-product sale to the journal.
+     * @param requestId the ID the failed online attempt used, so the server
+     *                  can tell if that attempt got through after all
+     * @return false if the journal could not be written
+     */
+    public synchronized boolean recordSale(String requestId, int customerId, int employeeId,
+                                           int productId, int quantity, double totalAmount) {
+        OfflineSale sale = new OfflineSale(requestId, customerId, employeeId,
+                Collections.singletonList(new SaleLineItem(productId, quantity, totalAmount)), new Date());
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write((toLine(sale) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            System.err.println("[OFFLINE TILL] Could not write journal: " + e.getMessage());
+            return false;
+        }
+
+        takeCachedStock(productId, quantity);
+        System.out.println("[OFFLINE TILL] Journaled sale " + requestId + " (" + getPendingCount() + " pending)");
+        return true;
+    }
+
+    /**
+     * Number of journaled sales not yet sent to the server
+     */
+    public synchronized int getPendingCount() {
+        return readJournal().size();
+    }
+
+    /**
+     * Send the journal to the server in one call.
+     * The journal is not locked during the call, so the till can keep
+     * journaling; only the sales that were sent are removed afterwards.
+     * @return a short summary for the cashier, or null if there was nothing
+     *         to send or the server is still unreachable
+     */
+    public String sync() {
+        synchronized (syncLock) {
+            return syncJournal();
+        }
+    }
+
+    private String syncJournal() {
+        List<OfflineSale> batch;
+        synchronized (this) {
+            batch = readJournal();
+        }
+        if (batch.isEmpty()) {
+            return null;
+        }
+
+        RMIClientManager manager = RMIClientManager.getInstance();
+        Map<String, List<SaleLineResult>> results;
+        try {
+            if (manager.getSalesService() == null) {
+                manager.reconnect();
+            }
+            if (manager.getSalesService() == null) {
+                return null;
+            }
+            results = manager.getSalesService().ingestOfflineSales(batch);
+        } catch (Exception e) {
+            System.err.println("[OFFLINE TILL] Sync failed, will retry: " + e.getMessage());
+            // The stubs may point at a server instance that has restarted
+            manager.reconnect();
+            return null;
+        }
+
+        int uploaded = 0;
+        List<String> rejected = new ArrayList<>();
+        Set<String> done = new HashSet<>();
+        for (OfflineSale sale : batch) {
+            List<SaleLineResult> lines = results.get(sale.getRequestId());
+            if (lines == null) {
+                // Not answered for; stays in the journal
+                continue;
+            }
+            done.add(sale.getRequestId());
+            if (!lines.isEmpty() && lines.get(0).isSuccess()) {
+                uploaded++;
+            } else {
+                String reason = lines.isEmpty() ? "no result" : firstFailure(lines);
+                rejected.add(toLine(sale) + "  # " + reason);
+            }
+        }
+
+        synchronized (this) {
+            appendRejected(rejected);
+            removeFromJournal(done);
+        }
+
+        String summary = uploaded + " offline sale(s) uploaded";
+        if (!rejected.isEmpty()) {
+            summary += ", " + rejected.size() + " rejected (see " + rejectedFile + ")";
+        }
+        System.out.println("[OFFLINE TILL] " + summary);
+        return summary;
+    }
+
+    private String firstFailure(List<SaleLineResult> lines) {
+        for (SaleLineResult line : lines) {
+            if (!line.isSuccess()) {
+                return line.getMessage();
+            }
+        }
+        return lines.get(0).getMessage();
+    }
+
+    private void startSyncTask() {
+        syncTimer = new Timer("OfflineTillSync", true);
+        syncTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    RMIClientManager manager = RMIClientManager.getInstance();
+                    if (manager.isOffline() && !manager.goOnline()) {
+                        return;
+                    }
+                    if (getPendingCount() > 0) {
+                        sync();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS);
+    }
+
+    // ---------------------------------------------------------------
+    // File formats
+    // ---------------------------------------------------------------
+
+    // requestId,customerId,employeeId,saleDateMillis,productId:qty:total;...
+    private static String toLine(OfflineSale sale) {
+        StringBuilder line = new StringBuilder();
+        line.append(sale.getRequestId()).append(',')
+            .append(sale.getCustomerId()).append(',')
+            .append(sale.getEmployeeId()).append(',')
+            .append(sale.getSaleDate().getTime()).append(',');
+        for (int i = 0; i < sale.getItems().size(); i++) {
+            SaleLineItem item = sale.getItems().get(i);
+            if (i > 0) {
+                line.append(';');
+            }
+            line.append(item.getProductId()).append(':')
+                .append(item.getQuantity()).append(':')
+                .append(item.getTotalAmount());
+        }
+        return line.toString();
+    }
+
+    private static OfflineSale fromLine(String line) {
+        String[] parts = line.split(",");
+        if (parts.length != 5) {
+            return null;
+        }
+        try {
+            List<SaleLineItem> items = new ArrayList<>();
+            for (String item : parts[4].split(";")) {
+                String[] fields = item.split(":");
+                items.add(new SaleLineItem(Integer.parseInt(fields[0]),
+                        Integer.parseInt(fields[1]), Double.parseDouble(fields[2])));
+            }
+            return new OfflineSale(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                    items, new Date(Long.parseLong(parts[3])));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private List<OfflineSale> readJournal() {
+        List<OfflineSale> sales = new ArrayList<>();
+        if (!journalFile.exists()) {
+            return sales;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // A torn last line from a crash mid-write was never confirmed to the cashier
+                OfflineSale sale = fromLine(line);
+                if (sale != null) {
+                    sales.add(sale);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return sales;
+    }
+
+    private void removeFromJournal(Set<String> requestIds) {
+        if (requestIds.isEmpty()) {
+            return;
+        }
+        StringBuilder remaining = new StringBuilder();
+        for (OfflineSale sale : readJournal()) {
+            if (!requestIds.contains(sale.getRequestId())) {
+                remaining.append(toLine(sale)).append('\n');
+            }
+        }
+        writeAtomically(journalFile, remaining.toString());
+    }
+
+    private void appendRejected(List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        String stamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(rejectedFile, true), StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                out.write(stamp + "  " + line + "\n");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // P,id,price,stock,reorderLevel,name   C,id,name
+    private void writeCatalog() {
+        StringBuilder data = new StringBuilder();
+        for (ProductSummary p : products.values()) {
+            data.append("P,").append(p.getProductId()).append(',').append(p.getPrice()).append(',')
+                .append(p.getStockQuantity()).append(',').append(p.getReorderLevel()).append(',')
+                .append(clean(p.getProductName())).append('\n');
+        }
+        for (CustomerSummary c : customers.values()) {
+            data.append("C,").append(c.getCustomerId()).append(',')
+                .append(clean(c.getFullName())).append('\n');
+        }
+        writeAtomically(catalogFile, data.toString());
+    }
+
+    private void loadCatalog() {
+        if (!catalogFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(catalogFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    if (line.startsWith("P,")) {
+                        String[] f = line.split(",", 6);
+                        ProductSummary p = new ProductSummary(Integer.parseInt(f[1]), f[5], null,
+                                Double.parseDouble(f[2]), Integer.parseInt(f[3]), Integer.parseInt(f[4]),
+                                null, 0, null);
+                        products.put(p.getProductId(), p);
+                    } else if (line.startsWith("C,")) {
+                        String[] f = line.split(",", 3);
+                        CustomerSummary c = new CustomerSummary(Integer.parseInt(f[1]), f[2],
+                                null, null, null, null);
+                        customers.put(c.getCustomerId(), c);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("[OFFLINE TILL] Skipping bad catalog line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        applyJournalToStock();
+    }
+
+    /**
+     * Journaled sales are not in the server's stock figures yet
+     */
+    private void applyJournalToStock() {
+        for (OfflineSale sale : readJournal()) {
+            for (SaleLineItem item : sale.getItems()) {
+                takeCachedStock(item.getProductId(), item.getQuantity());
+            }
+        }
+    }
+
+    private void takeCachedStock(int productId, int quantity) {
+        ProductSummary p = products.get(productId);
+        if (p != null) {
+            products.put(productId, new ProductSummary(p.getProductId(), p.getProductName(), p.getCategory(),
+                    p.getPrice(), p.getStockQuantity() - quantity, p.getReorderLevel(),
+                    p.getCreatedDate(), p.getVersion(), p.getSupplierName()));
+        }
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private void writeAtomically(File target, String content) {
+        File temp = new File(directory, target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            System.err.println("[OFFLINE TILL] Could not write " + target + ": " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[OFFLINE TILL] Could not replace " + target + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package client;
 
 import service.*;
+import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.List;
+import java.util.UUID;
 import model.Employee;
+import model.SaleLineItem;
+import model.SaleLineResult;
 import model.UserSession;
 
 /**
@@ -16,6 +21,10 @@ public class RMIClientManager {
     private static final String HOST = "localhost";
     private static final int PORT = 3500;
     
+    // Sale calls are retried this many times on connection errors
+    private static final int SALE_ATTEMPTS = 4;
+    private static final long SALE_RETRY_DELAY_MS = 250;
+    
     private EmployeeService employeeService;
     private CustomerService customerService;
     private ProductService productService;
@@ -34,6 +43,10 @@ public class RMIClientManager {
     
     private Registry registry;
     
+    // Set when a sale has used up its retries. Sale calls then fail at once
+    // (the till journals them) until OfflineTill's sync task gets through.
+    private volatile boolean offline;
+    
     private RMIClientManager(){
         try{
             connect();
@@ -67,12 +80,105 @@ public class RMIClientManager {
         reportService = (ReportService) registry.lookup("ReportService");
     }
     
-    public void reconnect(){
+    /**
+     * Look the services up again
+     * @return false if the server did not answer
+     */
+    public boolean reconnect(){
         try{
             connect();
+            return true;
         } catch(Exception e){
             e.printStackTrace();
+            return false;
+        }
+    }
+    
+    public boolean isOffline(){
+        return offline;
+    }
+    
+    /**
+     * Try the server again after a sale took the till offline
+     * @return true if it answered and sales go online again
+     */
+    public boolean goOnline(){
+        if(!reconnect()){
+            return false;
+        }
+        offline = false;
+        System.out.println("[RMI CLIENT] Server reachable again, sales are online");
+        return true;
+    }
+
+    /**
+     * Submit a sale, retrying on connection errors. Every attempt carries
+     * the same request ID, so the server records the sale at most once even
+     * if an earlier attempt reached it before the connection dropped.
+     */
+    public Integer processSale(int customerId, int employeeId, int productId, int quantity, double totalAmount) throws RemoteException {
+        return processSale(newRequestId(), customerId, employeeId, productId, quantity, totalAmount);
+    }
+    
+    /**
+     * processSale with a caller-chosen request ID. If every attempt fails the
+     * caller can journal the sale offline under the same ID (see OfflineTill)
+     * and the server will not record it twice.
+     */
+    public Integer processSale(String requestId, int customerId, int employeeId, int productId, int quantity, double totalAmount) throws RemoteException {
+        return callWithRetry(requestId, id -> 
+            salesService.processSale(id, customerId, employeeId, productId, quantity, totalAmount));
+    }
+    
+    /**
+     * Submit a basket with the same retry guarantee as processSale
+     */
+    public List<SaleLineResult> processBasket(int customerId, int employeeId, List<SaleLineItem> items) throws RemoteException {
+        return callWithRetry(newRequestId(), id -> 
+            salesService.processBasket(id, customerId, employeeId, items));
+    }
+    
+    public static String newRequestId() {
+        return UUID.randomUUID().toString();
+    }
+    
+    /**
+     * Blocks for up to a couple of seconds while retrying, so call it off
+     * the Swing event thread
+     */
+    private <T> T callWithRetry(String requestId, IdempotentCall<T> call) throws RemoteException {
+        if(offline){
+            throw new RemoteException("Till is offline until the server answers again");
+        }
+        RemoteException lastError = null;
+        
+        for (int attempt = 1; attempt <= SALE_ATTEMPTS; attempt++) {
+            try {
+                if (salesService == null) {
+                    throw new RemoteException("Not connected to server");
+                }
+                return call.invoke(requestId);
+            } catch (RemoteException e) {
+                lastError = e;
+                System.err.println("[RMI CLIENT] Attempt " + attempt + " for request " + requestId + " failed: " + e.getMessage());
+                if (attempt < SALE_ATTEMPTS) {
+                    try {
+                        Thread.sleep(SALE_RETRY_DELAY_MS * attempt);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    reconnect();
+                }
+            }
         }
+        offline = true;
+        System.err.println("[RMI CLIENT] Server unreachable, sales go to the offline journal until it is back");
+        throw lastError;
+    }
+    
+    private interface IdempotentCall<T> {
+        T invoke(String requestId) throws RemoteException;
     }
 
     public EmployeeService getEmployeeService() {
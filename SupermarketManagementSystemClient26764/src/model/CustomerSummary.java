@@ -0,0 +1,64 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Flat view of a customer for lists and lookups, without the customer's
+ * sales history. Built directly by HQL "select new".
+ *
+ * @author andyb
+ */
+public class CustomerSummary implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private int customerId;
+    private String fullName;
+    private String email;
+    private String phone;
+    private String address;
+    private Date registrationDate;
+
+    public CustomerSummary() {
+    }
+
+    public CustomerSummary(int customerId, String fullName, String email, String phone,
+                           String address, Date registrationDate) {
+        this.customerId = customerId;
+        this.fullName = fullName;
+        this.email = email;
+        this.phone = phone;
+        this.address = address;
+        this.registrationDate = registrationDate;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public Date getRegistrationDate() {
+        return registrationDate;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerSummary{" + "customerId=" + customerId + ", fullName=" + fullName + '}';
+    }
+}
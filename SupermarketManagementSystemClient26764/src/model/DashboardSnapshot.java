@@ -0,0 +1,89 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * All dashboard counters at one moment, returned by one call instead of a
+ * call (and a table scan) per counter. The server keeps the counters up to
+ * date as sales, products and customers are committed.
+ *
+ * @author andyb
+ */
+public class DashboardSnapshot implements Serializable{
+    
+    private static final long serialVersionUID = 1L;
+    
+    private int totalProducts;
+    private int totalCustomers;
+    private long totalSales;
+    private long unitsSold;
+    private double totalRevenue;
+    private Date asOf;
+
+    public DashboardSnapshot() {
+    }
+
+    public int getTotalProducts() {
+        return totalProducts;
+    }
+
+    public void setTotalProducts(int totalProducts) {
+        this.totalProducts = totalProducts;
+    }
+
+    public int getTotalCustomers() {
+        return totalCustomers;
+    }
+
+    public void setTotalCustomers(int totalCustomers) {
+        this.totalCustomers = totalCustomers;
+    }
+
+    public long getTotalSales() {
+        return totalSales;
+    }
+
+    public void setTotalSales(long totalSales) {
+        this.totalSales = totalSales;
+    }
+
+    public long getUnitsSold() {
+        return unitsSold;
+    }
+
+    public void setUnitsSold(long unitsSold) {
+        this.unitsSold = unitsSold;
+    }
+
+    public double getTotalRevenue() {
+        return totalRevenue;
+    }
+
+    public void setTotalRevenue(double totalRevenue) {
+        this.totalRevenue = totalRevenue;
+    }
+
+    /**
+     * When the counters were read on the server
+     */
+    public Date getAsOf() {
+        return asOf;
+    }
+
+    public void setAsOf(Date asOf) {
+        this.asOf = asOf;
+    }
+
+    @Override
+    public String toString() {
+        return "DashboardSnapshot{" 
+                + "products=" + totalProducts
+                + ", customers=" + totalCustomers
+                + ", sales=" + totalSales
+                + ", units=" + unitsSold
+                + ", revenue=" + totalRevenue
+                + ", asOf=" + asOf
+                + '}';
+    }
+}
@@ -0,0 +1,71 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Flat view of an employee for lists and lookups. Leaves out the
+ * password hash, the profile and the employee's sales and transactions.
+ * Built directly by HQL "select new".
+ *
+ * @author andyb
+ */
+public class EmployeeSummary implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private int employeeId;
+    private String fullName;
+    private String role;
+    private double salary;
+    private Date hireDate;
+    private String contact;
+    private String username;
+
+    public EmployeeSummary() {
+    }
+
+    public EmployeeSummary(int employeeId, String fullName, String role, double salary,
+                           Date hireDate, String contact, String username) {
+        this.employeeId = employeeId;
+        this.fullName = fullName;
+        this.role = role;
+        this.salary = salary;
+        this.hireDate = hireDate;
+        this.contact = contact;
+        this.username = username;
+    }
+
+    public int getEmployeeId() {
+        return employeeId;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public double getSalary() {
+        return salary;
+    }
+
+    public Date getHireDate() {
+        return hireDate;
+    }
+
+    public String getContact() {
+        return contact;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String toString() {
+        return "EmployeeSummary{" + "employeeId=" + employeeId + ", fullName=" + fullName + ", role=" + role + '}';
+    }
+}
@@ -20,6 +20,7 @@ public class Product implements Serializable{
     private int stockQuantity;
     private int reorderLevel = 10;
     private Date createdDate;
+    private int version;
     private Set<Supplier> suppliers = new HashSet<>();
     private Set<Sales> sales = new HashSet<>();
     private Set<InventoryTransaction> inventoryTransactions = new HashSet<>();
@@ -98,6 +99,14 @@ public class Product implements Serializable{
         this.createdDate = createdDate;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     public Set<Supplier> getSuppliers() {
         return suppliers;
     }
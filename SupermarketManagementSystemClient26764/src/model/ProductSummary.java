@@ -0,0 +1,90 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Flat view of a product for catalog screens and combo boxes.
+ * Unlike Product it carries no suppliers, sales or inventory transactions,
+ * so a full product list is a few bytes per row on the wire.
+ * Built directly by HQL "select new model.ProductSummary(...)".
+ *
+ * @author andyb
+ */
+public class ProductSummary implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private int productId;
+    private String productName;
+    private String category;
+    private double price;
+    private int stockQuantity;
+    private int reorderLevel;
+    private Date createdDate;
+    private int version;
+    private String supplierName;
+
+    public ProductSummary() {
+    }
+
+    public ProductSummary(int productId, String productName, String category, double price,
+                          int stockQuantity, int reorderLevel, Date createdDate, int version,
+                          String supplierName) {
+        this.productId = productId;
+        this.productName = productName;
+        this.category = category;
+        this.price = price;
+        this.stockQuantity = stockQuantity;
+        this.reorderLevel = reorderLevel;
+        this.createdDate = createdDate;
+        this.version = version;
+        this.supplierName = supplierName;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public int getStockQuantity() {
+        return stockQuantity;
+    }
+
+    public int getReorderLevel() {
+        return reorderLevel;
+    }
+
+    public Date getCreatedDate() {
+        return createdDate;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getSupplierName() {
+        return supplierName;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductSummary{"
+                + "productId=" + productId +
+                ", productName=" + productName +
+                ", price=" + price +
+                ", stockQuantity=" + stockQuantity +
+                '}';
+    }
+}
@@ -0,0 +1,41 @@
+package model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of the sales history, newest first.
+ *
+ * nextCursor is opaque to the client: pass it back unchanged to get the
+ * page after this one. It is null when there are no more rows.
+ *
+ * @author andyb
+ */
+public class SalesPage implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private List<SaleSummary> rows = new ArrayList<>();
+    private String nextCursor;
+
+    public SalesPage() {
+    }
+
+    public SalesPage(List<SaleSummary> rows, String nextCursor) {
+        this.rows = rows;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<SaleSummary> getRows() {
+        return rows;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
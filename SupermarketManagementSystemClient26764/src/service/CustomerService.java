@@ -4,6 +4,8 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
 import model.Customer;
+import model.CustomerSummary;
+import model.ImportResult;
 
 /**
  *
@@ -15,5 +17,13 @@ public interface CustomerService extends Remote{
     boolean deleteCustomer(int customerId) throws RemoteException;
     Customer findCustomerById(int customerId) throws RemoteException;
     List<Customer> findAllCustomers() throws RemoteException;
+    
+    // Flat projections for list and detail screens (no collections)
+    List<CustomerSummary> findAllCustomerSummaries() throws RemoteException;
+    CustomerSummary findCustomerSummaryById(int customerId) throws RemoteException;
      List<Integer> getAllCustomerIds() throws RemoteException;
+    // Bulk import with batched inserts, committed every
+    // import.rowsPerTransaction rows (see util.BulkImport)
+    ImportResult importCustomers(List<Customer> customers) throws RemoteException;
+    ImportResult importCustomersCsv(byte[] csv) throws RemoteException;
 }
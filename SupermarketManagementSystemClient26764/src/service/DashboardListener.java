@@ -0,0 +1,20 @@
+package service;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import model.DashboardUpdate;
+
+/**
+ * Callback a client exports and passes to DashboardService.subscribe to be
+ * sent dashboard updates as sales commit, instead of polling.
+ *
+ * @author andyb
+ */
+public interface DashboardListener extends Remote{
+    
+    /**
+     * Called by the server at most the subscribed number of times per
+     * second, never twice at once for one listener
+     */
+    void dashboardUpdated(DashboardUpdate update) throws RemoteException;
+}
@@ -3,7 +3,9 @@ package service;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import model.ImportResult;
 import model.Product;
+import model.ProductSummary;
 
 /**
  *
@@ -15,7 +17,15 @@ public interface ProductService extends Remote{
     boolean deleteProduct(int productId) throws RemoteException;
     Product findProductById(int productId) throws RemoteException;
     List<Product> findAllProducts() throws RemoteException;
+    
+    // Flat projections for list and detail screens (no collections)
+    List<ProductSummary> findAllProductSummaries() throws RemoteException;
+    ProductSummary findProductSummaryById(int productId) throws RemoteException;
     List<Product> findLowStockProducts() throws RemoteException;
     boolean updateStock(int productId, int newStock) throws RemoteException;
+    // Bulk import with batched inserts, committed every
+    // import.rowsPerTransaction rows (see util.BulkImport)
+    ImportResult importProducts(List<Product> products) throws RemoteException;
+    ImportResult importProductsCsv(byte[] csv) throws RemoteException;
 
 }
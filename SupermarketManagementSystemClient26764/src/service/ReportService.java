@@ -36,6 +36,13 @@ public interface ReportService extends Remote{
      */
     ReportData generateLowStockReport(String employeeName) throws RemoteException;
     
+    /**
+     * Generate best sellers report (today, this hour, per category and
+     * products bought together), estimated from the sales since the
+     * server started
+     */
+    ReportData generateBestSellersReport(String employeeName) throws RemoteException;
+    
     /**
      * Export report to PDF
      * @return byte array of PDF file
@@ -46,4 +46,15 @@ public interface SessionService extends Remote{
      */
     void forceTerminateUserSession(String username, String adminSessionId) throws RemoteException;
     
+    /**
+     * Server performance report: slowest queries, DAO call timings,
+     * connection pools, cache and read replica (admin only)
+     */
+    List<String> getPerformanceReport(String adminSessionId) throws RemoteException;
+    
+    /**
+     * Start the query statistics and DAO timings again from zero (admin only)
+     */
+    void resetPerformanceStatistics(String adminSessionId) throws RemoteException;
+    
 }
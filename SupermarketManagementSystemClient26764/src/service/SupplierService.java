@@ -3,7 +3,9 @@ package service;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import model.ImportResult;
 import model.Supplier;
+import model.SupplierSummary;
 
 /**
  *
@@ -15,4 +17,12 @@ public interface SupplierService extends Remote{
     boolean deleteSupplier(int supplierId) throws RemoteException;
     Supplier findSupplierById(int supplierId) throws RemoteException;
     List<Supplier> findAllSuppliers() throws RemoteException;
+    
+    // Flat projections for list and detail screens (no collections)
+    List<SupplierSummary> findAllSupplierSummaries() throws RemoteException;
+    SupplierSummary findSupplierSummaryById(int supplierId) throws RemoteException;
+    // Bulk import with batched inserts, committed every
+    // import.rowsPerTransaction rows (see util.BulkImport)
+    ImportResult importSuppliers(List<Supplier> suppliers) throws RemoteException;
+    ImportResult importSuppliersCsv(byte[] csv) throws RemoteException;
 }
@@ -9,6 +9,7 @@ import java.util.List;
 import javax.swing.JOptionPane;
 import javax.swing.table.DefaultTableModel;
 import model.Customer;
+import model.CustomerSummary;
 import model.Employee;
 
 /**
@@ -78,10 +79,10 @@ public class CustomerPanel extends javax.swing.JPanel {
         tblModel.setRowCount(0);
         
         try{
-            List<Customer> customers = customerService.findAllCustomers();
+            List<CustomerSummary> customers = customerService.findAllCustomerSummaries();
             
             if(customers != null){
-                for(Customer customer : customers){
+                for(CustomerSummary customer : customers){
                     tblModel.addRow(new Object[]{
                         customer.getCustomerId(),
                         customer.getFullName(),
@@ -353,7 +354,7 @@ public class CustomerPanel extends javax.swing.JPanel {
         int customerId = Integer.parseInt(searchStr);
         
         try{
-            Customer foundCustomer = customerService.findCustomerById(customerId);
+            CustomerSummary foundCustomer = customerService.findCustomerSummaryById(customerId);
             
             if(foundCustomer != null){
                 txtCustomerName.setText(foundCustomer.getFullName());
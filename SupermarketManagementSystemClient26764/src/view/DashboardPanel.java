@@ -2,6 +2,7 @@ package view;
 
 import service.DashboardService;
 import service.SalesService;
+import client.LiveDashboard;
 import client.RMIClientManager;
 import util.ValidationUtil;
 import java.awt.BasicStroke;
@@ -14,7 +15,10 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import javax.swing.JLabel;
 import model.DailySalesData;
+import model.DashboardSnapshot;
+import model.DashboardUpdate;
 import model.Employee;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -37,6 +41,12 @@ public class DashboardPanel extends javax.swing.JPanel {
     private Employee currentEmployee;
     private boolean isCashierMode = false;
     
+    // Server push subscription, null when the server does not push updates
+    private LiveDashboard liveDashboard;
+    private final JLabel lblLiveStatus = new JLabel(" ");
+    private final List<String> lowStockAlerts = new ArrayList<>();
+    private String topSeller;
+    
 
     /**
      * Creates new form DashboardPanel
@@ -58,19 +68,63 @@ public class DashboardPanel extends javax.swing.JPanel {
         
         loadDashboardStats();
         createSalesChart();
+        
+        if(dashboardService != null){
+            liveDashboard = LiveDashboard.start(dashboardService, this::applyUpdate);
+        }
+    }
+    
+    /**
+     * Counters, alerts and top seller pushed by the server (Swing thread)
+     */
+    private void applyUpdate(DashboardUpdate update){
+        DashboardSnapshot totals = update.getTotals();
+        if(totals != null){
+            txtTotalProducts.setText(String.valueOf(totals.getTotalProducts()));
+            txtTotalCustomers.setText(String.valueOf(totals.getTotalCustomers()));
+            // Cashiers see their own sales and revenue in these cards
+            if(!isCashierMode){
+                txtTotalSales.setText(String.valueOf(totals.getTotalSales()));
+                txtTotalRevenue.setText(String.format("%.0f", totals.getTotalRevenue()));
+            }
+        }
+        lowStockAlerts.addAll(update.getLowStockAlerts());
+        while(lowStockAlerts.size() > 3){
+            lowStockAlerts.remove(0);
+        }
+        if(update.getTopSeller() != null){
+            topSeller = update.getTopSeller();
+        }
+        
+        StringBuilder status = new StringBuilder("● Live");
+        if(topSeller != null){
+            status.append("   |   Top seller today: ").append(topSeller);
+        }
+        if(!lowStockAlerts.isEmpty()){
+            status.append("   |   Low stock: ").append(String.join("; ", lowStockAlerts));
+        }
+        lblLiveStatus.setText(status.toString());
+    }
+    
+    @Override
+    public void removeNotify(){
+        // The window is closing (logout or session expiry)
+        if(liveDashboard != null){
+            liveDashboard.stop();
+            liveDashboard = null;
+        }
+        super.removeNotify();
     }
     
     protected void loadDashboardStats(){
        try{
-           Integer totalProducts = dashboardService.getTotalProducts();
-           Integer totalSales = dashboardService.getTotalSales();
-           Integer totalCustomers = dashboardService.getTotalCustomers();
-           Double totalRevenue = dashboardService.getTotalRevenue();
+           // One call for all four counters
+           DashboardSnapshot snapshot = dashboardService.getDashboardSnapshot();
            
-           txtTotalProducts.setText(String.valueOf(totalProducts != null ? totalProducts : 0));
-            txtTotalSales.setText(String.valueOf(totalSales != null ? totalSales : 0));
-            txtTotalCustomers.setText(String.valueOf(totalCustomers != null ? totalCustomers : 0));
-            txtTotalRevenue.setText(String.format("%.0f", totalRevenue != null ? totalRevenue : 0.0));
+           txtTotalProducts.setText(String.valueOf(snapshot.getTotalProducts()));
+            txtTotalSales.setText(String.valueOf(snapshot.getTotalSales()));
+            txtTotalCustomers.setText(String.valueOf(snapshot.getTotalCustomers()));
+            txtTotalRevenue.setText(String.format("%.0f", snapshot.getTotalRevenue()));
             
        } catch(Exception e){
            ValidationUtil.showError(this,
@@ -103,14 +157,13 @@ public class DashboardPanel extends javax.swing.JPanel {
     
     private void loadCashierDashboardData(int employeeId){
         try{
-            Integer totalProducts = dashboardService.getTotalProducts();
-            Integer totalCustomers = dashboardService.getTotalCustomers();
+            DashboardSnapshot snapshot = dashboardService.getDashboardSnapshot();
             
             Integer employeeSales = salesService.getSalesCountByEmployee(employeeId);
             Double employeeRevenue = salesService.getEmployeeRevenue(employeeId);
             
-            txtTotalProducts.setText(String.valueOf(totalProducts != null ? totalProducts : 0));
-            txtTotalCustomers.setText(String.valueOf(totalCustomers != null ? totalCustomers : 0));
+            txtTotalProducts.setText(String.valueOf(snapshot.getTotalProducts()));
+            txtTotalCustomers.setText(String.valueOf(snapshot.getTotalCustomers()));
             txtTotalSales.setText(String.valueOf(employeeSales != null ? employeeSales : 0));
             txtTotalRevenue.setText(String.format("%.0f", employeeRevenue != null ? employeeRevenue : 0.0));
             
@@ -138,6 +191,9 @@ public class DashboardPanel extends javax.swing.JPanel {
             chartCanvas.removeAll();
             chartCanvas.setLayout(new BorderLayout());
             chartCanvas.add(chartPanel, BorderLayout.CENTER);
+            lblLiveStatus.setForeground(new Color(160, 160, 160));
+            lblLiveStatus.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+            chartCanvas.add(lblLiveStatus, BorderLayout.SOUTH);
             chartCanvas.revalidate();
             chartCanvas.repaint();
             
@@ -14,6 +14,7 @@ import javax.swing.SwingUtilities;
 import javax.swing.JOptionPane;
 import javax.swing.table.DefaultTableModel;
 import model.Employee;
+import model.EmployeeSummary;
 import java.awt.Frame;
 import static util.PasswordUtil.hashPassword;
 
@@ -85,10 +86,10 @@ public class EmployeePanel extends javax.swing.JPanel {
         tblModel.setRowCount(0);
         
         try{
-            List<Employee> employees = employeeService.findAllEmployees();
+            List<EmployeeSummary> employees = employeeService.findAllEmployeeSummaries();
             
             if(employees != null){
-                for(Employee employee : employees){
+                for(EmployeeSummary employee : employees){
                     tblModel.addRow(new Object[]{
                         employee.getEmployeeId(),
                         employee.getFullName(),
@@ -555,7 +556,7 @@ public class EmployeePanel extends javax.swing.JPanel {
         int employeeId = Integer.parseInt(searchStr);
         
         try {
-            Employee foundEmployee = employeeService.findEmployeeById(employeeId);
+            EmployeeSummary foundEmployee = employeeService.findEmployeeSummaryById(employeeId);
             
             if (foundEmployee != null) {
                 txtEmployeeName.setText(foundEmployee.getFullName());
@@ -14,6 +14,7 @@ import javax.swing.JOptionPane;
 import javax.swing.table.DefaultTableModel;
 import model.Employee;
 import model.Product;
+import model.ProductSummary;
 
 /**
  *
@@ -28,6 +29,12 @@ public class ProductsPanel extends javax.swing.JPanel {
     Employee currentEmployee;
     SalesPanel panel;  // FIX: Don't initialize here with null employee!
     private boolean isCashierMode = false;
+    
+    // Product shown by the last search; an update sends back its version
+    // so the server can reject the edit if the product changed meanwhile
+    private int loadedProductId;
+    private int loadedVersion;
+    private int loadedStock;
 
     /**
      * Creates new form ProductsPanel
@@ -65,10 +72,10 @@ public class ProductsPanel extends javax.swing.JPanel {
     protected void populateTable(){
         tblModel.setRowCount(0);
         try{
-            List<Product> products = productService.findAllProducts();
+            List<ProductSummary> products = productService.findAllProductSummaries();
             
             if(products != null){
-                for(Product theProduct : products){
+                for(ProductSummary theProduct : products){
                     tblModel.addRow(new Object[]{
                         theProduct.getProductId(),
                         theProduct.getProductName(),
@@ -94,6 +101,9 @@ public class ProductsPanel extends javax.swing.JPanel {
         txtSearch.setText("");
         txtStockQuantity.setText("");
         txtSupplierName.setText("");
+        loadedProductId = 0;
+        // Stock is only typed in for new products
+        txtStockQuantity.setEditable(!isCashierMode);
     }
     
     public void setCashierMode(boolean isCashier){
@@ -476,7 +486,7 @@ public class ProductsPanel extends javax.swing.JPanel {
         int productId = Integer.parseInt(searchStr);
         
         try {
-            Product foundProduct = productService.findProductById(productId);
+            ProductSummary foundProduct = productService.findProductSummaryById(productId);
             
             if (foundProduct != null) {
                 txtProductName.setText(foundProduct.getProductName());
@@ -484,6 +494,11 @@ public class ProductsPanel extends javax.swing.JPanel {
                 txtPrice.setText(String.valueOf(foundProduct.getPrice()));
                 txtSupplierName.setText(foundProduct.getSupplierName());
                 txtStockQuantity.setText(String.valueOf(foundProduct.getStockQuantity()));
+                // Stock changes go through sales and inventory, not edits
+                txtStockQuantity.setEditable(false);
+                loadedProductId = foundProduct.getProductId();
+                loadedVersion = foundProduct.getVersion();
+                loadedStock = foundProduct.getStockQuantity();
             } else {
                 ValidationUtil.showWarning(this,
                     "Product not found with ID: " + productId,
@@ -518,12 +533,19 @@ public class ProductsPanel extends javax.swing.JPanel {
             return;
         }
         
+        int productId = Integer.parseInt(searchStr);
+        if (productId != loadedProductId) {
+            ValidationUtil.showWarning(this,
+                "Please search for product " + productId + " before updating it",
+                "Search Required");
+            txtSearch.requestFocus();
+            return;
+        }
+        
         // Get form data
         String productName = txtProductName.getText().trim();
         String category = txtCategory.getText().trim();
-        String supplierName = txtSupplierName.getText().trim();
         String priceStr = txtPrice.getText().trim();
-        String stockStr = txtStockQuantity.getText().trim();
         
         // ✅ Validate price
         ValidationResult priceValidation = ValidationUtil.validateNumeric(priceStr, "Price");
@@ -532,35 +554,24 @@ public class ProductsPanel extends javax.swing.JPanel {
             return;
         }
         
-        // ✅ Validate stock
-        ValidationResult stockValidation = ValidationUtil.validateInteger(stockStr, "Stock Quantity");
-        if (!ValidationUtil.validateAndShow(this, stockValidation)) {
-            txtStockQuantity.requestFocus();
-            return;
-        }
-        
         double price = Double.parseDouble(priceStr);
-        int stock = Integer.parseInt(stockStr);
         
-        // ✅ Complete validation
+        // ✅ Complete validation (stock is not edited here)
         ValidationResult validation = ValidationUtil.validateProduct(
-            productName, category, price, stock
+            productName, category, price, loadedStock
         );
         
         if (!ValidationUtil.validateAndShow(this, validation)) {
             return;
         }
         
-        int productId = Integer.parseInt(searchStr);
-        
         try {
             Product product = new Product();
             product.setProductId(productId);
             product.setProductName(productName);
             product.setCategory(category);
             product.setPrice(price);
-            product.setStockQuantity(stock);
-            product.setSupplierName(supplierName);
+            product.setVersion(loadedVersion);
             
             boolean updated = productService.updateProduct(product);
             
@@ -568,14 +579,15 @@ public class ProductsPanel extends javax.swing.JPanel {
                 ValidationUtil.showSuccess(this,
                     "Product updated successfully!\n\n" +
                     "Product: " + productName + "\n" +
-                    "Price: RWF " + String.format("%,.2f", price) + "\n" +
-                    "Stock: " + stock + " units");
+                    "Price: RWF " + String.format("%,.2f", price));
                 
                 populateTable();
                 clearFields();
             } else {
                 ValidationUtil.showError(this,
-                    "Failed to update product. Product may not exist.",
+                    "Failed to update product.\n\n" +
+                    "It may have been deleted, or changed by a sale or another user\n" +
+                    "since you searched for it. Search again and redo the edit.",
                     "Update Failed");
             }
         } catch (Exception e) {
@@ -610,7 +622,7 @@ public class ProductsPanel extends javax.swing.JPanel {
         
         try {
             // Get product details
-            Product product = productService.findProductById(productId);
+            ProductSummary product = productService.findProductSummaryById(productId);
             
             if (product == null) {
                 ValidationUtil.showError(this,
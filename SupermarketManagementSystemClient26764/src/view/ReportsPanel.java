@@ -82,7 +82,8 @@ public class ReportsPanel extends JPanel {
             "Inventory Report",
             "Customer Report",
             "Product Report",
-            "Low Stock Report"
+            "Low Stock Report",
+            "Best Sellers Report"
         };
         cmbReportType = new JComboBox<>(reportTypes);
         cmbReportType.setBounds(130, 70, 200, 30);
@@ -210,6 +211,8 @@ public class ReportsPanel extends JPanel {
                         return reportService.generateProductReport(employeeName);
                     case 4: // Low Stock Report
                         return reportService.generateLowStockReport(employeeName);
+                    case 5: // Best Sellers Report
+                        return reportService.generateBestSellersReport(employeeName);
                     default:
                         return null;
                 }
@@ -5,17 +5,25 @@
 package view;
 
 import service.*;
+import client.OfflineTill;
 import client.RMIClientManager;
 import util.ValidationUtil;
 import util.ValidationUtil.ValidationResult;
 
+import java.rmi.RemoteException;
 import java.util.List;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollBar;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.table.DefaultTableModel;
-import model.Customer;
+import model.CustomerSummary;
 import model.Employee;
-import model.Product;
-import model.Sales;
+import model.EmployeeSummary;
+import model.ProductSummary;
+import model.SaleSummary;
+import model.SalesFilter;
+import model.SalesPage;
 
 /**
  *
@@ -38,6 +46,16 @@ public final class SalesPanel extends javax.swing.JPanel {
     private int selectedEmployeeId;
     
     DefaultTableModel tblModel = new DefaultTableModel();
+    
+    // Sales history is fetched a page at a time as the table scrolls
+    private static final int SALES_PAGE_SIZE = 100;
+    private String nextSalesCursor;
+    private boolean loadingSales;
+    private int salesListing;
+    
+    // Results of the sale worker when the server could not be reached
+    private static final int SALE_JOURNALED = -1;
+    private static final int SALE_NOT_JOURNALED = -2;
 
     /**
      * Creates new form ProductsPanel
@@ -103,7 +121,7 @@ public final class SalesPanel extends javax.swing.JPanel {
     
     private void selectEmployeeInComboBox(int employeeId){
         try{
-            Employee emp = employeeService.findEmployeeById(employeeId);
+            EmployeeSummary emp = employeeService.findEmployeeSummaryById(employeeId);
 
             if(emp == null){
                 return;
@@ -126,14 +144,24 @@ public final class SalesPanel extends javax.swing.JPanel {
         comboCustomer.removeAllItems();
         
         try{
-            List<Customer> customers = customerService.findAllCustomers();
+            List<CustomerSummary> customers = customerService.findAllCustomerSummaries();
 
             if(customers != null){
-                for(Customer customer : customers){
+                OfflineTill.getInstance().saveCustomers(customers);
+                for(CustomerSummary customer : customers){
                     comboCustomer.addItem(String.valueOf(customer.getCustomerId()));
                 }
             }
         } catch(Exception e){
+            // Offline: sell from the last catalog snapshot
+            List<CustomerSummary> cached = OfflineTill.getInstance().getCachedCustomers();
+            if(!cached.isEmpty()){
+                System.err.println("[SALES] Server unreachable, using cached customers: " + e.getMessage());
+                for(CustomerSummary customer : cached){
+                    comboCustomer.addItem(String.valueOf(customer.getCustomerId()));
+                }
+                return;
+            }
             ValidationUtil.showError(this,
                     "Error loading customers: " + e.getMessage(),
                     "Load Error");
@@ -145,13 +173,19 @@ public final class SalesPanel extends javax.swing.JPanel {
         comboEmployee.removeAllItems();
         
         try{
-            List<Employee> employees = employeeService.findAllEmployees();
+            List<EmployeeSummary> employees = employeeService.findAllEmployeeSummaries();
             if(employees != null){
-                for(Employee employee : employees){
+                for(EmployeeSummary employee : employees){
                     comboEmployee.addItem(employee.getEmployeeId() + " - " + employee.getFullName());
                 }
             }
         } catch(Exception e){
+            if(!OfflineTill.getInstance().getCachedProducts().isEmpty()){
+                // Offline: the logged-in cashier is the only one who can sell
+                System.err.println("[SALES] Server unreachable, selling as " + currentEmployee.getFullName());
+                comboEmployee.addItem(currentEmployee.getEmployeeId() + " - " + currentEmployee.getFullName());
+                return;
+            }
             ValidationUtil.showError(this,
                 "Error loading employees: " + e.getMessage(),
                 "Load Error");
@@ -163,14 +197,23 @@ public final class SalesPanel extends javax.swing.JPanel {
         comboProduct.removeAllItems();
         
         try{
-            List<Product> products = productService.findAllProducts();
+            List<ProductSummary> products = productService.findAllProductSummaries();
 
             if(products != null){
-                for(Product product : products){
+                OfflineTill.getInstance().saveProducts(products);
+                for(ProductSummary product : products){
                     comboProduct.addItem(product.getProductId() + " - " + product.getProductName());
                 }
             }
         }catch(Exception e){
+            List<ProductSummary> cached = OfflineTill.getInstance().getCachedProducts();
+            if(!cached.isEmpty()){
+                System.err.println("[SALES] Server unreachable, using cached products: " + e.getMessage());
+                for(ProductSummary product : cached){
+                    comboProduct.addItem(product.getProductId() + " - " + product.getProductName());
+                }
+                return;
+            }
             ValidationUtil.showError(this,
                 "Error loading products: " + e.getMessage(),
                 "Load Error");
@@ -188,38 +231,91 @@ public final class SalesPanel extends javax.swing.JPanel {
         tblModel.addColumn("Sale Date");
         
         salesTable.setModel(tblModel);
+        
+        jScrollPane3.getVerticalScrollBar().addAdjustmentListener(e -> {
+            if(isNearBottomOfSales()){
+                loadNextSalesPage(false);
+            }
+        });
     }
     
+    /**
+     * Start the sales list over from the newest sale. Further pages are
+     * fetched by loadNextSalesPage as the table is scrolled.
+     */
     private void fillTable(){
         tblModel.setRowCount(0);
+        salesListing++;
+        nextSalesCursor = null;
+        loadingSales = false;
+        loadNextSalesPage(true);
+    }
+    
+    private void loadNextSalesPage(boolean firstPage){
+        if(loadingSales || salesService == null || (!firstPage && nextSalesCursor == null)){
+            return;
+        }
+        loadingSales = true;
         
+        final int listing = salesListing;
+        final String cursor = firstPage ? null : nextSalesCursor;
+        final SalesFilter filter = new SalesFilter();
+        if(isCashierMode && cashierEmployeeId > 0){
+            filter.setEmployeeId(cashierEmployeeId);
+        }
         
-        try{
-            List<Sales> sales;
-
-            if(isCashierMode && cashierEmployeeId > 0){
-               sales = salesService.getSalesByEmployee(cashierEmployeeId);
-            } else {
-                sales = salesService.findAllSales();
+        new SwingWorker<SalesPage, Void>() {
+            @Override
+            protected SalesPage doInBackground() throws Exception {
+                return salesService.findSalesPage(filter, cursor, SALES_PAGE_SIZE);
             }
-
-            for(Sales sale : sales){
-                tblModel.addRow(new Object[]{
-                    sale.getSalesId(),
-                    sale.getCustomerId(),
-                    sale.getEmployeeId(),
-                    sale.getProductId(),
-                    sale.getQuantity(),
-                    sale.getTotalAmount(),
-                    sale.getSaleDate()
-                });
+            
+            @Override
+            protected void done() {
+                // fillTable was called again while this page was loading
+                if(listing != salesListing){
+                    return;
+                }
+                loadingSales = false;
+                try{
+                    SalesPage page = get();
+                    if(page == null){
+                        nextSalesCursor = null;
+                        return;
+                    }
+                    for(SaleSummary sale : page.getRows()){
+                        tblModel.addRow(new Object[]{
+                            sale.getSalesId(),
+                            sale.getCustomerId(),
+                            sale.getEmployeeId(),
+                            sale.getProductId(),
+                            sale.getQuantity(),
+                            sale.getTotalAmount(),
+                            sale.getSaleDate()
+                        });
+                    }
+                    nextSalesCursor = page.getNextCursor();
+                    
+                    // A page that does not fill the view never produces a scroll
+                    // event; check again once the table has been laid out
+                    SwingUtilities.invokeLater(() -> {
+                        if(listing == salesListing && isNearBottomOfSales()){
+                            loadNextSalesPage(false);
+                        }
+                    });
+                } catch(Exception e){
+                    ValidationUtil.showError(SalesPanel.this,
+                        "Error loading sales: " + e.getMessage(),
+                        "Load Error");
+                    e.printStackTrace();
+                }
             }
-        } catch(Exception e){
-            ValidationUtil.showError(this,
-                "Error loading sales: " + e.getMessage(),
-                "Load Error");
-            e.printStackTrace();
-        }
+        }.execute();
+    }
+    
+    private boolean isNearBottomOfSales(){
+        JScrollBar bar = jScrollPane3.getVerticalScrollBar();
+        return bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - salesTable.getRowHeight() * 10;
     }
     
     private void loadCashierSales(int employeeId){
@@ -474,42 +570,84 @@ public final class SalesPanel extends javax.swing.JPanel {
         int customerId = Integer.parseInt(customerSelection.split(" - ")[0]);
         
         double totalAmount = selectedProductPrice * quantity;
+        String requestId = RMIClientManager.newRequestId();
+        final int employeeId = selectedEmployeeId;
+        final int productId = selectedProductId;
         
-        try{
-            Integer saleId = salesService.processSale(customerId, selectedEmployeeId, selectedProductId, quantity, totalAmount);
+        // The call retries for a couple of seconds when the server is down,
+        // so it runs off the event thread with the button disabled
+        btnProcess.setEnabled(false);
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                try{
+                    return RMIClientManager.getInstance().processSale(requestId, customerId, employeeId, productId, quantity, totalAmount);
+                } catch(RemoteException e){
+                    e.printStackTrace();
+                    // Server unreachable after retries: keep selling from the journal
+                    return OfflineTill.getInstance().recordSale(requestId, customerId, employeeId, productId, quantity, totalAmount)
+                            ? SALE_JOURNALED : SALE_NOT_JOURNALED;
+                }
+            }
             
-            if(saleId != null && saleId > 0){
-                ValidationUtil.showSuccess(this,
-                    "Sale processed successfully!\n\n" +
-                    "Sale ID: " + saleId + "\n" +
-                    "Quantity: " + quantity + " units\n" +
-                    "Total: RWF " + String.format("%,.2f", totalAmount) + "\n\n" +
-                    "Stock has been updated automatically.");
-                
-                fillTable();
-                refresh();
-            } else{
-                ValidationUtil.showError(this,
-                    "Failed to process sale.\n\n" +
-                    "Please check the server console for details.\n\n" +
-                    "Common issues:\n" +
-                    "• Employee not found\n" +
-                    "• Product out of stock\n" +
-                    "• Invalid price",
-                    "Sale Failed");
+            @Override
+            protected void done() {
+                btnProcess.setEnabled(true);
+                try{
+                    showSaleResult(get(), quantity, totalAmount);
+                } catch(Exception e){
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    ValidationUtil.showError(SalesPanel.this,
+                        "Error processing sale: " + cause.getMessage() + "\n\n" +
+                        "Please check:\n" +
+                        "• Product has sufficient stock\n" +
+                        "• Customer exists\n" +
+                        "• Employee is valid\n" +
+                        "• Server is running",
+                        "Server Error");
+                    e.printStackTrace();
+                }
             }
-        }catch(Exception e){
+        }.execute();
+    }//GEN-LAST:event_btnProcessActionPerformed
+
+    private void showSaleResult(Integer saleId, int quantity, double totalAmount){
+        if(saleId != null && saleId == SALE_JOURNALED){
+            ValidationUtil.showWarning(this,
+                "Server unreachable - sale saved OFFLINE.\n\n" +
+                "Quantity: " + quantity + " units\n" +
+                "Total: RWF " + String.format("%,.2f", totalAmount) + "\n\n" +
+                OfflineTill.getInstance().getPendingCount() + " offline sale(s) will be uploaded\n" +
+                "automatically when the server is back.",
+                "Offline Sale");
+            selectedProductStock -= quantity;
+            txtQuantity.setText("");
+        } else if(saleId != null && saleId == SALE_NOT_JOURNALED){
             ValidationUtil.showError(this,
-                "Error processing sale: " + e.getMessage() + "\n\n" +
-                "Please check:\n" +
-                "• Product has sufficient stock\n" +
-                "• Customer exists\n" +
-                "• Employee is valid\n" +
-                "• Server is running",
-                "Server Error");
-            e.printStackTrace();
+                "Server unreachable and the offline journal could not be written.\n\n" +
+                "The sale was NOT recorded.",
+                "Sale Failed");
+        } else if(saleId != null && saleId > 0){
+            ValidationUtil.showSuccess(this,
+                "Sale processed successfully!\n\n" +
+                "Sale ID: " + saleId + "\n" +
+                "Quantity: " + quantity + " units\n" +
+                "Total: RWF " + String.format("%,.2f", totalAmount) + "\n\n" +
+                "Stock has been updated automatically.");
+            
+            fillTable();
+            refresh();
+        } else{
+            ValidationUtil.showError(this,
+                "Failed to process sale.\n\n" +
+                "Please check the server console for details.\n\n" +
+                "Common issues:\n" +
+                "• Employee not found\n" +
+                "• Product out of stock\n" +
+                "• Invalid price",
+                "Sale Failed");
         }
-    }//GEN-LAST:event_btnProcessActionPerformed
+    }
 
     private void comboCustomerActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_comboCustomerActionPerformed
         // TODO add your handling code here:
@@ -526,7 +664,15 @@ public final class SalesPanel extends javax.swing.JPanel {
             String selection = comboProduct.getSelectedItem().toString();
             int productId = Integer.parseInt(selection.split(" - ")[0]);
             
-            Product product = productService.findProductById(productId);
+            ProductSummary product;
+            try{
+                if(productService == null || RMIClientManager.getInstance().isOffline()){
+                    throw new RemoteException("Not connected to server");
+                }
+                product = productService.findProductSummaryById(productId);
+            } catch(RemoteException offline){
+                product = OfflineTill.getInstance().findCachedProduct(productId);
+            }
             
             if(product != null){
                 selectedProductId = product.getProductId();
@@ -13,7 +13,22 @@ import service.implementation.SessionServiceImpl;
 import service.implementation.ReportServiceImpl;
 import util.OTPEmailConsumer;
 import util.ActiveMQConfig;
+import util.DaoTimings;
+import util.LocalCacheRegionFactory;
+import util.DashboardMetrics;
+import util.DashboardPublisher;
+import util.SalesAnalytics;
+import util.LowStockMonitor;
+import util.SaleAuditLogger;
+import util.SaleEventBus;
+import util.SalesRollups;
+import util.SalesWriteBehind;
+import util.QueryStatistics;
+import util.ReplicaRouter;
+import util.SchemaMigrations;
+import util.ServerConfig;
 import util.SessionManager;
+import util.StockLedger;
 
 /**
  *
@@ -33,6 +48,53 @@ public class Server {
             System.out.println("\n[1] Initializing Hibernate...");
             HibernateUtil.getSessionFactory(); // This initializes the SessionFactory
             System.out.println("✓ Hibernate initialized successfully!");
+            // Indexes and other DDL that hbm2ddl does not manage
+            SchemaMigrations.run();
+            if (ReplicaRouter.isEnabled()) {
+                ReplicaRouter.getInstance();
+                System.out.println("✓ Read replica enabled for reporting queries");
+            }
+            
+            if (StockLedger.isEnabled()) {
+                StockLedger.getInstance();
+                System.out.println("✓ Stock ledger enabled (row locks bypassed for sales)");
+            }
+            // Before the seeds below, so the sales it replays are counted
+            if (SalesWriteBehind.isEnabled()) {
+                try {
+                    SalesWriteBehind.getInstance();
+                    System.out.println("✓ Group-commit sales log enabled");
+                } catch (IllegalStateException e) {
+                    // Sales retry the recovery; everything else still starts
+                    System.err.println("❌ Sales log recovery failed, sales are refused until it succeeds: "
+                            + e.getCause().getMessage());
+                }
+            }
+            
+            // Sale event subscribers (run off the sale request thread)
+            SaleEventBus eventBus = SaleEventBus.getInstance();
+            if (ServerConfig.getBoolean("sales.events.auditLog", true)) {
+                eventBus.subscribe(new SaleAuditLogger());
+            }
+            eventBus.subscribe(new LowStockMonitor());
+            eventBus.subscribe(DashboardMetrics.getInstance());
+            // After subscribing, so sales during the seed are not missed
+            DashboardMetrics.getInstance().seed();
+            if (SalesRollups.isEnabled()) {
+                eventBus.subscribe(SalesRollups.getInstance());
+                SalesRollups.getInstance().start();
+                System.out.println("✓ Sales rollups enabled for charts and trends");
+            }
+            if (DashboardPublisher.isEnabled()) {
+                eventBus.subscribe(DashboardPublisher.getInstance());
+                System.out.println("✓ Live dashboard updates enabled");
+            }
+            if (SalesAnalytics.isEnabled()) {
+                eventBus.subscribe(SalesAnalytics.getInstance());
+                SalesAnalytics.getInstance().seed();
+                System.out.println("✓ Best sellers and basket analytics enabled");
+            }
+
             
             // 2. Create RMI Registry
             System.out.println("\n[2] Starting RMI Registry on port " + RMI_PORT + "...");
@@ -117,6 +179,29 @@ public class Server {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\nShutting down server...");
             SessionManager.getInstance().shutdown();
+            if (SalesWriteBehind.getRunningInstance() != null) {
+                SalesWriteBehind.getRunningInstance().shutdown();
+            }
+            if (StockLedger.isEnabled()) {
+                StockLedger.getInstance().shutdown();
+            }
+            if (ReplicaRouter.isEnabled()) {
+                ReplicaRouter.getInstance().shutdown();
+            }
+            if (DashboardPublisher.isEnabled()) {
+                DashboardPublisher.getInstance().shutdown();
+            }
+            DashboardMetrics.getInstance().shutdown();
+            if (SalesRollups.isEnabled()) {
+                SalesRollups.getInstance().shutdown();
+            }
+            DaoTimings.getInstance().printReport();
+            QueryStatistics.printReport();
+            if (LocalCacheRegionFactory.getActive() != null) {
+                LocalCacheRegionFactory.getActive().printReport();
+            }
+            // Last, after anything that still writes to the database
+            HibernateUtil.shutdown();
             System.out.println("Server shut down complete");
         }));
             
@@ -1,82 +1,363 @@
 package dao;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.metadata.ClassMetadata;
+import util.DaoTimings;
+import util.EntityDetacher;
 import util.HibernateUtil;
+import util.QueryStatistics;
+import util.ReplicaRouter;
+import util.ServerConfig;
+import util.StatementCounter;
 
 /**
+ * Common CRUD plus the unit-of-work template every DAO goes through.
+ *
+ * executeInTransaction and executeReadOnly open a session, run the work in
+ * one transaction and always close the session again, so a failing call can
+ * no longer leave its connection checked out. A failure rolls back and is
+ * rethrown; the overloads that take an onError value print it and return
+ * that value instead, the way the DAOs report errors to the services.
+ * Every call is timed under its operation name, with the number of SQL
+ * statements it issued (see DaoTimings). Read-only work that ReplicaRouter
+ * routes runs on the read replica (timed as "operation@replica"); if it
+ * fails there it is run again on the primary.
+ *
+ * Associations are lazy, so what a query loads is decided by its fetch
+ * plan: the JOIN FETCH clauses it names for its use case. findById and
+ * findAll use the DAO's default plan (none unless the subclass passes
+ * one) and return entities through EntityDetacher, so nothing left
+ * unloaded travels to the client as a Hibernate proxy. findById loads the
+ * entity with session.get, so the second-level cache can answer it, and
+ * then initializes the associations the plan names on root; findAll runs
+ * the plan as a query.
+ *
+ * Scans (scan, scanAll) are for reports and exports over more rows than
+ * should be held at once: rows are streamed to a handler one at a time
+ * from a forward-only cursor on a StatelessSession, so nothing is kept in
+ * a persistence context and heap use does not grow with the row count.
  *
  * @author andyb
  */
 public abstract class BaseDao<T> {
     private Class<T> entityClass;
-    
+    // JOIN FETCH clauses on the alias "root" for findById/findAll, or null
+    private String fetchPlan;
+    // Properties of root the plan fetches, initialized by findById
+    private List<String> fetchProperties = new ArrayList<>();
+
+    private static final Pattern FETCH_CLAUSE =
+            Pattern.compile("JOIN\\s+FETCH\\s+root\\.(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Work done with the session of one unit of work
+     */
+    public interface SessionWork<R> {
+        R execute(Session session);
+    }
+
+    /**
+     * Query of a scan, created on the scan's session
+     */
+    public interface ScanQuery {
+        Query create(StatelessSession session);
+    }
+
     protected BaseDao(Class<T> entityClass){
+        this(entityClass, null);
+    }
+
+    protected BaseDao(Class<T> entityClass, String fetchPlan){
         this.entityClass = entityClass;
+        this.fetchPlan = fetchPlan;
+        if (fetchPlan != null) {
+            Matcher clause = FETCH_CLAUSE.matcher(fetchPlan);
+            while (clause.find()) {
+                fetchProperties.add(clause.group(1));
+            }
+        }
     }
-    
-    public Integer save(T entity) {
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Transaction tr = ss.beginTransaction();
-            Integer id = (Integer) ss.save(entity);
-            tr.commit();
-            ss.close();
-            return id;
-        }catch(Exception e){
+
+    /**
+     * Run work in a read-write transaction and commit it.
+     * The work may roll back the transaction itself to abandon the unit of
+     * work without an exception (e.g. a failed validation); nothing is
+     * committed then.
+     * @throws RuntimeException whatever the work threw, after rollback
+     */
+    protected static <R> R executeInTransaction(String operation, SessionWork<R> work) {
+        return execute(operation, false, work);
+    }
+
+    /**
+     * Run work in a read-only transaction: nothing is flushed, loaded
+     * entities are not dirty-checked and the connection is marked read-only
+     * so the database can skip write bookkeeping.
+     * @throws RuntimeException whatever the work threw
+     */
+    protected static <R> R executeReadOnly(String operation, SessionWork<R> work) {
+        return execute(operation, true, work);
+    }
+
+    /**
+     * executeInTransaction that prints a failure and returns onError
+     */
+    protected static <R> R executeInTransaction(String operation, R onError, SessionWork<R> work) {
+        try {
+            return execute(operation, false, work);
+        } catch (Exception e) {
+            System.err.println("[DAO] " + operation + " failed: " + e.getMessage());
             e.printStackTrace();
-            return null;
-        }  
+            return onError;
+        }
     }
-    
-    public boolean update(T entity) {
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Transaction tr = ss.beginTransaction();
-            ss.update(entity);
-            tr.commit();
-            ss.close();
-            return true;
-        }catch(Exception e){
+
+    /**
+     * executeReadOnly that prints a failure and returns onError
+     */
+    protected static <R> R executeReadOnly(String operation, R onError, SessionWork<R> work) {
+        try {
+            return execute(operation, true, work);
+        } catch (Exception e) {
+            System.err.println("[DAO] " + operation + " failed: " + e.getMessage());
             e.printStackTrace();
-            return false;
+            return onError;
+        }
+    }
+
+    private static <R> R execute(String operation, boolean readOnly, SessionWork<R> work) {
+        if (readOnly && ReplicaRouter.isEnabled()) {
+            SessionFactory replica = ReplicaRouter.getInstance().replicaFor(operation);
+            if (replica != null) {
+                try {
+                    return execute(operation + "@replica", true, work, replica);
+                } catch (RuntimeException e) {
+                    ReplicaRouter.getInstance().replicaFailed(operation, e);
+                }
+            }
+        }
+        return execute(operation, readOnly, work, HibernateUtil.getSessionFactory());
+    }
+
+    private static <R> R execute(String operation, boolean readOnly, SessionWork<R> work, SessionFactory factory) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        Session session = null;
+        Transaction transaction = null;
+        StatementCounter statements = new StatementCounter();
+        String outerOperation = QueryStatistics.setOperation(operation);
+        try {
+            session = factory.withOptions().interceptor(statements).openSession();
+            if (readOnly) {
+                session.setDefaultReadOnly(true);
+                session.setFlushMode(FlushMode.MANUAL);
+            }
+            transaction = session.beginTransaction();
+            if (readOnly) {
+                // The pool clears the flag when the connection comes back
+                session.doWork(connection -> connection.setReadOnly(true));
+            }
+
+            R result = work.execute(session);
+
+            if (transaction.isActive()) {
+                transaction.commit();
+            }
+            failed = false;
+            return result;
+        } catch (RuntimeException e) {
+            if (transaction != null) {
+                try {
+                    if (transaction.isActive()) transaction.rollback();
+                } catch (Exception ex) {
+                    // The original failure is the one worth reporting
+                }
+            }
+            throw e;
+        } finally {
+            if (session != null) {
+                try { session.close(); } catch (Exception e) {}
+            }
+            QueryStatistics.setOperation(outerOperation);
+            DaoTimings.getInstance().record(operation, System.nanoTime() - start,
+                    statements.getStatements(), failed);
+        }
+    }
+
+    /**
+     * Stream the results of a read-only query to handler, one row at a time.
+     * The cursor is forward-only and fetches db.scan.fetchSize rows per
+     * round trip (with MySQL this needs useCursorFetch=true on the URL).
+     * Entities are not managed: many-to-one associations the query does
+     * not JOIN FETCH, and all collections, are left unloaded. Scans are
+     * routed like other reads; one that fails on the replica before any
+     * row was handled is run again on the primary.
+     * @return number of rows handled
+     * @throws RuntimeException whatever the query or the handler threw
+     */
+    protected static <R> long scan(String operation, ScanQuery query, Consumer<? super R> handler) {
+        long[] handled = {0};
+        if (ReplicaRouter.isEnabled()) {
+            SessionFactory replica = ReplicaRouter.getInstance().replicaFor(operation);
+            if (replica != null) {
+                try {
+                    return scan(operation + "@replica", replica, query, handler, handled);
+                } catch (RuntimeException e) {
+                    if (handled[0] > 0) {
+                        throw e;
+                    }
+                    ReplicaRouter.getInstance().replicaFailed(operation, e);
+                }
+            }
+        }
+        return scan(operation, HibernateUtil.getSessionFactory(), query, handler, handled);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> long scan(String operation, SessionFactory factory, ScanQuery query,
+                                 Consumer<? super R> handler, long[] handled) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        StatelessSession session = null;
+        Transaction transaction = null;
+        ScrollableResults results = null;
+        String outerOperation = QueryStatistics.setOperation(operation);
+        try {
+            session = factory.openStatelessSession();
+            transaction = session.beginTransaction();
+            results = query.create(session)
+                    .setReadOnly(true)
+                    .setFetchSize(ServerConfig.getInt("db.scan.fetchSize", 1000))
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            while (results.next()) {
+                Object[] row = results.get();
+                handler.accept((R) (row.length == 1 ? row[0] : row));
+                handled[0]++;
+            }
+            results.close();
+            results = null;
+            transaction.commit();
+            failed = false;
+            return handled[0];
+        } catch (RuntimeException e) {
+            if (transaction != null) {
+                try {
+                    if (transaction.isActive()) transaction.rollback();
+                } catch (Exception ex) {
+                    // The original failure is the one worth reporting
+                }
+            }
+            throw e;
+        } finally {
+            if (results != null) {
+                try { results.close(); } catch (Exception e) {}
+            }
+            if (session != null) {
+                try { session.close(); } catch (Exception e) {}
+            }
+            QueryStatistics.setOperation(outerOperation);
+            // One query, however many round trips the cursor took
+            DaoTimings.getInstance().record(operation, System.nanoTime() - start, 1, failed);
         }
     }
-    
+
+    private String operation(String method) {
+        return getClass().getSimpleName() + "." + method;
+    }
+
+    public Integer save(T entity) {
+        return executeInTransaction(operation("save"), null, session -> (Integer) session.save(entity));
+    }
+
+    public boolean update(T entity) {
+        return executeInTransaction(operation("update"), false, session -> {
+            session.update(entity);
+            return true;
+        });
+    }
+
     public boolean delete(T entity) {
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Transaction tr = ss.beginTransaction();
-            ss.delete(entity);
-            tr.commit();
-            ss.close();
+        return executeInTransaction(operation("delete"), false, session -> {
+            session.delete(entity);
             return true;
-        }catch(Exception e){
-            e.printStackTrace();
-            return false;
-        }
+        });
+    }
+
+    /**
+     * Insert many new entities in one transaction. The session is flushed
+     * and cleared every hibernate.jdbc.batch_size rows, so each flush goes
+     * out as one JDBC batch and the session never holds more than that.
+     * Entities must use a non-IDENTITY id (see BlockTableGenerator) or
+     * Hibernate inserts them one by one.
+     * @return number inserted, or 0 if the insert failed (nothing is kept)
+     */
+    public int saveAll(List<T> entities) {
+        int flushSize = Math.max(1, ServerConfig.getInt("hibernate.jdbc.batch_size", 50));
+        return executeInTransaction(operation("saveAll"), 0, session -> {
+            // Imported rows would only push the hot entries out of the cache
+            session.setCacheMode(CacheMode.IGNORE);
+            int count = 0;
+            for (T entity : entities) {
+                session.save(entity);
+                if (++count % flushSize == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            return count;
+        });
     }
-    
+
+    @SuppressWarnings("unchecked")
     public T findById(int id){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            return (T) ss.get(entityClass, id);
-        }catch(Exception e){
+        return EntityDetacher.detach(executeReadOnly(operation("findById"), null, session -> {
+            // A JOIN FETCH query would bypass the entity cache
+            T entity = (T) session.get(entityClass, id);
+            if (entity != null && !fetchProperties.isEmpty()) {
+                ClassMetadata metadata = HibernateUtil.getSessionFactory().getClassMetadata(entityClass);
+                for (String property : fetchProperties) {
+                    Hibernate.initialize(metadata.getPropertyValue(entity, property));
+                }
+            }
+            return entity;
+        }));
+    }
+
+    /**
+     * Stream every entity of this type to handler (see scan); associations
+     * are not loaded
+     * @return number of rows handled, or -1 if the scan failed
+     */
+    public long scanAll(Consumer<? super T> handler) {
+        try {
+            return scan(operation("scanAll"),
+                    session -> session.createQuery("FROM " + entityClass.getSimpleName()), handler);
+        } catch (Exception e) {
+            System.err.println("[DAO] " + operation("scanAll") + " failed: " + e.getMessage());
             e.printStackTrace();
-            return null;
+            return -1;
         }
     }
-    
+
+    @SuppressWarnings("unchecked")
     public List<T> findAll(){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            List<T> entities = ss.createQuery("FROM "+ entityClass.getSimpleName()).list();
-            ss.close();
-            return entities;
-        }catch(Exception e){
-            e.printStackTrace();
-            return null;
-        }
+        String hql = fetchPlan == null ? "FROM " + entityClass.getSimpleName()
+                : "SELECT DISTINCT root FROM " + entityClass.getSimpleName() + " root " + fetchPlan;
+        return EntityDetacher.detachAll(executeReadOnly(operation("findAll"), null,
+                session -> (List<T>) session.createQuery(hql).list()));
     }
 }
@@ -2,30 +2,42 @@ package dao;
 
 import java.util.List;
 import model.Customer;
+import model.CustomerSummary;
 import org.hibernate.Query;
 import org.hibernate.Session;
-import org.hibernate.Transaction;
-import util.HibernateUtil;
 
 /**
  * Customer Data Access Object
  */
 public class CustomerDao extends BaseDao<Customer>{
+    // Flat projection for lists and lookups: no collections are loaded
+    private static final String SUMMARY_SELECT =
+        "SELECT new model.CustomerSummary(c.customerId, c.fullName, c.email, c.phone, "
+        + "c.address, c.registrationDate) FROM Customer c";
+    
     public CustomerDao(){
         super(Customer.class);
     }
     
     public List<Integer> getAllCustomerIds(){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Query query = ss.createQuery("SELECT cust.customerId FROM Customer cust");
-            List<Integer> ids = query.list();
-            ss.close();
+        return executeReadOnly("CustomerDao.getAllCustomerIds", null, ss -> {
+            @SuppressWarnings("unchecked")
+            List<Integer> ids = ss.createQuery("SELECT cust.customerId FROM Customer cust").list();
             return ids;
-        }catch(Exception e){
-            e.printStackTrace();
-            return null;
-        }
+        });
+    }
+    
+    /**
+     * Existence and name check without loading the customer's sales
+     * @return {customerId, fullName}, or null if not found
+     */
+    public Object[] findNameById(int customerId){
+        return executeReadOnly("CustomerDao.findNameById", null, session -> {
+            Query query = session.createQuery(
+                "SELECT cust.customerId, cust.fullName FROM Customer cust WHERE cust.customerId = :custId");
+            query.setParameter("custId", customerId);
+            return (Object[]) query.uniqueResult();
+        });
     }
     
     /**
@@ -35,13 +47,7 @@ public class CustomerDao extends BaseDao<Customer>{
      * @return true if deleted successfully, false if has dependencies
      */
     public boolean deleteCustomer(int customerId) {
-        Session session = null;
-        Transaction transaction = null;
-        
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
+        return executeInTransaction("CustomerDao.deleteCustomer", false, session -> {
             // Load customer
             Customer customer = (Customer) session.get(Customer.class, customerId);
             
@@ -51,9 +57,7 @@ public class CustomerDao extends BaseDao<Customer>{
             }
             
             // Check if customer has sales records
-            Query salesCheck = session.createQuery("SELECT COUNT(*) FROM Sales WHERE customer.customerId = :custId");
-            salesCheck.setParameter("custId", customerId);
-            Long salesCount = (Long) salesCheck.uniqueResult();
+            Long salesCount = countSales(session, customerId);
             
             if (salesCount > 0) {
                 System.err.println("Cannot delete customer: Customer has " + salesCount + " sales records.");
@@ -63,23 +67,10 @@ public class CustomerDao extends BaseDao<Customer>{
             
             // Safe to delete
             session.delete(customer);
-            transaction.commit();
             
             System.out.println("Customer deleted successfully: " + customer.getFullName());
             return true;
-            
-        } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
-            System.err.println("Error deleting customer:");
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (session != null) {
-                session.close();
-            }
-        }
+        });
     }
     
     /**
@@ -88,26 +79,8 @@ public class CustomerDao extends BaseDao<Customer>{
      * @return true if has no dependencies, false otherwise
      */
     public boolean canDeleteCustomer(int customerId) {
-        Session session = null;
-        
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            
-            // Check sales
-            Query salesCheck = session.createQuery("SELECT COUNT(*) FROM Sales WHERE customer.customerId = :custId");
-            salesCheck.setParameter("custId", customerId);
-            Long salesCount = (Long) salesCheck.uniqueResult();
-            
-            return salesCount == 0;
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (session != null) {
-                session.close();
-            }
-        }
+        return executeReadOnly("CustomerDao.canDeleteCustomer", false,
+                session -> countSales(session, customerId) == 0);
     }
     
     /**
@@ -116,19 +89,14 @@ public class CustomerDao extends BaseDao<Customer>{
      * @return Number of sales
      */
     public Long getSalesCount(int customerId) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("SELECT COUNT(*) FROM Sales WHERE customer.customerId = :custId");
-            query.setParameter("custId", customerId);
-            Long count = (Long) query.uniqueResult();
-            return count != null ? count : 0L;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0L;
-        } finally {
-            if (session != null) session.close();
-        }
+        return executeReadOnly("CustomerDao.getSalesCount", 0L, session -> countSales(session, customerId));
+    }
+    
+    private Long countSales(Session session, int customerId) {
+        Query query = session.createQuery("SELECT COUNT(*) FROM Sales WHERE customer.customerId = :custId");
+        query.setParameter("custId", customerId);
+        Long count = (Long) query.uniqueResult();
+        return count != null ? count : 0L;
     }
     
     /**
@@ -137,19 +105,36 @@ public class CustomerDao extends BaseDao<Customer>{
      * @return Total purchase amount
      */
     public Double getTotalRevenue(int customerId) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
+        return executeReadOnly("CustomerDao.getTotalRevenue", 0.0, session -> {
             Query query = session.createQuery(
                 "SELECT COALESCE(SUM(s.totalAmount), 0.0) FROM Sales s WHERE s.customer.customerId = :custId");
             query.setParameter("custId", customerId);
             Double revenue = (Double) query.uniqueResult();
             return revenue != null ? revenue : 0.0;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0.0;
-        } finally {
-            if (session != null) session.close();
-        }
+        });
+    }
+    
+    /**
+     * All customers as flat CustomerSummary rows
+     */
+    public List<CustomerSummary> findAllSummaries(){
+        return executeReadOnly("CustomerDao.findAllSummaries", null, session -> {
+            Query query = session.createQuery(SUMMARY_SELECT
+                + " ORDER BY c.customerId");
+            @SuppressWarnings("unchecked")
+            List<CustomerSummary> rows = query.list();
+            return rows;
+        });
+    }
+    
+    /**
+     * One customer as a CustomerSummary, or null if not found
+     */
+    public CustomerSummary findSummaryById(int id){
+        return executeReadOnly("CustomerDao.findSummaryById", null, session -> {
+            Query query = session.createQuery(SUMMARY_SELECT + " WHERE c.customerId = :id");
+            query.setParameter("id", id);
+            return (CustomerSummary) query.uniqueResult();
+        });
     }
 }
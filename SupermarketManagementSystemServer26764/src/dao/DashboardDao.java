@@ -4,72 +4,69 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import model.DailySalesData;
-import org.hibernate.Query;
-import org.hibernate.Session;
-import util.HibernateUtil;
+import util.SalesRollups;
 
 /**
  *
  * @author andyb
  */
 public class DashboardDao {
+    private final SalesRollupDao rollupDao = new SalesRollupDao();
+    
     public Integer getTotalProducts(){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Query query = ss.createQuery("SELECT COUNT(*) FROM Product");
-            Long count = (Long) query.uniqueResult();
+        return BaseDao.executeReadOnly("DashboardDao.getTotalProducts", 0, ss -> {
+            Long count = (Long) ss.createQuery("SELECT COUNT(*) FROM Product").uniqueResult();
             return count.intValue();
-        }catch(Exception e){
-            e.printStackTrace();
-            return 0;
-        }
+        });
     }
     
     public Integer getTotalSales(){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Query query = ss.createQuery("SELECT COUNT(*) FROM Sales");
-            Long count = (Long) query.uniqueResult();
+        return BaseDao.executeReadOnly("DashboardDao.getTotalSales", 0, ss -> {
+            Long count = (Long) ss.createQuery("SELECT COUNT(*) FROM Sales").uniqueResult();
             return count.intValue();
-        }catch(Exception e){
-            e.printStackTrace();
-            return 0;
-        }
+        });
     }
     
     public Integer getTotalCustomers(){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Query query = ss.createQuery("SELECT COUNT(*) FROM Customer");
-            Long count = (Long) query.uniqueResult();
+        return BaseDao.executeReadOnly("DashboardDao.getTotalCustomers", 0, ss -> {
+            Long count = (Long) ss.createQuery("SELECT COUNT(*) FROM Customer").uniqueResult();
             return count.intValue();
-        }catch(Exception e){
-            e.printStackTrace();
-            return 0;
-        }
+        });
     }
     
     public Double getTotalRevenue(){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Query query = ss.createQuery("SELECT COALESCE(SUM(totalAmount), 0.0) FROM Sales");
-            return (Double) query.uniqueResult();
-        }catch(Exception e){
-            e.printStackTrace();
-            return 0.0;
-        }
+        return BaseDao.executeReadOnly("DashboardDao.getTotalRevenue", 0.0,
+                ss -> (Double) ss.createQuery("SELECT COALESCE(SUM(totalAmount), 0.0) FROM Sales").uniqueResult());
+    }
+    
+    /**
+     * Products, customers, sales, revenue and units sold in one unit of
+     * work, to seed the in-memory dashboard counters. Runs on the primary
+     * (a replica may be behind), so it is not read-only; null on failure.
+     */
+    public Object[] getCounters(){
+        return BaseDao.executeInTransaction("DashboardDao.getCounters", null, ss -> {
+            Long products = (Long) ss.createQuery("SELECT COUNT(*) FROM Product").uniqueResult();
+            Long customers = (Long) ss.createQuery("SELECT COUNT(*) FROM Customer").uniqueResult();
+            Object[] sales = (Object[]) ss.createQuery(
+                    "SELECT COUNT(*), COALESCE(SUM(totalAmount), 0.0), COALESCE(SUM(quantity), 0) FROM Sales")
+                    .uniqueResult();
+            return new Object[] {products, customers, sales[0], sales[1], sales[2]};
+        });
     }
     
     public List<DailySalesData> getDailySalesTrend(){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
+        if(SalesRollups.isEnabled()){
+            // One row per day from the daily rollup
+            return rollupDao.getDailyRevenue(null);
+        }
+        return BaseDao.executeReadOnly("DashboardDao.getDailySalesTrend", new ArrayList<>(), ss -> {
             String hql = "SELECT DATE(s.saleDate), SUM(s.totalAmount) " +
                         "FROM Sales s " +
                         "GROUP BY DATE(s.saleDate) " +
                         "ORDER BY DATE(s.saleDate)";
-            Query query = ss.createQuery(hql);
-            @SuppressWarnings("Unchecked")
-            List<Object[]> results = query.list();
+            @SuppressWarnings("unchecked")
+            List<Object[]> results = ss.createQuery(hql).list();
             
             List<DailySalesData> salesData = new ArrayList<>();
             
@@ -78,11 +75,7 @@ public class DashboardDao {
                 Double total = (Double) row[1];
                 salesData.add(new DailySalesData(date, total));
             }
-            ss.close();
             return salesData;
-        }catch(Exception e){
-            e.printStackTrace();
-            return new ArrayList<>();
-        }
+        });
     }
 }
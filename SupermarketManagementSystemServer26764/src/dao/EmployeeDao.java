@@ -3,10 +3,10 @@ package dao;
 import java.util.List;
 import model.Employee;
 import model.EmployeeProfile;
+import model.EmployeeSummary;
 import org.hibernate.Query;
 import org.hibernate.Session;
-import org.hibernate.Transaction;
-import util.HibernateUtil;
+import util.EntityDetacher;
 
 
 /**
@@ -15,42 +15,45 @@ import util.HibernateUtil;
  */
 public class EmployeeDao extends BaseDao<Employee>{
     
+    // Flat projection for lists and lookups: no collections are loaded
+    private static final String SUMMARY_SELECT =
+        "SELECT new model.EmployeeSummary(e.employeeId, e.fullName, e.role, e.salary, "
+        + "e.hireDate, e.contact, e.username) FROM Employee e";
+    
+    // Fetch plan for employees sent to the client or used for login: the
+    // profile is joined (an inverse one-to-one would otherwise cost a
+    // select per employee), sales and transactions are never loaded
+    private static final String PROFILE_PLAN = "LEFT JOIN FETCH root.employeeProfile";
+    private static final String WITH_PROFILE = "SELECT root FROM Employee root " + PROFILE_PLAN;
+    
+    private final EmployeeStatsDao statsDao = new EmployeeStatsDao();
+    
     public EmployeeDao(){
-        super(Employee.class);
+        super(Employee.class, PROFILE_PLAN);
     }
     
     /**
      * Authenticate employee with username and password
      */
     public Employee authenticate(String username, String password) {
-        Session session = null;
         try{
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("FROM Employee WHERE username = :username");
-            query.setParameter("username", username);
-            Employee employee = (Employee) query.uniqueResult();
-            
-            if (employee != null && password.equals(employee.getPasswordHash())) {
-                // FIX: Replace Hibernate PersistentSet with plain Java HashSet
-                // PersistentSet is a Hibernate proxy that can't serialize properly over RMI
-                // after session closes. Replace with plain collections to fix serialization.
-                employee.setSales(new java.util.HashSet<>());
-                employee.setInventoryTransactions(new java.util.HashSet<>());
+            return EntityDetacher.detach(executeReadOnly("EmployeeDao.authenticate", session -> {
+                Employee employee = findByUsername(session, username);
                 
-                // EmployeeProfile is fine - single object, no collection issues
+                if (employee != null && password.equals(employee.getPasswordHash())) {
+                    // Sales and transactions stay unloaded; EntityDetacher
+                    // swaps them for empty sets before the employee goes over RMI
+                    System.out.println("Authentication successful for user: " + username);
+                    return employee;
+                }
                 
-                System.out.println("Authentication successful for user: " + username);
-                return employee;
-            }
-            
-            System.out.println("Authentication failed for user: " + username + " (invalid credentials)");
-            return null;
+                System.out.println("Authentication failed for user: " + username + " (invalid credentials)");
+                return null;
+            }));
         } catch(Exception e){
             System.err.println("Authentication error for user: " + username);
             e.printStackTrace();
             return null;
-        } finally {
-            if(session != null) session.close();
         }
     }
     
@@ -58,19 +61,31 @@ public class EmployeeDao extends BaseDao<Employee>{
      * Find employee by username
      */
     public Employee findByUsername(String username){
-        Session session = null;
-        try{
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("FROM Employee WHERE username = :username");
-            query.setParameter("username", username);
-            Employee employee = (Employee) query.uniqueResult();
-            return employee;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            if(session != null) session.close();
-        }
+        return EntityDetacher.detach(
+                executeReadOnly("EmployeeDao.findByUsername", null, session -> findByUsername(session, username)));
+    }
+    
+    private Employee findByUsername(Session session, String username){
+        Query query = session.createQuery(WITH_PROFILE + " WHERE root.username = :username");
+        query.setParameter("username", username);
+        // Every login runs this; cleared by Hibernate whenever employees change
+        query.setCacheable(true);
+        query.setCacheRegion("query.employeeByUsername");
+        return (Employee) query.uniqueResult();
+    }
+    
+    /**
+     * Existence and name check without loading the employee's sales,
+     * transactions and profile
+     * @return {employeeId, fullName}, or null if not found
+     */
+    public Object[] findNameById(int employeeId){
+        return executeReadOnly("EmployeeDao.findNameById", null, session -> {
+            Query query = session.createQuery(
+                "SELECT emp.employeeId, emp.fullName FROM Employee emp WHERE emp.employeeId = :empId");
+            query.setParameter("empId", employeeId);
+            return (Object[]) query.uniqueResult();
+        });
     }
     
     /**
@@ -103,13 +118,7 @@ public class EmployeeDao extends BaseDao<Employee>{
      * @return true if successfully deleted, false otherwise
      */
     public boolean deleteEmployee(int employeeId) {
-        Session session = null;
-        Transaction transaction = null;
-        
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
+        return executeInTransaction("EmployeeDao.deleteEmployee", false, session -> {
             // Load the employee
             Employee employee = (Employee) session.get(Employee.class, employeeId);
             
@@ -120,9 +129,7 @@ public class EmployeeDao extends BaseDao<Employee>{
             
             // Business Rule 1: Cannot delete yourself (optional - implement in service layer)
             // Business Rule 2: Check if employee has sales history
-            Query salesCheck = session.createQuery("SELECT COUNT(*) FROM Sales WHERE employee.employeeId = :empId");
-            salesCheck.setParameter("empId", employeeId);
-            Long salesCount = (Long) salesCheck.uniqueResult();
+            Long salesCount = countSales(session, employeeId);
             
             if (salesCount > 0) {
                 System.err.println("Cannot delete employee: Employee has " + salesCount + " sales records.");
@@ -131,9 +138,7 @@ public class EmployeeDao extends BaseDao<Employee>{
             }
             
             // Business Rule 3: Check if employee has inventory transactions
-            Query transCheck = session.createQuery("SELECT COUNT(*) FROM InventoryTransaction WHERE employee.employeeId = :empId");
-            transCheck.setParameter("empId", employeeId);
-            Long transCount = (Long) transCheck.uniqueResult();
+            Long transCount = countTransactions(session, employeeId);
             
             if (transCount > 0) {
                 System.err.println("Cannot delete employee: Employee has " + transCount + " inventory transactions.");
@@ -145,23 +150,10 @@ public class EmployeeDao extends BaseDao<Employee>{
             System.out.println("Deleting employee: " + employee.getFullName() + " (ID: " + employeeId + ")");
             
             session.delete(employee);
-            transaction.commit();
             
             System.out.println("Employee deleted successfully!");
             return true;
-            
-        } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
-            System.err.println("Error deleting employee:");
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (session != null) {
-                session.close();
-            }
-        }
+        });
     }
     
     /**
@@ -172,13 +164,7 @@ public class EmployeeDao extends BaseDao<Employee>{
      * @return true if successfully deactivated, false otherwise
      */
     public boolean deactivateEmployee(int employeeId) {
-        Session session = null;
-        Transaction transaction = null;
-        
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
+        return executeInTransaction("EmployeeDao.deactivateEmployee", false, session -> {
             Employee employee = (Employee) session.get(Employee.class, employeeId);
             
             if (employee == null) {
@@ -198,23 +184,10 @@ public class EmployeeDao extends BaseDao<Employee>{
             }
             
             session.update(employee);
-            transaction.commit();
             
             System.out.println("Employee deactivated successfully!");
             return true;
-            
-        } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
-            System.err.println("Error deactivating employee:");
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (session != null) {
-                session.close();
-            }
-        }
+        });
     }
     
     /**
@@ -226,13 +199,7 @@ public class EmployeeDao extends BaseDao<Employee>{
      * @return true if successfully deleted, false otherwise
      */
     public boolean forceDeleteEmployee(int employeeId) {
-        Session session = null;
-        Transaction transaction = null;
-        
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
+        return executeInTransaction("EmployeeDao.forceDeleteEmployee", false, session -> {
             Employee employee = (Employee) session.get(Employee.class, employeeId);
             
             if (employee == null) {
@@ -245,23 +212,10 @@ public class EmployeeDao extends BaseDao<Employee>{
             
             // Delete employee (CASCADE will handle related records)
             session.delete(employee);
-            transaction.commit();
             
             System.out.println("Employee and all related records deleted!");
             return true;
-            
-        } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
-            System.err.println("Error force deleting employee:");
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (session != null) {
-                session.close();
-            }
-        }
+        });
     }
     
     /**
@@ -271,31 +225,8 @@ public class EmployeeDao extends BaseDao<Employee>{
      * @return true if can be deleted, false if has dependencies
      */
     public boolean canDeleteEmployee(int employeeId) {
-        Session session = null;
-        
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            
-            // Check sales
-            Query salesCheck = session.createQuery("SELECT COUNT(*) FROM Sales WHERE employee.employeeId = :empId");
-            salesCheck.setParameter("empId", employeeId);
-            Long salesCount = (Long) salesCheck.uniqueResult();
-            
-            // Check inventory transactions
-            Query transCheck = session.createQuery("SELECT COUNT(*) FROM InventoryTransaction WHERE employee.employeeId = :empId");
-            transCheck.setParameter("empId", employeeId);
-            Long transCount = (Long) transCheck.uniqueResult();
-            
-            return (salesCount == 0 && transCount == 0);
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (session != null) {
-                session.close();
-            }
-        }
+        return executeReadOnly("EmployeeDao.canDeleteEmployee", false,
+                session -> countSales(session, employeeId) == 0 && countTransactions(session, employeeId) == 0);
     }
     
     /**
@@ -303,36 +234,30 @@ public class EmployeeDao extends BaseDao<Employee>{
      * Useful for showing warning before deletion
      */
     public Long getSalesCount(int employeeId) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("SELECT COUNT(*) FROM Sales WHERE employee.employeeId = :empId");
-            query.setParameter("empId", employeeId);
-            return (Long) query.uniqueResult();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0L;
-        } finally {
-            if (session != null) session.close();
-        }
+        EmployeeStatsDao.Stats stats = statsDao.find(employeeId);
+        return stats != null ? stats.getSalesCount() : 0L;
     }
     
     /**
      * Get count of inventory transactions by employee
      */
     public Long getTransactionCount(int employeeId) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("SELECT COUNT(*) FROM InventoryTransaction WHERE employee.employeeId = :empId");
-            query.setParameter("empId", employeeId);
-            return (Long) query.uniqueResult();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0L;
-        } finally {
-            if (session != null) session.close();
-        }
+        EmployeeStatsDao.Stats stats = statsDao.find(employeeId);
+        return stats != null ? stats.getTransactionCount() : 0L;
+    }
+    
+    private Long countSales(Session session, int employeeId) {
+        Query query = session.createQuery("SELECT COUNT(*) FROM Sales WHERE employee.employeeId = :empId");
+        query.setParameter("empId", employeeId);
+        Long count = (Long) query.uniqueResult();
+        return count != null ? count : 0L;
+    }
+    
+    private Long countTransactions(Session session, int employeeId) {
+        Query query = session.createQuery("SELECT COUNT(*) FROM InventoryTransaction WHERE employee.employeeId = :empId");
+        query.setParameter("empId", employeeId);
+        Long count = (Long) query.uniqueResult();
+        return count != null ? count : 0L;
     }
     
     // ========== EMPLOYEE PROFILE METHODS ==========
@@ -341,58 +266,32 @@ public class EmployeeDao extends BaseDao<Employee>{
      * Get employee profile by employee ID
      */
     public EmployeeProfile getEmployeeProfile(int employeeId) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
+        return executeReadOnly("EmployeeDao.getEmployeeProfile", null, session -> {
             Query query = session.createQuery("FROM EmployeeProfile WHERE employee.employeeId = :employeeId");
             query.setParameter("employeeId", employeeId);
-            EmployeeProfile profile = (EmployeeProfile) query.uniqueResult();
-            return profile;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            if(session != null) session.close();
-        }
+            return EntityDetacher.detach((EmployeeProfile) query.uniqueResult());
+        });
     }
     
     /**
      * Save or update employee profile
      */
     public boolean saveEmployeeProfile(EmployeeProfile profile) {
-        Session session = null;
-        Transaction transaction = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
+        return executeInTransaction("EmployeeDao.saveEmployeeProfile", false, session -> {
             if(profile.getProfileId() == 0) {
                 session.save(profile);
             } else {
                 session.update(profile);
             }
-            
-            transaction.commit();
             return true;
-        } catch(Exception e) {
-            if(transaction != null) transaction.rollback();
-            e.printStackTrace();
-            return false;
-        } finally {
-            if(session != null) session.close();
-        }
+        });
     }
     
     /**
      * Change employee password
      */
     public boolean changePassword(int employeeId, String oldPassword, String newPassword) {
-        Session session = null;
-        Transaction transaction = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
+        return executeInTransaction("EmployeeDao.changePassword", false, session -> {
             Employee employee = (Employee) session.get(Employee.class, employeeId);
             if(employee == null) return false;
             
@@ -406,42 +305,23 @@ public class EmployeeDao extends BaseDao<Employee>{
 //            employee.setPasswordHash(newHash);
 //            session.update(employee);
             
-            transaction.commit();
             return true;
-        } catch(Exception e) {
-            if(transaction != null) transaction.rollback();
-            e.printStackTrace();
-            return false;
-        } finally {
-            if(session != null) session.close();
-        }
+        });
     }
     
     /**
      * Mark first login as complete
      */
     public boolean markFirstLoginComplete(int employeeId) {
-        Session session = null;
-        Transaction transaction = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
+        return executeInTransaction("EmployeeDao.markFirstLoginComplete", false, session -> {
             Employee employee = (Employee) session.get(Employee.class, employeeId);
             if(employee != null) {
                 employee.setFirstLogin(false);
                 session.update(employee);
-                transaction.commit();
                 return true;
             }
             return false;
-        } catch(Exception e) {
-            if(transaction != null) transaction.rollback();
-            e.printStackTrace();
-            return false;
-        } finally {
-            if(session != null) session.close();
-        }
+        });
     }
 
 // ADD THESE METHODS TO EmployeeDao.java
@@ -452,98 +332,62 @@ public class EmployeeDao extends BaseDao<Employee>{
      * Find employees by role
      */
     public List<Employee> findByRole(String role) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("FROM Employee WHERE role = :role ORDER BY fullName ASC");
+        return executeReadOnly("EmployeeDao.findByRole", null, session -> {
+            Query query = session.createQuery(WITH_PROFILE + " WHERE root.role = :role ORDER BY root.fullName ASC");
             query.setParameter("role", role);
             @SuppressWarnings("unchecked")
             List<Employee> employees = query.list();
-            return employees;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            if(session != null) session.close();
-        }
+            return EntityDetacher.detachAll(employees);
+        });
     }
     
     /**
      * Search employees by name
      */
     public List<Employee> searchByName(String searchTerm) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery(
-                "FROM Employee WHERE LOWER(fullName) LIKE LOWER(:searchTerm) ORDER BY fullName ASC");
+        return executeReadOnly("EmployeeDao.searchByName", null, session -> {
+            Query query = session.createQuery(WITH_PROFILE
+                + " WHERE LOWER(root.fullName) LIKE LOWER(:searchTerm) ORDER BY root.fullName ASC");
             query.setParameter("searchTerm", "%" + searchTerm + "%");
             @SuppressWarnings("unchecked")
             List<Employee> employees = query.list();
-            return employees;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            if(session != null) session.close();
-        }
+            return EntityDetacher.detachAll(employees);
+        });
     }
     
     /**
      * Get active employees (excludes deactivated)
      */
     public List<Employee> findActiveEmployees() {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery(
-                "FROM Employee WHERE username NOT LIKE 'INACTIVE_%' ORDER BY fullName ASC");
+        return executeReadOnly("EmployeeDao.findActiveEmployees", null, session -> {
+            Query query = session.createQuery(WITH_PROFILE
+                + " WHERE root.username NOT LIKE 'INACTIVE_%' ORDER BY root.fullName ASC");
             @SuppressWarnings("unchecked")
             List<Employee> employees = query.list();
-            return employees;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            if(session != null) session.close();
-        }
+            return EntityDetacher.detachAll(employees);
+        });
     }
     
     /**
      * Get total employee count
      */
     public Long getTotalCount() {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("SELECT COUNT(*) FROM Employee");
-            Long count = (Long) query.uniqueResult();
+        return executeReadOnly("EmployeeDao.getTotalCount", 0L, session -> {
+            Long count = (Long) session.createQuery("SELECT COUNT(*) FROM Employee").uniqueResult();
             return count != null ? count : 0L;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return 0L;
-        } finally {
-            if(session != null) session.close();
-        }
+        });
     }
     
     /**
      * Get employee count by role
      */
     public Long getCountByRole(String role) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
+        return executeReadOnly("EmployeeDao.getCountByRole", 0L, session -> {
             Query query = session.createQuery("SELECT COUNT(*) FROM Employee WHERE role = :role");
             query.setParameter("role", role);
             Long count = (Long) query.uniqueResult();
             return count != null ? count : 0L;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return 0L;
-        } finally {
-            if(session != null) session.close();
-        }
+        });
     }
     
     // ========== REACTIVATION METHOD ==========
@@ -552,13 +396,7 @@ public class EmployeeDao extends BaseDao<Employee>{
      * Reactivate a deactivated employee
      */
     public boolean reactivateEmployee(int employeeId) {
-        Session session = null;
-        Transaction transaction = null;
-        
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
+        return executeInTransaction("EmployeeDao.reactivateEmployee", false, session -> {
             Employee employee = (Employee) session.get(Employee.class, employeeId);
             
             if(employee == null) {
@@ -574,7 +412,6 @@ public class EmployeeDao extends BaseDao<Employee>{
                 System.out.println("Reactivating employee: " + employee.getFullName());
                 
                 session.update(employee);
-                transaction.commit();
                 
                 System.out.println("Employee reactivated successfully!");
                 return true;
@@ -582,15 +419,7 @@ public class EmployeeDao extends BaseDao<Employee>{
                 System.out.println("Employee is already active: " + employee.getFullName());
                 return true; // Already active
             }
-            
-        } catch(Exception e) {
-            if(transaction != null) transaction.rollback();
-            System.err.println("Error reactivating employee:");
-            e.printStackTrace();
-            return false;
-        } finally {
-            if(session != null) session.close();
-        }
+        });
     }
     
     // ========== REVENUE METHOD ==========
@@ -599,20 +428,8 @@ public class EmployeeDao extends BaseDao<Employee>{
      * Get total revenue generated by employee
      */
     public Double getTotalRevenue(int employeeId) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery(
-                "SELECT COALESCE(SUM(s.totalAmount), 0.0) FROM Sales s WHERE s.employee.employeeId = :empId");
-            query.setParameter("empId", employeeId);
-            Double revenue = (Double) query.uniqueResult();
-            return revenue != null ? revenue : 0.0;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return 0.0;
-        } finally {
-            if(session != null) session.close();
-        }
+        EmployeeStatsDao.Stats stats = statsDao.find(employeeId);
+        return stats != null ? stats.getRevenue() : 0.0;
     }
     
     // ========== PASSWORD VERIFICATION ==========
@@ -637,4 +454,28 @@ public class EmployeeDao extends BaseDao<Employee>{
 //            if(session != null) session.close();
 //        }
 //    }
+    
+    /**
+     * All employees as flat EmployeeSummary rows
+     */
+    public List<EmployeeSummary> findAllSummaries(){
+        return executeReadOnly("EmployeeDao.findAllSummaries", null, session -> {
+            Query query = session.createQuery(SUMMARY_SELECT
+                + " ORDER BY e.employeeId");
+            @SuppressWarnings("unchecked")
+            List<EmployeeSummary> rows = query.list();
+            return rows;
+        });
+    }
+    
+    /**
+     * One employee as a EmployeeSummary, or null if not found
+     */
+    public EmployeeSummary findSummaryById(int id){
+        return executeReadOnly("EmployeeDao.findSummaryById", null, session -> {
+            Query query = session.createQuery(SUMMARY_SELECT + " WHERE e.employeeId = :id");
+            query.setParameter("id", id);
+            return (EmployeeSummary) query.uniqueResult();
+        });
+    }
 }
@@ -0,0 +1,119 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+
+/**
+ * Sales count, revenue, inventory transaction count and last sale time per
+ * employee, one row each in employee_stats (schema migration V5).
+ *
+ * The row is changed by record(), called inside every transaction that
+ * inserts sales or inventory transactions, so it is always exact and the
+ * performance summary and cashier dashboard read one row instead of
+ * counting and summing the sales table. Rows are locked after the product
+ * rows in those transactions, and only one employee's own sales share one.
+ *
+ * rebuild() recomputes every row, for data written by other tools (e.g.
+ * DataGenerator).
+ *
+ * @author andyb
+ */
+public class EmployeeStatsDao {
+
+    private static final String UPSERT =
+            "INSERT INTO employee_stats (employee_id, sales_count, revenue, transaction_count, last_sale_at) "
+            + "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+            + "sales_count = sales_count + VALUES(sales_count), "
+            + "revenue = revenue + VALUES(revenue), "
+            + "transaction_count = transaction_count + VALUES(transaction_count), "
+            + "last_sale_at = COALESCE(GREATEST(last_sale_at, VALUES(last_sale_at)), last_sale_at, VALUES(last_sale_at))";
+
+    /**
+     * Totals of one employee
+     */
+    public static class Stats {
+        private final long salesCount;
+        private final double revenue;
+        private final long transactionCount;
+        private final Date lastSaleAt;
+
+        Stats(long salesCount, double revenue, long transactionCount, Date lastSaleAt) {
+            this.salesCount = salesCount;
+            this.revenue = revenue;
+            this.transactionCount = transactionCount;
+            this.lastSaleAt = lastSaleAt;
+        }
+
+        public long getSalesCount() { return salesCount; }
+        public double getRevenue() { return revenue; }
+        public long getTransactionCount() { return transactionCount; }
+        public Date getLastSaleAt() { return lastSaleAt; }
+    }
+
+    /**
+     * Add to an employee's totals on the connection of the transaction that
+     * wrote the rows, so both commit or roll back together
+     * @param lastSale time of the newest sale added, or null for none
+     */
+    public static void record(Connection connection, int employeeId, long sales, double revenue,
+                              long transactions, Date lastSale) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT)) {
+            upsert.setInt(1, employeeId);
+            upsert.setLong(2, sales);
+            upsert.setDouble(3, revenue);
+            upsert.setLong(4, transactions);
+            if (lastSale != null) {
+                upsert.setTimestamp(5, new Timestamp(lastSale.getTime()));
+            } else {
+                upsert.setNull(5, Types.TIMESTAMP);
+            }
+            upsert.executeUpdate();
+        }
+    }
+
+    /**
+     * Totals of the employee; zeros if they have no sales or transactions,
+     * null on failure
+     */
+    public Stats find(int employeeId) {
+        return BaseDao.executeReadOnly("EmployeeStatsDao.find", null, ss -> {
+            Object[] row = (Object[]) ss.createSQLQuery(
+                    "SELECT sales_count, revenue, transaction_count, last_sale_at FROM employee_stats "
+                    + "WHERE employee_id = :employeeId")
+                    .setParameter("employeeId", employeeId)
+                    .uniqueResult();
+            if (row == null) {
+                return new Stats(0, 0.0, 0, null);
+            }
+            return new Stats(((Number) row[0]).longValue(), ((Number) row[1]).doubleValue(),
+                    ((Number) row[2]).longValue(), (Date) row[3]);
+        });
+    }
+
+    /**
+     * Recompute every employee's totals from the sales and inventory tables
+     */
+    public boolean rebuild() {
+        return BaseDao.executeInTransaction("EmployeeStatsDao.rebuild", false, ss -> {
+            ss.doWork(connection -> {
+                try (PreparedStatement delete = connection.prepareStatement("DELETE FROM employee_stats");
+                     PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO employee_stats (employee_id, sales_count, revenue, transaction_count, last_sale_at) "
+                        + "SELECT e.employee_id, "
+                        + "(SELECT COUNT(*) FROM sales s WHERE s.employee_id = e.employee_id), "
+                        + "(SELECT COALESCE(SUM(s.total_amount), 0) FROM sales s WHERE s.employee_id = e.employee_id), "
+                        + "(SELECT COUNT(*) FROM inventory_transactions t WHERE t.employee_id = e.employee_id), "
+                        + "(SELECT MAX(s.sale_date) FROM sales s WHERE s.employee_id = e.employee_id) "
+                        + "FROM employees e")) {
+                    delete.executeUpdate();
+                    insert.executeUpdate();
+                }
+            });
+            return true;
+        });
+    }
+}
@@ -5,10 +5,11 @@ import model.Employee;
 import model.InventoryTransaction;
 import model.Product;
 import model.TransactionType;
+import org.hibernate.LockMode;
 import org.hibernate.Query;
-import org.hibernate.Session;
-import org.hibernate.Transaction;
-import util.HibernateUtil;
+import org.hibernate.StaleStateException;
+import util.EntityDetacher;
+import util.ProductContention;
 
 /**
  *
@@ -20,15 +21,39 @@ public class InventoryTransactionDao extends BaseDao<InventoryTransaction>{
         super(InventoryTransaction.class);
     }
     
+    /**
+     * Record a stock movement and apply it to the product.
+     * Locks the product row, or with sales.lockMode=OPTIMISTIC relies on the
+     * version column and retries with backoff when the row changed underneath.
+     */
     public Integer recordTransaction(int productId, TransactionType type, int quantity, String reason, int employeeId){
+        if(ProductContention.isOptimistic() && !ProductContention.prefersPessimistic(productId)){
+            int maxRetries = ProductContention.getMaxRetries();
+            for(int attempt = 0; attempt < maxRetries; attempt++){
+                ProductContention.recordAttempt(productId);
+                try{
+                    return recordTransactionOnce(productId, type, quantity, reason, employeeId, true);
+                } catch(StaleStateException e){
+                    ProductContention.recordConflict(productId);
+                    ProductContention.backoff(attempt);
+                }
+            }
+        }
+        return recordTransactionOnce(productId, type, quantity, reason, employeeId, false);
+    }
+    
+    private Integer recordTransactionOnce(int productId, TransactionType type, int quantity, String reason, int employeeId, boolean optimistic){
         try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Transaction tr = ss.beginTransaction();
-            
-            Product product = (Product) ss.get(Product.class, productId);
-            Employee employee = (Employee) ss.get(Employee.class, employeeId);
-            
-            if(product != null){
+            return executeInTransaction("InventoryTransactionDao.recordTransaction", ss -> {
+                Product product = optimistic
+                        ? (Product) ss.get(Product.class, productId)
+                        : (Product) ss.get(Product.class, productId, LockMode.PESSIMISTIC_WRITE);
+                Employee employee = (Employee) ss.get(Employee.class, employeeId);
+                
+                if(product == null){
+                    ss.getTransaction().rollback();
+                    return null;
+                }
                 InventoryTransaction inventoryTransaction = new InventoryTransaction(product, type, quantity, reason, employee);
                 
                 int currentStock = product.getStockQuantity();
@@ -44,11 +69,16 @@ public class InventoryTransactionDao extends BaseDao<InventoryTransaction>{
                 
                 Integer transactionId = (Integer) ss.save(inventoryTransaction);
                 ss.update(product);
-                tr.commit();
-                ss.close();
+                if(employee != null){
+                    ss.doWork(connection -> EmployeeStatsDao.record(connection, employeeId, 0, 0.0, 1, null));
+                }
                 return transactionId;
+            });
+        } catch(StaleStateException e){
+            if(optimistic){
+                throw e;
             }
-            ss.close();
+            e.printStackTrace();
             return null;
         } catch(Exception e){
             e.printStackTrace();
@@ -57,17 +87,14 @@ public class InventoryTransactionDao extends BaseDao<InventoryTransaction>{
     }
     
     public List<InventoryTransaction> findByProduct(int productId){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
+        return executeReadOnly("InventoryTransactionDao.findByProduct", null, ss -> {
             Query query = ss.createQuery(
                "FROM InventoryTransaction WHERE product.productId = :productId ORDER BY transactionDate DESC"
             );
             query.setParameter("productId", productId);
-            ss.close();
-            return query.list();
-        }catch(Exception e){
-            e.printStackTrace();
-            return null;
-        }
+            @SuppressWarnings("unchecked")
+            List<InventoryTransaction> transactions = query.list();
+            return EntityDetacher.detachAll(transactions);
+        });
     }
 }
@@ -1,10 +1,15 @@
 package dao;
 
+import java.sql.PreparedStatement;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import model.Product;
+import model.ProductSummary;
+import org.hibernate.Cache;
 import org.hibernate.Query;
 import org.hibernate.Session;
-import org.hibernate.Transaction;
+import util.EntityDetacher;
 import util.HibernateUtil;
 
 /**
@@ -12,41 +17,144 @@ import util.HibernateUtil;
  */
 public class ProductDao extends BaseDao<Product>{
 
+    // Flat projection for lists and lookups: no collections are loaded
+    private static final String SUMMARY_SELECT =
+        "SELECT new model.ProductSummary(p.productId, p.productName, p.category, p.price, p.stockQuantity, "
+        + "p.reorderLevel, p.createdDate, p.version, MIN(s.supplierName)) "
+        + "FROM Product p LEFT JOIN p.suppliers s";
+    private static final String SUMMARY_GROUP =
+        "p.productId, p.productName, p.category, p.price, p.stockQuantity, "
+        + "p.reorderLevel, p.createdDate, p.version";
+    
+    // Catalog fetch plan for whole Product entities: the suppliers come
+    // along so an edited product sent back keeps its supplier links;
+    // sales and inventory transactions are never loaded
+    private static final String CATALOG_PLAN = "LEFT JOIN FETCH root.suppliers";
+    
     public ProductDao() {
-        super(Product.class);
+        super(Product.class, CATALOG_PLAN);
     }
     
     public List<Product> findLowStockProducts(){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
+        return executeReadOnly("ProductDao.findLowStockProducts", null, ss -> {
             Query query = ss.createQuery("SELECT prod FROM Product prod WHERE prod.stockQuantity <= prod.reorderLevel");
+            // Cleared by Hibernate whenever products change, including stock updates
+            query.setCacheable(true);
+            query.setCacheRegion("query.lowStockProducts");
+            @SuppressWarnings("unchecked")
             List<Product> products = query.list();
-            ss.close();
-            return products;
-        }catch(Exception e){
-            e.printStackTrace();
-            return null;
-        }
+            return EntityDetacher.detachAll(products);
+        });
     }
     
     public boolean updateStock(int productId, int newStock){
-        try{
-            Session ss = HibernateUtil.getSessionFactory().openSession();
-            Transaction tr = ss.beginTransaction();
+        return executeInTransaction("ProductDao.updateStock", false, ss -> {
             Product product = (Product) ss.get(Product.class, productId);
             if(product != null){
                 product.setStockQuantity(newStock);
                 ss.update(product);
-                tr.commit();
-                ss.close();
                 return true;
             }
-            ss.close();
-            return false;
-        }catch(Exception e){
-            e.printStackTrace();
             return false;
+        });
+    }
+    
+    /**
+     * Apply an edit from the products panel.
+     * Only the fields the edit form owns (name, category, price) are copied
+     * onto the stored product; stock changes only through sales and
+     * inventory transactions, and suppliers and dates are kept. The edit
+     * must carry the version the panel loaded: if the product has changed
+     * since (including its stock), the edit is rejected as stale.
+     * @param product Product with new values and the version it was loaded at
+     * @return true if updated, false if not found, stale or failed
+     */
+    public boolean updateProduct(Product product) {
+        return executeInTransaction("ProductDao.updateProduct", false, session -> {
+            Product current = (Product) session.get(Product.class, product.getProductId());
+            if (current == null) {
+                System.err.println("Product not found with ID: " + product.getProductId());
+                return false;
+            }
+            if (current.getVersion() != product.getVersion()) {
+                System.err.println("Product " + product.getProductId() + " changed since it was loaded (version "
+                        + product.getVersion() + ", now " + current.getVersion() + "), edit rejected");
+                return false;
+            }
+            current.setProductName(product.getProductName());
+            current.setCategory(product.getCategory());
+            current.setPrice(product.getPrice());
+            // Flushed with "WHERE version = ?", so a change after this read fails the commit
+            return true;
+        });
+    }
+    
+    /**
+     * Read the columns a sale needs without loading the entity graph
+     * @param productId Product ID
+     * @return {productName, price, reorderLevel, category}, or null if not found
+     */
+    public Object[] findSaleInfo(int productId) {
+        return executeReadOnly("ProductDao.findSaleInfo", null, session -> {
+            Query query = session.createQuery(
+                "SELECT p.productName, p.price, p.reorderLevel, p.category FROM Product p WHERE p.productId = :prodId");
+            query.setParameter("prodId", productId);
+            return (Object[]) query.uniqueResult();
+        });
+    }
+    
+    /**
+     * Read only the stock column of a product
+     * @param productId Product ID
+     * @return Current stock, or null if the product does not exist
+     */
+    public Integer getStockQuantity(int productId) {
+        return executeReadOnly("ProductDao.getStockQuantity", null, session -> {
+            Query query = session.createQuery("SELECT p.stockQuantity FROM Product p WHERE p.productId = :prodId");
+            query.setParameter("prodId", productId);
+            return (Integer) query.uniqueResult();
+        });
+    }
+    
+    /**
+     * Apply relative stock changes in one transaction.
+     * Uses in-place UPDATE statements so no product rows are loaded.
+     * @param deltas productId -> change in stock (negative for sales)
+     * @return true if every delta was written
+     */
+    public boolean applyStockDeltas(Map<Integer, Integer> deltas) {
+        boolean applied = executeInTransaction("ProductDao.applyStockDeltas", false, session -> {
+            // Plain JDBC; bumping version keeps optimistic sales and edits honest
+            session.doWork(connection -> {
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE products SET stock_quantity = stock_quantity + ?, version = version + 1 WHERE product_id = ?")) {
+                    for (Map.Entry<Integer, Integer> entry : deltas.entrySet()) {
+                        update.setInt(1, entry.getValue());
+                        update.setInt(2, entry.getKey());
+                        update.addBatch();
+                    }
+                    update.executeBatch();
+                }
+            });
+            return true;
+        });
+        if (applied) {
+            evictStock(deltas.keySet());
+        }
+        return applied;
+    }
+    
+    /**
+     * Drop the cached copies of products whose stock was changed with plain
+     * JDBC, after the change commits. An HQL bulk UPDATE would instead empty
+     * the whole Product region on every sale.
+     */
+    static void evictStock(Collection<Integer> productIds) {
+        Cache cache = HibernateUtil.getSessionFactory().getCache();
+        for (Integer productId : productIds) {
+            cache.evictEntity(Product.class, productId);
         }
+        cache.evictQueryRegion("query.lowStockProducts");
     }
     
     /**
@@ -56,13 +164,7 @@ public class ProductDao extends BaseDao<Product>{
      * @return true if deleted successfully, false if has dependencies
      */
     public boolean deleteProduct(int productId) {
-        Session session = null;
-        Transaction transaction = null;
-        
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
+        return executeInTransaction("ProductDao.deleteProduct", false, session -> {
             // Load product
             Product product = (Product) session.get(Product.class, productId);
             
@@ -72,9 +174,7 @@ public class ProductDao extends BaseDao<Product>{
             }
             
             // Check if product has sales records
-            Query salesCheck = session.createQuery("SELECT COUNT(*) FROM Sales WHERE product.productId = :prodId");
-            salesCheck.setParameter("prodId", productId);
-            Long salesCount = (Long) salesCheck.uniqueResult();
+            Long salesCount = countSales(session, productId);
             
             if (salesCount > 0) {
                 System.err.println("Cannot delete product: Product has " + salesCount + " sales records.");
@@ -83,9 +183,7 @@ public class ProductDao extends BaseDao<Product>{
             }
             
             // Check if product has inventory transactions
-            Query transCheck = session.createQuery("SELECT COUNT(*) FROM InventoryTransaction WHERE product.productId = :prodId");
-            transCheck.setParameter("prodId", productId);
-            Long transCount = (Long) transCheck.uniqueResult();
+            Long transCount = countTransactions(session, productId);
             
             if (transCount > 0) {
                 System.err.println("Cannot delete product: Product has " + transCount + " inventory transactions.");
@@ -95,23 +193,10 @@ public class ProductDao extends BaseDao<Product>{
             
             // Safe to delete
             session.delete(product);
-            transaction.commit();
             
             System.out.println("Product deleted successfully: " + product.getProductName());
             return true;
-            
-        } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
-            System.err.println("Error deleting product:");
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (session != null) {
-                session.close();
-            }
-        }
+        });
     }
     
     /**
@@ -120,31 +205,8 @@ public class ProductDao extends BaseDao<Product>{
      * @return true if has no dependencies, false otherwise
      */
     public boolean canDeleteProduct(int productId) {
-        Session session = null;
-        
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            
-            // Check sales
-            Query salesCheck = session.createQuery("SELECT COUNT(*) FROM Sales WHERE product.productId = :prodId");
-            salesCheck.setParameter("prodId", productId);
-            Long salesCount = (Long) salesCheck.uniqueResult();
-            
-            // Check inventory transactions
-            Query transCheck = session.createQuery("SELECT COUNT(*) FROM InventoryTransaction WHERE product.productId = :prodId");
-            transCheck.setParameter("prodId", productId);
-            Long transCount = (Long) transCheck.uniqueResult();
-            
-            return (salesCount == 0 && transCount == 0);
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (session != null) {
-                session.close();
-            }
-        }
+        return executeReadOnly("ProductDao.canDeleteProduct", false,
+                session -> countSales(session, productId) == 0 && countTransactions(session, productId) == 0);
     }
     
     /**
@@ -153,19 +215,7 @@ public class ProductDao extends BaseDao<Product>{
      * @return Number of sales
      */
     public Long getSalesCount(int productId) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("SELECT COUNT(*) FROM Sales WHERE product.productId = :prodId");
-            query.setParameter("prodId", productId);
-            Long count = (Long) query.uniqueResult();
-            return count != null ? count : 0L;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0L;
-        } finally {
-            if (session != null) session.close();
-        }
+        return executeReadOnly("ProductDao.getSalesCount", 0L, session -> countSales(session, productId));
     }
     
     /**
@@ -174,18 +224,45 @@ public class ProductDao extends BaseDao<Product>{
      * @return Number of transactions
      */
     public Long getTransactionCount(int productId) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("SELECT COUNT(*) FROM InventoryTransaction WHERE product.productId = :prodId");
-            query.setParameter("prodId", productId);
-            Long count = (Long) query.uniqueResult();
-            return count != null ? count : 0L;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0L;
-        } finally {
-            if (session != null) session.close();
-        }
+        return executeReadOnly("ProductDao.getTransactionCount", 0L, session -> countTransactions(session, productId));
+    }
+    
+    private Long countSales(Session session, int productId) {
+        Query query = session.createQuery("SELECT COUNT(*) FROM Sales WHERE product.productId = :prodId");
+        query.setParameter("prodId", productId);
+        Long count = (Long) query.uniqueResult();
+        return count != null ? count : 0L;
+    }
+    
+    private Long countTransactions(Session session, int productId) {
+        Query query = session.createQuery("SELECT COUNT(*) FROM InventoryTransaction WHERE product.productId = :prodId");
+        query.setParameter("prodId", productId);
+        Long count = (Long) query.uniqueResult();
+        return count != null ? count : 0L;
+    }
+    
+    /**
+     * All products as flat ProductSummary rows (supplier name is the
+     * alphabetically first supplier)
+     */
+    public List<ProductSummary> findAllSummaries(){
+        return executeReadOnly("ProductDao.findAllSummaries", null, session -> {
+            Query query = session.createQuery(SUMMARY_SELECT
+                + " GROUP BY " + SUMMARY_GROUP + " ORDER BY p.productId");
+            @SuppressWarnings("unchecked")
+            List<ProductSummary> rows = query.list();
+            return rows;
+        });
+    }
+    
+    /**
+     * One product as a ProductSummary, or null if not found
+     */
+    public ProductSummary findSummaryById(int id){
+        return executeReadOnly("ProductDao.findSummaryById", null, session -> {
+            Query query = session.createQuery(SUMMARY_SELECT + " WHERE p.productId = :id GROUP BY " + SUMMARY_GROUP);
+            query.setParameter("id", id);
+            return (ProductSummary) query.uniqueResult();
+        });
     }
 }
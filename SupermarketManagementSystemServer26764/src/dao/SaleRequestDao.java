@@ -0,0 +1,97 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Client request IDs of recorded sales, one row per request in
+ * sale_requests (schema migration V6) with the sale IDs it produced.
+ *
+ * record() is called inside the transaction that inserts the sales, so a
+ * request ID is stored exactly when its sales are; the primary key makes a
+ * second transaction with the same ID fail instead of selling twice. Unlike
+ * IdempotencyCache this survives restarts, so an offline sale journaled
+ * after a lost reply is recognised however late it is synced.
+ *
+ * @author andyb
+ */
+public class SaleRequestDao {
+
+    // Longest request ID stored (the column width); clients send UUIDs
+    public static final int MAX_REQUEST_ID = 64;
+
+    /**
+     * Store the request ID with its sale IDs on the connection of the
+     * transaction that inserted the sales
+     * @throws SQLException if the request ID is already recorded
+     */
+    public static void record(Connection connection, String requestId, List<Integer> saleIds) throws SQLException {
+        StringBuilder ids = new StringBuilder();
+        for (Integer saleId : saleIds) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(saleId);
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO sale_requests (request_id, sale_ids, created_at) VALUES (?, ?, ?)")) {
+            insert.setString(1, requestId);
+            insert.setString(2, ids.toString());
+            insert.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Whether the request ID fits the column (and the write-behind log
+     * format); other IDs are not recorded
+     */
+    public static boolean isRecordable(String requestId) {
+        return requestId != null && !requestId.isEmpty() && requestId.length() <= MAX_REQUEST_ID
+                && requestId.indexOf(',') < 0;
+    }
+
+    /**
+     * Sale IDs recorded for the request, in line order. Reads the primary.
+     * @return the IDs, an empty list if the request was never recorded, or
+     *         null if the database could not be read
+     */
+    public List<Integer> find(String requestId) {
+        return BaseDao.executeInTransaction("SaleRequestDao.find", null, ss -> {
+            String ids = (String) ss.createSQLQuery("SELECT sale_ids FROM sale_requests WHERE request_id = :requestId")
+                    .setParameter("requestId", requestId)
+                    .uniqueResult();
+            List<Integer> saleIds = new ArrayList<>();
+            if (ids != null && !ids.isEmpty()) {
+                for (String id : ids.split(",")) {
+                    saleIds.add(Integer.parseInt(id));
+                }
+            }
+            return saleIds;
+        });
+    }
+
+    /**
+     * Forget requests recorded before the given time
+     * @return rows deleted, or -1 on failure
+     */
+    public int purgeBefore(Date before) {
+        // Plain JDBC: a native executeUpdate would empty every second-level cache region
+        return BaseDao.executeInTransaction("SaleRequestDao.purgeBefore", -1, ss -> {
+            int[] deleted = new int[1];
+            ss.doWork(connection -> {
+                try (PreparedStatement delete = connection.prepareStatement(
+                        "DELETE FROM sale_requests WHERE created_at < ?")) {
+                    delete.setTimestamp(1, new Timestamp(before.getTime()));
+                    deleted[0] = delete.executeUpdate();
+                }
+            });
+            return deleted[0];
+        });
+    }
+}
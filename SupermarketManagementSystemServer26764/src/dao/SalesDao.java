@@ -1,21 +1,46 @@
 package dao;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import model.Customer;
+import model.DailySalesData;
 import model.Employee;
 import model.Product;
+import model.SaleLineItem;
+import model.SaleLineResult;
+import model.SaleSummary;
 import model.Sales;
+import model.SalesFilter;
+import model.SalesPage;
 import model.InventoryTransaction;
 import model.TransactionType;
 import org.hibernate.Query;
 import org.hibernate.Session;
-import org.hibernate.Transaction;
-import org.hibernate.LockMode;
+import org.hibernate.StaleStateException;
 import org.hibernate.exception.LockTimeoutException;
-import util.HibernateUtil;
+import org.hibernate.jdbc.Work;
+import util.CatalogCache;
+import util.EntityDetacher;
+import util.ProductContention;
+import util.SaleCommitted;
+import util.SaleEventBus;
+import util.SalesRollups;
+import util.SalesWriteBehind;
+import util.StockLedger;
 
 /**
  * Sales Data Access Object - FINAL CORRECTED VERSION
@@ -23,6 +48,12 @@ import util.HibernateUtil;
  */
 public class SalesDao extends BaseDao<Sales>{
     
+    // Upper bound for findSalesPage, whatever the client asks for
+    private static final int MAX_PAGE_SIZE = 500;
+    
+    private final SalesRollupDao rollupDao = new SalesRollupDao();
+    private final EmployeeStatsDao statsDao = new EmployeeStatsDao();
+    
     public SalesDao(){
         super(Sales.class);
     }
@@ -41,176 +72,787 @@ public class SalesDao extends BaseDao<Sales>{
      * 8. Price validation (prevents zero/negative prices)
      * 9. Null-safe string concatenation
      * 10. Lock timeout handling
+     * 
+     * With stock.ledger.enabled the product row is not locked: stock is
+     * reserved from StockLedger and written back by its flush task.
+     * With sales.groupCommit.enabled as well, the sale is acknowledged from
+     * the write-ahead log (see SalesWriteBehind).
+     * With sales.lockMode=OPTIMISTIC the row is read without a lock and the
+     * commit is checked against Product's version (see processSaleOptimistic).
      */
     public Integer processSale(int customerId, int employeeId, int productId, 
                               int quantity, double uiTotalAmount){
-        Session session = null;
-        Transaction transaction = null;
+        return processSale(null, customerId, employeeId, productId, quantity, uiTotalAmount);
+    }
+    
+    /**
+     * processSale that also stores the client's request ID with the sale
+     * (see SaleRequestDao), in the same transaction. The sale fails if the
+     * request ID is already recorded.
+     * @param requestId a recordable request ID, or null
+     */
+    public Integer processSale(String requestId, int customerId, int employeeId, int productId, 
+                               int quantity, double uiTotalAmount){
+        if(SalesWriteBehind.isEnabled()) {
+            return processSaleWriteBehind(requestId, customerId, employeeId, productId, quantity, uiTotalAmount);
+        }
+        if(ProductContention.isOptimistic() && !StockLedger.isEnabled()
+                && !ProductContention.prefersPessimistic(productId)) {
+            return processSaleOptimistic(requestId, customerId, employeeId, productId, quantity, uiTotalAmount);
+        }
+        return processSaleOnce(requestId, customerId, employeeId, productId, quantity, uiTotalAmount, false);
+    }
+    
+    /**
+     * Optimistic sale: no row lock, retried with bounded backoff when another
+     * till changed the product between our read and our commit. If every
+     * retry conflicts, the last attempt takes the row lock.
+     */
+    private Integer processSaleOptimistic(String requestId, int customerId, int employeeId, int productId, 
+                                          int quantity, double uiTotalAmount){
+        int maxRetries = ProductContention.getMaxRetries();
+        for(int attempt = 0; attempt < maxRetries; attempt++) {
+            ProductContention.recordAttempt(productId);
+            try {
+                return processSaleOnce(requestId, customerId, employeeId, productId, quantity, uiTotalAmount, true);
+            } catch(StaleStateException e) {
+                ProductContention.recordConflict(productId);
+                ProductContention.backoff(attempt);
+            }
+        }
+        System.err.println("Product " + productId + " still contended after " + maxRetries
+                + " optimistic attempts, using row lock.");
+        return processSaleOnce(requestId, customerId, employeeId, productId, quantity, uiTotalAmount, false);
+    }
+    
+    /**
+     * One attempt at a sale.
+     * @param optimistic read the product without a lock and let a version
+     *        conflict escape as StaleStateException so the caller can retry
+     */
+    private Integer processSaleOnce(String requestId, int customerId, int employeeId, int productId, 
+                                    int quantity, double uiTotalAmount, boolean optimistic){
+        // Existence, price and names come from the catalog cache, so the
+        // only rows this sale touches are the ones it writes
+        CatalogCache catalog = CatalogCache.getInstance();
+        CatalogCache.PartyInfo customerInfo = catalog.getCustomer(customerId);
+        CatalogCache.PartyInfo employeeInfo = catalog.getEmployee(employeeId);
+        CatalogCache.ProductInfo productInfo = catalog.getProduct(productId);
+        
+        // Validate entities exist
+        if(customerInfo == null) {
+            System.err.println("Customer not found: " + customerId);
+            return null;
+        }
+        
+        if(employeeInfo == null) {
+            System.err.println("Employee not found: " + employeeId);
+            return null;
+        }
+        
+        if(productInfo == null) {
+            System.err.println("Product not found: " + productId);
+            return null;
+        }
+        
+        // Validate quantity is positive
+        if(quantity <= 0) {
+            System.err.println("Invalid quantity: " + quantity);
+            return null;
+        }
+        
+        // Calculate totalAmount on SERVER side (security!)
+        double currentPrice = productInfo.getPrice();
+        
+        // FIX: Validate price is positive
+        if(currentPrice <= 0) {
+            System.err.println("Invalid product price: RWF " + currentPrice);
+            System.err.println("Please update product price before selling.");
+            return null;
+        }
+        
+        boolean useLedger = StockLedger.isEnabled();
+        // Set once stock is reserved in the ledger, cleared when the sale commits
+        boolean[] reserved = {false};
         
         try{
-            session = HibernateUtil.getSessionFactory().openSession();
-            transaction = session.beginTransaction();
-            
-            // Load entities
-            Customer customer = (Customer) session.get(Customer.class, customerId);
-            Employee employee = (Employee) session.get(Employee.class, employeeId);
-            
-            // Pessimistic locking to prevent concurrent stock issues
-            Product product = null;
-            try {
-                product = (Product) session.get(Product.class, productId, LockMode.PESSIMISTIC_WRITE);
-            } catch(LockTimeoutException e) {
-                System.err.println("Product is being processed by another user. Please try again in a moment.");
-                transaction.rollback();
+            SaleCommitted committed = executeInTransaction("SalesDao.processSale", session -> {
+                // Take the stock first. Without the ledger this is the one write
+                // to the product row: a guarded UPDATE that holds the row lock
+                // until commit (pessimistic) or checks the version (optimistic).
+                int newStock;
+                if(useLedger) {
+                    reserved[0] = StockLedger.getInstance().reserve(productId, quantity);
+                    if(!reserved[0]) {
+                        System.err.println("Insufficient stock! Available: " + 
+                            StockLedger.getInstance().getAvailable(productId) + ", Requested: " + quantity);
+                        session.getTransaction().rollback();
+                        return null;
+                    }
+                    newStock = StockLedger.getInstance().getAvailable(productId);
+                } else {
+                    Integer remaining = optimistic ? takeStockIfUnchanged(session, productId, quantity)
+                                                   : takeStock(session, productId, quantity);
+                    if(remaining == null) {
+                        Integer available = currentStock(session, productId);
+                        if(available == null) {
+                            System.err.println("Product not found: " + productId);
+                            catalog.invalidateProduct(productId);
+                        } else {
+                            System.err.println("Insufficient stock! Available: " + 
+                                available + ", Requested: " + quantity);
+                        }
+                        session.getTransaction().rollback(); // FIX: Explicit rollback
+                        return null;
+                    }
+                    newStock = remaining;
+                }
+                
+                double serverCalculatedTotal = currentPrice * quantity;
+                
+                // Validate against UI amount (detect tampering or price changes)
+                double priceDifference = Math.abs(serverCalculatedTotal - uiTotalAmount);
+                if(priceDifference > 0.01) { // Allow 1 cent tolerance for rounding
+                    System.err.println("Price mismatch detected!");
+                    System.err.println("Server calculated: RWF " + String.format("%.2f", serverCalculatedTotal));
+                    System.err.println("UI sent: RWF " + String.format("%.2f", uiTotalAmount));
+                    System.err.println("This could indicate:");
+                    System.err.println("  - Price changed after UI loaded");
+                    System.err.println("  - Data tampering");
+                    System.err.println("Using SERVER price for security.");
+                }
+                
+                // Use server-calculated amount (ALWAYS trust server, not client!)
+                double finalTotalAmount = serverCalculatedTotal;
+                
+                // References only: load() returns proxies, no SELECT is issued
+                Customer customer = (Customer) session.load(Customer.class, customerId);
+                Employee employee = (Employee) session.load(Employee.class, employeeId);
+                Product product = (Product) session.load(Product.class, productId);
+                
+                // Create sale with current date
+                Sales sale = new Sales(customer, employee, product, quantity, finalTotalAmount);
+                sale.setSaleDate(new Date());
+                
+                // Save sale
+                Integer saleId = (Integer) session.save(sale);
+                
+                // FIX: Flush to force ID generation
+                session.flush();
+                
+                // Create inventory transaction for audit trail
+                InventoryTransaction invTransaction = new InventoryTransaction();
+                invTransaction.setProduct(product);
+                invTransaction.setEmployee(employee);
+                invTransaction.setTransactionType(model.TransactionType.SALE);
+                invTransaction.setQuantity(-quantity); // Negative = stock reduction
+                invTransaction.setTransactionDate(new Date());
+                
+                // FIX: Null-safe string concatenation
+                String customerName = customerInfo.getFullName() != null ? customerInfo.getFullName() : "Unknown Customer";
+                
+                session.save(invTransaction);
+                
+                // Same transaction, so the employee's totals match the sales table
+                Date saleDate = sale.getSaleDate();
+                session.doWork(connection -> EmployeeStatsDao.record(connection, employeeId, 1,
+                        finalTotalAmount, 1, saleDate));
+                if(requestId != null) {
+                    session.doWork(connection -> SaleRequestDao.record(connection, requestId,
+                            Collections.singletonList(saleId)));
+                }
+                
+                return new SaleCommitted(saleId, productId, productInfo.getProductName(),
+                        customerId, customerName, employeeId, employeeInfo.getFullName(), quantity,
+                        currentPrice, finalTotalAmount, newStock, productInfo.getReorderLevel(), sale.getSaleDate());
+            });
+            if(committed == null) {
                 return null;
             }
-            
-            // Validate entities exist (with explicit rollback)
-            if(customer == null) {
-                System.err.println("Customer not found: " + customerId);
-                transaction.rollback(); // FIX: Explicit rollback
-                return null;
+            reserved[0] = false;
+            if(!useLedger) {
+                ProductDao.evictStock(Collections.singleton(productId));
             }
             
-            if(employee == null) {
-                System.err.println("Employee not found: " + employeeId);
-                transaction.rollback(); // FIX: Explicit rollback
-                return null;
-            }
+            // Audit output, counters and stock alerts run on the event bus
+            SaleEventBus.getInstance().publish(committed);
             
-            if(product == null) {
-                System.err.println("Product not found: " + productId);
-                transaction.rollback(); // FIX: Explicit rollback
-                return null;
-            }
+            return committed.getSaleId();
             
-            // Validate quantity is positive
-            if(quantity <= 0) {
-                System.err.println("Invalid quantity: " + quantity);
-                transaction.rollback(); // FIX: Explicit rollback
-                return null;
+        } catch(LockTimeoutException e){
+            System.err.println("Product is locked by another transaction. Please try again.");
+            return null;
+        } catch(StaleStateException e){
+            if(optimistic) {
+                throw e;
             }
-            
-            // Check stock availability
-            if(product.getStockQuantity() < quantity) {
-                System.err.println("Insufficient stock! Available: " + 
-                    product.getStockQuantity() + ", Requested: " + quantity);
-                transaction.rollback(); // FIX: Explicit rollback
-                return null;
+            System.err.println("Error processing sale:");
+            e.printStackTrace();
+            return null;
+        } catch(Exception e){
+            System.err.println("Error processing sale:");
+            e.printStackTrace();
+            return null;
+        } finally {
+            // Sale did not commit - give the units back
+            if(reserved[0]) {
+                StockLedger.getInstance().release(productId, quantity);
             }
-            
-            // Calculate totalAmount on SERVER side (security!)
-            double currentPrice = product.getPrice();
-            
-            // FIX: Validate price is positive
-            if(currentPrice <= 0) {
-                System.err.println("Invalid product price: RWF " + currentPrice);
-                System.err.println("Please update product price before selling.");
-                transaction.rollback(); // FIX: Explicit rollback
-                return null;
+        }
+    }
+    
+    /**
+     * Decrement stock if there is enough of it. The UPDATE takes the row
+     * lock, so concurrent sales of the same product queue here.
+     * Plain JDBC, so only this product is evicted from the second-level
+     * cache (ProductDao.evictStock, once the caller has committed).
+     * @return stock after the sale, or null if there was not enough
+     *         (or the product is gone)
+     */
+    private Integer takeStock(Session session, int productId, int quantity){
+        int[] updated = new int[1];
+        session.doWork(connection -> {
+            try(PreparedStatement update = connection.prepareStatement(
+                    "UPDATE products SET stock_quantity = stock_quantity - ?, version = version + 1 "
+                    + "WHERE product_id = ? AND stock_quantity >= ?")) {
+                update.setInt(1, quantity);
+                update.setInt(2, productId);
+                update.setInt(3, quantity);
+                updated[0] = update.executeUpdate();
             }
-            
-            double serverCalculatedTotal = currentPrice * quantity;
-            
-            // Validate against UI amount (detect tampering or price changes)
-            double priceDifference = Math.abs(serverCalculatedTotal - uiTotalAmount);
-            if(priceDifference > 0.01) { // Allow 1 cent tolerance for rounding
-                System.err.println("Price mismatch detected!");
-                System.err.println("Server calculated: RWF " + String.format("%.2f", serverCalculatedTotal));
-                System.err.println("UI sent: RWF " + String.format("%.2f", uiTotalAmount));
-                System.err.println("This could indicate:");
-                System.err.println("  - Price changed after UI loaded");
-                System.err.println("  - Data tampering");
-                System.err.println("Using SERVER price for security.");
+        });
+        if(updated[0] == 0) {
+            return null;
+        }
+        return currentStock(session, productId);
+    }
+    
+    /**
+     * Optimistic variant of takeStock: read stock and version without a
+     * lock, then decrement only if the version has not moved.
+     * @throws StaleStateException if another transaction changed the product
+     */
+    private Integer takeStockIfUnchanged(Session session, int productId, int quantity){
+        Query read = session.createQuery(
+            "SELECT p.stockQuantity, p.version FROM Product p WHERE p.productId = :prodId");
+        read.setParameter("prodId", productId);
+        Object[] row = (Object[]) read.uniqueResult();
+        if(row == null || (Integer) row[0] < quantity) {
+            return null;
+        }
+        int[] updated = new int[1];
+        session.doWork(connection -> {
+            try(PreparedStatement update = connection.prepareStatement(
+                    "UPDATE products SET stock_quantity = stock_quantity - ?, version = version + 1 "
+                    + "WHERE product_id = ? AND version = ?")) {
+                update.setInt(1, quantity);
+                update.setInt(2, productId);
+                update.setInt(3, ((Number) row[1]).intValue());
+                updated[0] = update.executeUpdate();
             }
-            
-            // Use server-calculated amount (ALWAYS trust server, not client!)
-            double finalTotalAmount = serverCalculatedTotal;
-            
-            // Create sale with current date
-            Sales sale = new Sales(customer, employee, product, quantity, finalTotalAmount);
-            sale.setSaleDate(new Date());
-            
-            // Save sale
-            Integer saleId = (Integer) session.save(sale);
-            
-            // FIX: Flush to force ID generation
-            session.flush();
-            
-            // Update product stock
-            int newStock = product.getStockQuantity() - quantity;
-            
-            // Final validation before commit
-            if(newStock < 0) {
-                System.err.println("CRITICAL: Stock would go negative! Rolling back.");
-                transaction.rollback();
-                return null;
+        });
+        if(updated[0] == 0) {
+            throw new StaleStateException("Product " + productId + " was changed by another transaction");
+        }
+        return (Integer) row[0] - quantity;
+    }
+    
+    private Integer currentStock(Session session, int productId){
+        Query query = session.createQuery("SELECT p.stockQuantity FROM Product p WHERE p.productId = :prodId");
+        query.setParameter("prodId", productId);
+        return (Integer) query.uniqueResult();
+    }
+    
+    /**
+     * Process a whole basket in one transaction.
+     * 
+     * Every line gets its own Sales row and InventoryTransaction row, but the
+     * basket shares one session and one commit. Products are locked in
+     * ascending productId order so two tills selling overlapping baskets
+     * cannot deadlock each other. Lines for the same product are checked
+     * against stock together.
+     * 
+     * The basket is all-or-nothing: if any line fails validation nothing is
+     * committed and the failing line's message says why.
+     * 
+     * With stock.ledger.enabled the rows are not locked; the merged
+     * quantities are reserved from StockLedger in the same order instead.
+     * 
+     * @return one result per input line, in input order
+     */
+    public List<SaleLineResult> processBasket(int customerId, int employeeId, List<SaleLineItem> items){
+        return processBasket(customerId, employeeId, items, new Date());
+    }
+    
+    /**
+     * processBasket with an explicit sale date, for sales rung up earlier
+     * by a till that was offline (see SalesServiceImpl.ingestOfflineSales).
+     * Stock is checked against the current stock, not the stock at saleDate.
+     */
+    public List<SaleLineResult> processBasket(int customerId, int employeeId, List<SaleLineItem> items, Date saleDate){
+        return processBasket(null, customerId, employeeId, items, saleDate);
+    }
+    
+    /**
+     * processBasket that also stores the client's request ID with the
+     * basket's sale IDs (see SaleRequestDao), in the same transaction. The
+     * basket fails if the request ID is already recorded.
+     * @param requestId a recordable request ID, or null
+     */
+    public List<SaleLineResult> processBasket(String requestId, int customerId, int employeeId,
+                                              List<SaleLineItem> items, Date saleDate){
+        List<SaleLineResult> results = new ArrayList<>();
+        if(items == null || items.isEmpty()) {
+            return results;
+        }
+        if(SalesWriteBehind.isEnabled()) {
+            return processBasketWriteBehind(requestId, customerId, employeeId, items, saleDate);
+        }
+        
+        for(SaleLineItem item : items) {
+            results.add(new SaleLineResult(item.getProductId(), item.getQuantity(), null, 0.0, false,
+                    "Not processed: basket was rolled back"));
+        }
+        
+        // Merge quantities per product; TreeMap gives the lock order
+        Map<Integer, Integer> requested = new TreeMap<>();
+        for(int i = 0; i < items.size(); i++) {
+            SaleLineItem item = items.get(i);
+            if(item.getQuantity() <= 0) {
+                results.get(i).setMessage("Invalid quantity: " + item.getQuantity());
+                return results;
+            }
+            Integer current = requested.get(item.getProductId());
+            requested.put(item.getProductId(), (current != null ? current : 0) + item.getQuantity());
+        }
+        
+        CatalogCache catalog = CatalogCache.getInstance();
+        CatalogCache.PartyInfo customerInfo = catalog.getCustomer(customerId);
+        CatalogCache.PartyInfo employeeInfo = catalog.getEmployee(employeeId);
+        if(customerInfo == null || employeeInfo == null) {
+            String reason = customerInfo == null ? "Customer not found: " + customerId
+                                                 : "Employee not found: " + employeeId;
+            System.err.println(reason);
+            for(SaleLineResult result : results) {
+                result.setMessage(reason);
+            }
+            return results;
+        }
+        
+        boolean useLedger = StockLedger.isEnabled();
+        Map<Integer, Integer> reserved = new LinkedHashMap<>();
+        Map<Integer, CatalogCache.ProductInfo> products = new LinkedHashMap<>();
+        Map<Integer, Integer> stockAfter = new LinkedHashMap<>();
+        
+        try{
+            Double basketTotal = executeInTransaction("SalesDao.processBasket", session -> {
+                for(Map.Entry<Integer, Integer> entry : requested.entrySet()) {
+                    int productId = entry.getKey();
+                    CatalogCache.ProductInfo product = catalog.getProduct(productId);
+                    
+                    String reason = null;
+                    if(product == null) {
+                        reason = "Product not found: " + productId;
+                    } else if(product.getPrice() <= 0) {
+                        reason = "Invalid product price: RWF " + product.getPrice();
+                    } else if(useLedger) {
+                        if(StockLedger.getInstance().reserve(productId, entry.getValue())) {
+                            reserved.put(productId, entry.getValue());
+                        } else {
+                            reason = "Insufficient stock! Available: " + StockLedger.getInstance().getAvailable(productId)
+                                    + ", Requested: " + entry.getValue();
+                        }
+                    } else {
+                        Integer remaining = takeStock(session, productId, entry.getValue());
+                        if(remaining != null) {
+                            stockAfter.put(productId, remaining);
+                        } else {
+                            Integer available = currentStock(session, productId);
+                            if(available == null) {
+                                catalog.invalidateProduct(productId);
+                                reason = "Product not found: " + productId;
+                            } else {
+                                reason = "Insufficient stock! Available: " + available
+                                        + ", Requested: " + entry.getValue();
+                            }
+                        }
+                    }
+                    
+                    if(reason != null) {
+                        System.err.println("Basket rejected - " + reason);
+                        session.getTransaction().rollback();
+                        for(int i = 0; i < items.size(); i++) {
+                            if(items.get(i).getProductId() == productId) {
+                                results.get(i).setMessage(reason);
+                            }
+                        }
+                        return null;
+                    }
+                    products.put(productId, product);
+                }
+                
+                Customer customer = (Customer) session.load(Customer.class, customerId);
+                Employee employee = (Employee) session.load(Employee.class, employeeId);
+                double total = 0.0;
+                
+                for(int i = 0; i < items.size(); i++) {
+                    SaleLineItem item = items.get(i);
+                    CatalogCache.ProductInfo product = products.get(item.getProductId());
+                    Product productRef = (Product) session.load(Product.class, item.getProductId());
+                    
+                    // Server price wins, same as processSale
+                    double lineTotal = product.getPrice() * item.getQuantity();
+                    if(Math.abs(lineTotal - item.getTotalAmount()) > 0.01) {
+                        System.err.println("Price mismatch on product " + product.getProductId()
+                                + ": server RWF " + String.format("%.2f", lineTotal)
+                                + ", UI RWF " + String.format("%.2f", item.getTotalAmount())
+                                + ". Using SERVER price.");
+                    }
+                    
+                    Sales sale = new Sales(customer, employee, productRef, item.getQuantity(), lineTotal);
+                    sale.setSaleDate(saleDate);
+                    Integer saleId = (Integer) session.save(sale);
+                    
+                    InventoryTransaction invTransaction = new InventoryTransaction();
+                    invTransaction.setProduct(productRef);
+                    invTransaction.setEmployee(employee);
+                    invTransaction.setTransactionType(TransactionType.SALE);
+                    invTransaction.setQuantity(-item.getQuantity());
+                    invTransaction.setTransactionDate(saleDate);
+                    session.save(invTransaction);
+                    
+                    SaleLineResult result = results.get(i);
+                    result.setSaleId(saleId);
+                    result.setTotalAmount(lineTotal);
+                    total += lineTotal;
+                }
+                double basketRevenue = total;
+                session.doWork(connection -> EmployeeStatsDao.record(connection, employeeId, items.size(),
+                        basketRevenue, items.size(), saleDate));
+                if(requestId != null) {
+                    List<Integer> saleIds = new ArrayList<>();
+                    for(SaleLineResult result : results) {
+                        saleIds.add(result.getSaleId());
+                    }
+                    session.doWork(connection -> SaleRequestDao.record(connection, requestId, saleIds));
+                }
+                return total;
+            });
+            if(basketTotal == null) {
+                return results;
+            }
+            reserved.clear();
+            if(!useLedger) {
+                ProductDao.evictStock(requested.keySet());
             }
             
-            product.setStockQuantity(newStock);
-            session.update(product);
-            
-            // Create inventory transaction for audit trail
-            InventoryTransaction invTransaction = new InventoryTransaction();
-            invTransaction.setProduct(product);
-            invTransaction.setEmployee(employee);
-            invTransaction.setTransactionType(model.TransactionType.SALE);
-            invTransaction.setQuantity(-quantity); // Negative = stock reduction
-            invTransaction.setTransactionDate(new Date());
-            
-            // FIX: Null-safe string concatenation
-            String customerName = customer.getFullName() != null ? customer.getFullName() : "Unknown Customer";
-            String saleIdStr = saleId != null ? saleId.toString() : "Pending";
-//            invTransaction.setNotes("Sale ID: " + saleIdStr + " to Customer: " + customerName);
+            for(int i = 0; i < items.size(); i++) {
+                SaleLineResult result = results.get(i);
+                result.setSuccess(true);
+                result.setMessage("OK");
+                
+                CatalogCache.ProductInfo product = products.get(result.getProductId());
+                int stockNow = useLedger ? StockLedger.getInstance().getAvailable(product.getProductId())
+                                         : stockAfter.get(product.getProductId());
+                SaleEventBus.getInstance().publish(new SaleCommitted(result.getSaleId(), product.getProductId(),
+                        product.getProductName(), customerId, customerInfo.getFullName(), employeeId, employeeInfo.getFullName(),
+                        result.getQuantity(), product.getPrice(), result.getTotalAmount(), stockNow,
+                        product.getReorderLevel(), saleDate, results.get(0).getSaleId(), items.size()));
+            }
             
-            session.save(invTransaction);
+            return results;
             
-            // Commit transaction
-            transaction.commit();
+        } catch(LockTimeoutException e){
+            System.err.println("Basket products are locked by another transaction. Please try again.");
+            for(SaleLineResult result : results) {
+                result.setSaleId(null);
+                result.setMessage("Products are locked by another till. Please try again.");
+            }
+            return results;
+        } catch(Exception e){
+            System.err.println("Error processing basket:");
+            e.printStackTrace();
+            for(SaleLineResult result : results) {
+                result.setSaleId(null);
+                result.setMessage("Error processing basket: " + e.getMessage());
+            }
+            return results;
+        } finally {
+            // Basket did not commit - give back whatever was reserved
+            for(Map.Entry<Integer, Integer> entry : reserved.entrySet()) {
+                StockLedger.getInstance().release(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    /**
+     * Write-behind variant of processSale: validates like processSale,
+     * reserves stock in the ledger and returns once the sale is in the
+     * write-ahead log. The row itself is inserted by SalesWriteBehind.
+     */
+    private Integer processSaleWriteBehind(String requestId, int customerId, int employeeId, int productId,
+                                           int quantity, double uiTotalAmount){
+        SaleLineItem item = new SaleLineItem(productId, quantity, uiTotalAmount);
+        List<SaleLineResult> results = processBasketWriteBehind(requestId, customerId, employeeId,
+                Collections.singletonList(item), new Date());
+        SaleLineResult result = results.get(0);
+        if(!result.isSuccess()) {
+            System.err.println(result.getMessage());
+            return null;
+        }
+        return result.getSaleId();
+    }
+    
+    /**
+     * Write-behind variant of processBasket. Checks are answered by the
+     * catalog cache without touching the database;
+     * stock is reserved from the ledger in ascending productId order and the
+     * whole basket goes into one write-ahead log append. The request ID, if
+     * any, rides on the first entry and is recorded with its row.
+     */
+    private List<SaleLineResult> processBasketWriteBehind(String requestId, int customerId, int employeeId,
+                                                          List<SaleLineItem> items, Date saleDate){
+        List<SaleLineResult> results = new ArrayList<>();
+        for(SaleLineItem item : items) {
+            results.add(new SaleLineResult(item.getProductId(), item.getQuantity(), null, 0.0, false,
+                    "Not processed: basket was rolled back"));
+        }
+        
+        Map<Integer, Integer> requested = new TreeMap<>();
+        for(int i = 0; i < items.size(); i++) {
+            SaleLineItem item = items.get(i);
+            if(item.getQuantity() <= 0) {
+                results.get(i).setMessage("Invalid quantity: " + item.getQuantity());
+                return results;
+            }
+            Integer current = requested.get(item.getProductId());
+            requested.put(item.getProductId(), (current != null ? current : 0) + item.getQuantity());
+        }
+        
+        Map<Integer, Integer> reserved = new LinkedHashMap<>();
+        StockLedger ledger = StockLedger.getInstance();
+        CatalogCache catalog = CatalogCache.getInstance();
+        
+        try{
+            // Nothing is read from the database here: the catalog cache
+            // answers the checks and the rows are written by SalesWriteBehind
+            CatalogCache.PartyInfo customer = catalog.getCustomer(customerId);
+            CatalogCache.PartyInfo employee = catalog.getEmployee(employeeId);
+            if(customer == null || employee == null) {
+                for(SaleLineResult result : results) {
+                    result.setMessage("Customer or employee not found");
+                }
+                return results;
+            }
             
-            // Success logging (null-safe)
-            String productName = product.getProductName() != null ? product.getProductName() : "Unknown Product";
-            String employeeName = employee.getFullName() != null ? employee.getFullName() : "Unknown Employee";
+            Map<Integer, CatalogCache.ProductInfo> products = new LinkedHashMap<>();
+            for(Map.Entry<Integer, Integer> entry : requested.entrySet()) {
+                int productId = entry.getKey();
+                CatalogCache.ProductInfo product = catalog.getProduct(productId);
+                
+                String reason = null;
+                if(product == null) {
+                    reason = "Product not found: " + productId;
+                } else if(product.getPrice() <= 0) {
+                    reason = "Invalid product price: RWF " + product.getPrice();
+                } else if(ledger.reserve(productId, entry.getValue())) {
+                    reserved.put(productId, entry.getValue());
+                    products.put(productId, product);
+                } else {
+                    reason = "Insufficient stock! Available: " + ledger.getAvailable(productId)
+                            + ", Requested: " + entry.getValue();
+                }
+                
+                if(reason != null) {
+                    for(int i = 0; i < items.size(); i++) {
+                        if(items.get(i).getProductId() == productId) {
+                            results.get(i).setMessage(reason);
+                        }
+                    }
+                    return results;
+                }
+            }
             
-            System.out.println("========================================");
-            System.out.println("SALE PROCESSED SUCCESSFULLY!");
-            System.out.println("Sale ID: " + saleId);
-            System.out.println("Product: " + productName);
-            System.out.println("Quantity: " + quantity);
-            System.out.println("Unit Price: RWF " + String.format("%.2f", currentPrice));
-            System.out.println("Total Amount: RWF " + String.format("%.2f", finalTotalAmount));
-            System.out.println("Stock Before: " + (newStock + quantity));
-            System.out.println("Stock After: " + newStock);
-            System.out.println("Sold By: " + employeeName);
-            System.out.println("Sold To: " + customerName);
-            System.out.println("========================================");
+            List<SalesWriteBehind.Entry> entries = new ArrayList<>();
+            for(SaleLineItem item : items) {
+                double lineTotal = products.get(item.getProductId()).getPrice() * item.getQuantity();
+                entries.add(new SalesWriteBehind.Entry(customerId, employeeId, item.getProductId(),
+                        item.getQuantity(), lineTotal, saleDate, entries.isEmpty() ? requestId : null, items.size()));
+            }
             
-            return saleId;
+            if(SalesWriteBehind.getInstance().submit(entries) == null) {
+                for(SaleLineResult result : results) {
+                    result.setMessage("Sale could not be logged. Please try again.");
+                }
+                return results;
+            }
+            reserved.clear();
             
-        } catch(LockTimeoutException e){
-            System.err.println("Product is locked by another transaction. Please try again.");
-            if(transaction != null) {
-                try { transaction.rollback(); } catch(Exception ex) {}
+            for(int i = 0; i < entries.size(); i++) {
+                SaleLineResult result = results.get(i);
+                result.setSaleId(entries.get(i).getSaleId());
+                result.setTotalAmount(entries.get(i).getTotalAmount());
+                result.setSuccess(true);
+                result.setMessage("OK");
+                
+                CatalogCache.ProductInfo product = products.get(result.getProductId());
+                SaleEventBus.getInstance().publish(new SaleCommitted(result.getSaleId(), product.getProductId(),
+                        product.getProductName(), customerId, customer.getFullName(), employeeId, employee.getFullName(),
+                        result.getQuantity(), product.getPrice(), result.getTotalAmount(),
+                        ledger.getAvailable(product.getProductId()), product.getReorderLevel(), saleDate,
+                        results.get(0).getSaleId(), entries.size()));
             }
-            return null;
+            return results;
+            
         } catch(Exception e){
-            if(transaction != null) {
-                try { transaction.rollback(); } catch(Exception ex) {}
-            }
             System.err.println("Error processing sale:");
             e.printStackTrace();
-            return null;
+            for(SaleLineResult result : results) {
+                result.setMessage("Error processing sale: " + e.getMessage());
+            }
+            return results;
         } finally {
-            if(session != null) {
-                try { session.close(); } catch(Exception e) {}
+            for(Map.Entry<Integer, Integer> entry : reserved.entrySet()) {
+                ledger.release(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    /**
+     * Insert sales logged by SalesWriteBehind with JDBC batching.
+     * Sales rows keep their pre-assigned IDs; the audit rows and the stock
+     * change go into the same transaction.
+     */
+    public boolean insertWriteBehindBatch(final List<SalesWriteBehind.Entry> entries){
+        boolean inserted = executeInTransaction("SalesDao.insertWriteBehindBatch", false, session -> {
+            session.doWork(new Work() {
+                @Override
+                public void execute(Connection connection) throws SQLException {
+                    try(PreparedStatement sales = connection.prepareStatement(
+                            "INSERT INTO sales (sale_id, customer_id, employee_id, product_id, quantity, total_amount, sale_date) "
+                            + "VALUES (?, ?, ?, ?, ?, ?, ?)");
+                        PreparedStatement audit = connection.prepareStatement(
+                            "INSERT INTO inventory_transactions (product_id, transaction_type, quantity, employee_id, transaction_date) "
+                            + "VALUES (?, ?, ?, ?, ?)");
+                        PreparedStatement stock = connection.prepareStatement(
+                            "UPDATE products SET stock_quantity = stock_quantity - ?, version = version + 1 WHERE product_id = ?")) {
+                        
+                        for(SalesWriteBehind.Entry entry : entries) {
+                            Timestamp saleDate = new Timestamp(entry.getSaleDate().getTime());
+                            
+                            sales.setInt(1, entry.getSaleId());
+                            sales.setInt(2, entry.getCustomerId());
+                            sales.setInt(3, entry.getEmployeeId());
+                            sales.setInt(4, entry.getProductId());
+                            sales.setInt(5, entry.getQuantity());
+                            sales.setDouble(6, entry.getTotalAmount());
+                            sales.setTimestamp(7, saleDate);
+                            sales.addBatch();
+                            
+                            audit.setInt(1, entry.getProductId());
+                            audit.setString(2, TransactionType.SALE.name());
+                            audit.setInt(3, -entry.getQuantity());
+                            audit.setInt(4, entry.getEmployeeId());
+                            audit.setTimestamp(5, saleDate);
+                            audit.addBatch();
+                            
+                            stock.setInt(1, entry.getQuantity());
+                            stock.setInt(2, entry.getProductId());
+                            stock.addBatch();
+                        }
+                        sales.executeBatch();
+                        audit.executeBatch();
+                        stock.executeBatch();
+                    }
+                    
+                    // A group's sale IDs are consecutive from its first entry
+                    for(SalesWriteBehind.Entry entry : entries) {
+                        if(entry.getRequestId() != null) {
+                            List<Integer> saleIds = new ArrayList<>();
+                            for(int i = 0; i < entry.getRequestLines(); i++) {
+                                saleIds.add(entry.getSaleId() + i);
+                            }
+                            SaleRequestDao.record(connection, entry.getRequestId(), saleIds);
+                        }
+                    }
+                    
+                    // One row per employee in the batch
+                    Map<Integer, List<SalesWriteBehind.Entry>> byEmployee = new TreeMap<>();
+                    for(SalesWriteBehind.Entry entry : entries) {
+                        byEmployee.computeIfAbsent(entry.getEmployeeId(), k -> new ArrayList<>()).add(entry);
+                    }
+                    for(Map.Entry<Integer, List<SalesWriteBehind.Entry>> employee : byEmployee.entrySet()) {
+                        double revenue = 0;
+                        Date lastSale = null;
+                        for(SalesWriteBehind.Entry entry : employee.getValue()) {
+                            revenue += entry.getTotalAmount();
+                            if(lastSale == null || entry.getSaleDate().after(lastSale)) {
+                                lastSale = entry.getSaleDate();
+                            }
+                        }
+                        EmployeeStatsDao.record(connection, employee.getKey(), employee.getValue().size(),
+                                revenue, employee.getValue().size(), lastSale);
+                    }
+                }
+            });
+            return true;
+        });
+        if(inserted) {
+            // Plain JDBC bypasses Hibernate, so drop the cached copies of the
+            // products whose stock just changed
+            Set<Integer> productIds = new HashSet<>();
+            for(SalesWriteBehind.Entry entry : entries) {
+                productIds.add(entry.getProductId());
             }
+            ProductDao.evictStock(productIds);
         }
+        return inserted;
+    }
+    
+    /**
+     * Which of the given sale IDs are in the table. Reads the primary, so
+     * rows committed a moment ago are seen.
+     * @return the IDs found, or null if the database could not be read
+     */
+    public Set<Integer> findExistingSaleIds(final Collection<Integer> saleIds){
+        return executeInTransaction("SalesDao.findExistingSaleIds", null, session -> {
+            Set<Integer> found = new HashSet<>();
+            List<Integer> ids = new ArrayList<>(saleIds);
+            // Bounded IN lists
+            for(int from = 0; from < ids.size(); from += 1000) {
+                Query query = session.createQuery("SELECT s.salesId FROM Sales s WHERE s.salesId IN (:ids)");
+                query.setParameterList("ids", ids.subList(from, Math.min(ids.size(), from + 1000)));
+                @SuppressWarnings("unchecked")
+                List<Integer> rows = query.list();
+                found.addAll(rows);
+            }
+            return found;
+        });
+    }
+    
+    /**
+     * Highest sale ID in the table, 0 when empty or -1 on failure
+     */
+    public int getMaxSaleId(){
+        return executeReadOnly("SalesDao.getMaxSaleId", -1, session -> {
+            Integer max = (Integer) session.createQuery("SELECT MAX(s.salesId) FROM Sales s").uniqueResult();
+            return max != null ? max : 0;
+        });
     }
     
     public Map<String, Double> getDailySalesForChart(int days){
-        Session session = null;
-        try{
-            session = HibernateUtil.getSessionFactory().openSession();
+        if(SalesRollups.isEnabled()){
+            // One row per day from the daily rollup
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(SalesRollupDao.startOfDay(new Date()));
+            calendar.add(Calendar.DAY_OF_MONTH, -days);
+            Map<String, Double> dailySales = new LinkedHashMap<>();
+            for(DailySalesData day : rollupDao.getDailyRevenue(calendar.getTime())){
+                dailySales.put(day.getDate().toString(), day.getTotal());
+            }
+            return dailySales;
+        }
+        return executeReadOnly("SalesDao.getDailySalesForChart", new LinkedHashMap<>(), session -> {
             String hql = "SELECT DATE(s.saleDate), SUM(s.totalAmount) " +
                         "FROM Sales s " +
                         "WHERE s.saleDate >= CURRENT_DATE - :days " +
@@ -229,69 +871,115 @@ public class SalesDao extends BaseDao<Sales>{
                 dailySales.put(date, total);
             }
             return dailySales;
-        } catch(Exception e){
-            e.printStackTrace();
-            return new LinkedHashMap<>();
-        } finally {
-            if(session != null) {
-                session.close();
-            }
-        }
+        });
     }
         
     public Double getEmployeeRevenue(int employeeId){
-        Session session = null;
-        try{
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("SELECT COALESCE(SUM(totalAmount), 0.0) FROM Sales WHERE employee.employeeId = :employeeId");
-            query.setParameter("employeeId", employeeId);
-            Double revenue = (Double) query.uniqueResult();
-            return revenue != null ? revenue : 0.0;
-        } catch(Exception e){
-            e.printStackTrace();
-            return 0.0;
-        } finally {
-            if(session != null) {
-                session.close();
-            }
-        }
+        // Kept per employee by the sale transactions
+        EmployeeStatsDao.Stats stats = statsDao.find(employeeId);
+        return stats != null ? stats.getRevenue() : 0.0;
     }
     
     public Integer getSalesCountByEmployee(int employeeId){
-        Session session = null;
-        try{
-            session = HibernateUtil.getSessionFactory().openSession();
-            Query query = session.createQuery("SELECT COUNT(*) FROM Sales WHERE employee.employeeId = :employeeId");
-            query.setParameter("employeeId", employeeId);
-            Long count = (Long) query.uniqueResult();
-            return count != null ? count.intValue() : 0;
-        } catch(Exception e){
-            e.printStackTrace();
-            return 0;
-        } finally {
-            if(session != null) {
-                session.close();
-            }
-        }
+        EmployeeStatsDao.Stats stats = statsDao.find(employeeId);
+        return stats != null ? (int) stats.getSalesCount() : 0;
     }
 
     public List<Sales> getSalesByEmployee(int employeeId) {
-        Session session = null;
-        try {
-            session = HibernateUtil.getSessionFactory().openSession();
+        return executeReadOnly("SalesDao.getSalesByEmployee", null, session -> {
             Query query = session.createQuery("FROM Sales WHERE employee.employeeId = :employeeId ORDER BY saleDate DESC");
             query.setParameter("employeeId", employeeId);
             @SuppressWarnings("unchecked")
             List<Sales> sales = query.list();
-            return sales;
-        } catch(Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            if(session != null) {
-                session.close();
+            return EntityDetacher.detachAll(sales);
+        });
+    }
+    
+    /**
+     * One page of sales history, newest first, using keyset pagination.
+     * 
+     * The cursor is the (saleDate, salesId) of the last row already sent, so
+     * each page is a range scan that starts where the previous one stopped
+     * instead of an OFFSET that re-reads every earlier row. Rows are built
+     * with "select new", so no Customer/Employee/Product graphs are loaded.
+     * 
+     * @param filter optional filters, may be null
+     * @param cursor nextCursor of the previous page, or null for the first page
+     * @param pageSize rows per page (capped at MAX_PAGE_SIZE)
+     * @throws IllegalArgumentException if the cursor is not one this method returned
+     */
+    public SalesPage findSalesPage(SalesFilter filter, String cursor, int pageSize) {
+        int limit = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        // Parsed up front: a bad cursor is the caller's error, not a failed read
+        final Date cursorDate;
+        final Integer cursorId;
+        if(cursor != null) {
+            String[] parts = cursor.split(":");
+            try {
+                if(parts.length != 2) {
+                    throw new NumberFormatException("expected saleDate:salesId");
+                }
+                cursorDate = new Date(Long.parseLong(parts[0]));
+                cursorId = Integer.parseInt(parts[1]);
+            } catch(NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
             }
+        } else {
+            cursorDate = null;
+            cursorId = null;
         }
+        return executeReadOnly("SalesDao.findSalesPage", null, session -> {
+            StringBuilder hql = new StringBuilder(
+                "SELECT new model.SaleSummary(s.salesId, s.customer.customerId, s.employee.employeeId, "
+                + "s.product.productId, s.quantity, s.totalAmount, s.saleDate) "
+                + "FROM Sales s WHERE s.saleDate IS NOT NULL");
+            Map<String, Object> params = new LinkedHashMap<>();
+            if(filter != null) {
+                if(filter.getFromDate() != null) {
+                    hql.append(" AND s.saleDate >= :fromDate");
+                    params.put("fromDate", filter.getFromDate());
+                }
+                if(filter.getToDate() != null) {
+                    hql.append(" AND s.saleDate < :toDate");
+                    params.put("toDate", filter.getToDate());
+                }
+                if(filter.getEmployeeId() != null) {
+                    hql.append(" AND s.employee.employeeId = :employeeId");
+                    params.put("employeeId", filter.getEmployeeId());
+                }
+                if(filter.getCustomerId() != null) {
+                    hql.append(" AND s.customer.customerId = :customerId");
+                    params.put("customerId", filter.getCustomerId());
+                }
+                if(filter.getProductId() != null) {
+                    hql.append(" AND s.product.productId = :productId");
+                    params.put("productId", filter.getProductId());
+                }
+            }
+            if(cursorDate != null) {
+                hql.append(" AND (s.saleDate < :cursorDate OR (s.saleDate = :cursorDate AND s.salesId < :cursorId))");
+                params.put("cursorDate", cursorDate);
+                params.put("cursorId", cursorId);
+            }
+            hql.append(" ORDER BY s.saleDate DESC, s.salesId DESC");
+            
+            Query query = session.createQuery(hql.toString());
+            for(Map.Entry<String, Object> param : params.entrySet()) {
+                query.setParameter(param.getKey(), param.getValue());
+            }
+            // One extra row tells us whether there is a next page
+            query.setMaxResults(limit + 1);
+            
+            @SuppressWarnings("unchecked")
+            List<SaleSummary> rows = query.list();
+            String nextCursor = null;
+            if(rows.size() > limit) {
+                rows = new ArrayList<>(rows.subList(0, limit));
+                SaleSummary last = rows.get(limit - 1);
+                nextCursor = last.getSaleDate().getTime() + ":" + last.getSalesId();
+            }
+            return new SalesPage(rows, nextCursor);
+        });
     }
     
     /**
@@ -301,11 +989,10 @@ public class SalesDao extends BaseDao<Sales>{
  * @return List of sales within the date range
  */
 public List<Sales> findByDateRange(Date startDate, Date endDate) {
-    Session session = null;
-    try {
-        session = HibernateUtil.getSessionFactory().openSession();
-        
-        String hql = "FROM Sales s WHERE s.saleDate BETWEEN :startDate AND :endDate ORDER BY s.saleDate DESC";
+    return executeReadOnly("SalesDao.findByDateRange", new java.util.ArrayList<>(), session -> {
+        // Report-row fetch plan: the report prints product and customer names
+        String hql = "SELECT s FROM Sales s LEFT JOIN FETCH s.product LEFT JOIN FETCH s.customer "
+                   + "WHERE s.saleDate BETWEEN :startDate AND :endDate ORDER BY s.saleDate DESC";
         Query query = session.createQuery(hql);
         query.setParameter("startDate", startDate);
         query.setParameter("endDate", endDate);
@@ -316,16 +1003,29 @@ public List<Sales> findByDateRange(Date startDate, Date endDate) {
         System.out.println("[SALES DAO] Found " + sales.size() + " sales between " + 
                           startDate + " and " + endDate);
         
-        return sales;
-        
-    } catch (Exception e) {
-        System.err.println("[SALES DAO] Error finding sales by date range: " + e.getMessage());
-        e.printStackTrace();
-        return new java.util.ArrayList<>();
-    } finally {
-        if (session != null) {
-            session.close();
+        return EntityDetacher.detachAll(sales);
+    });
+}
+
+    /**
+     * Stream the sales in a date range to handler, newest first, without
+     * loading them all (see BaseDao.scan). Product, customer and employee
+     * are fetched with each sale, so their names can be read.
+     * @return number of sales handled, or -1 if the scan failed
+     */
+    public long scanByDateRange(Date startDate, Date endDate, Consumer<Sales> handler) {
+        try {
+            return scan("SalesDao.scanByDateRange", session -> session.createQuery(
+                    "SELECT s FROM Sales s JOIN FETCH s.product LEFT JOIN FETCH s.customer "
+                    + "LEFT JOIN FETCH s.employee "
+                    + "WHERE s.saleDate BETWEEN :startDate AND :endDate ORDER BY s.saleDate DESC, s.salesId DESC")
+                    .setParameter("startDate", startDate)
+                    .setParameter("endDate", endDate), handler);
+        } catch (Exception e) {
+            System.err.println("[SALES DAO] Scan of sales between " + startDate + " and " + endDate
+                    + " failed: " + e.getMessage());
+            e.printStackTrace();
+            return -1;
         }
     }
 }
-}
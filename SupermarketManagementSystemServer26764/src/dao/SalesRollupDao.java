@@ -0,0 +1,327 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import model.DailySalesData;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+
+/**
+ * Sales totals per day, per hour, per product per day and per employee per
+ * day, kept in the rollup_* tables (schema migration V4) so charts and
+ * trends read one row per bucket instead of grouping the sales table.
+ *
+ * add() increments the buckets with newly committed sales; rebuild()
+ * recomputes a range of days from the sales table (the backfill). Both are
+ * driven by util.SalesRollups.
+ *
+ * @author andyb
+ */
+public class SalesRollupDao {
+
+    /**
+     * One rollup table and the column, besides the day, that keys it
+     */
+    public enum Grain {
+        DAILY("rollup_sales_daily", null),
+        HOURLY("rollup_sales_hourly", "sale_hour"),
+        PRODUCT("rollup_product_daily", "product_id"),
+        EMPLOYEE("rollup_employee_daily", "employee_id");
+
+        final String table;
+        final String keyColumn;
+
+        Grain(String table, String keyColumn) {
+            this.table = table;
+            this.keyColumn = keyColumn;
+        }
+    }
+
+    /**
+     * Sales added up into rollup buckets, ready to be written
+     */
+    public static class Totals {
+        private final Map<String, Bucket> buckets = new LinkedHashMap<>();
+        private long sales;
+
+        /**
+         * Add sales made at saleDate to the day, hour, product and employee
+         * buckets (an id of null or 0 is left out of its grain)
+         */
+        public void add(Date saleDate, Integer productId, Integer employeeId, long count, long units, double revenue) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(saleDate);
+            int hour = calendar.get(Calendar.HOUR_OF_DAY);
+            java.sql.Date day = new java.sql.Date(startOfDay(saleDate).getTime());
+            bucket(Grain.DAILY, day, 0).add(count, units, revenue);
+            bucket(Grain.HOURLY, day, hour).add(count, units, revenue);
+            if (productId != null && productId > 0) {
+                bucket(Grain.PRODUCT, day, productId).add(count, units, revenue);
+            }
+            if (employeeId != null && employeeId > 0) {
+                bucket(Grain.EMPLOYEE, day, employeeId).add(count, units, revenue);
+            }
+            sales += count;
+        }
+
+        private Bucket bucket(Grain grain, java.sql.Date day, int key) {
+            return buckets.computeIfAbsent(grain.name() + ':' + day + ':' + key, k -> new Bucket(grain, day, key));
+        }
+
+        public boolean isEmpty() {
+            return buckets.isEmpty();
+        }
+
+        /**
+         * Sales added so far
+         */
+        public long getSales() {
+            return sales;
+        }
+    }
+
+    private static class Bucket {
+        final Grain grain;
+        final java.sql.Date day;
+        final int key;
+        long count;
+        long units;
+        double revenue;
+
+        Bucket(Grain grain, java.sql.Date day, int key) {
+            this.grain = grain;
+            this.day = day;
+            this.key = key;
+        }
+
+        void add(long count, long units, double revenue) {
+            this.count += count;
+            this.units += units;
+            this.revenue += revenue;
+        }
+    }
+
+    /**
+     * Add the totals to the rollup rows, creating missing ones, in one
+     * transaction
+     * @return false if nothing was written
+     */
+    public boolean add(Totals totals) {
+        if (totals.isEmpty()) {
+            return true;
+        }
+        return BaseDao.executeInTransaction("SalesRollupDao.add", false, ss -> {
+            ss.doWork(connection -> increment(connection, new ArrayList<>(totals.buckets.values())));
+            return true;
+        });
+    }
+
+    /**
+     * Recompute the rollups of every day in [from, to) from the sales table.
+     * The rows of those days are replaced; sales at or after "to" are left
+     * to add(), so "to" may fall in the middle of a day.
+     * @return sales counted, or -1 if nothing was changed
+     */
+    public long rebuild(Date from, Date to) {
+        return BaseDao.executeInTransaction("SalesRollupDao.rebuild", -1L, ss -> {
+            // One row per day, hour, product and employee; added up into the
+            // four grains here rather than grouping the range four times
+            Query query = ss.createQuery(
+                    "SELECT s.saleDate, s.product.productId, s.employee.employeeId, s.quantity, s.totalAmount " +
+                    "FROM Sales s WHERE s.saleDate >= :from AND s.saleDate < :to");
+            query.setParameter("from", from);
+            query.setParameter("to", to);
+            query.setReadOnly(true);
+            Totals totals = new Totals();
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = query.list();
+            for (Object[] row : rows) {
+                totals.add((Date) row[0], (Integer) row[1], (Integer) row[2], 1,
+                        ((Number) row[3]).longValue(), ((Number) row[4]).doubleValue());
+            }
+
+            java.sql.Date firstDay = new java.sql.Date(startOfDay(from).getTime());
+            Date lastDay = startOfDay(to);
+            java.sql.Date endDay = new java.sql.Date(lastDay.equals(to) ? lastDay.getTime() : nextDay(lastDay).getTime());
+            ss.doWork(connection -> {
+                for (Grain grain : Grain.values()) {
+                    try (PreparedStatement delete = connection.prepareStatement(
+                            "DELETE FROM " + grain.table + " WHERE sale_day >= ? AND sale_day < ?")) {
+                        delete.setDate(1, firstDay);
+                        delete.setDate(2, endDay);
+                        delete.executeUpdate();
+                    }
+                }
+                increment(connection, new ArrayList<>(totals.buckets.values()));
+            });
+            return totals.getSales();
+        });
+    }
+
+    /**
+     * Add every bucket to its row, creating missing rows: one batched
+     * INSERT ... ON DUPLICATE KEY UPDATE per grain (MySQL, and H2 in MySQL
+     * mode)
+     */
+    private static void increment(Connection connection, List<Bucket> buckets) throws SQLException {
+        for (Grain grain : Grain.values()) {
+            String keyColumn = grain.keyColumn != null ? ", " + grain.keyColumn : "";
+            try (PreparedStatement upsert = connection.prepareStatement(
+                    "INSERT INTO " + grain.table + " (sale_day" + keyColumn + ", sales_count, units, revenue) "
+                    + "VALUES (?" + (grain.keyColumn != null ? ", ?" : "") + ", ?, ?, ?) "
+                    + "ON DUPLICATE KEY UPDATE sales_count = sales_count + VALUES(sales_count), "
+                    + "units = units + VALUES(units), revenue = revenue + VALUES(revenue)")) {
+                boolean any = false;
+                for (Bucket bucket : buckets) {
+                    if (bucket.grain != grain) {
+                        continue;
+                    }
+                    int column = 1;
+                    upsert.setDate(column++, bucket.day);
+                    if (grain.keyColumn != null) {
+                        upsert.setInt(column++, bucket.key);
+                    }
+                    upsert.setLong(column++, bucket.count);
+                    upsert.setLong(column++, bucket.units);
+                    upsert.setDouble(column, bucket.revenue);
+                    upsert.addBatch();
+                    any = true;
+                }
+                if (any) {
+                    upsert.executeBatch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Date of the earliest sale, or null if there are none (or on failure)
+     */
+    public Date getFirstSaleDate() {
+        return BaseDao.executeReadOnly("SalesRollupDao.getFirstSaleDate", null,
+                ss -> (Date) ss.createQuery("SELECT MIN(s.saleDate) FROM Sales s").uniqueResult());
+    }
+
+    /**
+     * True when no day has been rolled up yet
+     */
+    public boolean isEmpty() {
+        return BaseDao.executeReadOnly("SalesRollupDao.isEmpty", true, ss ->
+                ((Number) ss.createSQLQuery("SELECT COUNT(*) FROM rollup_sales_daily").uniqueResult()).longValue() == 0);
+    }
+
+    /**
+     * Revenue per day from fromDay on (every day if null), oldest first
+     */
+    public List<DailySalesData> getDailyRevenue(Date fromDay) {
+        return BaseDao.executeReadOnly("SalesRollupDao.getDailyRevenue", new ArrayList<>(), ss -> {
+            SQLQuery query = ss.createSQLQuery("SELECT sale_day, revenue FROM rollup_sales_daily"
+                    + (fromDay != null ? " WHERE sale_day >= :fromDay" : "") + " ORDER BY sale_day");
+            if (fromDay != null) {
+                query.setDate("fromDay", fromDay);
+            }
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = query.list();
+            List<DailySalesData> days = new ArrayList<>();
+            for (Object[] row : rows) {
+                days.add(new DailySalesData((Date) row[0], ((Number) row[1]).doubleValue()));
+            }
+            return days;
+        });
+    }
+
+    /**
+     * Revenue per hour of one day (hours without sales are left out)
+     */
+    public Map<Integer, Double> getHourlyRevenue(Date day) {
+        return BaseDao.executeReadOnly("SalesRollupDao.getHourlyRevenue", new LinkedHashMap<>(), ss -> {
+            SQLQuery query = ss.createSQLQuery("SELECT sale_hour, revenue FROM rollup_sales_hourly "
+                    + "WHERE sale_day = :day ORDER BY sale_hour");
+            query.setDate("day", day);
+            return toMap(query);
+        });
+    }
+
+    /**
+     * Revenue per product over the days [fromDay, toDay], highest first,
+     * at most limit products
+     */
+    public Map<Integer, Double> getProductRevenue(Date fromDay, Date toDay, int limit) {
+        return BaseDao.executeReadOnly("SalesRollupDao.getProductRevenue", new LinkedHashMap<>(), ss -> {
+            SQLQuery query = ss.createSQLQuery("SELECT product_id, SUM(revenue) FROM rollup_product_daily "
+                    + "WHERE sale_day >= :fromDay AND sale_day <= :toDay "
+                    + "GROUP BY product_id ORDER BY SUM(revenue) DESC");
+            query.setDate("fromDay", fromDay);
+            query.setDate("toDay", toDay);
+            query.setMaxResults(limit);
+            return toMap(query);
+        });
+    }
+
+    /**
+     * Units sold per product on one day, most first
+     * @return {productId, category, units} rows
+     */
+    public List<Object[]> getProductUnits(Date day) {
+        return BaseDao.executeReadOnly("SalesRollupDao.getProductUnits", new ArrayList<>(), ss -> {
+            SQLQuery query = ss.createSQLQuery("SELECT r.product_id, p.category, r.units "
+                    + "FROM rollup_product_daily r JOIN products p ON p.product_id = r.product_id "
+                    + "WHERE r.sale_day = :day ORDER BY r.units DESC");
+            query.setDate("day", day);
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = query.list();
+            return rows;
+        });
+    }
+
+    /**
+     * Revenue per employee over the days [fromDay, toDay], highest first
+     */
+    public Map<Integer, Double> getEmployeeRevenue(Date fromDay, Date toDay) {
+        return BaseDao.executeReadOnly("SalesRollupDao.getEmployeeRevenue", new LinkedHashMap<>(), ss -> {
+            SQLQuery query = ss.createSQLQuery("SELECT employee_id, SUM(revenue) FROM rollup_employee_daily "
+                    + "WHERE sale_day >= :fromDay AND sale_day <= :toDay "
+                    + "GROUP BY employee_id ORDER BY SUM(revenue) DESC");
+            query.setDate("fromDay", fromDay);
+            query.setDate("toDay", toDay);
+            return toMap(query);
+        });
+    }
+
+    private static Map<Integer, Double> toMap(SQLQuery query) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        Map<Integer, Double> values = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            values.put(((Number) row[0]).intValue(), ((Number) row[1]).doubleValue());
+        }
+        return values;
+    }
+
+    /**
+     * Midnight (server time) of the day of date
+     */
+    public static Date startOfDay(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTime();
+    }
+
+    public static Date nextDay(Date day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(day);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTime();
+    }
+}
@@ -1,6 +1,9 @@
 package dao;
 
+import java.util.List;
 import model.Supplier;
+import model.SupplierSummary;
+import org.hibernate.Query;
 
 /**
  *
@@ -8,7 +11,40 @@ import model.Supplier;
  */
 public class SupplierDao extends BaseDao<Supplier>{
     
+    // Flat projection for lists and lookups: no collections are loaded
+    private static final String SUMMARY_SELECT =
+        "SELECT new model.SupplierSummary(s.supplierId, s.supplierName, s.contactPerson, s.phone, "
+        + "s.email, s.address, s.registrationDate, COUNT(p)) "
+        + "FROM Supplier s LEFT JOIN s.products p";
+    private static final String SUMMARY_GROUP =
+        "s.supplierId, s.supplierName, s.contactPerson, s.phone, "
+        + "s.email, s.address, s.registrationDate";
+    
     public SupplierDao(){
         super(Supplier.class);
     }
+    
+    /**
+     * All suppliers as flat SupplierSummary rows with their product count
+     */
+    public List<SupplierSummary> findAllSummaries(){
+        return executeReadOnly("SupplierDao.findAllSummaries", null, session -> {
+            Query query = session.createQuery(SUMMARY_SELECT
+                + " GROUP BY " + SUMMARY_GROUP + " ORDER BY s.supplierId");
+            @SuppressWarnings("unchecked")
+            List<SupplierSummary> rows = query.list();
+            return rows;
+        });
+    }
+    
+    /**
+     * One supplier as a SupplierSummary, or null if not found
+     */
+    public SupplierSummary findSummaryById(int id){
+        return executeReadOnly("SupplierDao.findSummaryById", null, session -> {
+            Query query = session.createQuery(SUMMARY_SELECT + " WHERE s.supplierId = :id GROUP BY " + SUMMARY_GROUP);
+            query.setParameter("id", id);
+            return (SupplierSummary) query.uniqueResult();
+        });
+    }
 }
@@ -5,6 +5,9 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 import javax.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
 
 /**
  *
@@ -12,12 +15,15 @@ import javax.persistence.*;
  */
 @Entity
 @Table(name = "customers")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Customer implements Serializable{
     
     private static final long serialVersionUID = 1L;
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Block-allocated ids so bulk imports can batch their inserts
+    @GeneratedValue(generator = "customer_id")
+    @GenericGenerator(name = "customer_id", strategy = "util.BlockTableGenerator")
     @Column(name = "customer_id")
     private int customerId;
     
@@ -37,7 +43,7 @@ public class Customer implements Serializable{
     @Temporal(TemporalType.TIMESTAMP)
     private Date registrationDate;
     
-    @OneToMany(mappedBy = "customer", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "customer", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private Set<Sales> sales = new HashSet<>();
 
     public Customer() {
@@ -0,0 +1,106 @@
+package model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What changed on the dashboard since the previous update sent to the same
+ * subscriber: the current totals, the sales and revenue added since then,
+ * products that reached their reorder level and today's top seller.
+ *
+ * @author andyb
+ */
+public class DashboardUpdate implements Serializable{
+    
+    private static final long serialVersionUID = 1L;
+    
+    private long sequence;
+    private DashboardSnapshot totals;
+    private long newSales;
+    private double newRevenue;
+    private List<String> lowStockAlerts = new ArrayList<>();
+    private String topSeller;
+    private double topSellerRevenue;
+    private boolean topSellerChanged;
+
+    public DashboardUpdate() {
+    }
+
+    /**
+     * Increases by one with every update sent to a subscriber
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public DashboardSnapshot getTotals() {
+        return totals;
+    }
+
+    public void setTotals(DashboardSnapshot totals) {
+        this.totals = totals;
+    }
+
+    public long getNewSales() {
+        return newSales;
+    }
+
+    public void setNewSales(long newSales) {
+        this.newSales = newSales;
+    }
+
+    public double getNewRevenue() {
+        return newRevenue;
+    }
+
+    public void setNewRevenue(double newRevenue) {
+        this.newRevenue = newRevenue;
+    }
+
+    public List<String> getLowStockAlerts() {
+        return lowStockAlerts;
+    }
+
+    public void setLowStockAlerts(List<String> lowStockAlerts) {
+        this.lowStockAlerts = lowStockAlerts;
+    }
+
+    /**
+     * Product with the highest revenue today, or null before the first sale
+     */
+    public String getTopSeller() {
+        return topSeller;
+    }
+
+    public void setTopSeller(String topSeller) {
+        this.topSeller = topSeller;
+    }
+
+    public double getTopSellerRevenue() {
+        return topSellerRevenue;
+    }
+
+    public void setTopSellerRevenue(double topSellerRevenue) {
+        this.topSellerRevenue = topSellerRevenue;
+    }
+
+    public boolean isTopSellerChanged() {
+        return topSellerChanged;
+    }
+
+    public void setTopSellerChanged(boolean topSellerChanged) {
+        this.topSellerChanged = topSellerChanged;
+    }
+
+    @Override
+    public String toString() {
+        return "DashboardUpdate{" + "sequence=" + sequence + ", newSales=" + newSales + 
+               ", newRevenue=" + newRevenue + ", lowStockAlerts=" + lowStockAlerts + 
+               ", topSeller=" + topSeller + ", topSellerChanged=" + topSellerChanged + '}';
+    }
+}
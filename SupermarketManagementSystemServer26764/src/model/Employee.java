@@ -5,9 +5,12 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 import javax.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
 @Table(name = "employees")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Employee implements Serializable{
     
     private static final long serialVersionUID = 1L;
@@ -42,13 +45,15 @@ public class Employee implements Serializable{
     @Column(name = "first_login")
     private Boolean firstLogin = true;
     
-    @OneToOne(mappedBy = "employee", cascade = CascadeType.ALL, fetch = FetchType.EAGER, optional = true)
+    // Inverse one-to-one: Hibernate cannot proxy it, so the EmployeeDao
+    // fetch plans join it rather than leaving a select per employee
+    @OneToOne(mappedBy = "employee", cascade = CascadeType.ALL, fetch = FetchType.LAZY, optional = true)
     private EmployeeProfile employeeProfile;
     
-    @OneToMany(mappedBy = "employee", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "employee", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private Set<Sales> sales = new HashSet<>();
     
-    @OneToMany(mappedBy = "employee", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "employee", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private Set<InventoryTransaction> inventoryTransactions = new HashSet<>();
 
     public Employee() {
@@ -18,7 +18,7 @@ public class EmployeeProfile implements Serializable {
     @Column(name = "profile_id")
     private int profileId;
     
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "employee_id", unique = true, nullable = false)
     private Employee employee;
     
@@ -0,0 +1,78 @@
+package model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of one bulk import call. Rows that fail validation are skipped
+ * and counted in {@code rejected} (the first few with their reason in
+ * {@code errors}); the valid rows are inserted in chunks of
+ * import.rowsPerTransaction, and a chunk that fails to insert is counted
+ * in {@code rejected} as a whole.
+ *
+ * @author andyb
+ */
+public class ImportResult implements Serializable{
+    
+    private static final long serialVersionUID = 1L;
+    
+    private int rowsRead;
+    private int imported;
+    private int rejected;
+    private List<String> errors = new ArrayList<>();
+    private long elapsedMs;
+
+    public ImportResult() {
+    }
+
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    public void setRowsRead(int rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public void setImported(int imported) {
+        this.imported = imported;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(int rejected) {
+        this.rejected = rejected;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" 
+                + "rowsRead=" + rowsRead + 
+                ", imported=" + imported + 
+                ", rejected=" + rejected + 
+                ", elapsedMs=" + elapsedMs + 
+                '}';
+    }
+}
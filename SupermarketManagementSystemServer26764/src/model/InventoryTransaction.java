@@ -19,7 +19,7 @@ public class InventoryTransaction implements Serializable{
     @Column(name = "transaction_id")
     private int transactionId;
     
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id", nullable = false)
     private Product product;
     
@@ -33,7 +33,7 @@ public class InventoryTransaction implements Serializable{
     @Column(name = "reason", length = 255)
     private String reason;
     
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "employee_id")
     private Employee employee;
     
@@ -0,0 +1,90 @@
+package model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A sale rung up by a till while it could not reach the server. The till
+ * keeps it in its local journal and sends it with the rest of the journal
+ * once the connection is back.
+ *
+ * requestId is generated by the till when the sale is made, so sending the
+ * same journal twice cannot record a sale twice. saleDate is the time of
+ * the sale at the till, not the time it reached the server.
+ *
+ * @author andyb
+ */
+public class OfflineSale implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private String requestId;
+    private int customerId;
+    private int employeeId;
+    private List<SaleLineItem> items = new ArrayList<>();
+    private Date saleDate;
+
+    public OfflineSale() {
+    }
+
+    public OfflineSale(String requestId, int customerId, int employeeId, List<SaleLineItem> items, Date saleDate) {
+        this.requestId = requestId;
+        this.customerId = customerId;
+        this.employeeId = employeeId;
+        this.items = items;
+        this.saleDate = saleDate;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(int customerId) {
+        this.customerId = customerId;
+    }
+
+    public int getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(int employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public List<SaleLineItem> getItems() {
+        return items;
+    }
+
+    public void setItems(List<SaleLineItem> items) {
+        this.items = items;
+    }
+
+    public Date getSaleDate() {
+        return saleDate;
+    }
+
+    public void setSaleDate(Date saleDate) {
+        this.saleDate = saleDate;
+    }
+
+    @Override
+    public String toString() {
+        return "OfflineSale{"
+                + "requestId=" + requestId +
+                ", customerId=" + customerId +
+                ", employeeId=" + employeeId +
+                ", items=" + items +
+                ", saleDate=" + saleDate +
+                '}';
+    }
+}
@@ -5,6 +5,9 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 import javax.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
 
 /**
  *
@@ -12,12 +15,15 @@ import javax.persistence.*;
  */
 @Entity
 @Table(name = "products")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Product implements Serializable{
     
     private static final long serialVersionUID = 1L;
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Block-allocated ids so bulk imports can batch their inserts
+    @GeneratedValue(generator = "product_id")
+    @GenericGenerator(name = "product_id", strategy = "util.BlockTableGenerator")
     @Column(name = "product_id")
     private int productId;
     
@@ -40,7 +46,12 @@ public class Product implements Serializable{
     @Temporal(TemporalType.TIMESTAMP)
     private Date createdDate;
     
-    @ManyToMany(fetch = FetchType.EAGER)
+    // Optimistic locking: bumped on every update of the row
+    @Version
+    @Column(name = "version")
+    private int version;
+    
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
         name = "product_supplier",
         joinColumns = @JoinColumn(name = "product_id"),
@@ -48,10 +59,10 @@ public class Product implements Serializable{
     )
     private Set<Supplier> suppliers = new HashSet<>();
     
-    @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private Set<Sales> sales = new HashSet<>();
     
-    @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private Set<InventoryTransaction> inventoryTransactions = new HashSet<>();
 
     public Product() {
@@ -121,6 +132,14 @@ public class Product implements Serializable{
         this.createdDate = createdDate;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     public Set<Supplier> getSuppliers() {
         return suppliers;
     }
@@ -0,0 +1,88 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * Two products bought in the same basket checkout, and in how many baskets.
+ * The server counts in fixed memory, so baskets may be too high by up to
+ * baskets - minBaskets.
+ *
+ * @author andyb
+ */
+public class ProductPair implements Serializable{
+    
+    private static final long serialVersionUID = 1L;
+    
+    private int productId;
+    private String productName;
+    private int otherProductId;
+    private String otherProductName;
+    private long baskets;
+    private long minBaskets;
+
+    public ProductPair() {
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public int getOtherProductId() {
+        return otherProductId;
+    }
+
+    public void setOtherProductId(int otherProductId) {
+        this.otherProductId = otherProductId;
+    }
+
+    public String getOtherProductName() {
+        return otherProductName;
+    }
+
+    public void setOtherProductName(String otherProductName) {
+        this.otherProductName = otherProductName;
+    }
+
+    /**
+     * Estimated baskets with both products, never below the true figure
+     */
+    public long getBaskets() {
+        return baskets;
+    }
+
+    public void setBaskets(long baskets) {
+        this.baskets = baskets;
+    }
+
+    /**
+     * Baskets certainly with both products
+     */
+    public long getMinBaskets() {
+        return minBaskets;
+    }
+
+    public void setMinBaskets(long minBaskets) {
+        this.minBaskets = minBaskets;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductPair{" 
+                + productName + " + " + otherProductName
+                + ", baskets=" + baskets
+                + ", minBaskets=" + minBaskets
+                + '}';
+    }
+}
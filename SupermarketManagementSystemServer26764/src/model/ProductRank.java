@@ -0,0 +1,80 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * A best-selling product and its estimated units sold. The server counts
+ * in fixed memory, so units may be too high by up to units - minUnits.
+ *
+ * @author andyb
+ */
+public class ProductRank implements Serializable{
+    
+    private static final long serialVersionUID = 1L;
+    
+    private int productId;
+    private String productName;
+    private String category;
+    private long units;
+    private long minUnits;
+
+    public ProductRank() {
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    /**
+     * Estimated units sold, never below the true figure
+     */
+    public long getUnits() {
+        return units;
+    }
+
+    public void setUnits(long units) {
+        this.units = units;
+    }
+
+    /**
+     * Units certainly sold
+     */
+    public long getMinUnits() {
+        return minUnits;
+    }
+
+    public void setMinUnits(long minUnits) {
+        this.minUnits = minUnits;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductRank{" 
+                + "productId=" + productId
+                + ", productName=" + productName
+                + ", category=" + category
+                + ", units=" + units
+                + ", minUnits=" + minUnits
+                + '}';
+    }
+}
@@ -0,0 +1,60 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * One line of a basket checkout: a product, how many units and the
+ * amount the till displayed for that line.
+ *
+ * @author andyb
+ */
+public class SaleLineItem implements Serializable{
+    
+    private static final long serialVersionUID = 1L;
+    
+    private int productId;
+    private int quantity;
+    private double totalAmount;
+
+    public SaleLineItem() {
+    }
+
+    public SaleLineItem(int productId, int quantity, double totalAmount) {
+        this.productId = productId;
+        this.quantity = quantity;
+        this.totalAmount = totalAmount;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(double totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    @Override
+    public String toString() {
+        return "SaleLineItem{" 
+                + "productId=" + productId + 
+                ", quantity=" + quantity + 
+                ", totalAmount=" + totalAmount + 
+                '}';
+    }
+}
@@ -0,0 +1,93 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of one basket line. A basket is committed as a whole, so either
+ * every line carries a sale ID or none of them does and {@code message}
+ * explains which line stopped the checkout.
+ *
+ * @author andyb
+ */
+public class SaleLineResult implements Serializable{
+    
+    private static final long serialVersionUID = 1L;
+    
+    private int productId;
+    private int quantity;
+    private Integer saleId;
+    private double totalAmount;
+    private boolean success;
+    private String message;
+
+    public SaleLineResult() {
+    }
+
+    public SaleLineResult(int productId, int quantity, Integer saleId, double totalAmount, boolean success, String message) {
+        this.productId = productId;
+        this.quantity = quantity;
+        this.saleId = saleId;
+        this.totalAmount = totalAmount;
+        this.success = success;
+        this.message = message;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public Integer getSaleId() {
+        return saleId;
+    }
+
+    public void setSaleId(Integer saleId) {
+        this.saleId = saleId;
+    }
+
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(double totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "SaleLineResult{" 
+                + "productId=" + productId + 
+                ", quantity=" + quantity + 
+                ", saleId=" + saleId + 
+                ", success=" + success + 
+                ", message=" + message + 
+                '}';
+    }
+}
@@ -0,0 +1,77 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * One row of the sales history table: IDs and figures only, no entity
+ * references, so a page of these is a few kilobytes on the wire.
+ * Built directly by HQL "select new model.SaleSummary(...)".
+ *
+ * @author andyb
+ */
+public class SaleSummary implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private int salesId;
+    private int customerId;
+    private int employeeId;
+    private int productId;
+    private int quantity;
+    private double totalAmount;
+    private Date saleDate;
+
+    public SaleSummary() {
+    }
+
+    public SaleSummary(int salesId, int customerId, int employeeId, int productId,
+                       int quantity, double totalAmount, Date saleDate) {
+        this.salesId = salesId;
+        this.customerId = customerId;
+        this.employeeId = employeeId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.totalAmount = totalAmount;
+        this.saleDate = saleDate;
+    }
+
+    public int getSalesId() {
+        return salesId;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public int getEmployeeId() {
+        return employeeId;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public Date getSaleDate() {
+        return saleDate;
+    }
+
+    @Override
+    public String toString() {
+        return "SaleSummary{"
+                + "salesId=" + salesId +
+                ", productId=" + productId +
+                ", quantity=" + quantity +
+                ", totalAmount=" + totalAmount +
+                ", saleDate=" + saleDate +
+                '}';
+    }
+}
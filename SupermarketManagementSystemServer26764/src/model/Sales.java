@@ -20,17 +20,17 @@ public class Sales implements Serializable{
     private int salesId;
     
     // MANY-TO-ONE: Many Sales belong to one Customer
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id")
     private Customer customer;
     
     // MANY-TO-ONE: Many Sales belong to one Employee
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "employee_id")
     private Employee employee;
     
     // MANY-TO-ONE: Many Sales belong to one Product
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id")
     private Product product;
     
@@ -0,0 +1,75 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Optional filters for the paged sales history. A null field means
+ * "any"; the date range is inclusive of fromDate and exclusive of toDate.
+ *
+ * @author andyb
+ */
+public class SalesFilter implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private Date fromDate;
+    private Date toDate;
+    private Integer employeeId;
+    private Integer customerId;
+    private Integer productId;
+
+    public SalesFilter() {
+    }
+
+    public Date getFromDate() {
+        return fromDate;
+    }
+
+    public void setFromDate(Date fromDate) {
+        this.fromDate = fromDate;
+    }
+
+    public Date getToDate() {
+        return toDate;
+    }
+
+    public void setToDate(Date toDate) {
+        this.toDate = toDate;
+    }
+
+    public Integer getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(Integer employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public Integer getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(Integer customerId) {
+        this.customerId = customerId;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Integer productId) {
+        this.productId = productId;
+    }
+
+    @Override
+    public String toString() {
+        return "SalesFilter{"
+                + "fromDate=" + fromDate +
+                ", toDate=" + toDate +
+                ", employeeId=" + employeeId +
+                ", customerId=" + customerId +
+                ", productId=" + productId +
+                '}';
+    }
+}
@@ -5,6 +5,9 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 import javax.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
 
 /**
  *
@@ -12,12 +15,15 @@ import javax.persistence.*;
  */
 @Entity
 @Table(name = "suppliers")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Supplier implements Serializable{
     
     private static final long serialVersionUID = 1L;
     
      @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Block-allocated ids so bulk imports can batch their inserts
+    @GeneratedValue(generator = "supplier_id")
+    @GenericGenerator(name = "supplier_id", strategy = "util.BlockTableGenerator")
     @Column(name = "supplier_id")
     private int supplierId;
     
@@ -40,7 +46,7 @@ public class Supplier implements Serializable{
     @Temporal(TemporalType.TIMESTAMP)
     private Date registrationDate;
     
-    @ManyToMany(mappedBy = "suppliers", fetch = FetchType.EAGER)
+    @ManyToMany(mappedBy = "suppliers", fetch = FetchType.LAZY)
     private Set<Product> products = new HashSet<>();
 
     public Supplier() {
@@ -0,0 +1,76 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Flat view of a supplier with the number of products it supplies
+ * instead of the products themselves. Built directly by HQL "select new".
+ *
+ * @author andyb
+ */
+public class SupplierSummary implements Serializable{
+
+    private static final long serialVersionUID = 1L;
+
+    private int supplierId;
+    private String supplierName;
+    private String contactPerson;
+    private String phone;
+    private String email;
+    private String address;
+    private Date registrationDate;
+    private long productCount;
+
+    public SupplierSummary() {
+    }
+
+    public SupplierSummary(int supplierId, String supplierName, String contactPerson, String phone,
+                           String email, String address, Date registrationDate, long productCount) {
+        this.supplierId = supplierId;
+        this.supplierName = supplierName;
+        this.contactPerson = contactPerson;
+        this.phone = phone;
+        this.email = email;
+        this.address = address;
+        this.registrationDate = registrationDate;
+        this.productCount = productCount;
+    }
+
+    public int getSupplierId() {
+        return supplierId;
+    }
+
+    public String getSupplierName() {
+        return supplierName;
+    }
+
+    public String getContactPerson() {
+        return contactPerson;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public Date getRegistrationDate() {
+        return registrationDate;
+    }
+
+    public long getProductCount() {
+        return productCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SupplierSummary{" + "supplierId=" + supplierId + ", supplierName=" + supplierName + '}';
+    }
+}
@@ -4,6 +4,9 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
 import model.DailySalesData;
+import model.DashboardSnapshot;
+import model.ProductPair;
+import model.ProductRank;
 
 /**
  *
@@ -19,4 +22,36 @@ public interface DashboardService extends Remote{
     Double getTotalRevenue() throws RemoteException;
     
     List<DailySalesData> getDailySalesTrend() throws RemoteException;
+    
+    /**
+     * Products, customers, sales, units sold and revenue in one call,
+     * from counters the server keeps up to date
+     */
+    DashboardSnapshot getDashboardSnapshot() throws RemoteException;
+    
+    /**
+     * Send dashboard updates to the listener as sales commit, at most
+     * maxUpdatesPerSecond times a second (capped by the server)
+     * @return false if live updates are turned off on the server
+     */
+    boolean subscribe(DashboardListener listener, int maxUpdatesPerSecond) throws RemoteException;
+    
+    void unsubscribe(DashboardListener listener) throws RemoteException;
+    
+    /**
+     * Best-selling products by units, estimated in memory from the sales
+     * since the server started: period "HOUR" (this hour) or "DAY" (today)
+     */
+    List<ProductRank> getTopProducts(String period, int limit) throws RemoteException;
+    
+    /**
+     * Today's best-selling products in one category
+     */
+    List<ProductRank> getTopProductsInCategory(String category, int limit) throws RemoteException;
+    
+    /**
+     * Products most often checked out in the same basket as productId, or
+     * the most common pairs overall if productId is 0
+     */
+    List<ProductPair> getProductsBoughtTogether(int productId, int limit) throws RemoteException;
 }
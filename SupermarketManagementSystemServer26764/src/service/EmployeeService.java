@@ -5,6 +5,7 @@ import java.rmi.RemoteException;
 import java.util.List;
 import model.Employee;
 import model.EmployeeProfile;
+import model.EmployeeSummary;
 
 /**
  * Employee Service RMI Interface - COMPLETE VERSION
@@ -44,6 +45,20 @@ public interface EmployeeService extends Remote {
      */
     List<Employee> findAllEmployees() throws RemoteException;
     
+    /**
+     * Get all employees as flat summaries (no password hash, profile,
+     * sales or transactions)
+     * @return List of employee summaries
+     */
+    List<EmployeeSummary> findAllEmployeeSummaries() throws RemoteException;
+    
+    /**
+     * Get one employee as a flat summary
+     * @param employeeId Employee ID
+     * @return Employee summary if found, null otherwise
+     */
+    EmployeeSummary findEmployeeSummaryById(int employeeId) throws RemoteException;
+    
     /**
      * Add new employee
      * @param employee Employee object to add
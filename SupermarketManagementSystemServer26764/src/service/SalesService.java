@@ -4,7 +4,12 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
 import java.util.Map;
+import model.OfflineSale;
+import model.SaleLineItem;
+import model.SaleLineResult;
 import model.Sales;
+import model.SalesFilter;
+import model.SalesPage;
 
 /**
  *
@@ -13,6 +18,25 @@ import model.Sales;
 public interface SalesService extends Remote{
     Integer processSale(int customerId, int employeeId, int productId, int quantity, double totalAmount) throws RemoteException;
     
+    List<SaleLineResult> processBasket(int customerId, int employeeId, List<SaleLineItem> items) throws RemoteException;
+    
+    /**
+     * Idempotent variants: requestId is generated by the client once per
+     * sale and reused on every retry, so a retried call cannot sell twice.
+     */
+    Integer processSale(String requestId, int customerId, int employeeId, int productId, int quantity, double totalAmount) throws RemoteException;
+    
+    List<SaleLineResult> processBasket(String requestId, int customerId, int employeeId, List<SaleLineItem> items) throws RemoteException;
+    
+    /**
+     * Bulk upload of a till's offline journal. Each sale is processed as a
+     * basket with its own requestId, so a journal sent twice is recorded
+     * once, however long after the online attempt it arrives. Returns
+     * requestId -> line results, in journal order; a sale the server cannot
+     * check yet is left out and should be sent again later.
+     */
+    Map<String, List<SaleLineResult>> ingestOfflineSales(List<OfflineSale> sales) throws RemoteException;
+    
     Map<String, Double> getDailySalesForChart(int days) throws RemoteException;
      
     Double getEmployeeRevenue(int employeeId) throws RemoteException;
@@ -22,4 +46,13 @@ public interface SalesService extends Remote{
     List<Sales> findAllSales() throws RemoteException;
     
     List<Sales> getSalesByEmployee(int employeeId) throws RemoteException;
+    
+    /**
+     * Sales history one page at a time, newest first.
+     * @param filter date range / employee / customer / product, or null
+     * @param cursor nextCursor from the previous page, or null to start
+     * @param pageSize rows per page (the server caps it)
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    SalesPage findSalesPage(SalesFilter filter, String cursor, int pageSize) throws RemoteException;
 }
\ No newline at end of file
@@ -5,7 +5,12 @@ import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.List;
 import model.Customer;
+import model.CustomerSummary;
+import model.ImportResult;
 import service.CustomerService;
+import util.BulkImport;
+import util.CatalogCache;
+import util.DashboardMetrics;
 
 /**
  * Customer Service Implementation
@@ -20,18 +25,31 @@ public class CustomerServiceImpl extends UnicastRemoteObject implements Customer
 
     @Override
     public Integer addCustomer(Customer customer) throws RemoteException {
-        return customerDao.save(customer);
+        Integer id = customerDao.save(customer);
+        if(id != null){
+            DashboardMetrics.getInstance().customersChanged(1);
+        }
+        return id;
     }
 
     @Override
     public boolean updateCustomer(Customer customer) throws RemoteException {
-        return customerDao.update(customer);
+        boolean updated = customerDao.update(customer);
+        if(updated){
+            CatalogCache.getInstance().invalidateCustomer(customer.getCustomerId());
+        }
+        return updated;
     }
 
     @Override
     public boolean deleteCustomer(int customerId) throws RemoteException {
         // Use the proper delete method with validation
-        return customerDao.deleteCustomer(customerId);
+        boolean deleted = customerDao.deleteCustomer(customerId);
+        if(deleted){
+            CatalogCache.getInstance().invalidateCustomer(customerId);
+            DashboardMetrics.getInstance().customersChanged(-1);
+        }
+        return deleted;
     }
 
     @Override
@@ -48,5 +66,31 @@ public class CustomerServiceImpl extends UnicastRemoteObject implements Customer
     public List<Integer> getAllCustomerIds() throws RemoteException {
         return customerDao.getAllCustomerIds();
     }
+
+    @Override
+    public List<CustomerSummary> findAllCustomerSummaries() throws RemoteException {
+        return customerDao.findAllSummaries();
+    }
+
+    @Override
+    public CustomerSummary findCustomerSummaryById(int customerId) throws RemoteException {
+        return customerDao.findSummaryById(customerId);
+    }
+
+    @Override
+    public ImportResult importCustomers(List<Customer> customers) throws RemoteException {
+        return imported(BulkImport.importCustomers(customers));
+    }
+
+    @Override
+    public ImportResult importCustomersCsv(byte[] csv) throws RemoteException {
+        return imported(BulkImport.importCustomersCsv(csv));
+    }
     
+    private ImportResult imported(ImportResult result) {
+        if(result != null && result.getImported() > 0){
+            DashboardMetrics.getInstance().customersChanged(result.getImported());
+        }
+        return result;
+    }
 }
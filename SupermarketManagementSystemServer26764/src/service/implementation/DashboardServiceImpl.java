@@ -3,17 +3,30 @@ package service.implementation;
 import dao.DashboardDao;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import model.DailySalesData;
+import model.DashboardSnapshot;
+import model.ProductPair;
+import model.ProductRank;
+import service.DashboardListener;
 import service.DashboardService;
+import util.DashboardPublisher;
+import util.DashboardMetrics;
+import util.SalesAnalytics;
 
 /**
+ * Dashboard totals come from DashboardMetrics once it has been seeded;
+ * before that they are counted in the database. Best sellers and products
+ * bought together come from SalesAnalytics (empty when it is turned off).
  *
  * @author andyb
  */
 public class DashboardServiceImpl extends UnicastRemoteObject implements DashboardService{
     
     private DashboardDao dashboardDao = new DashboardDao();
+    private DashboardMetrics metrics = DashboardMetrics.getInstance();
     
     public DashboardServiceImpl() throws RemoteException{
         
@@ -21,21 +34,33 @@ public class DashboardServiceImpl extends UnicastRemoteObject implements Dashboa
 
     @Override
     public Integer getTotalProducts() throws RemoteException {
+        if(metrics.isSeeded()){
+            return metrics.getSnapshot().getTotalProducts();
+        }
         return dashboardDao.getTotalProducts();
     }
 
     @Override
     public Integer getTotalSales() throws RemoteException {
+        if(metrics.isSeeded()){
+            return (int) metrics.getSnapshot().getTotalSales();
+        }
         return dashboardDao.getTotalSales();
     }
 
     @Override
     public Integer getTotalCustomers() throws RemoteException {
+        if(metrics.isSeeded()){
+            return metrics.getSnapshot().getTotalCustomers();
+        }
         return dashboardDao.getTotalCustomers();
     }
 
     @Override
     public Double getTotalRevenue() throws RemoteException {
+        if(metrics.isSeeded()){
+            return metrics.getSnapshot().getTotalRevenue();
+        }
         return dashboardDao.getTotalRevenue();
     }
 
@@ -43,7 +68,73 @@ public class DashboardServiceImpl extends UnicastRemoteObject implements Dashboa
     public List<DailySalesData> getDailySalesTrend() throws RemoteException {
         return dashboardDao.getDailySalesTrend();
     }
-    
-    
-    
+
+    @Override
+    public DashboardSnapshot getDashboardSnapshot() throws RemoteException {
+        if(metrics.isSeeded()){
+            return metrics.getSnapshot();
+        }
+        Object[] counters = dashboardDao.getCounters();
+        if(counters == null){
+            throw new RemoteException("Could not read the dashboard totals");
+        }
+        DashboardSnapshot snapshot = new DashboardSnapshot();
+        snapshot.setTotalProducts(((Number) counters[0]).intValue());
+        snapshot.setTotalCustomers(((Number) counters[1]).intValue());
+        snapshot.setTotalSales(((Number) counters[2]).longValue());
+        snapshot.setTotalRevenue(((Number) counters[3]).doubleValue());
+        snapshot.setUnitsSold(((Number) counters[4]).longValue());
+        snapshot.setAsOf(new Date());
+        return snapshot;
+    }
+
+    @Override
+    public boolean subscribe(DashboardListener listener, int maxUpdatesPerSecond) throws RemoteException {
+        if(!DashboardPublisher.isEnabled()){
+            return false;
+        }
+        DashboardPublisher.getInstance().subscribe(listener, maxUpdatesPerSecond);
+        return true;
+    }
+
+    @Override
+    public void unsubscribe(DashboardListener listener) throws RemoteException {
+        if(DashboardPublisher.isEnabled()){
+            DashboardPublisher.getInstance().unsubscribe(listener);
+        }
+    }
+
+    @Override
+    public List<ProductRank> getTopProducts(String period, int limit) throws RemoteException {
+        SalesAnalytics.Period window;
+        try{
+            window = SalesAnalytics.Period.valueOf(String.valueOf(period).trim().toUpperCase());
+        } catch(IllegalArgumentException e){
+            throw new RemoteException("Unknown period: " + period + " (HOUR or DAY)");
+        }
+        if(!SalesAnalytics.isEnabled()){
+            return new ArrayList<>();
+        }
+        return SalesAnalytics.getInstance().getTopProducts(window, limit(limit));
+    }
+
+    @Override
+    public List<ProductRank> getTopProductsInCategory(String category, int limit) throws RemoteException {
+        if(!SalesAnalytics.isEnabled()){
+            return new ArrayList<>();
+        }
+        return SalesAnalytics.getInstance().getTopProductsInCategory(category, limit(limit));
+    }
+
+    @Override
+    public List<ProductPair> getProductsBoughtTogether(int productId, int limit) throws RemoteException {
+        if(!SalesAnalytics.isEnabled()){
+            return new ArrayList<>();
+        }
+        return SalesAnalytics.getInstance().getProductsBoughtTogether(productId, limit(limit));
+    }
+
+    private static int limit(int requested){
+        return requested > 0 ? Math.min(requested, 100) : 10;
+    }
 }
@@ -1,12 +1,15 @@
 package service.implementation;
 
 import dao.EmployeeDao;
+import dao.EmployeeStatsDao;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.List;
 import model.Employee;
 import model.EmployeeProfile;
+import model.EmployeeSummary;
 import service.EmployeeService;
+import util.CatalogCache;
 
 /**
  * Employee Service Implementation - COMPLETE VERSION
@@ -15,6 +18,7 @@ import service.EmployeeService;
 public class EmployeeServiceImpl extends UnicastRemoteObject implements EmployeeService {
     
     private EmployeeDao employeeDao = new EmployeeDao();
+    private EmployeeStatsDao employeeStatsDao = new EmployeeStatsDao();
     
     public EmployeeServiceImpl() throws RemoteException {
     }
@@ -50,7 +54,11 @@ public class EmployeeServiceImpl extends UnicastRemoteObject implements Employee
 
     @Override
     public boolean updateEmployee(Employee employee) throws RemoteException {
-        return employeeDao.updateEmployee(employee);
+        boolean updated = employeeDao.updateEmployee(employee);
+        if(updated){
+            CatalogCache.getInstance().invalidateEmployee(employee.getEmployeeId());
+        }
+        return updated;
     }
 
     // ========== SEARCH & FILTER ==========
@@ -84,7 +92,11 @@ public class EmployeeServiceImpl extends UnicastRemoteObject implements Employee
     
     @Override
     public boolean deleteEmployee(int employeeId) throws RemoteException {
-        return employeeDao.deleteEmployee(employeeId);
+        boolean deleted = employeeDao.deleteEmployee(employeeId);
+        if(deleted){
+            CatalogCache.getInstance().invalidateEmployee(employeeId);
+        }
+        return deleted;
     }
 
     @Override
@@ -94,7 +106,11 @@ public class EmployeeServiceImpl extends UnicastRemoteObject implements Employee
 
     @Override
     public boolean forceDeleteEmployee(int employeeId) throws RemoteException {
-        return employeeDao.forceDeleteEmployee(employeeId);
+        boolean deleted = employeeDao.forceDeleteEmployee(employeeId);
+        if(deleted){
+            CatalogCache.getInstance().invalidateEmployee(employeeId);
+        }
+        return deleted;
     }
 
     @Override
@@ -129,17 +145,19 @@ public class EmployeeServiceImpl extends UnicastRemoteObject implements Employee
         Employee emp = employeeDao.findById(employeeId);
         if(emp == null) return "Employee not found";
         
-        Long salesCount = employeeDao.getSalesCount(employeeId);
-        Double revenue = employeeDao.getTotalRevenue(employeeId);
-        Long transCount = employeeDao.getTransactionCount(employeeId);
+        // One employee_stats row instead of three aggregate queries
+        EmployeeStatsDao.Stats stats = employeeStatsDao.find(employeeId);
+        if(stats == null) return "Performance figures unavailable";
         
         return String.format(
             "Employee: %s (%s)\n" +
             "Sales: %d transactions\n" +
             "Revenue: RWF %.2f\n" +
-            "Inventory Transactions: %d",
+            "Inventory Transactions: %d\n" +
+            "Last Sale: %s",
             emp.getFullName(), emp.getRole(),
-            salesCount, revenue, transCount
+            stats.getSalesCount(), stats.getRevenue(), stats.getTransactionCount(),
+            stats.getLastSaleAt() != null ? String.format("%tF %<tR", stats.getLastSaleAt()) : "none"
         );
     }
 
@@ -184,4 +202,14 @@ public class EmployeeServiceImpl extends UnicastRemoteObject implements Employee
         Employee existing = employeeDao.findByUsername(username);
         return existing == null || existing.getEmployeeId() == excludeEmployeeId;
     }
+
+    @Override
+    public List<EmployeeSummary> findAllEmployeeSummaries() throws RemoteException {
+        return employeeDao.findAllSummaries();
+    }
+
+    @Override
+    public EmployeeSummary findEmployeeSummaryById(int employeeId) throws RemoteException {
+        return employeeDao.findSummaryById(employeeId);
+    }
 }
@@ -7,6 +7,7 @@ import java.util.List;
 import model.InventoryTransaction;
 import model.TransactionType;
 import service.InventoryService;
+import util.StockLedger;
 
 /**
  *
@@ -22,7 +23,11 @@ public class InventoryServiceImpl extends UnicastRemoteObject implements Invento
 
     @Override
     public Integer recordTransaction(int productId, TransactionType type, int quantity, String reason, int employeeId) throws RemoteException {
-        return inventoryDao.recordTransaction(productId, type, quantity, reason, employeeId);
+        Integer transactionId = inventoryDao.recordTransaction(productId, type, quantity, reason, employeeId);
+        if(transactionId != null && StockLedger.isEnabled()){
+            StockLedger.getInstance().invalidate(productId);
+        }
+        return transactionId;
     }
 
     @Override
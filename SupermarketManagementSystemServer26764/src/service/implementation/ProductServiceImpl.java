@@ -4,8 +4,14 @@ import dao.ProductDao;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.List;
+import model.ImportResult;
 import model.Product;
+import model.ProductSummary;
 import service.ProductService;
+import util.BulkImport;
+import util.CatalogCache;
+import util.DashboardMetrics;
+import util.StockLedger;
 
 /**
  * Product Service Implementation
@@ -20,18 +26,37 @@ public class ProductServiceImpl extends UnicastRemoteObject implements ProductSe
 
     @Override
     public Integer addProduct(Product product) throws RemoteException {
-        return productDao.save(product);
+        Integer id = productDao.save(product);
+        if(id != null){
+            DashboardMetrics.getInstance().productsChanged(1);
+        }
+        return id;
     }
 
     @Override
     public boolean updateProduct(Product product) throws RemoteException {
-        return productDao.update(product);
+        boolean updated = productDao.updateProduct(product);
+        if(updated){
+            CatalogCache.getInstance().invalidateProduct(product.getProductId());
+        }
+        if(updated && StockLedger.isEnabled()){
+            StockLedger.getInstance().invalidate(product.getProductId());
+        }
+        return updated;
     }
 
     @Override
     public boolean deleteProduct(int productId) throws RemoteException {
         // Use the proper delete method with validation
-        return productDao.deleteProduct(productId);
+        boolean deleted = productDao.deleteProduct(productId);
+        if(deleted){
+            CatalogCache.getInstance().invalidateProduct(productId);
+            DashboardMetrics.getInstance().productsChanged(-1);
+        }
+        if(deleted && StockLedger.isEnabled()){
+            StockLedger.getInstance().invalidate(productId);
+        }
+        return deleted;
     }
 
     @Override
@@ -51,6 +76,41 @@ public class ProductServiceImpl extends UnicastRemoteObject implements ProductSe
 
     @Override
     public boolean updateStock(int productId, int newStock) throws RemoteException {
+        if(StockLedger.isEnabled()){
+            // An absolute write would lose (or double) sales the ledger has not written yet
+            if(!StockLedger.getInstance().setStock(productId, newStock)){
+                return false;
+            }
+            StockLedger.getInstance().flush();
+            return true;
+        }
         return productDao.updateStock(productId, newStock);
     }
+
+    @Override
+    public List<ProductSummary> findAllProductSummaries() throws RemoteException {
+        return productDao.findAllSummaries();
+    }
+
+    @Override
+    public ProductSummary findProductSummaryById(int productId) throws RemoteException {
+        return productDao.findSummaryById(productId);
+    }
+
+    @Override
+    public ImportResult importProducts(List<Product> products) throws RemoteException {
+        return imported(BulkImport.importProducts(products));
+    }
+
+    @Override
+    public ImportResult importProductsCsv(byte[] csv) throws RemoteException {
+        return imported(BulkImport.importProductsCsv(csv));
+    }
+    
+    private ImportResult imported(ImportResult result) {
+        if(result != null && result.getImported() > 0){
+            DashboardMetrics.getInstance().productsChanged(result.getImported());
+        }
+        return result;
+    }
 }
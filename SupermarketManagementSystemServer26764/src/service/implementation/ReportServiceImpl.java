@@ -38,15 +38,12 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
             headers.add(new String[]{"Sale ID", "Date", "Product", "Quantity", "Price", "Total", "Customer"});
             report.setHeaders(headers);
             
-            // Get sales data
-            List<Sales> salesList = salesDao.findByDateRange(startDate, endDate);
-            
+            // Stream the sales straight into report rows; only the rows are kept
             List<List<String>> data = new ArrayList<>();
-            double totalRevenue = 0;
-            int totalSales = 0;
+            double[] totalRevenue = {0};
             SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
             
-            for (Sales sale : salesList) {
+            long totalSales = ReplicaRouter.reporting(() -> salesDao.scanByDateRange(startDate, endDate, sale -> {
                 List<String> row = new ArrayList<>();
                 row.add(String.valueOf(sale.getSalesId()));
                 row.add(sdf.format(sale.getSaleDate()));
@@ -57,8 +54,10 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
                 row.add(sale.getCustomer() != null ? sale.getCustomer().getFullName() : "N/A");
                 
                 data.add(row);
-                totalRevenue += sale.getTotalAmount();
-                totalSales++;
+                totalRevenue[0] += sale.getTotalAmount();
+            }));
+            if (totalSales < 0) {
+                throw new RemoteException("Could not read sales for the report");
             }
             
             report.setData(data);
@@ -66,7 +65,7 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
             // Set summary
             String summary = String.format(
                 "Total Sales: %d | Total Revenue: %.2f RWF", 
-                totalSales, totalRevenue
+                totalSales, totalRevenue[0]
             );
             report.setSummary(summary);
             
@@ -90,15 +89,12 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
             headers.add(new String[]{"Product ID", "Product Name", "Category", "Stock", "Price", "Reorder Level", "Status"});
             report.setHeaders(headers);
             
-            // Get inventory data
-            List<Product> products = productDao.findAll();
-            
+            // Stream the products straight into report rows
             List<List<String>> data = new ArrayList<>();
-            int totalProducts = 0;
-            int lowStockProducts = 0;
-            double totalValue = 0;
+            int[] lowStockProducts = {0};
+            double[] totalValue = {0};
             
-            for (Product product : products) {
+            long totalProducts = ReplicaRouter.reporting(() -> productDao.scanAll(product -> {
                 List<String> row = new ArrayList<>();
                 row.add(String.valueOf(product.getProductId()));
                 row.add(product.getProductName());
@@ -111,12 +107,14 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
                 row.add(status);
                 
                 data.add(row);
-                totalProducts++;
-                totalValue += product.getStockQuantity() * product.getPrice();
+                totalValue[0] += product.getStockQuantity() * product.getPrice();
                 
                 if (product.getStockQuantity() <= product.getReorderLevel()) {
-                    lowStockProducts++;
+                    lowStockProducts[0]++;
                 }
+            }));
+            if (totalProducts < 0) {
+                throw new RemoteException("Could not read products for the report");
             }
             
             report.setData(data);
@@ -124,7 +122,7 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
             // Set summary
             String summary = String.format(
                 "Total Products: %d | Low Stock Items: %d | Total Inventory Value: %.2f RWF",
-                totalProducts, lowStockProducts, totalValue
+                totalProducts, lowStockProducts[0], totalValue[0]
             );
             report.setSummary(summary);
             
@@ -148,13 +146,10 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
             headers.add(new String[]{"Customer ID", "Name", "Email", "Phone", "Loyalty Points", "Membership Tier"});
             report.setHeaders(headers);
             
-            // Get customer data
-            List<Customer> customers = customerDao.findAll();
-            
+            // Stream the customers straight into report rows
             List<List<String>> data = new ArrayList<>();
-            int totalCustomers = 0;
             
-            for (Customer customer : customers) {
+            long totalCustomers = ReplicaRouter.reporting(() -> customerDao.scanAll(customer -> {
                 List<String> row = new ArrayList<>();
                 row.add(String.valueOf(customer.getCustomerId()));
                 row.add(customer.getFullName());
@@ -162,7 +157,9 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
                 row.add(customer.getPhone());
                 
                 data.add(row);
-                totalCustomers++;
+            }));
+            if (totalCustomers < 0) {
+                throw new RemoteException("Could not read customers for the report");
             }
             
             report.setData(data);
@@ -192,7 +189,7 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
             report.setHeaders(headers);
             
             // Get product data
-            List<Product> products = productDao.findAll();
+            List<Product> products = ReplicaRouter.reporting(productDao::findAll);
             
             List<List<String>> data = new ArrayList<>();
             int totalProducts = 0;
@@ -237,7 +234,7 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
             report.setHeaders(headers);
             
             // Get low stock products
-            List<Product> products = productDao.findLowStockProducts();
+            List<Product> products = ReplicaRouter.reporting(productDao::findLowStockProducts);
             
             List<List<String>> data = new ArrayList<>();
             int lowStockCount = 0;
@@ -268,6 +265,79 @@ public class ReportServiceImpl extends UnicastRemoteObject implements ReportServ
         }
     }
     
+    @Override
+    public ReportData generateBestSellersReport(String employeeName) throws RemoteException {
+        try {
+            if (!SalesAnalytics.isEnabled()) {
+                throw new RemoteException("Sales analytics are turned off on the server");
+            }
+            SalesAnalytics analytics = SalesAnalytics.getInstance();
+            
+            ReportData report = new ReportData();
+            report.setReportTitle("BEST SELLERS REPORT");
+            report.setReportType("BEST_SELLERS");
+            report.setStartDate(analytics.getSince());
+            report.setEndDate(new Date());
+            report.setGeneratedBy(employeeName);
+            
+            // Set headers
+            List<String[]> headers = new ArrayList<>();
+            headers.add(new String[]{"Section", "Rank", "Product", "Category", "Units / Baskets", "At Least"});
+            report.setHeaders(headers);
+            
+            // Read from the in-memory summaries; no query on the sales table
+            List<List<String>> data = new ArrayList<>();
+            addRanks(data, "Today", analytics.getTopProducts(SalesAnalytics.Period.DAY, 20));
+            addRanks(data, "This Hour", analytics.getTopProducts(SalesAnalytics.Period.HOUR, 10));
+            List<String> categories = analytics.getCategories();
+            for (String category : categories) {
+                addRanks(data, "Today - " + category, analytics.getTopProductsInCategory(category, 5));
+            }
+            
+            List<ProductPair> pairs = analytics.getProductsBoughtTogether(0, 20);
+            for (int i = 0; i < pairs.size(); i++) {
+                ProductPair pair = pairs.get(i);
+                List<String> row = new ArrayList<>();
+                row.add("Bought Together");
+                row.add(String.valueOf(i + 1));
+                row.add(pair.getProductName() + " + " + pair.getOtherProductName());
+                row.add("");
+                row.add(String.valueOf(pair.getBaskets()));
+                row.add(String.valueOf(pair.getMinBaskets()));
+                data.add(row);
+            }
+            
+            report.setData(data);
+            
+            // Set summary
+            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+            String summary = String.format(
+                "Categories Today: %d | Baskets Analysed: %d | Pairs since %s (estimates; 'At Least' is the certain part)",
+                categories.size(), analytics.getBasketCount(), sdf.format(analytics.getSince())
+            );
+            report.setSummary(summary);
+            
+            return report;
+            
+        } catch (Exception e) {
+            throw new RemoteException("Error generating best sellers report", e);
+        }
+    }
+    
+    private void addRanks(List<List<String>> data, String section, List<ProductRank> ranks) {
+        for (int i = 0; i < ranks.size(); i++) {
+            ProductRank rank = ranks.get(i);
+            List<String> row = new ArrayList<>();
+            row.add(section);
+            row.add(String.valueOf(i + 1));
+            row.add(rank.getProductName());
+            row.add(rank.getCategory() != null ? rank.getCategory() : "N/A");
+            row.add(String.valueOf(rank.getUnits()));
+            row.add(String.valueOf(rank.getMinUnits()));
+            data.add(row);
+        }
+    }
+    
     @Override
     public byte[] exportToPDF(ReportData reportData) throws RemoteException {
         try {
@@ -1,12 +1,27 @@
 package service.implementation;
 
+import dao.SaleRequestDao;
 import dao.SalesDao;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import model.OfflineSale;
+import model.SaleLineItem;
+import model.SaleLineResult;
 import model.Sales;
+import model.SalesFilter;
+import model.SalesPage;
 import service.SalesService;
+import util.IdempotencyCache;
+import util.SalesWriteBehind;
+import util.ServerConfig;
 
 /**
  *
@@ -15,9 +30,10 @@ import service.SalesService;
 public class SalesServiceImpl extends UnicastRemoteObject implements SalesService{
     
     private SalesDao salesDao = new SalesDao();
+    private SaleRequestDao saleRequestDao = new SaleRequestDao();
     
     public SalesServiceImpl() throws RemoteException{
-        
+        startRequestPurge();
     }
 
     @Override
@@ -25,6 +41,149 @@ public class SalesServiceImpl extends UnicastRemoteObject implements SalesServic
         return salesDao.processSale(customerId, employeeId, productId, quantity, totalAmount);
     }
 
+    @Override
+    public List<SaleLineResult> processBasket(int customerId, int employeeId, List<SaleLineItem> items) throws RemoteException {
+        return salesDao.processBasket(customerId, employeeId, items);
+    }
+
+    @Override
+    public Integer processSale(String requestId, int customerId, int employeeId, int productId, int quantity, double totalAmount) throws RemoteException {
+        String recordable = SaleRequestDao.isRecordable(requestId) ? requestId : null;
+        return IdempotencyCache.getInstance().execute(
+                requestId != null ? "sale:" + requestId : null,
+                () -> {
+                    // The cache is gone after a restart; the table is not
+                    List<Integer> earlier = findRecorded(recordable);
+                    if(isComplete(earlier)) {
+                        return earlier.get(0);
+                    }
+                    return salesDao.processSale(recordable, customerId, employeeId, productId, quantity, totalAmount);
+                },
+                saleId -> saleId > 0);
+    }
+
+    @Override
+    public List<SaleLineResult> processBasket(String requestId, int customerId, int employeeId, List<SaleLineItem> items) throws RemoteException {
+        String recordable = SaleRequestDao.isRecordable(requestId) ? requestId : null;
+        return IdempotencyCache.getInstance().execute(
+                requestId != null ? "basket:" + requestId : null,
+                () -> {
+                    List<Integer> earlier = findRecorded(recordable);
+                    if(isComplete(earlier) && items != null) {
+                        return alreadyRecorded(items, earlier);
+                    }
+                    return salesDao.processBasket(recordable, customerId, employeeId, items, new Date());
+                },
+                results -> !results.isEmpty() && results.get(0).isSuccess());
+    }
+
+    @Override
+    public Map<String, List<SaleLineResult>> ingestOfflineSales(List<OfflineSale> sales) throws RemoteException {
+        Map<String, List<SaleLineResult>> results = new LinkedHashMap<>();
+        if(sales == null) {
+            return results;
+        }
+        int accepted = 0;
+        int deferred = 0;
+        for(OfflineSale sale : sales) {
+            String recordable = SaleRequestDao.isRecordable(sale.getRequestId()) ? sale.getRequestId() : null;
+            List<SaleLineResult> lines = findOnlineResult(sale);
+            if(lines == null && recordable != null) {
+                List<Integer> earlier = findRecorded(recordable);
+                if(earlier == null || earlier.contains(0)) {
+                    // Cannot tell yet whether it was recorded; the till keeps it journaled
+                    deferred++;
+                    continue;
+                }
+                if(!earlier.isEmpty()) {
+                    lines = alreadyRecorded(sale.getItems(), earlier);
+                }
+            }
+            if(lines == null) {
+                lines = IdempotencyCache.getInstance().execute(
+                        sale.getRequestId() != null ? "offline:" + sale.getRequestId() : null,
+                        () -> salesDao.processBasket(recordable, sale.getCustomerId(), sale.getEmployeeId(),
+                                sale.getItems(), sale.getSaleDate()),
+                        r -> !r.isEmpty() && r.get(0).isSuccess());
+                if((lines.isEmpty() || !lines.get(0).isSuccess()) && recordable != null) {
+                    // Lost a race with the online attempt (the request ID is a primary key)
+                    List<Integer> earlier = findRecorded(recordable);
+                    if(isComplete(earlier)) {
+                        lines = alreadyRecorded(sale.getItems(), earlier);
+                    }
+                }
+            }
+            if(!lines.isEmpty() && lines.get(0).isSuccess()) {
+                accepted++;
+            }
+            results.put(sale.getRequestId(), lines);
+        }
+        System.out.println("[OFFLINE SYNC] Ingested " + accepted + " of " + sales.size() + " offline sales"
+                + (deferred > 0 ? " (" + deferred + " deferred)" : ""));
+        return results;
+    }
+
+    /**
+     * A till that lost the connection mid-sale journals the sale under the
+     * request ID of the failed online call. If that call is still in the
+     * idempotency cache its result is reused; otherwise ingestOfflineSales
+     * looks the request ID up in sale_requests (findRecorded).
+     */
+    @SuppressWarnings("unchecked")
+    private List<SaleLineResult> findOnlineResult(OfflineSale sale) {
+        if(sale.getRequestId() == null) {
+            return null;
+        }
+        IdempotencyCache cache = IdempotencyCache.getInstance();
+        List<SaleLineResult> basket = (List<SaleLineResult>) cache.peek("basket:" + sale.getRequestId());
+        if(basket != null && !basket.isEmpty() && basket.get(0).isSuccess()) {
+            return basket;
+        }
+        Integer saleId = (Integer) cache.peek("sale:" + sale.getRequestId());
+        if(saleId != null && saleId > 0 && sale.getItems().size() == 1) {
+            return alreadyRecorded(sale.getItems(), Collections.singletonList(saleId));
+        }
+        return null;
+    }
+
+    /**
+     * Sale IDs recorded under the request ID, whether still in the
+     * write-behind log or in sale_requests. The log is checked first: a
+     * group leaves it only after its request row is committed.
+     * @return the IDs (0 for a line still being logged), an empty list if
+     *         the request was never recorded, or null if it cannot be told
+     */
+    private List<Integer> findRecorded(String requestId) {
+        if(requestId == null) {
+            return Collections.emptyList();
+        }
+        if(SalesWriteBehind.isEnabled()) {
+            if(SalesWriteBehind.getRunningInstance() == null) {
+                // Its log has not been recovered, so it may hold the request
+                return null;
+            }
+            List<Integer> logged = SalesWriteBehind.getRunningInstance().findLogged(requestId);
+            if(logged != null) {
+                return logged;
+            }
+        }
+        return saleRequestDao.find(requestId);
+    }
+
+    private static boolean isComplete(List<Integer> saleIds) {
+        return saleIds != null && !saleIds.isEmpty() && !saleIds.contains(0);
+    }
+
+    private static List<SaleLineResult> alreadyRecorded(List<SaleLineItem> items, List<Integer> saleIds) {
+        List<SaleLineResult> lines = new ArrayList<>();
+        for(int i = 0; i < items.size(); i++) {
+            SaleLineItem item = items.get(i);
+            lines.add(new SaleLineResult(item.getProductId(), item.getQuantity(),
+                    i < saleIds.size() ? saleIds.get(i) : null, item.getTotalAmount(), true, "Already recorded online"));
+        }
+        return lines;
+    }
+
     @Override
     public Map<String, Double> getDailySalesForChart(int days) throws RemoteException {
         return salesDao.getDailySalesForChart(days);
@@ -49,7 +208,27 @@ public class SalesServiceImpl extends UnicastRemoteObject implements SalesServic
     public List<Sales> getSalesByEmployee(int employeeId) throws RemoteException {
         return salesDao.getSalesByEmployee(employeeId);
     }
-    
-    
-    
+
+    @Override
+    public SalesPage findSalesPage(SalesFilter filter, String cursor, int pageSize) throws RemoteException {
+        return salesDao.findSalesPage(filter, cursor, pageSize);
+    }
+
+    /**
+     * Forget request IDs older than sales.requests.retentionDays, once an
+     * hour. A till journal older than that is not checked for duplicates.
+     */
+    private void startRequestPurge() {
+        long retention = ServerConfig.getLong("sales.requests.retentionDays", 90) * 24 * 60 * 60 * 1000L;
+        Timer purgeTimer = new Timer("SaleRequestPurge", true);
+        purgeTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                int purged = saleRequestDao.purgeBefore(new Date(System.currentTimeMillis() - retention));
+                if(purged > 0) {
+                    System.out.println("[OFFLINE SYNC] Purged " + purged + " old sale request IDs");
+                }
+            }
+        }, 60000, 60 * 60 * 1000L);
+    }
 }
@@ -2,9 +2,15 @@ package service.implementation;
 
 import model.UserSession;
 import service.SessionService;
+import util.DaoTimings;
+import util.LocalCacheRegionFactory;
+import util.PooledConnectionProvider;
+import util.QueryStatistics;
+import util.ReplicaRouter;
 import util.SessionManager;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -94,4 +100,55 @@ public class SessionServiceImpl  extends UnicastRemoteObject implements SessionS
         }
     }
     
+    @Override
+    public List<String> getPerformanceReport(String adminSessionId) throws RemoteException {
+        try {
+            // Validate admin session
+            UserSession adminSession = sessionManager.getSession(adminSessionId);
+            if (adminSession == null || !adminSession.getRole().equalsIgnoreCase("ADMIN")) {
+                throw new RemoteException("Unauthorized: Admin access required");
+            }
+            
+            List<String> report = new ArrayList<>();
+            report.add("=== QUERY STATISTICS ===");
+            report.addAll(QueryStatistics.getReport());
+            report.add("=== DAO TIMINGS ===");
+            report.addAll(DaoTimings.getInstance().getReport());
+            report.add("=== CONNECTION POOL ===");
+            if (PooledConnectionProvider.getActive() != null) {
+                report.add("primary: " + PooledConnectionProvider.getActive().getStats());
+            }
+            if (PooledConnectionProvider.getReplica() != null) {
+                report.add("replica: " + PooledConnectionProvider.getReplica().getStats());
+            }
+            if (ReplicaRouter.isEnabled()) {
+                report.add("routing: " + ReplicaRouter.getInstance().getStats());
+            }
+            if (LocalCacheRegionFactory.getActive() != null) {
+                report.add("=== SECOND LEVEL CACHE ===");
+                report.addAll(LocalCacheRegionFactory.getActive().getReport());
+            }
+            return report;
+        } catch (Exception e) {
+            throw new RemoteException("Error getting performance report", e);
+        }
+    }
+    
+    @Override
+    public void resetPerformanceStatistics(String adminSessionId) throws RemoteException {
+        try {
+            // Validate admin session
+            UserSession adminSession = sessionManager.getSession(adminSessionId);
+            if (adminSession == null || !adminSession.getRole().equalsIgnoreCase("ADMIN")) {
+                throw new RemoteException("Unauthorized: Admin access required");
+            }
+            
+            QueryStatistics.reset();
+            DaoTimings.getInstance().reset();
+            System.out.println("[STATS] Statistics reset by " + adminSession.getUsername());
+        } catch (Exception e) {
+            throw new RemoteException("Error resetting performance statistics", e);
+        }
+    }
+    
 }
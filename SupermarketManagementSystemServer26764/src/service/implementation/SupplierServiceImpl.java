@@ -4,8 +4,11 @@ import dao.SupplierDao;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.List;
+import model.ImportResult;
 import model.Supplier;
+import model.SupplierSummary;
 import service.SupplierService;
+import util.BulkImport;
 
 /**
  *
@@ -47,7 +50,24 @@ public class SupplierServiceImpl extends UnicastRemoteObject implements Supplier
     public List<Supplier> findAllSuppliers() throws RemoteException {
         return supplierDao.findAll();
     }
-    
-    
-    
+
+    @Override
+    public List<SupplierSummary> findAllSupplierSummaries() throws RemoteException {
+        return supplierDao.findAllSummaries();
+    }
+
+    @Override
+    public SupplierSummary findSupplierSummaryById(int supplierId) throws RemoteException {
+        return supplierDao.findSummaryById(supplierId);
+    }
+
+    @Override
+    public ImportResult importSuppliers(List<Supplier> suppliers) throws RemoteException {
+        return BulkImport.importSuppliers(suppliers);
+    }
+
+    @Override
+    public ImportResult importSuppliersCsv(byte[] csv) throws RemoteException {
+        return BulkImport.importSuppliersCsv(csv);
+    }
 }
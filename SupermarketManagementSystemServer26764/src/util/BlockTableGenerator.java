@@ -0,0 +1,124 @@
+package util;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.type.Type;
+
+/**
+ * Id generator for entities that are bulk imported.
+ *
+ * IDENTITY columns make Hibernate run every insert on its own to read the
+ * new key back, which turns off JDBC batching. This generator hands out ids
+ * from blocks of db.id.blockSize reserved in the id_blocks table (one row
+ * per entity table, pooled-lo), so a session knows its ids before it
+ * inserts and a whole batch goes out in one round trip.
+ *
+ * The tables keep their AUTO_INCREMENT columns. The first time an entity is
+ * saved after startup its block row is moved past MAX(id), so rows inserted
+ * outside Hibernate (SQL scripts, the old IDENTITY ids) are never reused.
+ *
+ * @author andyb
+ */
+public class BlockTableGenerator extends TableGenerator {
+
+    private String targetTable;
+    private String targetColumn;
+    private volatile boolean aligned;
+
+    @Override
+    public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+        targetTable = params.getProperty(PersistentIdentifierGenerator.TABLE);
+        targetColumn = params.getProperty(PersistentIdentifierGenerator.PK);
+        params.setProperty(TABLE_PARAM, "id_blocks");
+        params.setProperty(CONFIG_PREFER_SEGMENT_PER_ENTITY, "true");
+        params.setProperty(INCREMENT_PARAM, String.valueOf(ServerConfig.getInt("db.id.blockSize", 50)));
+        params.setProperty(OPT_PARAM, "pooled-lo");
+        super.configure(type, params, dialect);
+    }
+
+    @Override
+    public Serializable generate(SessionImplementor session, Object object) throws HibernateException {
+        if (!aligned) {
+            alignWithTable(session);
+        }
+        return super.generate(session, object);
+    }
+
+    /**
+     * Make sure the block row exists and starts above every id in the table
+     */
+    private synchronized void alignWithTable(SessionImplementor session) {
+        if (aligned) {
+            return;
+        }
+        Connection connection = null;
+        try {
+            // A connection of its own, so the row is committed whatever the
+            // calling transaction does
+            connection = session.getJdbcConnectionAccess().obtainConnection();
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            long next;
+            try (PreparedStatement max = connection.prepareStatement(
+                    "SELECT COALESCE(MAX(" + targetColumn + "), 0) + 1 FROM " + targetTable);
+                 ResultSet rs = max.executeQuery()) {
+                rs.next();
+                next = rs.getLong(1);
+            }
+
+            boolean exists;
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT " + getValueColumnName() + " FROM " + getTableName()
+                    + " WHERE " + getSegmentColumnName() + " = ?")) {
+                select.setString(1, getSegmentValue());
+                try (ResultSet rs = select.executeQuery()) {
+                    exists = rs.next();
+                }
+            }
+            String sql = exists
+                    ? "UPDATE " + getTableName() + " SET " + getValueColumnName() + " = ? WHERE "
+                      + getSegmentColumnName() + " = ? AND " + getValueColumnName() + " < ?"
+                    : "INSERT INTO " + getTableName() + " (" + getValueColumnName() + ", "
+                      + getSegmentColumnName() + ") VALUES (?, ?)";
+            try (PreparedStatement write = connection.prepareStatement(sql)) {
+                write.setLong(1, next);
+                write.setString(2, getSegmentValue());
+                if (exists) {
+                    write.setLong(3, next);
+                }
+                write.executeUpdate();
+            }
+            connection.commit();
+            connection.setAutoCommit(autoCommit);
+            aligned = true;
+        } catch (SQLException e) {
+            System.err.println("[ID BLOCKS] Could not align " + getSegmentValue() + " with " + targetTable
+                    + ": " + e.getMessage());
+            try {
+                if (connection != null) connection.rollback();
+            } catch (SQLException ex) {
+                // Already failing
+            }
+            throw new HibernateException("Could not align id block for " + targetTable, e);
+        } finally {
+            if (connection != null) {
+                try {
+                    session.getJdbcConnectionAccess().releaseConnection(connection);
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package util;
+
+import dao.BaseDao;
+import dao.CustomerDao;
+import dao.ProductDao;
+import dao.SupplierDao;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import model.Customer;
+import model.ImportResult;
+import model.Product;
+import model.Supplier;
+import model.SupplierSummary;
+
+/**
+ * Bulk import of products, customers and suppliers, from lists of entities
+ * or from CSV.
+ *
+ * Each call validates its rows, skips (and reports) the bad ones and
+ * inserts the rest through BaseDao.saveAll, which batches the inserts.
+ * Rows are committed every import.rowsPerTransaction rows as they are
+ * read, so a file of any size goes in one call without one huge
+ * transaction; a failed chunk is reported and the others still go in.
+ *
+ * CSV is read with a small RFC 4180 reader (quoted fields, doubled quotes,
+ * line breaks inside quotes) rather than opencsv, whose reader needs
+ * commons-lang3 on the server classpath.
+ *
+ * CSV columns (a header row is optional):
+ *   products:  name, category, price, stock, reorder level, supplier name
+ *   customers: full name, email, phone, address
+ *   suppliers: name, contact person, phone, email, address
+ *
+ * @author andyb
+ */
+public class BulkImport {
+
+    private static final ProductDao productDao = new ProductDao();
+    private static final CustomerDao customerDao = new CustomerDao();
+    private static final SupplierDao supplierDao = new SupplierDao();
+
+    private BulkImport() {
+    }
+
+    /**
+     * Checks one row; returns why it is rejected, or null if it is valid
+     */
+    private interface RowCheck<T> {
+        String check(T row);
+    }
+
+    /**
+     * Turns one CSV record into an entity; throws IllegalArgumentException
+     * with the reason when the record cannot be read
+     */
+    private interface RowReader<T> {
+        T read(String[] record);
+    }
+
+    // ========== PRODUCTS ==========
+
+    public static ImportResult importProducts(List<Product> products) {
+        return run("products", products, BulkImport::checkProduct, productDao);
+    }
+
+    public static ImportResult importProductsCsv(byte[] csv) {
+        Map<String, Integer> supplierIds = new HashMap<>();
+        List<SupplierSummary> suppliers = supplierDao.findAllSummaries();
+        if (suppliers != null) {
+            for (SupplierSummary supplier : suppliers) {
+                supplierIds.put(supplier.getSupplierName().trim().toLowerCase(), supplier.getSupplierId());
+            }
+        }
+        return runCsv("products", csv, "productname", record -> {
+            Product product = new Product();
+            product.setProductName(column(record, 0));
+            product.setCategory(column(record, 1));
+            product.setPrice(number(record, 2, "price"));
+            product.setStockQuantity((int) number(record, 3, "stock"));
+            String reorderLevel = column(record, 4);
+            if (reorderLevel != null) {
+                product.setReorderLevel((int) number(record, 4, "reorder level"));
+            }
+            String supplierName = column(record, 5);
+            if (supplierName != null) {
+                Integer supplierId = supplierIds.get(supplierName.toLowerCase());
+                if (supplierId == null) {
+                    throw new IllegalArgumentException("unknown supplier '" + supplierName + "'");
+                }
+                // Only the id is needed to write the product_supplier row
+                Supplier supplier = new Supplier();
+                supplier.setSupplierId(supplierId);
+                product.getSuppliers().add(supplier);
+            }
+            return product;
+        }, BulkImport::checkProduct, productDao);
+    }
+
+    private static String checkProduct(Product product) {
+        if (isBlank(product.getProductName())) return "product name is required";
+        if (product.getPrice() <= 0) return "price must be positive";
+        if (product.getStockQuantity() < 0) return "stock cannot be negative";
+        if (product.getReorderLevel() < 0) return "reorder level cannot be negative";
+        if (product.getCreatedDate() == null) product.setCreatedDate(new Date());
+        return null;
+    }
+
+    // ========== CUSTOMERS ==========
+
+    public static ImportResult importCustomers(List<Customer> customers) {
+        return run("customers", customers, BulkImport::checkCustomer, customerDao);
+    }
+
+    public static ImportResult importCustomersCsv(byte[] csv) {
+        return runCsv("customers", csv, "fullname", record ->
+                new Customer(column(record, 0), column(record, 1), column(record, 2), column(record, 3)),
+                BulkImport::checkCustomer, customerDao);
+    }
+
+    private static String checkCustomer(Customer customer) {
+        if (isBlank(customer.getFullName())) return "full name is required";
+        if (customer.getRegistrationDate() == null) customer.setRegistrationDate(new Date());
+        return null;
+    }
+
+    // ========== SUPPLIERS ==========
+
+    public static ImportResult importSuppliers(List<Supplier> suppliers) {
+        return run("suppliers", suppliers, BulkImport::checkSupplier, supplierDao);
+    }
+
+    public static ImportResult importSuppliersCsv(byte[] csv) {
+        return runCsv("suppliers", csv, "suppliername", record -> {
+            Supplier supplier = new Supplier();
+            supplier.setSupplierName(column(record, 0));
+            supplier.setContactPerson(column(record, 1));
+            supplier.setPhone(column(record, 2));
+            supplier.setEmail(column(record, 3));
+            supplier.setAddress(column(record, 4));
+            return supplier;
+        }, BulkImport::checkSupplier, supplierDao);
+    }
+
+    private static String checkSupplier(Supplier supplier) {
+        if (isBlank(supplier.getSupplierName())) return "supplier name is required";
+        if (supplier.getRegistrationDate() == null) supplier.setRegistrationDate(new Date());
+        return null;
+    }
+
+    // ========== COMMON ==========
+
+    private static <T> ImportResult runCsv(String what, byte[] csv, String headerName,
+                                           RowReader<T> reader, RowCheck<T> check, BaseDao<T> dao) {
+        long start = System.nanoTime();
+        ImportResult result = new ImportResult();
+        if (csv == null) {
+            return finish(what, result, start);
+        }
+        Inserter<T> inserter = new Inserter<>(result, "Line", check, dao);
+        int line = 1;
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8))) {
+            String[] record;
+            int[] linesRead = {0};
+            while ((record = readRecord(in, linesRead)) != null) {
+                if ((line == 1 && isHeader(record, headerName))
+                        || (record.length == 1 && isBlank(record[0]))) {
+                    line = linesRead[0] + 1;
+                    continue;
+                }
+                result.setRowsRead(result.getRowsRead() + 1);
+                T row;
+                try {
+                    row = reader.read(record);
+                } catch (IllegalArgumentException e) {
+                    row = null;
+                    reject(result, "Line " + line + ": " + e.getMessage());
+                }
+                if (row != null) {
+                    inserter.add(row, line);
+                }
+                line = linesRead[0] + 1;
+            }
+        } catch (IOException e) {
+            // Rows before the bad record are still imported
+            System.err.println("[IMPORT] Could not read " + what + " CSV: " + e.getMessage());
+            result.getErrors().add("Could not read CSV from line " + line + ": " + e.getMessage());
+        }
+        inserter.commit();
+        return finish(what, result, start);
+    }
+
+    private static <T> ImportResult run(String what, List<T> entities, RowCheck<T> check, BaseDao<T> dao) {
+        long start = System.nanoTime();
+        ImportResult result = new ImportResult();
+        Inserter<T> inserter = new Inserter<>(result, "Row", check, dao);
+        if (entities != null) {
+            for (int i = 0; i < entities.size(); i++) {
+                T entity = entities.get(i);
+                result.setRowsRead(result.getRowsRead() + 1);
+                if (entity == null) {
+                    reject(result, "Row " + (i + 1) + ": empty row");
+                    continue;
+                }
+                inserter.add(entity, i + 1);
+            }
+        }
+        inserter.commit();
+        return finish(what, result, start);
+    }
+
+    /**
+     * Collects valid rows and inserts them import.rowsPerTransaction at a
+     * time, each chunk in its own transaction
+     */
+    private static class Inserter<T> {
+        private final ImportResult result;
+        private final String rowLabel;
+        private final RowCheck<T> check;
+        private final BaseDao<T> dao;
+        private final int rowsPerTransaction;
+        private final List<T> rows = new ArrayList<>();
+        private int firstRow;
+        private int lastRow;
+
+        Inserter(ImportResult result, String rowLabel, RowCheck<T> check, BaseDao<T> dao) {
+            this.result = result;
+            this.rowLabel = rowLabel;
+            this.check = check;
+            this.dao = dao;
+            rowsPerTransaction = Math.max(1, ServerConfig.getInt("import.rowsPerTransaction", 1000));
+        }
+
+        void add(T row, int rowNumber) {
+            lastRow = rowNumber;
+            String reason = check.check(row);
+            if (reason != null) {
+                reject(result, rowLabel + " " + rowNumber + ": " + reason);
+                return;
+            }
+            if (rows.isEmpty()) {
+                firstRow = rowNumber;
+            }
+            rows.add(row);
+            if (rows.size() >= rowsPerTransaction) {
+                commit();
+            }
+        }
+
+        /**
+         * Insert the rows collected so far. A failed chunk is rejected as a
+         * whole; earlier chunks stay and later ones are still tried.
+         */
+        void commit() {
+            if (rows.isEmpty()) {
+                return;
+            }
+            int inserted = dao.saveAll(rows);
+            if (inserted == 0) {
+                result.setRejected(result.getRejected() + rows.size());
+                result.getErrors().add(rowLabel + "s " + firstRow + "-" + lastRow
+                        + ": insert failed, not imported (see server log)");
+            } else {
+                result.setImported(result.getImported() + inserted);
+            }
+            rows.clear();
+        }
+    }
+
+    private static ImportResult finish(String what, ImportResult result, long start) {
+        result.setElapsedMs((System.nanoTime() - start) / 1_000_000);
+        System.out.println("[IMPORT] " + what + ": " + result.getImported() + " imported, "
+                + result.getRejected() + " rejected of " + result.getRowsRead() + " rows in "
+                + result.getElapsedMs() + " ms");
+        return result;
+    }
+
+    private static void reject(ImportResult result, String error) {
+        result.setRejected(result.getRejected() + 1);
+        if (result.getErrors().size() < ServerConfig.getInt("import.maxErrorsReported", 100)) {
+            result.getErrors().add(error);
+        }
+    }
+
+    /**
+     * Read the next CSV record, or null at end of input.
+     * linesRead[0] counts the lines consumed so far.
+     */
+    private static String[] readRecord(BufferedReader in, int[] linesRead) throws IOException {
+        String text = in.readLine();
+        if (text == null) {
+            return null;
+        }
+        linesRead[0]++;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i >= text.length()) {
+                if (!quoted) {
+                    break;
+                }
+                // Line break inside a quoted field
+                String next = in.readLine();
+                if (next == null) {
+                    throw new IOException("unterminated quoted field at end of input");
+                }
+                linesRead[0]++;
+                field.append('\n');
+                text = next;
+                i = 0;
+                continue;
+            }
+            char c = text.charAt(i++);
+            if (quoted) {
+                if (c == '"') {
+                    if (i < text.length() && text.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    private static boolean isHeader(String[] record, String headerName) {
+        if (record.length == 0 || record[0] == null) {
+            return false;
+        }
+        String first = record[0].replaceAll("[^A-Za-z]", "").toLowerCase();
+        return first.equals(headerName) || first.equals("name");
+    }
+
+    private static String column(String[] record, int index) {
+        if (index >= record.length || record[index] == null) {
+            return null;
+        }
+        String value = record[index].trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static double number(String[] record, int index, String name) {
+        String value = column(record, index);
+        if (value == null) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        try {
+            return Double.parseDouble(value.replace(",", ""));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " '" + value + "' is not a number");
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
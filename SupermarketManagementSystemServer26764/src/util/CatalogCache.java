@@ -0,0 +1,206 @@
+package util;
+
+import dao.CustomerDao;
+import dao.EmployeeDao;
+import dao.ProductDao;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What a sale needs to know about a product, customer or employee before it
+ * writes anything: that the row exists, the product's price and the names
+ * that go into the sale event.
+ *
+ * Without this every sale did session.get() on Customer, Employee and
+ * Product, and the EAGER collections on those entities dragged in their
+ * sales, transactions and suppliers. With it, the sale path reads these
+ * values from memory, references the rows by proxy and only touches the
+ * rows it writes.
+ *
+ * Entries are loaded with narrow projection queries. Each map has a
+ * generation counter: invalidating bumps it, and a load that started before
+ * the bump is not stored, so a slow reader cannot put back a value that an
+ * update has just invalidated. Entries also expire after
+ * catalog.cache.ttlMs as a safety net for changes made outside this server.
+ *
+ * @author andyb
+ */
+public class CatalogCache {
+
+    // Singleton instance
+    private static CatalogCache instance;
+
+    private final Map<Integer, ProductInfo> products = new ConcurrentHashMap<>();
+    private final Map<Integer, PartyInfo> customers = new ConcurrentHashMap<>();
+    private final Map<Integer, PartyInfo> employees = new ConcurrentHashMap<>();
+
+    private final AtomicLong productGeneration = new AtomicLong();
+    private final AtomicLong customerGeneration = new AtomicLong();
+    private final AtomicLong employeeGeneration = new AtomicLong();
+
+    private final ProductDao productDao = new ProductDao();
+    private final CustomerDao customerDao = new CustomerDao();
+    private final EmployeeDao employeeDao = new EmployeeDao();
+
+    private final long ttlMillis;
+
+    private CatalogCache() {
+        ttlMillis = ServerConfig.getLong("catalog.cache.ttlMs", 5 * 60 * 1000L);
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized CatalogCache getInstance() {
+        if (instance == null) {
+            instance = new CatalogCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Price, name, reorder level and category of a product, or null if it does not exist
+     */
+    public ProductInfo getProduct(int productId) {
+        ProductInfo cached = products.get(productId);
+        if (cached != null && !cached.isExpired(ttlMillis)) {
+            return cached;
+        }
+        long generation = productGeneration.get();
+        Object[] row = productDao.findSaleInfo(productId);
+        if (row == null) {
+            return null;
+        }
+        ProductInfo info = new ProductInfo(productId, (String) row[0],
+                ((Number) row[1]).doubleValue(), ((Number) row[2]).intValue(), (String) row[3], generation);
+        if (productGeneration.get() == generation) {
+            products.put(productId, info);
+        }
+        return info;
+    }
+
+    /**
+     * Customer ID and name, or null if the customer does not exist
+     */
+    public PartyInfo getCustomer(int customerId) {
+        PartyInfo cached = customers.get(customerId);
+        if (cached != null && !cached.isExpired(ttlMillis)) {
+            return cached;
+        }
+        long generation = customerGeneration.get();
+        Object[] row = customerDao.findNameById(customerId);
+        if (row == null) {
+            return null;
+        }
+        PartyInfo info = new PartyInfo(customerId, (String) row[1], generation);
+        if (customerGeneration.get() == generation) {
+            customers.put(customerId, info);
+        }
+        return info;
+    }
+
+    /**
+     * Employee ID and name, or null if the employee does not exist
+     */
+    public PartyInfo getEmployee(int employeeId) {
+        PartyInfo cached = employees.get(employeeId);
+        if (cached != null && !cached.isExpired(ttlMillis)) {
+            return cached;
+        }
+        long generation = employeeGeneration.get();
+        Object[] row = employeeDao.findNameById(employeeId);
+        if (row == null) {
+            return null;
+        }
+        PartyInfo info = new PartyInfo(employeeId, (String) row[1], generation);
+        if (employeeGeneration.get() == generation) {
+            employees.put(employeeId, info);
+        }
+        return info;
+    }
+
+    public void invalidateProduct(int productId) {
+        productGeneration.incrementAndGet();
+        products.remove(productId);
+    }
+
+    public void invalidateCustomer(int customerId) {
+        customerGeneration.incrementAndGet();
+        customers.remove(customerId);
+    }
+
+    public void invalidateEmployee(int employeeId) {
+        employeeGeneration.incrementAndGet();
+        employees.remove(employeeId);
+    }
+
+    /**
+     * Drop everything, e.g. after a bulk change
+     */
+    public void clear() {
+        productGeneration.incrementAndGet();
+        customerGeneration.incrementAndGet();
+        employeeGeneration.incrementAndGet();
+        products.clear();
+        customers.clear();
+        employees.clear();
+    }
+
+    /**
+     * Product values a sale reads
+     */
+    public static final class ProductInfo {
+        private final int productId;
+        private final String productName;
+        private final double price;
+        private final int reorderLevel;
+        private final String category;
+        private final long generation;
+        private final long loadedAt = System.currentTimeMillis();
+
+        ProductInfo(int productId, String productName, double price, int reorderLevel, String category, long generation) {
+            this.productId = productId;
+            this.productName = productName;
+            this.price = price;
+            this.reorderLevel = reorderLevel;
+            this.category = category;
+            this.generation = generation;
+        }
+
+        public int getProductId() { return productId; }
+        public String getProductName() { return productName; }
+        public double getPrice() { return price; }
+        public int getReorderLevel() { return reorderLevel; }
+        public String getCategory() { return category; }
+        public long getGeneration() { return generation; }
+
+        boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - loadedAt > ttlMillis;
+        }
+    }
+
+    /**
+     * Customer or employee values a sale reads
+     */
+    public static final class PartyInfo {
+        private final int id;
+        private final String fullName;
+        private final long generation;
+        private final long loadedAt = System.currentTimeMillis();
+
+        PartyInfo(int id, String fullName, long generation) {
+            this.id = id;
+            this.fullName = fullName;
+            this.generation = generation;
+        }
+
+        public int getId() { return id; }
+        public String getFullName() { return fullName; }
+        public long getGeneration() { return generation; }
+
+        boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - loadedAt > ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package util;
+
+/**
+ * Count-Min sketch: approximate weights for any number of keys in
+ * depth x width counters (Cormode and Muthukrishnan).
+ *
+ * Each key adds to one counter per row and its estimate is the smallest of
+ * them. An estimate is never below the true weight and, with probability
+ * 1 - e^-depth, at most e/width of the total weight above it. Updates are
+ * conservative (only counters below the new estimate are raised), which
+ * keeps the overestimate smaller in practice.
+ *
+ * Not thread-safe; the owner synchronizes.
+ *
+ * @author andyb
+ */
+public class CountMinSketch {
+
+    private final long[][] counters;
+    private final long[] seeds;
+    private final int mask;
+    private long total;
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        int rows = Math.max(1, depth);
+        int columns = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        counters = new long[rows][columns];
+        mask = columns - 1;
+        seeds = new long[rows];
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int row = 0; row < rows; row++) {
+            seed = mix(seed + row);
+            seeds[row] = seed;
+        }
+    }
+
+    public void add(long key, long weight) {
+        total += weight;
+        int[] cells = new int[counters.length];
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < counters.length; row++) {
+            cells[row] = (int) mix(key ^ seeds[row]) & mask;
+            estimate = Math.min(estimate, counters[row][cells[row]]);
+        }
+        long target = estimate + weight;
+        for (int row = 0; row < counters.length; row++) {
+            if (counters[row][cells[row]] < target) {
+                counters[row][cells[row]] = target;
+            }
+        }
+    }
+
+    /**
+     * Upper bound of the key's weight
+     */
+    public long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < counters.length; row++) {
+            estimate = Math.min(estimate, counters[row][(int) mix(key ^ seeds[row]) & mask]);
+        }
+        return estimate;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int getDepth() {
+        return counters.length;
+    }
+
+    public int getWidth() {
+        return mask + 1;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
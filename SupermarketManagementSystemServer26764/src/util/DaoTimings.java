@@ -0,0 +1,112 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-operation timings of DAO calls, recorded by the BaseDao unit-of-work
+ * template (session open to session close, so pool waits are included).
+ *
+ * A call slower than db.slowCallMs is printed as it happens. getReport()
+ * gives count, errors, average and max per operation, slowest total first,
+ * along with the SQL statements per call (counted by StatementCounter), so
+ * an operation whose fetch plan starts issuing extra selects shows up.
+ *
+ * @author andyb
+ */
+public class DaoTimings {
+
+    // Singleton instance
+    private static DaoTimings instance;
+
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final long slowCallNanos;
+
+    private DaoTimings() {
+        slowCallNanos = ServerConfig.getLong("db.slowCallMs", 500) * 1_000_000L;
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized DaoTimings getInstance() {
+        if (instance == null) {
+            instance = new DaoTimings();
+        }
+        return instance;
+    }
+
+    public void record(String operation, long elapsedNanos, int statements, boolean failed) {
+        OperationStats stats = operations.computeIfAbsent(operation, k -> new OperationStats());
+        stats.count.increment();
+        stats.totalNanos.add(elapsedNanos);
+        stats.statements.add(statements);
+        stats.maxStatements.accumulateAndGet(statements, Math::max);
+        if (failed) {
+            stats.errors.increment();
+        }
+        long max;
+        while (elapsedNanos > (max = stats.maxNanos.get())
+                && !stats.maxNanos.compareAndSet(max, elapsedNanos)) {
+            // Another thread raised the max first, try again
+        }
+        if (slowCallNanos > 0 && elapsedNanos >= slowCallNanos) {
+            System.out.println("[DAO] Slow call: " + operation + " took "
+                    + (elapsedNanos / 1_000_000) + " ms, " + statements + " statements"
+                    + (failed ? " (failed)" : ""));
+        }
+    }
+
+    /**
+     * One line per operation, slowest total time first
+     */
+    public List<String> getReport() {
+        List<Map.Entry<String, OperationStats>> entries = new ArrayList<>(operations.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().totalNanos.sum(), a.getValue().totalNanos.sum()));
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, OperationStats> entry : entries) {
+            OperationStats stats = entry.getValue();
+            long count = stats.count.sum();
+            double avgMs = count > 0 ? stats.totalNanos.sum() / 1e6 / count : 0.0;
+            double avgStatements = count > 0 ? (double) stats.statements.sum() / count : 0.0;
+            lines.add(String.format("%-45s calls=%d errors=%d avg=%.2fms max=%.2fms stmts/call=%.1f maxStmts=%d",
+                    entry.getKey(), count, stats.errors.sum(), avgMs, stats.maxNanos.get() / 1e6,
+                    avgStatements, stats.maxStatements.get()));
+        }
+        return lines;
+    }
+
+    /**
+     * Most SQL statements a single call of the operation has issued,
+     * or -1 if it has not run
+     */
+    public int getMaxStatements(String operation) {
+        OperationStats stats = operations.get(operation);
+        return stats != null ? stats.maxStatements.get() : -1;
+    }
+
+    public void printReport() {
+        System.out.println("\n=== DAO TIMINGS ===");
+        for (String line : getReport()) {
+            System.out.println(line);
+        }
+    }
+
+    public void reset() {
+        operations.clear();
+    }
+
+    private static class OperationStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder statements = new LongAdder();
+        final AtomicInteger maxStatements = new AtomicInteger();
+    }
+}
@@ -0,0 +1,169 @@
+package util;
+
+import dao.DashboardDao;
+import java.util.Date;
+import java.util.Timer;
+import java.util.TimerTask;
+import model.DashboardSnapshot;
+
+/**
+ * Dashboard counters kept in memory, so opening the dashboard runs no
+ * COUNT or SUM over the tables.
+ *
+ * seed() reads the totals from the database once at startup; after that
+ * committed sales come from the sale event stream and the product and
+ * customer services report what they add and delete. Rows changed outside
+ * the server are picked up by the re-seed every dashboard.reseedIntervalMs.
+ * Sale events delivered while a seed query runs are added on top of what
+ * it read, so a sale committed during the query may be counted twice until
+ * the next re-seed.
+ *
+ * @author andyb
+ */
+public class DashboardMetrics implements SaleEventListener {
+
+    // Singleton instance
+    private static DashboardMetrics instance;
+
+    private final DashboardDao dashboardDao = new DashboardDao();
+    private Timer reseedTimer;
+    private volatile boolean seeded;
+
+    // All guarded by this, so a snapshot never mixes counters from
+    // different moments
+    private long totalProducts;
+    private long totalCustomers;
+    private long totalSales;
+    private long totalUnits;
+    private double totalRevenue;
+
+    // Sales delivered since the server started (not touched by a seed)
+    private long salesCount;
+    private long unitsSold;
+    private double revenue;
+
+    private DashboardMetrics() {
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized DashboardMetrics getInstance() {
+        if (instance == null) {
+            instance = new DashboardMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Read the totals from the database and schedule the re-seeds.
+     * Subscribe to the sale event bus first so no sale is missed.
+     */
+    public void seed() {
+        reseed();
+        long interval = ServerConfig.getLong("dashboard.reseedIntervalMs", 3600000);
+        synchronized (this) {
+            if (interval > 0 && reseedTimer == null) {
+                reseedTimer = new Timer("DashboardReseed", true);
+                reseedTimer.scheduleAtFixedRate(new TimerTask() {
+                    @Override
+                    public void run() {
+                        reseed();
+                    }
+                }, interval, interval);
+            }
+        }
+    }
+
+    private void reseed() {
+        long salesBefore;
+        long unitsBefore;
+        double revenueBefore;
+        synchronized (this) {
+            salesBefore = salesCount;
+            unitsBefore = unitsSold;
+            revenueBefore = revenue;
+        }
+        Object[] counters = dashboardDao.getCounters();
+        if (counters == null) {
+            System.err.println("[DASHBOARD] Could not read the totals, keeping the current counters");
+            return;
+        }
+        synchronized (this) {
+            totalProducts = ((Number) counters[0]).longValue();
+            totalCustomers = ((Number) counters[1]).longValue();
+            totalSales = ((Number) counters[2]).longValue() + (salesCount - salesBefore);
+            totalRevenue = ((Number) counters[3]).doubleValue() + (revenue - revenueBefore);
+            totalUnits = ((Number) counters[4]).longValue() + (unitsSold - unitsBefore);
+            seeded = true;
+        }
+        System.out.println("[DASHBOARD] Counters seeded: " + getSnapshot());
+    }
+
+    @Override
+    public synchronized void onSaleCommitted(SaleCommitted event) {
+        salesCount++;
+        unitsSold += event.getQuantity();
+        revenue += event.getTotalAmount();
+        totalSales++;
+        totalUnits += event.getQuantity();
+        totalRevenue += event.getTotalAmount();
+    }
+
+    /**
+     * Products added (negative when deleted) through the server
+     */
+    public synchronized void productsChanged(int delta) {
+        totalProducts += delta;
+    }
+
+    /**
+     * Customers added (negative when deleted) through the server
+     */
+    public synchronized void customersChanged(int delta) {
+        totalCustomers += delta;
+    }
+
+    /**
+     * True once the totals have been read from the database
+     */
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * All dashboard totals as of now
+     */
+    public synchronized DashboardSnapshot getSnapshot() {
+        DashboardSnapshot snapshot = new DashboardSnapshot();
+        snapshot.setTotalProducts((int) totalProducts);
+        snapshot.setTotalCustomers((int) totalCustomers);
+        snapshot.setTotalSales(totalSales);
+        snapshot.setUnitsSold(totalUnits);
+        snapshot.setTotalRevenue(totalRevenue);
+        snapshot.setAsOf(new Date());
+        return snapshot;
+    }
+
+    /**
+     * Sales recorded since the server started
+     */
+    public synchronized long getSalesCount() {
+        return salesCount;
+    }
+
+    public synchronized long getUnitsSold() {
+        return unitsSold;
+    }
+
+    public synchronized double getRevenue() {
+        return revenue;
+    }
+
+    public synchronized void shutdown() {
+        if (reseedTimer != null) {
+            reseedTimer.cancel();
+            reseedTimer = null;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package util;
+
+import dao.SalesRollupDao;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import model.DashboardSnapshot;
+import model.DashboardUpdate;
+import service.DashboardListener;
+
+/**
+ * Pushes dashboard updates to subscribed clients (DashboardService.subscribe)
+ * instead of each open dashboard polling every counter.
+ *
+ * Sales only mark the state as changed. Every dashboard.push.tickMs each
+ * subscriber whose view is out of date, and whose last update was sent at
+ * least 1/N s ago (N = the rate it asked for, capped by
+ * dashboard.push.maxPerSecond), gets one update with the totals from
+ * DashboardMetrics, the sales and revenue since its previous update, new
+ * low-stock alerts and today's top seller. However many sales commit in
+ * between, a client receives at most N small objects a second, and
+ * nothing while the shop is idle.
+ *
+ * Callbacks run on a small pool with at most one call in flight per
+ * client, so a slow or unreachable client delays only itself; after
+ * dashboard.push.maxFailures failed calls in a row it is unsubscribed.
+ *
+ * The top seller is by revenue today, counted from the sales rollup at
+ * startup and from the event stream after that.
+ *
+ * @author andyb
+ */
+public class DashboardPublisher implements SaleEventListener {
+
+    // Singleton instance
+    private static DashboardPublisher instance;
+
+    // Low-stock alerts kept for subscribers that have not had them yet
+    private static final int MAX_ALERTS = 50;
+
+    private final Map<DashboardListener, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService pushPool;
+    private final Timer timer;
+    private final int maxPerSecond;
+    private final int maxFailures;
+
+    // Guarded by this
+    private final LinkedList<Alert> alerts = new LinkedList<>();
+    private long alertSequence;
+    private Date today;
+    private final Map<Integer, Double> revenueToday = new HashMap<>();
+    private final Map<Integer, String> productNames = new HashMap<>();
+    private int topProductId;
+    private double topRevenue;
+
+    private DashboardPublisher() {
+        maxPerSecond = Math.max(1, ServerConfig.getInt("dashboard.push.maxPerSecond", 2));
+        maxFailures = Math.max(1, ServerConfig.getInt("dashboard.push.maxFailures", 3));
+        pushPool = Executors.newFixedThreadPool(Math.max(1, ServerConfig.getInt("dashboard.push.threads", 4)), r -> {
+            Thread thread = new Thread(r, "DashboardPush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        seedTopSeller();
+
+        long tick = Math.max(10, ServerConfig.getLong("dashboard.push.tickMs", 100));
+        timer = new Timer("DashboardPublisher", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, tick, tick);
+    }
+
+    /**
+     * True unless dashboard.push.enabled=false
+     */
+    public static boolean isEnabled() {
+        return ServerConfig.getBoolean("dashboard.push.enabled", true);
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized DashboardPublisher getInstance() {
+        if (instance == null) {
+            instance = new DashboardPublisher();
+        }
+        return instance;
+    }
+
+    public void subscribe(DashboardListener listener, int updatesPerSecond) {
+        int rate = updatesPerSecond > 0 ? Math.min(updatesPerSecond, maxPerSecond) : maxPerSecond;
+        subscribers.put(listener, new Subscriber(listener, 1000 / rate));
+        System.out.println("[DASHBOARD PUSH] Subscriber added (" + rate + "/s), " + subscribers.size() + " subscribed");
+    }
+
+    public void unsubscribe(DashboardListener listener) {
+        if (subscribers.remove(listener) != null) {
+            System.out.println("[DASHBOARD PUSH] Subscriber removed, " + subscribers.size() + " subscribed");
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public synchronized void onSaleCommitted(SaleCommitted event) {
+        rollDay();
+        productNames.put(event.getProductId(), event.getProductName());
+        double revenue = revenueToday.merge(event.getProductId(), event.getTotalAmount(), Double::sum);
+        // Revenue only grows during a day, so only this product can overtake
+        if (revenue > topRevenue) {
+            topProductId = event.getProductId();
+            topRevenue = revenue;
+        }
+    }
+
+    /**
+     * A product reached its reorder level (reported once by LowStockMonitor)
+     */
+    public synchronized void lowStock(SaleCommitted event) {
+        alerts.add(new Alert(++alertSequence, event.getProductName() + " is down to " + event.getStockAfter()
+                + " units (reorder level " + event.getReorderLevel() + ")"));
+        while (alerts.size() > MAX_ALERTS) {
+            alerts.removeFirst();
+        }
+    }
+
+    private void tick() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        DashboardSnapshot totals = DashboardMetrics.getInstance().getSnapshot();
+        long now = System.currentTimeMillis();
+        String topSeller;
+        double topSellerRevenue;
+        long latestAlert;
+        synchronized (this) {
+            rollDay();
+            topSeller = topProductId > 0 ? productNames.get(topProductId) : null;
+            topSellerRevenue = topRevenue;
+            latestAlert = alertSequence;
+        }
+
+        for (Subscriber subscriber : subscribers.values()) {
+            if (subscriber.inFlight || now < subscriber.lastPush + subscriber.minIntervalMillis) {
+                continue;
+            }
+            boolean topChanged = topSeller != null && !topSeller.equals(subscriber.topSeller);
+            if (!changed(subscriber.totals, totals) && latestAlert == subscriber.alertSequence && !topChanged) {
+                continue;
+            }
+
+            DashboardUpdate update = new DashboardUpdate();
+            update.setSequence(subscriber.sequence + 1);
+            update.setTotals(totals);
+            if (subscriber.totals != null) {
+                update.setNewSales(totals.getTotalSales() - subscriber.totals.getTotalSales());
+                update.setNewRevenue(totals.getTotalRevenue() - subscriber.totals.getTotalRevenue());
+            }
+            update.setLowStockAlerts(alertsAfter(subscriber.alertSequence));
+            update.setTopSeller(topSeller);
+            update.setTopSellerRevenue(topSellerRevenue);
+            update.setTopSellerChanged(topChanged);
+
+            subscriber.inFlight = true;
+            subscriber.lastPush = now;
+            pushPool.execute(() -> deliver(subscriber, update, latestAlert));
+        }
+    }
+
+    private void deliver(Subscriber subscriber, DashboardUpdate update, long alertSequence) {
+        try {
+            subscriber.listener.dashboardUpdated(update);
+            // What the client now has, for the next delta
+            subscriber.sequence = update.getSequence();
+            subscriber.totals = update.getTotals();
+            subscriber.alertSequence = alertSequence;
+            subscriber.topSeller = update.getTopSeller();
+            subscriber.failures = 0;
+        } catch (RemoteException | RuntimeException e) {
+            if (++subscriber.failures >= maxFailures) {
+                subscribers.remove(subscriber.listener);
+                System.err.println("[DASHBOARD PUSH] Dropping subscriber after " + subscriber.failures
+                        + " failed updates: " + e.getMessage());
+            }
+        } finally {
+            subscriber.inFlight = false;
+        }
+    }
+
+    private static boolean changed(DashboardSnapshot sent, DashboardSnapshot now) {
+        return sent == null
+                || sent.getTotalSales() != now.getTotalSales()
+                || sent.getTotalProducts() != now.getTotalProducts()
+                || sent.getTotalCustomers() != now.getTotalCustomers()
+                || sent.getTotalRevenue() != now.getTotalRevenue();
+    }
+
+    private synchronized List<String> alertsAfter(long sequence) {
+        List<String> texts = new ArrayList<>();
+        for (Alert alert : alerts) {
+            if (alert.sequence > sequence) {
+                texts.add(alert.text);
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * Start a new top seller count at midnight (caller holds the lock)
+     */
+    private void rollDay() {
+        Date day = SalesRollupDao.startOfDay(new Date());
+        if (!day.equals(today)) {
+            today = day;
+            revenueToday.clear();
+            topProductId = 0;
+            topRevenue = 0;
+        }
+    }
+
+    private synchronized void seedTopSeller() {
+        rollDay();
+        if (!SalesRollups.isEnabled()) {
+            return;
+        }
+        Map<Integer, Double> seeded = new SalesRollupDao().getProductRevenue(today, today, Integer.MAX_VALUE);
+        for (Map.Entry<Integer, Double> product : seeded.entrySet()) {
+            revenueToday.merge(product.getKey(), product.getValue(), Double::sum);
+        }
+        // Highest first
+        if (!seeded.isEmpty()) {
+            topProductId = seeded.keySet().iterator().next();
+            topRevenue = revenueToday.get(topProductId);
+            CatalogCache.ProductInfo product = CatalogCache.getInstance().getProduct(topProductId);
+            if (product != null) {
+                productNames.put(topProductId, product.getProductName());
+            }
+        }
+    }
+
+    public void shutdown() {
+        timer.cancel();
+        pushPool.shutdownNow();
+        subscribers.clear();
+    }
+
+    private static class Subscriber {
+        final DashboardListener listener;
+        final long minIntervalMillis;
+        volatile boolean inFlight;
+        volatile long lastPush;
+        // Last update the client received
+        volatile long sequence;
+        volatile DashboardSnapshot totals;
+        volatile long alertSequence;
+        volatile String topSeller;
+        volatile int failures;
+
+        Subscriber(DashboardListener listener, long minIntervalMillis) {
+            this.listener = listener;
+            this.minIntervalMillis = minIntervalMillis;
+        }
+    }
+
+    private static class Alert {
+        final long sequence;
+        final String text;
+
+        Alert(long sequence, String text) {
+            this.sequence = sequence;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package util;
+
+import dao.CustomerDao;
+import dao.EmployeeStatsDao;
+import dao.ProductDao;
+import dao.SupplierDao;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import model.Customer;
+import model.Employee;
+import model.EmployeeProfile;
+import model.InventoryTransaction;
+import model.Product;
+import model.Sales;
+import model.Supplier;
+import model.TransactionType;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+/**
+ * Fills an empty database with a realistic volume of test data, so DAO
+ * performance can be measured the same way on any machine, usually with
+ * the embedded profile:
+ *
+ *   -Ddb.profile=embedded -Dhibernate.hbm2ddl.auto=create -Ddatagen.sales=1000000
+ *
+ * Volumes come from the datagen.* settings. The data is drawn from a
+ * Random seeded with datagen.seed, so the same settings always give the
+ * same rows. Sales follow what a shop sees: a few products sell far more
+ * than the rest, most sales are at midday and in the evening, weekends
+ * are busier, and about a third of sales have no registered customer.
+ *
+ * Every generated employee can log in with the password "password"
+ * (admin001, manager001, cashier001, ...).
+ *
+ * @author andyb
+ */
+public class DataGenerator {
+
+    private static final String[] CATEGORIES = {
+        "Beverages", "Bakery", "Dairy", "Produce", "Meat", "Frozen", "Snacks",
+        "Household", "Personal Care", "Canned Goods", "Grains", "Baby Care"
+    };
+    private static final String[] ADJECTIVES = {
+        "Fresh", "Organic", "Classic", "Premium", "Family", "Light", "Golden", "Spicy", "Sweet", "Natural"
+    };
+    private static final String[] FIRST_NAMES = {
+        "Aline", "Eric", "Grace", "Jean", "Diane", "Patrick", "Claudine", "Emmanuel", "Josiane", "Olivier",
+        "Sandrine", "David", "Ange", "Kevin", "Yvonne", "Samuel", "Chantal", "Fabrice", "Esther", "Moses"
+    };
+    private static final String[] LAST_NAMES = {
+        "Uwase", "Mugisha", "Niyonzima", "Habimana", "Mukamana", "Nshimiyimana", "Ingabire", "Hakizimana",
+        "Uwimana", "Bizimana", "Iradukunda", "Manzi", "Kayitesi", "Ndayisaba", "Umutoni", "Gasana"
+    };
+    private static final String[] STREETS = {
+        "KN 3 Rd", "KG 11 Ave", "KK 15 Rd", "KN 5 Rd", "KG 7 Ave", "KK 500 St", "KN 82 St", "KG 9 Ave"
+    };
+    // Relative number of sales in each hour of the day (shop open 7:00-22:00)
+    private static final int[] HOUR_WEIGHTS = {
+        0, 0, 0, 0, 0, 0, 0, 3, 5, 6, 6, 8, 10, 9, 6, 5, 6, 9, 11, 10, 7, 4, 0, 0
+    };
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int CHUNK = 10000;
+    private static final int PROGRESS_EVERY = 100000;
+
+    private final Random random;
+
+    private DataGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("==========================================");
+        System.out.println("   TEST DATA GENERATOR");
+        System.out.println("==========================================\n");
+
+        int suppliers = ServerConfig.getInt("datagen.suppliers", 200);
+        int products = ServerConfig.getInt("datagen.products", 5000);
+        int customers = ServerConfig.getInt("datagen.customers", 20000);
+        int employees = ServerConfig.getInt("datagen.employees", 50);
+        int sales = ServerConfig.getInt("datagen.sales", 500000);
+        int inventoryTransactions = ServerConfig.getInt("datagen.inventoryTransactions", 100000);
+        int days = Math.max(1, ServerConfig.getInt("datagen.days", 365));
+
+        StatelessSession check = HibernateUtil.getSessionFactory().openStatelessSession();
+        Long existing = (Long) check.createQuery("SELECT COUNT(p) FROM Product p").uniqueResult();
+        check.close();
+        if (existing != null && existing > 0 && !ServerConfig.getBoolean("datagen.append", false)) {
+            System.out.println("❌ The database already has " + existing + " products. Start from an empty "
+                    + "schema (-Dhibernate.hbm2ddl.auto=create) or set datagen.append=true");
+            HibernateUtil.shutdown();
+            System.exit(1);
+        }
+
+        DataGenerator generator = new DataGenerator(ServerConfig.getLong("datagen.seed", 42));
+        long start = System.nanoTime();
+        List<Supplier> supplierRows = generator.suppliers(suppliers);
+        List<Product> productRows = generator.products(products, supplierRows);
+        List<Customer> customerRows = generator.customers(customers);
+        List<Employee> employeeRows = generator.employees(employees);
+        long end = System.currentTimeMillis();
+        generator.sales(sales, days, end, productRows, customerRows, employeeRows);
+        generator.inventoryTransactions(inventoryTransactions, days, end, productRows, employeeRows);
+
+        // The rows above bypass the DAOs that keep employee_stats current
+        SchemaMigrations.run();
+        System.out.println(new EmployeeStatsDao().rebuild()
+                ? "✓ Employee stats rebuilt" : "❌ Employee stats rebuild failed");
+
+        System.out.println("\n==========================================");
+        System.out.println("DONE in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        System.out.println("==========================================");
+        HibernateUtil.shutdown();
+        System.exit(0);
+    }
+
+    private List<Supplier> suppliers(int count) {
+        List<Supplier> rows = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Supplier supplier = new Supplier();
+            supplier.setSupplierName(pick(LAST_NAMES) + " " + pick(new String[] {"Traders", "Distributors",
+                    "Wholesale", "Foods", "Supplies"}) + " " + i);
+            supplier.setContactPerson(personName());
+            supplier.setPhone(phone());
+            supplier.setEmail("orders" + i + "@supplier.example");
+            supplier.setAddress(address());
+            supplier.setRegistrationDate(new Date(System.currentTimeMillis() - random.nextInt(1000) * DAY_MILLIS));
+            rows.add(supplier);
+        }
+        save("suppliers", () -> new SupplierDao().saveAll(rows));
+        return rows;
+    }
+
+    private List<Product> products(int count, List<Supplier> suppliers) {
+        List<Product> rows = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            String category = pick(CATEGORIES);
+            Product product = new Product();
+            product.setProductName(pick(ADJECTIVES) + " " + category + " Item " + i);
+            product.setCategory(category);
+            product.setPrice(Math.round((200 + random.nextDouble() * 20000) / 50) * 50.0);
+            product.setStockQuantity(random.nextInt(500));
+            product.setReorderLevel(10 + random.nextInt(40));
+            product.setCreatedDate(new Date(System.currentTimeMillis() - random.nextInt(1000) * DAY_MILLIS));
+            if (!suppliers.isEmpty()) {
+                int supplierCount = 1 + random.nextInt(2);
+                for (int s = 0; s < supplierCount; s++) {
+                    product.getSuppliers().add(suppliers.get(random.nextInt(suppliers.size())));
+                }
+            }
+            rows.add(product);
+        }
+        save("products", () -> new ProductDao().saveAll(rows));
+        return rows;
+    }
+
+    private List<Customer> customers(int count) {
+        List<Customer> rows = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            String name = personName();
+            Customer customer = new Customer(name, name.toLowerCase().replace(' ', '.') + i + "@mail.example",
+                    phone(), address());
+            customer.setRegistrationDate(new Date(System.currentTimeMillis() - random.nextInt(1000) * DAY_MILLIS));
+            rows.add(customer);
+        }
+        save("customers", () -> new CustomerDao().saveAll(rows));
+        return rows;
+    }
+
+    private List<Employee> employees(int count) {
+        String passwordHash = PasswordHashGenerator.hashPassword("password");
+        List<Employee> rows = new ArrayList<>(count);
+        String[] roles = {"ADMIN", "MANAGER", "CASHIER"};
+        int[] baseSalaries = {150000, 120000, 90000};
+        int[] numbers = new int[roles.length];
+        for (int i = 0; i < count; i++) {
+            // One admin, one manager per ten staff, the rest cashiers
+            int role = i == 0 ? 0 : (i % 10 == 1 ? 1 : 2);
+            String roleName = roles[role];
+            Employee employee = new Employee(personName(), roleName, baseSalaries[role] + random.nextInt(50000),
+                    new Date(System.currentTimeMillis() - random.nextInt(2000) * DAY_MILLIS), phone(),
+                    String.format("%s%03d", roleName.toLowerCase(), ++numbers[role]), passwordHash);
+            employee.setFirstLogin(false);
+            rows.add(employee);
+        }
+        insert("employees", rows.size(), (session, i) -> {
+            Employee employee = rows.get(i);
+            session.insert(employee);
+            EmployeeProfile profile = new EmployeeProfile();
+            profile.setEmployee(employee);
+            profile.setEmail(employee.getUsername() + "@shop.example");
+            profile.setPhone(employee.getContact());
+            profile.setAddress(address());
+            session.insert(profile);
+        });
+        return rows;
+    }
+
+    private void sales(int count, int days, long end, List<Product> products, List<Customer> customers,
+                       List<Employee> employees) {
+        if (products.isEmpty() || employees.isEmpty()) {
+            return;
+        }
+        insert("sales", count, (session, i) -> {
+            Product product = popularProduct(products);
+            int quantity = random.nextInt(10) < 7 ? 1 : 1 + random.nextInt(5);
+            Customer customer = customers.isEmpty() || random.nextInt(3) == 0
+                    ? null : customers.get(random.nextInt(customers.size()));
+            Sales sale = new Sales(customer, employees.get(random.nextInt(employees.size())), product,
+                    quantity, product.getPrice() * quantity);
+            sale.setSaleDate(saleTime(days, end));
+            session.insert(sale);
+        });
+    }
+
+    private void inventoryTransactions(int count, int days, long end, List<Product> products,
+                                       List<Employee> employees) {
+        if (products.isEmpty()) {
+            return;
+        }
+        TransactionType[] types = {TransactionType.RESTOCK, TransactionType.RESTOCK, TransactionType.RESTOCK,
+            TransactionType.ADJUSTMENT, TransactionType.RETURN, TransactionType.DAMAGE, TransactionType.TRANSFER};
+        insert("inventory transactions", count, (session, i) -> {
+            TransactionType type = pick(types);
+            int quantity = type == TransactionType.RESTOCK ? 20 + random.nextInt(200) : 1 + random.nextInt(10);
+            InventoryTransaction transaction = new InventoryTransaction(popularProduct(products), type, quantity,
+                    type.name().charAt(0) + type.name().substring(1).toLowerCase() + " (generated)",
+                    employees.isEmpty() ? null : employees.get(random.nextInt(employees.size())));
+            transaction.setTransactionDate(saleTime(days, end));
+            session.insert(transaction);
+        });
+    }
+
+    // ========== HELPERS ==========
+
+    /**
+     * Inserts row number index
+     */
+    private interface RowWork {
+        void insert(StatelessSession session, int index);
+    }
+
+    private interface SaveCall {
+        int save();
+    }
+
+    /**
+     * Save through BaseDao.saveAll, batched like a bulk import
+     */
+    private void save(String what, SaveCall call) {
+        long start = System.nanoTime();
+        int saved = call.save();
+        report(what, saved, start);
+    }
+
+    /**
+     * Insert through a StatelessSession, committing every CHUNK rows: no
+     * persistence context and no long transaction, so memory stays flat
+     * however many rows are written. Tables with IDENTITY ids are inserted
+     * row by row, so this is the slow part.
+     */
+    private void insert(String what, int count, RowWork work) {
+        long start = System.nanoTime();
+        int index = 0;
+        while (index < count) {
+            int chunkEnd = Math.min(count, index + CHUNK);
+            StatelessSession session = HibernateUtil.getSessionFactory().openStatelessSession();
+            Transaction transaction = session.beginTransaction();
+            try {
+                for (; index < chunkEnd; index++) {
+                    work.insert(session, index);
+                }
+                transaction.commit();
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                System.err.println("[DATAGEN] Generating " + what + " failed after " + index + " rows: "
+                        + e.getMessage());
+                throw e;
+            } finally {
+                session.close();
+            }
+            if (index % PROGRESS_EVERY == 0 && index < count) {
+                System.out.println("[DATAGEN]   " + index + " / " + count);
+            }
+        }
+        report(what, count, start);
+    }
+
+    private void report(String what, int count, long start) {
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.println("[DATAGEN] " + count + " " + what + " in " + millis + " ms ("
+                + count * 1000L / millis + " rows/s)");
+    }
+
+    /**
+     * Products by a Zipf-like popularity: the first products in the list
+     * sell far more often than the last ones
+     */
+    private Product popularProduct(List<Product> products) {
+        double u = random.nextDouble();
+        int index = (int) Math.floor(Math.pow(products.size() + 1, u)) - 1;
+        return products.get(Math.min(Math.max(index, 0), products.size() - 1));
+    }
+
+    /**
+     * A time in the last days before end, busier at weekends and at the
+     * hours in HOUR_WEIGHTS
+     */
+    private Date saleTime(int days, long end) {
+        Calendar calendar = Calendar.getInstance();
+        while (true) {
+            calendar.setTimeInMillis(end - random.nextInt(days) * DAY_MILLIS);
+            int dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
+            boolean weekend = dayOfWeek == Calendar.SATURDAY || dayOfWeek == Calendar.SUNDAY;
+            // Weekdays are kept 3 times out of 4, weekends always
+            if (weekend || random.nextInt(4) != 0) {
+                break;
+            }
+        }
+        int total = 0;
+        for (int weight : HOUR_WEIGHTS) {
+            total += weight;
+        }
+        int r = random.nextInt(total);
+        int hour = 0;
+        while (r >= HOUR_WEIGHTS[hour]) {
+            r -= HOUR_WEIGHTS[hour++];
+        }
+        calendar.set(Calendar.HOUR_OF_DAY, hour);
+        calendar.set(Calendar.MINUTE, random.nextInt(60));
+        calendar.set(Calendar.SECOND, random.nextInt(60));
+        if (calendar.getTimeInMillis() > end) {
+            calendar.setTimeInMillis(calendar.getTimeInMillis() - DAY_MILLIS);
+        }
+        return calendar.getTime();
+    }
+
+    private String personName() {
+        return pick(FIRST_NAMES) + " " + pick(LAST_NAMES);
+    }
+
+    private String phone() {
+        return String.format("07%d%07d", 2 + random.nextInt(7), random.nextInt(10_000_000));
+    }
+
+    private String address() {
+        return pick(STREETS) + ", No " + (1 + random.nextInt(200)) + ", Kigali";
+    }
+
+    private <T> T pick(T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,120 @@
+package util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+
+/**
+ * Makes loaded entities safe to send over RMI once their session is closed.
+ *
+ * With lazy associations an entity leaves the DAO holding Hibernate
+ * collections and proxies that cannot be read without a session (and need
+ * Hibernate on the client to deserialize at all). Walking the graph:
+ * - a collection the fetch plan loaded becomes a plain HashSet/ArrayList
+ *   of its (detached) elements, one it did not load becomes empty
+ * - a proxy the fetch plan loaded is replaced by the real entity, one it
+ *   did not load by a new instance carrying only the id
+ *
+ * This is the PersistentSet fix authenticate() used to do by hand, applied
+ * to every entity a DAO returns.
+ *
+ * @author andyb
+ */
+public class EntityDetacher {
+
+    private EntityDetacher() {
+    }
+
+    public static <T> T detach(T entity) {
+        if (entity == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        T detached = (T) detach(entity, new IdentityHashMap<>());
+        return detached;
+    }
+
+    public static <T> List<T> detachAll(List<T> entities) {
+        if (entities == null) {
+            return null;
+        }
+        Map<Object, Object> seen = new IdentityHashMap<>();
+        List<T> detached = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            @SuppressWarnings("unchecked")
+            T copy = (T) detach(entity, seen);
+            detached.add(copy);
+        }
+        return detached;
+    }
+
+    private static Object detach(Object value, Map<Object, Object> seen) {
+        if (value == null) {
+            return null;
+        }
+        SessionFactory factory = HibernateUtil.getSessionFactory();
+        if (value instanceof HibernateProxy) {
+            LazyInitializer initializer = ((HibernateProxy) value).getHibernateLazyInitializer();
+            if (initializer.isUninitialized()) {
+                return idOnly(factory, initializer);
+            }
+            value = initializer.getImplementation();
+        }
+        if (seen.containsKey(value)) {
+            return seen.get(value);
+        }
+        if (factory.getClassMetadata(value.getClass()) == null) {
+            return value;
+        }
+        seen.put(value, value);
+
+        try {
+            for (Class<?> type = value.getClass(); type != Object.class; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    Object current = field.get(value);
+                    if (current instanceof PersistentCollection) {
+                        field.set(value, copy((Collection<?>) current, seen));
+                    } else if (current instanceof HibernateProxy
+                            || (current != null && factory.getClassMetadata(current.getClass()) != null)) {
+                        field.set(value, detach(current, seen));
+                    }
+                }
+            }
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return value;
+    }
+
+    private static Collection<Object> copy(Collection<?> collection, Map<Object, Object> seen) {
+        Collection<Object> copy = collection instanceof Set ? new HashSet<>() : new ArrayList<>();
+        if (Hibernate.isInitialized(collection)) {
+            for (Object element : collection) {
+                copy.add(detach(element, seen));
+            }
+        }
+        return copy;
+    }
+
+    private static Object idOnly(SessionFactory factory, LazyInitializer initializer) {
+        ClassMetadata metadata = factory.getClassMetadata(initializer.getEntityName());
+        return metadata.instantiate(initializer.getIdentifier(), null);
+    }
+}
@@ -0,0 +1,116 @@
+package util;
+
+import dao.CustomerDao;
+import dao.EmployeeDao;
+import dao.InventoryTransactionDao;
+import dao.ProductDao;
+import dao.SalesDao;
+import dao.SupplierDao;
+import java.util.Date;
+import java.util.List;
+import model.EmployeeSummary;
+import model.ProductSummary;
+
+/**
+ * Checks that each use case's fetch plan loads what it needs in the number
+ * of SQL statements it is budgeted, against the configured database.
+ *
+ * Every DAO call is run once and its statement count read back from
+ * DaoTimings. A call over budget usually means an association is being
+ * loaded one select at a time (a mapping turned eager again, or a query
+ * lost its JOIN FETCH). Exits with status 1 if any call is over budget.
+ *
+ * @author andyb
+ */
+public class FetchPlanDiagnostic {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        System.out.println("==========================================");
+        System.out.println("   FETCH PLAN DIAGNOSTIC");
+        System.out.println("==========================================\n");
+
+        CustomerDao customerDao = new CustomerDao();
+        EmployeeDao employeeDao = new EmployeeDao();
+        ProductDao productDao = new ProductDao();
+        SalesDao salesDao = new SalesDao();
+        SupplierDao supplierDao = new SupplierDao();
+        InventoryTransactionDao inventoryDao = new InventoryTransactionDao();
+
+        List<ProductSummary> products = productDao.findAllSummaries();
+        List<EmployeeSummary> employees = employeeDao.findAllSummaries();
+        List<Integer> customerIds = customerDao.getAllCustomerIds();
+        if (products == null || products.isEmpty() || employees == null || employees.isEmpty()
+                || customerIds == null || customerIds.isEmpty()) {
+            System.out.println("❌ Need at least one product, employee and customer to check fetch plans");
+            HibernateUtil.shutdown();
+            System.exit(1);
+        }
+        int productId = products.get(0).getProductId();
+        int employeeId = employees.get(0).getEmployeeId();
+        String username = employees.get(0).getUsername();
+        int customerId = customerIds.get(0);
+
+        // Start from empty statistics so only the calls below are counted
+        DaoTimings.getInstance().reset();
+
+        System.out.println("Sale validation:");
+        productDao.findSaleInfo(productId);
+        check("ProductDao.findSaleInfo", 1);
+        customerDao.findNameById(customerId);
+        check("CustomerDao.findNameById", 1);
+        employeeDao.findNameById(employeeId);
+        check("EmployeeDao.findNameById", 1);
+
+        System.out.println("\nCatalog list:");
+        productDao.findAll();
+        check("ProductDao.findAll", 1);
+        productDao.findById(productId);
+        check("ProductDao.findById", 1);
+        productDao.findLowStockProducts();
+        check("ProductDao.findLowStockProducts", 1);
+        supplierDao.findAll();
+        check("SupplierDao.findAll", 1);
+        customerDao.findAll();
+        check("CustomerDao.findAll", 1);
+
+        System.out.println("\nReport rows:");
+        Date end = new Date();
+        Date start = new Date(end.getTime() - 30L * 24 * 60 * 60 * 1000);
+        salesDao.findByDateRange(start, end);
+        check("SalesDao.findByDateRange", 1);
+        salesDao.getSalesByEmployee(employeeId);
+        check("SalesDao.getSalesByEmployee", 1);
+        inventoryDao.findByProduct(productId);
+        check("InventoryTransactionDao.findByProduct", 1);
+
+        System.out.println("\nEmployees and login:");
+        employeeDao.findAll();
+        check("EmployeeDao.findAll", 1);
+        employeeDao.findById(employeeId);
+        check("EmployeeDao.findById", 1);
+        employeeDao.findByUsername(username);
+        check("EmployeeDao.findByUsername", 1);
+
+        System.out.println("\n==========================================");
+        System.out.println(failures == 0 ? "ALL FETCH PLANS WITHIN BUDGET"
+                                         : failures + " CALL(S) OVER STATEMENT BUDGET");
+        System.out.println("==========================================");
+        HibernateUtil.shutdown();
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void check(String operation, int budget) {
+        int statements = DaoTimings.getInstance().getMaxStatements(operation);
+        if (statements < 0) {
+            System.out.println("  ❌ " + operation + ": did not run");
+            failures++;
+        } else if (statements > budget) {
+            System.out.println("  ❌ " + operation + ": " + statements + " statements (budget " + budget + ")");
+            failures++;
+        } else {
+            System.out.println("  ✓ " + operation + ": " + statements + " statement(s)");
+        }
+    }
+}
@@ -5,36 +5,158 @@
  */
 package util;
 
-import org.hibernate.cfg.AnnotationConfiguration;
+import java.util.Properties;
 import org.hibernate.SessionFactory;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.hibernate.service.ServiceRegistry;
 
 /**
  * Hibernate Utility class with a convenient method to get Session Factory
  * object.
  *
+ * The mappings and defaults come from hibernate.cfg.xml (or the file named
+ * by db.hibernateConfig). Any hibernate.* key in server.properties or given
+ * as -Dhibernate.x=y overrides the file, so the URL and credentials can be
+ * set per environment without touching the XML. Connections come from
+ * PooledConnectionProvider unless db.pool.enabled=false.
+ *
+ * db.profile selects a set of profile.<name>.hibernate.* settings applied
+ * between the XML and the plain hibernate.* keys, e.g. db.profile=embedded
+ * for the in-process H2 database used by load tests and CI benchmarks.
+ *
+ * Unless db.stats.enabled=false, Hibernate statistics are collected
+ * through QueryStatistics (per-query timings and the slow-query log).
+ *
+ * With db.replica.enabled=true a second session factory is built for the
+ * read replica: the same mappings and settings, overridden by any
+ * replica.hibernate.* key (at least the replica's URL), with its own pool,
+ * no schema update and no second-level cache. ReplicaRouter decides which
+ * reads use it.
+ *
  * @author andyb
  */
 public class HibernateUtil {
 
     private static final SessionFactory sessionFactory;
+    private static final ServiceRegistry serviceRegistry;
+    private static SessionFactory replicaSessionFactory;
+    private static ServiceRegistry replicaServiceRegistry;
     
     static {
         try {
-            // Create the SessionFactory from standard (hibernate.cfg.xml) 
-            // config file.
-            sessionFactory = new AnnotationConfiguration().configure().buildSessionFactory();
+            Configuration configuration = configure(primarySettings());
+            serviceRegistry = new StandardServiceRegistryBuilder()
+                    .applySettings(configuration.getProperties())
+                    .build();
+            sessionFactory = configuration.buildSessionFactory(serviceRegistry);
         } catch (Throwable ex) {
             // Log the exception. 
             System.err.println("Initial SessionFactory creation failed." + ex);
             throw new ExceptionInInitializerError(ex);
         }
+        
+        if (ServerConfig.getBoolean("db.replica.enabled", false)) {
+            try {
+                Properties overrides = primarySettings();
+                for (String key : ServerConfig.getProperties("replica.hibernate.").stringPropertyNames()) {
+                    overrides.setProperty(key.substring("replica.".length()),
+                            ServerConfig.getString(key, ""));
+                }
+                // The replica is never written: no schema update, and no
+                // cache to keep in step with the primary's writes
+                if (ServerConfig.getString("replica." + Environment.HBM2DDL_AUTO, null) == null) {
+                    overrides.setProperty(Environment.HBM2DDL_AUTO, "none");
+                }
+                overrides.setProperty(Environment.USE_SECOND_LEVEL_CACHE, "false");
+                overrides.setProperty(Environment.USE_QUERY_CACHE, "false");
+                overrides.setProperty(PooledConnectionProvider.POOL_NAME, "replica");
+                
+                Configuration configuration = configure(overrides);
+                replicaServiceRegistry = new StandardServiceRegistryBuilder()
+                        .applySettings(configuration.getProperties())
+                        .build();
+                replicaSessionFactory = configuration.buildSessionFactory(replicaServiceRegistry);
+                System.out.println("[REPLICA] Session factory started for "
+                        + configuration.getProperty(Environment.URL));
+            } catch (Throwable ex) {
+                // Reads stay on the primary
+                System.err.println("[REPLICA] Could not start replica session factory, "
+                        + "all reads use the primary: " + ex);
+                replicaSessionFactory = null;
+            }
+        }
+    }
+    
+    /**
+     * Settings of the selected db.profile, then every hibernate.* key
+     */
+    private static Properties primarySettings() {
+        Properties settings = new Properties();
+        String profile = ServerConfig.getString("db.profile", "mysql");
+        String prefix = "profile." + profile + ".";
+        Properties profileSettings = ServerConfig.getProperties(prefix + "hibernate.");
+        for (String key : profileSettings.stringPropertyNames()) {
+            settings.setProperty(key.substring(prefix.length()), profileSettings.getProperty(key));
+        }
+        if (!profileSettings.isEmpty()) {
+            System.out.println("[DB PROFILE] Using " + profile + " ("
+                    + settings.getProperty(Environment.URL, "URL from hibernate.cfg.xml") + ")");
+        }
+        settings.putAll(ServerConfig.getProperties("hibernate."));
+        return settings;
+    }
+    
+    private static Configuration configure(Properties overrides) {
+        Configuration configuration = new Configuration()
+                .configure(ServerConfig.getString("db.hibernateConfig", "hibernate.cfg.xml"));
+        configuration.addProperties(overrides);
+        if (ServerConfig.getBoolean("db.pool.enabled", true)
+                && !overrides.containsKey(Environment.CONNECTION_PROVIDER)) {
+            configuration.setProperty(Environment.CONNECTION_PROVIDER,
+                    PooledConnectionProvider.class.getName());
+        }
+        if (ServerConfig.getBoolean("db.stats.enabled", true)) {
+            configuration.setProperty(Environment.GENERATE_STATISTICS, "true");
+            configuration.setProperty("hibernate.stats.factory", QueryStatistics.Factory.class.getName());
+            // Not the per-session metrics Hibernate would otherwise log at every close
+            configuration.setProperty("hibernate.session.events.log", "false");
+        }
+        return configuration;
     }
     
     public static SessionFactory getSessionFactory() {
         return sessionFactory;
     }
+    
+    /**
+     * Session factory of the read replica, or null if none is configured
+     * (or it could not be started)
+     */
+    public static SessionFactory getReplicaSessionFactory() {
+        return replicaSessionFactory;
+    }
 
+    /**
+     * Close the session factory and the connection pool behind it
+     */
     public static void shutdown() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        try {
+            if (replicaSessionFactory != null && !replicaSessionFactory.isClosed()) {
+                replicaSessionFactory.close();
+                StandardServiceRegistryBuilder.destroy(replicaServiceRegistry);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        try {
+            if (!sessionFactory.isClosed()) {
+                sessionFactory.close();
+            }
+            StandardServiceRegistryBuilder.destroy(serviceRegistry);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -0,0 +1,182 @@
+package util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the results of recent requests by client-generated key so a
+ * retried RMI call returns the first call's result instead of running the
+ * sale a second time.
+ *
+ * A retry that arrives while the first call is still running waits for it,
+ * and runs the action itself if that call failed or threw.
+ * Only successful results are kept: a failed sale is forgotten so the
+ * client's retry actually retries. Entries expire after
+ * sales.idempotency.ttlMs and the table never holds more than
+ * sales.idempotency.maxEntries keys (oldest dropped first).
+ *
+ * @author andyb
+ */
+public class IdempotencyCache {
+
+    // Singleton instance
+    private static IdempotencyCache instance;
+
+    private final Map<String, Entry> entries;
+
+    // Keys in insertion order, for dropping the oldest
+    private final Queue<String> order;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private Timer cleanupTimer;
+
+    private IdempotencyCache() {
+        entries = new ConcurrentHashMap<>();
+        order = new ConcurrentLinkedQueue<>();
+        ttlMillis = ServerConfig.getLong("sales.idempotency.ttlMs", 10 * 60 * 1000L);
+        maxEntries = ServerConfig.getInt("sales.idempotency.maxEntries", 50000);
+        startCleanupTask();
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized IdempotencyCache getInstance() {
+        if (instance == null) {
+            instance = new IdempotencyCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Run {@code action} once per key.
+     * @param key client request ID; null or empty runs the action unguarded
+     * @param action the work to do
+     * @param isSuccess which results are worth replaying to a retry
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> action, Predicate<T> isSuccess) {
+        if (key == null || key.isEmpty()) {
+            return action.get();
+        }
+
+        Entry mine;
+        while (true) {
+            mine = new Entry();
+            Entry existing = entries.putIfAbsent(key, mine);
+            if (existing != null && !existing.isExpired(ttlMillis)) {
+                T first;
+                try {
+                    first = (T) existing.result.join();
+                } catch (CompletionException e) {
+                    // The first attempt threw and was forgotten; try ourselves
+                    continue;
+                }
+                if (first != null && isSuccess.test(first)) {
+                    System.out.println("[IDEMPOTENCY] Duplicate request " + key + ", returning first result");
+                    return first;
+                }
+                // Failed results are forgotten too, so this retry really retries
+                continue;
+            }
+            if (existing == null || entries.replace(key, existing, mine)) {
+                break;
+            }
+            // Another caller replaced or removed the expired entry first
+        }
+        order.add(key);
+        evictOverflow();
+
+        T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException | Error e) {
+            // Waiters must not block forever on an entry nobody completes
+            entries.remove(key, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+        if (result == null || !isSuccess.test(result)) {
+            entries.remove(key, mine);
+        }
+        mine.result.complete(result);
+        return result;
+    }
+
+    /**
+     * Result recorded for a key, or null if there is none (never seen,
+     * failed or expired). Waits if the request is still running.
+     */
+    public Object peek(String key) {
+        Entry entry = key != null ? entries.get(key) : null;
+        if (entry == null || entry.isExpired(ttlMillis)) {
+            return null;
+        }
+        try {
+            return entry.result.join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Number of keys currently remembered
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void evictOverflow() {
+        while (entries.size() > maxEntries) {
+            String oldest = order.poll();
+            if (oldest == null) {
+                return;
+            }
+            Entry entry = entries.get(oldest);
+            // Never drop a request that is still running
+            if (entry != null && entry.result.isDone()) {
+                entries.remove(oldest, entry);
+            }
+        }
+    }
+
+    private void startCleanupTask() {
+        cleanupTimer = new Timer("IdempotencyCleanup", true);
+        cleanupTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                Iterator<String> it = order.iterator();
+                while (it.hasNext()) {
+                    String key = it.next();
+                    Entry entry = entries.get(key);
+                    if (entry == null) {
+                        it.remove();
+                    } else if (entry.isExpired(ttlMillis) && entry.result.isDone()) {
+                        entries.remove(key, entry);
+                        it.remove();
+                    }
+                }
+            }
+        }, 60000, 60000); // Run every minute
+    }
+
+    private static class Entry {
+        final long createdAt = System.currentTimeMillis();
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - createdAt > ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,658 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.Region;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.TransactionalDataRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cfg.Settings;
+
+/**
+ * In-process second-level and query cache for Hibernate.
+ *
+ * Each region is an LRU map bounded by cache.maxEntries (or
+ * cache.region.&lt;name&gt;.maxEntries), with an optional time-to-live
+ * (cache.ttlMs) as a safety net for rows changed outside this server. The
+ * timestamps region that decides whether a cached query is still valid is
+ * never bounded: losing an entry there would make stale query results look
+ * current.
+ *
+ * Writes invalidate rather than update: when Hibernate changes a cached
+ * entity, the key is locked until the transaction ends and then left empty
+ * for the next read to load. A load that started before the change finished
+ * is not allowed to put its (old) copy back. Bulk HQL updates lock and clear
+ * the whole region the same way. TRANSACTIONAL access is not supported.
+ *
+ * Hit, miss, put, eviction and invalidation counts per region are in
+ * getReport(), and are printed every cache.reportIntervalMs.
+ *
+ * @author andyb
+ */
+public class LocalCacheRegionFactory implements RegionFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    // How long a timestamp from nextTimestamp() stays valid (60 s)
+    private static final int TIMEOUT = 60000 << 12;
+
+    // The factory Hibernate is using, for stats
+    private static volatile LocalCacheRegionFactory active;
+
+    private final Map<String, LocalRegion> regions = new ConcurrentHashMap<>();
+    private final AtomicLong lastTimestamp = new AtomicLong();
+
+    private int defaultMaxEntries;
+    private long defaultTtlMillis;
+    private Timer reportTimer;
+
+    public LocalCacheRegionFactory() {
+    }
+
+    public LocalCacheRegionFactory(Properties properties) {
+    }
+
+    /**
+     * Cache of the running server, or null if second-level caching is off
+     */
+    public static LocalCacheRegionFactory getActive() {
+        return active;
+    }
+
+    @Override
+    public void start(Settings settings, Properties properties) throws CacheException {
+        defaultMaxEntries = ServerConfig.getInt("cache.maxEntries", 10000);
+        defaultTtlMillis = ServerConfig.getLong("cache.ttlMs", 10 * 60 * 1000L);
+        active = this;
+        long reportInterval = ServerConfig.getLong("cache.reportIntervalMs", 0);
+        if (reportInterval > 0) {
+            reportTimer = new Timer("CacheStatsReport", true);
+            reportTimer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    printReport();
+                }
+            }, reportInterval, reportInterval);
+        }
+        System.out.println("[SECOND LEVEL CACHE] Started: maxEntries=" + defaultMaxEntries
+                + " per region, ttl=" + (defaultTtlMillis > 0 ? defaultTtlMillis + "ms" : "none"));
+    }
+
+    @Override
+    public void stop() {
+        if (reportTimer != null) {
+            reportTimer.cancel();
+        }
+        for (LocalRegion region : regions.values()) {
+            region.clear();
+        }
+        regions.clear();
+        if (active == this) {
+            active = null;
+        }
+    }
+
+    @Override
+    public boolean isMinimalPutsEnabledByDefault() {
+        return false;
+    }
+
+    @Override
+    public AccessType getDefaultAccessType() {
+        return AccessType.READ_WRITE;
+    }
+
+    /**
+     * Milliseconds shifted left 12 bits, plus a counter, so timestamps are
+     * strictly increasing even within one millisecond
+     */
+    @Override
+    public long nextTimestamp() {
+        long now = System.currentTimeMillis() << 12;
+        while (true) {
+            long last = lastTimestamp.get();
+            long next = Math.max(now, last + 1);
+            if (lastTimestamp.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    @Override
+    public EntityRegion buildEntityRegion(String regionName, Properties properties,
+            CacheDataDescription metadata) throws CacheException {
+        return register(new LocalEntityRegion(regionName, metadata));
+    }
+
+    @Override
+    public NaturalIdRegion buildNaturalIdRegion(String regionName, Properties properties,
+            CacheDataDescription metadata) throws CacheException {
+        return register(new LocalNaturalIdRegion(regionName, metadata));
+    }
+
+    @Override
+    public CollectionRegion buildCollectionRegion(String regionName, Properties properties,
+            CacheDataDescription metadata) throws CacheException {
+        return register(new LocalCollectionRegion(regionName, metadata));
+    }
+
+    @Override
+    public QueryResultsRegion buildQueryResultsRegion(String regionName, Properties properties) throws CacheException {
+        return register(new LocalGeneralRegion(regionName, true));
+    }
+
+    @Override
+    public TimestampsRegion buildTimestampsRegion(String regionName, Properties properties) throws CacheException {
+        return register(new LocalGeneralRegion(regionName, false));
+    }
+
+    private <R extends LocalRegion> R register(R region) {
+        regions.put(region.getName(), region);
+        return region;
+    }
+
+    /**
+     * One line per region: size, hits, misses, hit rate, puts, evictions
+     * (capacity and TTL) and invalidations (writes)
+     */
+    public List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+        for (LocalRegion region : regions.values()) {
+            long hits = region.hits.sum();
+            long misses = region.misses.sum();
+            long lookups = hits + misses;
+            lines.add(String.format("%-40s size=%d hits=%d misses=%d hitRate=%.1f%% puts=%d evictions=%d invalidations=%d",
+                    region.getName(), region.getElementCountInMemory(), hits, misses,
+                    lookups > 0 ? 100.0 * hits / lookups : 0.0,
+                    region.puts.sum(), region.evictions.sum(), region.invalidations.sum()));
+        }
+        lines.sort(null);
+        return lines;
+    }
+
+    public void printReport() {
+        System.out.println("\n=== SECOND LEVEL CACHE ===");
+        for (String line : getReport()) {
+            System.out.println(line);
+        }
+    }
+
+    // ========== REGIONS ==========
+
+    /**
+     * Bounded LRU store shared by every region type
+     */
+    private class LocalRegion implements Region {
+        private final String name;
+        private final int maxEntries;
+        private final long ttlMillis;
+        private final LinkedHashMap<Object, Item> store;
+
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder puts = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder invalidations = new LongAdder();
+
+        LocalRegion(String name, boolean bounded) {
+            this.name = name;
+            this.maxEntries = bounded ? ServerConfig.getInt("cache.region." + name + ".maxEntries", defaultMaxEntries) : 0;
+            this.ttlMillis = bounded ? ServerConfig.getLong("cache.region." + name + ".ttlMs", defaultTtlMillis) : 0;
+            this.store = new LinkedHashMap<Object, Item>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Item> eldest) {
+                    if (maxEntries > 0 && size() > maxEntries) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Raw entry (value or lock), or null if absent or expired
+         */
+        synchronized Item read(Object key) {
+            Item item = store.get(key);
+            if (item != null && ttlMillis > 0 && !(item instanceof ItemLock)
+                    && System.currentTimeMillis() - item.createdAt > ttlMillis) {
+                store.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return item;
+        }
+
+        synchronized void write(Object key, Item item) {
+            store.put(key, item);
+        }
+
+        /**
+         * Drop a value; a lock stays until its writer releases it
+         */
+        synchronized void remove(Object key) {
+            Item item = store.get(key);
+            if (item != null && !(item instanceof ItemLock)) {
+                store.remove(key);
+                invalidations.increment();
+            }
+        }
+
+        synchronized void clear() {
+            invalidations.add(store.size());
+            store.clear();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void destroy() throws CacheException {
+            clear();
+            regions.remove(name);
+        }
+
+        @Override
+        public synchronized boolean contains(Object key) {
+            Item item = store.get(key);
+            return item != null && !(item instanceof ItemLock);
+        }
+
+        @Override
+        public long getSizeInMemory() {
+            return -1;
+        }
+
+        @Override
+        public synchronized long getElementCountInMemory() {
+            return store.size();
+        }
+
+        @Override
+        public long getElementCountOnDisk() {
+            return 0;
+        }
+
+        @Override
+        public synchronized Map toMap() {
+            Map<Object, Object> values = new HashMap<>();
+            for (Map.Entry<Object, Item> entry : store.entrySet()) {
+                if (!(entry.getValue() instanceof ItemLock)) {
+                    values.put(entry.getKey(), entry.getValue().value);
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public long nextTimestamp() {
+            return LocalCacheRegionFactory.this.nextTimestamp();
+        }
+
+        @Override
+        public int getTimeout() {
+            return TIMEOUT;
+        }
+    }
+
+    /**
+     * Query results and update timestamps: plain get/put
+     */
+    private class LocalGeneralRegion extends LocalRegion implements QueryResultsRegion, TimestampsRegion {
+
+        LocalGeneralRegion(String name, boolean bounded) {
+            super(name, bounded);
+        }
+
+        @Override
+        public Object get(Object key) throws CacheException {
+            Item item = read(key);
+            if (item == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return item.value;
+        }
+
+        @Override
+        public void put(Object key, Object value) throws CacheException {
+            write(key, new Item(value));
+            puts.increment();
+        }
+
+        @Override
+        public void evict(Object key) throws CacheException {
+            remove(key);
+        }
+
+        @Override
+        public void evictAll() throws CacheException {
+            clear();
+        }
+    }
+
+    private class LocalTransactionalRegion extends LocalRegion implements TransactionalDataRegion {
+        private final CacheDataDescription metadata;
+
+        // Bulk updates in progress, and when the last one finished
+        private int regionLocks;
+        private long regionUnlockedAt;
+
+        LocalTransactionalRegion(String name, CacheDataDescription metadata) {
+            super(name, true);
+            this.metadata = metadata;
+        }
+
+        @Override
+        public boolean isTransactionAware() {
+            return false;
+        }
+
+        @Override
+        public CacheDataDescription getCacheDataDescription() {
+            return metadata;
+        }
+
+        /**
+         * Store a value read from the database, unless the key (or the whole
+         * region) was changed after the reading transaction started
+         */
+        synchronized boolean putFromLoad(Object key, Object value, long txTimestamp, boolean minimalPut) {
+            if (regionLocks > 0 || txTimestamp < regionUnlockedAt) {
+                return false;
+            }
+            Item current = read(key);
+            if (current instanceof ItemLock) {
+                ItemLock lock = (ItemLock) current;
+                if (lock.holders > 0 || txTimestamp < lock.unlockedAt) {
+                    return false;
+                }
+            } else if (current != null && minimalPut) {
+                return false;
+            }
+            write(key, new Item(value));
+            puts.increment();
+            return true;
+        }
+
+        /**
+         * Store a newly inserted row once its transaction committed
+         */
+        synchronized boolean putIfAbsent(Object key, Object value) {
+            if (regionLocks > 0 || read(key) != null) {
+                return false;
+            }
+            write(key, new Item(value));
+            puts.increment();
+            return true;
+        }
+
+        synchronized SoftLock lock(Object key) {
+            Item current = read(key);
+            ItemLock lock = current instanceof ItemLock ? (ItemLock) current : new ItemLock();
+            if (current != null && !(current instanceof ItemLock)) {
+                invalidations.increment();
+            }
+            lock.holders++;
+            write(key, lock);
+            return lock;
+        }
+
+        synchronized void unlock(Object key) {
+            Item current = read(key);
+            if (current instanceof ItemLock) {
+                ItemLock lock = (ItemLock) current;
+                lock.holders = Math.max(0, lock.holders - 1);
+                lock.unlockedAt = nextTimestamp();
+            }
+        }
+
+        synchronized void lockRegion() {
+            regionLocks++;
+            clear();
+        }
+
+        synchronized void unlockRegion() {
+            regionLocks = Math.max(0, regionLocks - 1);
+            regionUnlockedAt = nextTimestamp();
+            clear();
+        }
+    }
+
+    private class LocalEntityRegion extends LocalTransactionalRegion implements EntityRegion {
+        LocalEntityRegion(String name, CacheDataDescription metadata) {
+            super(name, metadata);
+        }
+
+        @Override
+        public EntityRegionAccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+            return new EntityAccess(this, accessType);
+        }
+    }
+
+    private class LocalCollectionRegion extends LocalTransactionalRegion implements CollectionRegion {
+        LocalCollectionRegion(String name, CacheDataDescription metadata) {
+            super(name, metadata);
+        }
+
+        @Override
+        public CollectionRegionAccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+            return new CollectionAccess(this, accessType);
+        }
+    }
+
+    private class LocalNaturalIdRegion extends LocalTransactionalRegion implements NaturalIdRegion {
+        LocalNaturalIdRegion(String name, CacheDataDescription metadata) {
+            super(name, metadata);
+        }
+
+        @Override
+        public NaturalIdRegionAccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+            return new NaturalIdAccess(this, accessType);
+        }
+    }
+
+    // ========== ACCESS STRATEGIES ==========
+
+    /**
+     * READ_ONLY, NONSTRICT_READ_WRITE and READ_WRITE all invalidate on
+     * write; READ_ONLY also refuses updates
+     */
+    private static class LocalAccess {
+        final LocalTransactionalRegion region;
+        final AccessType accessType;
+
+        LocalAccess(LocalTransactionalRegion region, AccessType accessType) {
+            if (accessType == AccessType.TRANSACTIONAL) {
+                throw new CacheException("TRANSACTIONAL access is not supported by the local cache: " + region.getName());
+            }
+            this.region = region;
+            this.accessType = accessType;
+        }
+
+        public Object get(Object key, long txTimestamp) throws CacheException {
+            Item item = region.read(key);
+            if (item == null || item instanceof ItemLock) {
+                region.misses.increment();
+                return null;
+            }
+            region.hits.increment();
+            return item.value;
+        }
+
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version) throws CacheException {
+            return region.putFromLoad(key, value, txTimestamp, false);
+        }
+
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version,
+                boolean minimalPutOverride) throws CacheException {
+            return region.putFromLoad(key, value, txTimestamp, minimalPutOverride);
+        }
+
+        public SoftLock lockItem(Object key, Object version) throws CacheException {
+            return region.lock(key);
+        }
+
+        public SoftLock lockRegion() throws CacheException {
+            region.lockRegion();
+            return null;
+        }
+
+        public void unlockItem(Object key, SoftLock lock) throws CacheException {
+            region.unlock(key);
+        }
+
+        public void unlockRegion(SoftLock lock) throws CacheException {
+            region.unlockRegion();
+        }
+
+        public void remove(Object key) throws CacheException {
+            region.remove(key);
+        }
+
+        public void removeAll() throws CacheException {
+            region.clear();
+        }
+
+        public void evict(Object key) throws CacheException {
+            region.remove(key);
+        }
+
+        public void evictAll() throws CacheException {
+            region.clear();
+        }
+
+        void checkWritable() {
+            if (accessType == AccessType.READ_ONLY) {
+                throw new UnsupportedOperationException("Can't update read-only object in region " + region.getName());
+            }
+        }
+    }
+
+    private static class EntityAccess extends LocalAccess implements EntityRegionAccessStrategy {
+        EntityAccess(LocalEntityRegion region, AccessType accessType) {
+            super(region, accessType);
+        }
+
+        @Override
+        public EntityRegion getRegion() {
+            return (EntityRegion) region;
+        }
+
+        @Override
+        public boolean insert(Object key, Object value, Object version) throws CacheException {
+            // Not visible to other sessions until commit, see afterInsert
+            return false;
+        }
+
+        @Override
+        public boolean afterInsert(Object key, Object value, Object version) throws CacheException {
+            return region.putIfAbsent(key, value);
+        }
+
+        @Override
+        public boolean update(Object key, Object value, Object currentVersion, Object previousVersion) throws CacheException {
+            checkWritable();
+            return false;
+        }
+
+        @Override
+        public boolean afterUpdate(Object key, Object value, Object currentVersion, Object previousVersion,
+                SoftLock lock) throws CacheException {
+            region.unlock(key);
+            return false;
+        }
+    }
+
+    private static class CollectionAccess extends LocalAccess implements CollectionRegionAccessStrategy {
+        CollectionAccess(LocalCollectionRegion region, AccessType accessType) {
+            super(region, accessType);
+        }
+
+        @Override
+        public CollectionRegion getRegion() {
+            return (CollectionRegion) region;
+        }
+    }
+
+    private static class NaturalIdAccess extends LocalAccess implements NaturalIdRegionAccessStrategy {
+        NaturalIdAccess(LocalNaturalIdRegion region, AccessType accessType) {
+            super(region, accessType);
+        }
+
+        @Override
+        public NaturalIdRegion getRegion() {
+            return (NaturalIdRegion) region;
+        }
+
+        @Override
+        public boolean insert(Object key, Object value) throws CacheException {
+            return false;
+        }
+
+        @Override
+        public boolean afterInsert(Object key, Object value) throws CacheException {
+            return region.putIfAbsent(key, value);
+        }
+
+        @Override
+        public boolean update(Object key, Object value) throws CacheException {
+            checkWritable();
+            return false;
+        }
+
+        @Override
+        public boolean afterUpdate(Object key, Object value, SoftLock lock) throws CacheException {
+            region.unlock(key);
+            return false;
+        }
+    }
+
+    // ========== ENTRIES ==========
+
+    private static class Item {
+        final Object value;
+        final long createdAt = System.currentTimeMillis();
+
+        Item(Object value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Marks a key that is being written. Reads miss while it is held, and a
+     * load that began before it was released may not replace it.
+     */
+    private static final class ItemLock extends Item implements SoftLock {
+        int holders;
+        long unlockedAt;
+
+        ItemLock() {
+            super(null);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Warns when a sale takes a product down to its reorder level.
+ * Each product is reported once until a sale shows it above the level
+ * again (i.e. after a restock). Warnings also go to live dashboards.
+ *
+ * @author andyb
+ */
+public class LowStockMonitor implements SaleEventListener {
+    
+    // productId -> stock when last reported
+    private final Map<Integer, Integer> reported = new ConcurrentHashMap<>();
+    
+    @Override
+    public void onSaleCommitted(SaleCommitted event) {
+        if (event.getStockAfter() < 0) {
+            return; // stock unknown for this event
+        }
+        if (event.getStockAfter() > event.getReorderLevel()) {
+            reported.remove(event.getProductId());
+            return;
+        }
+        if (reported.putIfAbsent(event.getProductId(), event.getStockAfter()) == null) {
+            System.out.println("[LOW STOCK] " + event.getProductName() + " (ID: " + event.getProductId()
+                    + ") is down to " + event.getStockAfter() + " units, reorder level " + event.getReorderLevel());
+            if (DashboardPublisher.isEnabled()) {
+                DashboardPublisher.getInstance().lowStock(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.Environment;
+import org.hibernate.engine.jdbc.connections.internal.ConnectionProviderInitiator;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+/**
+ * JDBC connection pool used by Hibernate instead of its built-in
+ * DriverManager provider, which is not meant for production and opened
+ * connections far more often than the short DAO sessions need.
+ *
+ * The URL, driver and credentials come from the hibernate.connection.*
+ * settings. Pool behaviour comes from the db.pool.* keys in
+ * server.properties:
+ * - minIdle/maxSize: connections kept open when quiet, and the hard limit
+ * - acquireTimeoutMs: how long getConnection() waits when all are in use
+ * - validateAfterIdleMs: a connection idle longer than this is checked with
+ *   Connection.isValid() before it is handed out (0 = check every time)
+ * - idleTimeoutMs/maxLifetimeMs: idle connections above minIdle are closed,
+ *   and every connection is replaced after maxLifetimeMs so the database's
+ *   wait_timeout never closes one under us
+ * - leakDetectionThresholdMs: a connection held longer than this is reported
+ *   with the stack trace of the code that borrowed it (0 = off, the
+ *   default). A diagnostic: every borrow captures a stack trace while it
+ *   is on
+ * - statementCacheSize/statementCacheSqlLimit/useServerPrepStmts: prepared
+ *   statement caching, done by the MySQL driver per connection
+ *
+ * The read replica's session factory (see ReplicaRouter) gets a pool of its
+ * own, named by the POOL_NAME setting; db.replica.pool.* keys override the
+ * db.pool.* ones for it.
+ *
+ * @author andyb
+ */
+public class PooledConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Hibernate setting naming the pool; "replica" for the read replica */
+    public static final String POOL_NAME = "util.pool.name";
+
+    // The providers Hibernate is using, for stats
+    private static volatile PooledConnectionProvider active;
+    private static volatile PooledConnectionProvider replica;
+
+    private boolean isReplica;
+    private String label = "[CONNECTION POOL]";
+
+    private String url;
+    private Properties connectionProps;
+    private boolean autocommit;
+
+    private int minIdle;
+    private int maxSize;
+    private long acquireTimeoutMillis;
+    private int validationTimeoutSeconds;
+    private long validateAfterIdleMillis;
+    private long idleTimeoutMillis;
+    private long maxLifetimeMillis;
+    private long leakThresholdMillis;
+
+    // Most recently returned first, so the warm connections get reused
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Map<Connection, PooledConnection> leased = new ConcurrentHashMap<>();
+    private Semaphore permits;
+    private final AtomicInteger total = new AtomicInteger();
+
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksReported = new AtomicLong();
+
+    private Timer maintenanceTimer;
+    private volatile boolean stopped;
+
+    /**
+     * Pool of the running server, or null if Hibernate is using another provider
+     */
+    public static PooledConnectionProvider getActive() {
+        return active;
+    }
+
+    /**
+     * Pool of the read replica, or null if no replica is configured
+     */
+    public static PooledConnectionProvider getReplica() {
+        return replica;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes") // Configurable.configure takes a raw Map in Hibernate 4.3
+    public void configure(Map configurationValues) {
+        isReplica = "replica".equals(ConfigurationHelper.getString(POOL_NAME, configurationValues));
+        if (isReplica) {
+            label = "[CONNECTION POOL replica]";
+        }
+        url = ConfigurationHelper.getString(Environment.URL, configurationValues);
+        if (url == null) {
+            throw new HibernateException("No JDBC URL set in " + Environment.URL);
+        }
+        String driverClass = ConfigurationHelper.getString(Environment.DRIVER, configurationValues);
+        if (driverClass != null) {
+            try {
+                Class.forName(driverClass);
+            } catch (ClassNotFoundException e) {
+                throw new HibernateException("JDBC driver class not found: " + driverClass, e);
+            }
+        }
+        autocommit = ConfigurationHelper.getBoolean(Environment.AUTOCOMMIT, configurationValues, false);
+
+        // user, password and any other hibernate.connection.* driver settings
+        connectionProps = ConnectionProviderInitiator.getConnectionProperties(configurationValues);
+        applyStatementCache();
+        if (url.startsWith("jdbc:mysql:")) {
+            // Answer isReadOnly()/getAutoCommit() from the driver's own state
+            // instead of asking the server each time a connection is reset
+            connectionProps.setProperty("useLocalSessionState", "true");
+        }
+
+        maxSize = (int) Math.max(1, setting("maxSize", 20));
+        minIdle = (int) Math.min(maxSize, Math.max(0, setting("minIdle", 2)));
+        acquireTimeoutMillis = setting("acquireTimeoutMs", 5000);
+        validationTimeoutSeconds = (int) setting("validationTimeoutSec", 2);
+        validateAfterIdleMillis = setting("validateAfterIdleMs", 30000);
+        idleTimeoutMillis = setting("idleTimeoutMs", 10 * 60 * 1000L);
+        maxLifetimeMillis = setting("maxLifetimeMs", 30 * 60 * 1000L);
+        leakThresholdMillis = setting("leakDetectionThresholdMs", 0);
+        permits = new Semaphore(maxSize, true);
+
+        fillToMinimum();
+        startMaintenanceTask();
+        if (isReplica) {
+            replica = this;
+        } else {
+            active = this;
+        }
+
+        System.out.println(label + " Started: minIdle=" + minIdle + ", maxSize=" + maxSize
+                + ", leakDetection=" + (leakThresholdMillis > 0 ? leakThresholdMillis + "ms" : "off"));
+    }
+
+    /**
+     * Prepared statement caching lives in the MySQL driver: each pooled
+     * connection keeps its own cache, so a statement prepared once is reused
+     * for the lifetime of the connection.
+     */
+    private void applyStatementCache() {
+        int cacheSize = ServerConfig.getInt("db.pool.statementCacheSize", 250);
+        if (cacheSize <= 0 || !url.startsWith("jdbc:mysql:")) {
+            return;
+        }
+        connectionProps.setProperty("cachePrepStmts", "true");
+        connectionProps.setProperty("prepStmtCacheSize", String.valueOf(cacheSize));
+        connectionProps.setProperty("prepStmtCacheSqlLimit",
+                String.valueOf(ServerConfig.getInt("db.pool.statementCacheSqlLimit", 2048)));
+        connectionProps.setProperty("useServerPrepStmts",
+                String.valueOf(ServerConfig.getBoolean("db.pool.useServerPrepStmts", true)));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (stopped) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.incrementAndGet();
+                throw new SQLException("No database connection free after " + acquireTimeoutMillis
+                        + " ms (" + getStats() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null && !isUsable(pooled)) {
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.lease(leakThresholdMillis > 0);
+            leased.put(pooled.connection, pooled);
+            borrowed.incrementAndGet();
+            return pooled.connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void closeConnection(Connection conn) throws SQLException {
+        PooledConnection pooled = leased.remove(conn);
+        if (pooled == null) {
+            // Not one of ours (or handed back twice)
+            conn.close();
+            return;
+        }
+        try {
+            if (pooled.leakReported) {
+                System.err.println("[CONNECTION POOL] Reported connection returned after "
+                        + (System.currentTimeMillis() - pooled.leasedAt) + " ms");
+            }
+            if (stopped || total.get() > maxSize || pooled.isExpired(maxLifetimeMillis) || !reset(pooled)) {
+                discard(pooled);
+            } else {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        if (maintenanceTimer != null) {
+            maintenanceTimer.cancel();
+        }
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+        if (!leased.isEmpty()) {
+            System.err.println("[CONNECTION POOL] " + leased.size()
+                    + " connection(s) still in use at shutdown, they will be closed when returned");
+        }
+        if (active == this) {
+            active = null;
+        }
+        if (replica == this) {
+            replica = null;
+        }
+        System.out.println(label + " Stopped (" + getStats() + ")");
+    }
+
+    /**
+     * A pool setting: db.replica.pool.key for the replica pool if set,
+     * otherwise db.pool.key
+     */
+    private long setting(String key, long defaultValue) {
+        long value = ServerConfig.getLong("db.pool." + key, defaultValue);
+        return isReplica ? ServerConfig.getLong("db.replica.pool." + key, value) : value;
+    }
+
+    /**
+     * One-line summary of pool usage
+     */
+    public String getStats() {
+        return "active=" + leased.size()
+                + ", idle=" + idle.size()
+                + ", total=" + total.get()
+                + ", max=" + maxSize
+                + ", waiting=" + (permits != null ? permits.getQueueLength() : 0)
+                + ", borrowed=" + borrowed.get()
+                + ", created=" + created.get()
+                + ", timeouts=" + acquireTimeouts.get()
+                + ", validationFailures=" + validationFailures.get()
+                + ", leaks=" + leaksReported.get();
+    }
+
+    public int getActiveCount() {
+        return leased.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection conn = DriverManager.getConnection(url, connectionProps);
+        try {
+            if (conn.getAutoCommit() != autocommit) {
+                conn.setAutoCommit(autocommit);
+            }
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        total.incrementAndGet();
+        created.incrementAndGet();
+        return new PooledConnection(conn);
+    }
+
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            // Already broken, nothing to clean up
+        }
+    }
+
+    /**
+     * A connection that sat idle for a while is checked before reuse, since
+     * the database or a firewall may have dropped it in the meantime.
+     */
+    private boolean isUsable(PooledConnection pooled) {
+        if (pooled.isExpired(maxLifetimeMillis)) {
+            return false;
+        }
+        if (System.currentTimeMillis() - pooled.lastUsed < validateAfterIdleMillis) {
+            return true;
+        }
+        try {
+            if (pooled.connection.isValid(validationTimeoutSeconds)) {
+                return true;
+            }
+        } catch (SQLException e) {
+            // Treated as invalid
+        }
+        validationFailures.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Put a returned connection back the way a new one starts out, so state
+     * left by one session never leaks into the next
+     */
+    private boolean reset(PooledConnection pooled) {
+        Connection conn = pooled.connection;
+        try {
+            if (conn.isClosed()) {
+                return false;
+            }
+            if (!conn.getAutoCommit()) {
+                // Ends any transaction the session left open
+                conn.rollback();
+            }
+            if (conn.getAutoCommit() != autocommit) {
+                conn.setAutoCommit(autocommit);
+            }
+            if (conn.isReadOnly()) {
+                conn.setReadOnly(false);
+            }
+            conn.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("[CONNECTION POOL] Dropping connection that could not be reset: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!stopped && total.get() < minIdle) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                System.err.println("[CONNECTION POOL] Could not open connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void startMaintenanceTask() {
+        long interval = Math.max(1000, ServerConfig.getLong("db.pool.housekeepingMs", 30000));
+        maintenanceTimer = new Timer("ConnectionPoolMaintenance", true);
+        maintenanceTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    evictIdle();
+                    fillToMinimum();
+                    reportLeaks();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }, interval, interval);
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> snapshot = new ArrayList<>(idle);
+        for (PooledConnection pooled : snapshot) {
+            boolean tooOld = pooled.isExpired(maxLifetimeMillis);
+            boolean unused = now - pooled.lastUsed > idleTimeoutMillis && total.get() > minIdle;
+            // remove() fails if a borrower took it in the meantime
+            if ((tooOld || unused) && idle.remove(pooled)) {
+                discard(pooled);
+            }
+        }
+    }
+
+    private void reportLeaks() {
+        if (leakThresholdMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : leased.values()) {
+            if (!pooled.leakReported && now - pooled.leasedAt > leakThresholdMillis) {
+                pooled.leakReported = true;
+                leaksReported.incrementAndGet();
+                System.err.println("[CONNECTION POOL] Connection held for " + (now - pooled.leasedAt)
+                        + " ms, possible leak. Borrowed by thread " + pooled.leasedBy + " at:");
+                if (pooled.borrowTrace != null) {
+                    pooled.borrowTrace.printStackTrace();
+                }
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes") // raw in Hibernate 4.3's Wrapped
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType)
+                || PooledConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    /**
+     * A physical connection and its bookkeeping
+     */
+    private static final class PooledConnection {
+        final Connection connection;
+        final long createdAt = System.currentTimeMillis();
+        volatile long lastUsed = createdAt;
+        volatile long leasedAt;
+        volatile String leasedBy;
+        volatile Throwable borrowTrace;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        void lease(boolean captureTrace) {
+            leasedAt = System.currentTimeMillis();
+            leasedBy = Thread.currentThread().getName();
+            borrowTrace = captureTrace ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+        }
+
+        boolean isExpired(long maxLifetimeMillis) {
+            return maxLifetimeMillis > 0 && System.currentTimeMillis() - createdAt > maxLifetimeMillis;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Optimistic-locking settings and per-product conflict counters.
+ *
+ * With sales.lockMode=OPTIMISTIC a sale reads the product without a row
+ * lock and relies on Product's @Version column; a concurrent change makes
+ * the commit fail and the sale is retried with bounded backoff. Every
+ * attempt and every conflict is counted per product. A product whose
+ * conflict rate stays above sales.optimistic.pessimisticThreshold goes back
+ * to the PESSIMISTIC_WRITE path, since for that SKU the lock is cheaper
+ * than the retries.
+ *
+ * @author andyb
+ */
+public class ProductContention {
+
+    // Counts are halved once a product has this many attempts, so the
+    // rate follows recent traffic rather than all-time traffic
+    private static final int WINDOW = 1000;
+
+    private static final Map<Integer, Stats> stats = new ConcurrentHashMap<>();
+
+    private ProductContention() {
+    }
+
+    /**
+     * Whether sales use the @Version path (sales.lockMode=OPTIMISTIC)
+     */
+    public static boolean isOptimistic() {
+        return "OPTIMISTIC".equalsIgnoreCase(ServerConfig.getString("sales.lockMode", "PESSIMISTIC"));
+    }
+
+    public static int getMaxRetries() {
+        return ServerConfig.getInt("sales.optimistic.maxRetries", 5);
+    }
+
+    public static void recordAttempt(int productId) {
+        statsFor(productId).attempt();
+    }
+
+    public static void recordConflict(int productId) {
+        Stats s = statsFor(productId);
+        s.conflict();
+        if (!s.reported && prefersPessimistic(productId)) {
+            s.reported = true;
+            System.out.println("[CONTENTION] Product " + productId + " conflicts on "
+                    + String.format("%.0f%%", getConflictRate(productId) * 100)
+                    + " of optimistic attempts; using row locks for it");
+        }
+    }
+
+    /**
+     * Share of recent optimistic attempts on this product that conflicted
+     */
+    public static double getConflictRate(int productId) {
+        Stats s = stats.get(productId);
+        return s != null ? s.rate() : 0.0;
+    }
+
+    /**
+     * True once a product has enough samples and a conflict rate above
+     * sales.optimistic.pessimisticThreshold
+     */
+    public static boolean prefersPessimistic(int productId) {
+        Stats s = stats.get(productId);
+        if (s == null || s.attempts < ServerConfig.getInt("sales.optimistic.minSamples", 20)) {
+            return false;
+        }
+        return s.rate() >= ServerConfig.getInt("sales.optimistic.pessimisticThreshold", 30) / 100.0;
+    }
+
+    /**
+     * Products whose conflict rate says the pessimistic path is better
+     * @return productId -> conflict rate, ordered by productId
+     */
+    public static Map<Integer, Double> getContendedProducts() {
+        Map<Integer, Double> contended = new TreeMap<>();
+        for (Integer productId : stats.keySet()) {
+            if (prefersPessimistic(productId)) {
+                contended.put(productId, getConflictRate(productId));
+            }
+        }
+        return contended;
+    }
+
+    /**
+     * Sleep before retry number {@code attempt} (0-based): exponential,
+     * capped, with jitter so retrying tills do not collide again
+     */
+    public static void backoff(int attempt) {
+        long base = ServerConfig.getLong("sales.optimistic.backoffMs", 5);
+        long max = ServerConfig.getLong("sales.optimistic.maxBackoffMs", 200);
+        long delay = Math.min(max, base << Math.min(attempt, 16));
+        try {
+            Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Stats statsFor(int productId) {
+        return stats.computeIfAbsent(productId, id -> new Stats());
+    }
+
+    private static class Stats {
+        int attempts;
+        int conflicts;
+        volatile boolean reported;
+
+        synchronized void attempt() {
+            attempts++;
+            if (attempts > WINDOW) {
+                attempts /= 2;
+                conflicts /= 2;
+                reported = false;
+            }
+        }
+
+        synchronized void conflict() {
+            conflicts++;
+        }
+
+        synchronized double rate() {
+            return attempts == 0 ? 0.0 : Math.min(1.0, (double) conflicts / attempts);
+        }
+    }
+}
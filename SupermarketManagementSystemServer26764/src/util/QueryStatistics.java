@@ -0,0 +1,225 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.CollectionStatistics;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.Statistics;
+import org.hibernate.stat.internal.ConcurrentStatisticsImpl;
+import org.hibernate.stat.spi.StatisticsFactory;
+import org.hibernate.stat.spi.StatisticsImplementor;
+
+/**
+ * Per-statement query statistics, in place of hibernate.show_sql.
+ *
+ * HibernateUtil installs this as the Hibernate Statistics implementation
+ * (db.stats.enabled). On top of Hibernate's own counters, every HQL or
+ * native query executed is recorded under its query string: calls, rows
+ * returned, a latency histogram and the DAO operations that ran it (set by
+ * BaseDao for the length of each unit of work). A query that takes at
+ * least db.stats.slowQueryMs is logged as it happens, with its operation.
+ * getReport() lists the queries by total time, followed by the entities
+ * and collections loaded most often (many fetches of one collection is
+ * the mark of an N+1 pattern).
+ *
+ * Hibernate measures query time in whole milliseconds, and work done with
+ * plain JDBC in session.doWork is not seen here (DaoTimings still times
+ * the DAO call around it).
+ *
+ * @author andyb
+ */
+public class QueryStatistics extends ConcurrentStatisticsImpl {
+
+    // Upper bounds of the latency buckets in ms; the last bucket is open
+    private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private static final Map<String, QueryStats> queries = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> currentOperation = new ThreadLocal<>();
+
+    private final long slowQueryMillis;
+
+    /**
+     * Named in hibernate.stats.factory
+     */
+    public static class Factory implements StatisticsFactory {
+        @Override
+        public StatisticsImplementor buildStatistics(SessionFactoryImplementor sessionFactory) {
+            return new QueryStatistics(sessionFactory);
+        }
+    }
+
+    public QueryStatistics(SessionFactoryImplementor sessionFactory) {
+        super(sessionFactory);
+        slowQueryMillis = ServerConfig.getLong("db.stats.slowQueryMs", 200);
+    }
+
+    /**
+     * DAO operation the current thread is running, for the statistics of
+     * the queries it executes (null when it is done)
+     * @return the operation it replaces, to be set back afterwards
+     */
+    public static String setOperation(String operation) {
+        String previous = currentOperation.get();
+        if (operation == null) {
+            currentOperation.remove();
+        } else {
+            currentOperation.set(operation);
+        }
+        return previous;
+    }
+
+    @Override
+    public void queryExecuted(String query, int rows, long time) {
+        super.queryExecuted(query, rows, time);
+        if (query == null) {
+            return;
+        }
+        String operation = currentOperation.get();
+        QueryStats stats = queries.computeIfAbsent(query, k -> new QueryStats());
+        stats.count.increment();
+        stats.rows.add(rows);
+        stats.totalMillis.add(time);
+        stats.maxMillis.accumulateAndGet(time, Math::max);
+        stats.histogram.incrementAndGet(bucket(time));
+        if (operation != null && stats.operations.size() < 10) {
+            stats.operations.add(operation);
+        }
+        if (slowQueryMillis > 0 && time >= slowQueryMillis) {
+            System.out.println("[SLOW QUERY] " + time + " ms, " + rows + " rows"
+                    + (operation != null ? ", " + operation : "") + ": " + shorten(query, 300));
+        }
+    }
+
+    private static int bucket(long millis) {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            if (millis < BUCKETS[i]) {
+                return i;
+            }
+        }
+        return BUCKETS.length;
+    }
+
+    /**
+     * Queries slowest total first (at most db.stats.reportTop), then the
+     * entity and collection loads of the primary
+     */
+    public static List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+        SessionFactory factory = HibernateUtil.getSessionFactory();
+        Statistics statistics = factory.getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            lines.add("Query statistics are off (db.stats.enabled=false)");
+            return lines;
+        }
+        int top = ServerConfig.getInt("db.stats.reportTop", 20);
+
+        lines.add(String.format("Queries=%d statements=%d entityLoads=%d entityFetches=%d collectionFetches=%d "
+                + "sessions=%d transactions=%d",
+                statistics.getQueryExecutionCount(), statistics.getPrepareStatementCount(),
+                statistics.getEntityLoadCount(), statistics.getEntityFetchCount(),
+                statistics.getCollectionFetchCount(), statistics.getSessionOpenCount(),
+                statistics.getTransactionCount()));
+
+        List<Map.Entry<String, QueryStats>> entries = new ArrayList<>(queries.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().totalMillis.sum(), a.getValue().totalMillis.sum()));
+        for (int i = 0; i < entries.size() && i < top; i++) {
+            QueryStats stats = entries.get(i).getValue();
+            long count = stats.count.sum();
+            lines.add(String.format("%6d calls total=%dms avg=%.1fms p50<%s p95<%s p99<%s max=%dms rows/call=%.1f %s",
+                    count, stats.totalMillis.sum(), count > 0 ? (double) stats.totalMillis.sum() / count : 0.0,
+                    percentile(stats, 0.50), percentile(stats, 0.95), percentile(stats, 0.99),
+                    stats.maxMillis.get(), count > 0 ? (double) stats.rows.sum() / count : 0.0,
+                    stats.operations));
+            lines.add("         " + histogram(stats) + " " + shorten(entries.get(i).getKey(), 200));
+        }
+
+        List<String[]> loads = new ArrayList<>();
+        for (String entity : statistics.getEntityNames()) {
+            EntityStatistics entityStats = statistics.getEntityStatistics(entity);
+            if (entityStats.getLoadCount() + entityStats.getFetchCount() > 0) {
+                loads.add(new String[] {entity, String.valueOf(entityStats.getLoadCount() + entityStats.getFetchCount()),
+                    "loads=" + entityStats.getLoadCount() + " fetches=" + entityStats.getFetchCount()});
+            }
+        }
+        for (String role : statistics.getCollectionRoleNames()) {
+            CollectionStatistics collectionStats = statistics.getCollectionStatistics(role);
+            if (collectionStats.getFetchCount() > 0) {
+                loads.add(new String[] {role, String.valueOf(collectionStats.getFetchCount()),
+                    "fetches=" + collectionStats.getFetchCount()});
+            }
+        }
+        loads.sort((a, b) -> Long.compare(Long.parseLong(b[1]), Long.parseLong(a[1])));
+        for (int i = 0; i < loads.size() && i < top; i++) {
+            lines.add(String.format("%-45s %s", loads.get(i)[0], loads.get(i)[2]));
+        }
+        return lines;
+    }
+
+    public static void printReport() {
+        System.out.println("\n=== QUERY STATISTICS ===");
+        for (String line : getReport()) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Start counting again, for Hibernate's counters too
+     */
+    public static void reset() {
+        queries.clear();
+        HibernateUtil.getSessionFactory().getStatistics().clear();
+    }
+
+    /**
+     * Upper bound of the bucket holding the given fraction of the calls
+     */
+    private static String percentile(QueryStats stats, double fraction) {
+        long count = stats.count.sum();
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < stats.histogram.length(); i++) {
+            seen += stats.histogram.get(i);
+            if (seen >= target && seen > 0) {
+                return i < BUCKETS.length ? BUCKETS[i] + "ms" : "inf";
+            }
+        }
+        return "-";
+    }
+
+    private static String histogram(QueryStats stats) {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < stats.histogram.length(); i++) {
+            long n = stats.histogram.get(i);
+            if (n > 0) {
+                if (text.length() > 1) {
+                    text.append(' ');
+                }
+                text.append(i < BUCKETS.length ? "<" + BUCKETS[i] : ">=" + BUCKETS[BUCKETS.length - 1])
+                    .append(':').append(n);
+            }
+        }
+        return text.append(']').toString();
+    }
+
+    private static String shorten(String query, int max) {
+        String oneLine = query.replaceAll("\\s+", " ").trim();
+        return oneLine.length() <= max ? oneLine : oneLine.substring(0, max) + "...";
+    }
+
+    private static class QueryStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder totalMillis = new LongAdder();
+        final AtomicLong maxMillis = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+        final Set<String> operations = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -0,0 +1,212 @@
+package util;
+
+import dao.SupplierDao;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import model.Supplier;
+import model.SupplierSummary;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+/**
+ * Checks read replica routing against two independent databases, e.g. two
+ * embedded ones:
+ *
+ *   -Ddb.replica.enabled=true
+ *   -Dreplica.hibernate.connection.url=jdbc:h2:mem:replica;MODE=MySQL;DB_CLOSE_DELAY=-1
+ *   -Dreplica.hibernate.hbm2ddl.auto=create
+ *
+ * There is no replication between them, so this class plays the replica
+ * stream: it copies the heartbeat row from the primary to the replica, and
+ * stops to make the replica fall behind. A marker supplier that exists
+ * only on the replica shows which database served each read. It writes to
+ * the replica, so never point it at a real one. Exits with status 1 if any
+ * check fails.
+ *
+ * @author andyb
+ */
+public class ReplicaDiagnostic {
+
+    private static final String MARKER = "Replica marker supplier";
+    private static final String OPERATION = "SupplierDao.findAllSummaries";
+
+    private static int failures = 0;
+    private static volatile boolean replicating = true;
+
+    public static void main(String[] args) {
+        System.out.println("==========================================");
+        System.out.println("   READ REPLICA DIAGNOSTIC");
+        System.out.println("==========================================\n");
+
+        // Short bounds so the checks run in seconds
+        defaultProperty("db.replica.operations", OPERATION);
+        defaultProperty("db.replica.heartbeatMs", "200");
+        defaultProperty("db.replica.maxLagMs", "1000");
+        long maxLag = ServerConfig.getLong("db.replica.maxLagMs", 1000);
+
+        HibernateUtil.getSessionFactory();
+        SchemaMigrations.run();
+        if (!ReplicaRouter.isEnabled()) {
+            System.out.println("❌ No replica session factory (set db.replica.enabled=true and replica.hibernate.*)");
+            HibernateUtil.shutdown();
+            System.exit(1);
+        }
+        SessionFactory replica = HibernateUtil.getReplicaSessionFactory();
+
+        inTransaction(replica, session -> session.doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS replica_heartbeat "
+                        + "(id INT NOT NULL PRIMARY KEY, beat_at BIGINT NOT NULL)");
+                statement.execute("DELETE FROM replica_heartbeat");
+                statement.execute("INSERT INTO replica_heartbeat (id, beat_at) VALUES (1, 0)");
+            }
+        }));
+        Supplier marker = new Supplier();
+        marker.setSupplierName(MARKER);
+        marker.setRegistrationDate(new Date());
+        inTransaction(replica, session -> session.save(marker));
+
+        Timer replication = new Timer("ReplicationStream", true);
+        replication.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                if (replicating) {
+                    copyHeartbeat(replica);
+                }
+            }
+        }, 0, 100);
+
+        SupplierDao supplierDao = new SupplierDao();
+        ReplicaRouter router = ReplicaRouter.getInstance();
+
+        System.out.println("Replica within its lag bound:");
+        check("replica becomes healthy", waitFor(router, true, maxLag * 3));
+        check(OPERATION + " served by the replica", servedByReplica(supplierDao.findAllSummaries()));
+        supplierDao.findAll();
+        check("SupplierDao.findAll (not routed) stays on the primary",
+                DaoTimings.getInstance().getMaxStatements("SupplierDao.findAll@replica") < 0);
+        Supplier written = new Supplier();
+        written.setSupplierName("Replica diagnostic write");
+        written.setRegistrationDate(new Date());
+        supplierDao.save(written);
+        check("SupplierDao.save goes to the primary",
+                DaoTimings.getInstance().getMaxStatements("SupplierDao.save@replica") < 0);
+
+        System.out.println("\nReplica falls behind:");
+        replicating = false;
+        check("router falls back to the primary", waitFor(router, false, maxLag * 3));
+        check(OPERATION + " served by the primary", !servedByReplica(supplierDao.findAllSummaries()));
+
+        System.out.println("\nReplica catches up:");
+        replicating = true;
+        check("router routes to the replica again", waitFor(router, true, maxLag * 3));
+        check(OPERATION + " served by the replica", servedByReplica(supplierDao.findAllSummaries()));
+
+        System.out.println("\nQuery fails on the replica:");
+        inTransaction(replica, session -> session.doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE product_supplier");
+            }
+        }));
+        List<SupplierSummary> rows = supplierDao.findAllSummaries();
+        check(OPERATION + " retried on the primary", rows != null && !servedByReplica(rows));
+        check("failure counted by the router", router.getReplicaFailures() > 0);
+
+        System.out.println("\n  " + router.getStats());
+        System.out.println("\n==========================================");
+        System.out.println(failures == 0 ? "ALL REPLICA CHECKS PASSED" : failures + " REPLICA CHECK(S) FAILED");
+        System.out.println("==========================================");
+        replication.cancel();
+        router.shutdown();
+        HibernateUtil.shutdown();
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void defaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static boolean servedByReplica(List<SupplierSummary> rows) {
+        if (rows != null) {
+            for (SupplierSummary row : rows) {
+                if (MARKER.equals(row.getSupplierName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean waitFor(ReplicaRouter router, boolean healthy, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (router.isHealthy() != healthy) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void copyHeartbeat(SessionFactory replica) {
+        try {
+            long[] beat = {0};
+            inTransaction(HibernateUtil.getSessionFactory(), session -> session.doWork(connection -> {
+                try (PreparedStatement select = connection.prepareStatement(
+                        "SELECT beat_at FROM replica_heartbeat WHERE id = 1");
+                     ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) {
+                        beat[0] = rs.getLong(1);
+                    }
+                }
+            }));
+            inTransaction(replica, session -> session.doWork(connection -> {
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE replica_heartbeat SET beat_at = ? WHERE id = 1")) {
+                    update.setLong(1, beat[0]);
+                    update.executeUpdate();
+                }
+            }));
+        } catch (Exception e) {
+            System.err.println("[REPLICA] Heartbeat copy failed: " + e.getMessage());
+        }
+    }
+
+    private interface SessionTask {
+        void run(Session session);
+    }
+
+    private static void inTransaction(SessionFactory factory, SessionTask task) {
+        Session session = factory.openSession();
+        Transaction transaction = session.beginTransaction();
+        try {
+            task.run(session);
+            transaction.commit();
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void check(String what, boolean ok) {
+        System.out.println("  " + (ok ? "✓ " : "❌ ") + what);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
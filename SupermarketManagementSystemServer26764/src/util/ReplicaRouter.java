@@ -0,0 +1,256 @@
+package util;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+/**
+ * Sends reporting reads to the read replica so month-end reports and the
+ * dashboard do not compete with checkout for the primary's connections.
+ *
+ * Only read-only DAO work is routed (BaseDao.executeReadOnly), and only
+ * when it is one of the db.replica.operations (exact names such as
+ * "SalesDao.findByDateRange", "DashboardDao.*", or "*" for every read) or
+ * runs inside reporting(...). Writes always use the primary.
+ *
+ * Staleness: every db.replica.heartbeatMs the primary stamps the time in
+ * replica_heartbeat and the replica is asked for the stamp it has. While
+ * the replica is more than db.replica.maxLagMs behind (or cannot be read),
+ * routed reads go to the primary, and move back when it catches up. A
+ * routed read that fails on the replica is retried on the primary at once
+ * and the replica is skipped until the next good heartbeat.
+ *
+ * @author andyb
+ */
+public class ReplicaRouter {
+
+    // Singleton instance
+    private static ReplicaRouter instance;
+
+    private static final ThreadLocal<Boolean> reporting = new ThreadLocal<>();
+
+    private final SessionFactory replica;
+    private final long maxLagMillis;
+    private final List<String> operations = new ArrayList<>();
+    private final Timer heartbeatTimer;
+
+    private volatile boolean healthy;
+    private volatile long lagMillis = -1;
+
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryFallbacks = new AtomicLong();
+    private final AtomicLong replicaFailures = new AtomicLong();
+
+    private ReplicaRouter() {
+        replica = HibernateUtil.getReplicaSessionFactory();
+        maxLagMillis = ServerConfig.getLong("db.replica.maxLagMs", 5000);
+        for (String operation : ServerConfig.getString("db.replica.operations",
+                "DashboardDao.*,SalesDao.findByDateRange,SalesDao.getDailySalesForChart,SalesRollupDao.getDailyRevenue").split(",")) {
+            if (!operation.trim().isEmpty()) {
+                operations.add(operation.trim());
+            }
+        }
+
+        // First check before any read is routed
+        heartbeat();
+        long interval = Math.max(100, ServerConfig.getLong("db.replica.heartbeatMs", 1000));
+        heartbeatTimer = new Timer("ReplicaHeartbeat", true);
+        heartbeatTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                heartbeat();
+            }
+        }, interval, interval);
+
+        System.out.println("[REPLICA] Routing " + operations + " to the replica, maxLag=" + maxLagMillis + "ms");
+    }
+
+    /**
+     * True when a replica session factory is configured
+     */
+    public static boolean isEnabled() {
+        return HibernateUtil.getReplicaSessionFactory() != null;
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized ReplicaRouter getInstance() {
+        if (instance == null) {
+            instance = new ReplicaRouter();
+        }
+        return instance;
+    }
+
+    /**
+     * Run report code so that every read-only DAO call it makes may use the
+     * replica, whatever its operation name
+     */
+    public static <R> R reporting(Supplier<R> work) {
+        Boolean outer = reporting.get();
+        reporting.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            if (outer == null) {
+                reporting.remove();
+            }
+        }
+    }
+
+    /**
+     * Session factory for a read-only operation: the replica when the
+     * operation is routed and the replica is within its lag bound,
+     * otherwise null (use the primary)
+     */
+    public SessionFactory replicaFor(String operation) {
+        if (!isRouted(operation)) {
+            return null;
+        }
+        if (!healthy) {
+            primaryFallbacks.incrementAndGet();
+            return null;
+        }
+        replicaReads.incrementAndGet();
+        return replica;
+    }
+
+    /**
+     * A routed read failed on the replica; it is retried on the primary and
+     * the replica is not used again until the next good heartbeat
+     */
+    public void replicaFailed(String operation, Exception e) {
+        replicaFailures.incrementAndGet();
+        if (healthy) {
+            healthy = false;
+            System.err.println("[REPLICA] " + operation + " failed on the replica, reads back on the primary: "
+                    + e.getMessage());
+        }
+    }
+
+    private boolean isRouted(String operation) {
+        if (Boolean.TRUE.equals(reporting.get())) {
+            return true;
+        }
+        for (String pattern : operations) {
+            if (pattern.equals("*") || pattern.equals(operation)
+                    || (pattern.endsWith(".*") && operation.startsWith(pattern.substring(0, pattern.length() - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        try {
+            inTransaction(HibernateUtil.getSessionFactory(), session -> session.doWork(connection -> {
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE replica_heartbeat SET beat_at = ? WHERE id = 1")) {
+                    update.setLong(1, now);
+                    update.executeUpdate();
+                }
+            }));
+        } catch (Exception e) {
+            System.err.println("[REPLICA] Could not write heartbeat on the primary: " + e.getMessage());
+        }
+
+        long[] seen = {-1};
+        try {
+            inTransaction(replica, session -> session.doWork(connection -> {
+                try (PreparedStatement select = connection.prepareStatement(
+                        "SELECT beat_at FROM replica_heartbeat WHERE id = 1");
+                     ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) {
+                        seen[0] = rs.getLong(1);
+                    }
+                }
+            }));
+        } catch (Exception e) {
+            lagMillis = -1;
+            setHealthy(false, "replica cannot be read: " + e.getMessage());
+            return;
+        }
+
+        // Includes up to one heartbeat interval when replication is slow
+        lagMillis = seen[0] > 0 ? Math.max(0, now - seen[0]) : -1;
+        if (lagMillis < 0) {
+            setHealthy(false, "no heartbeat has reached the replica yet");
+        } else if (lagMillis > maxLagMillis) {
+            setHealthy(false, "replica is " + lagMillis + " ms behind (bound " + maxLagMillis + " ms)");
+        } else {
+            setHealthy(true, "replica lag " + lagMillis + " ms");
+        }
+    }
+
+    private void setHealthy(boolean nowHealthy, String reason) {
+        if (nowHealthy != healthy) {
+            System.out.println("[REPLICA] " + (nowHealthy ? "Routing reads to the replica: "
+                                                          : "Reads back on the primary: ") + reason);
+        }
+        healthy = nowHealthy;
+    }
+
+    private interface SessionTask {
+        void run(Session session);
+    }
+
+    private static void inTransaction(SessionFactory factory, SessionTask task) {
+        Session session = factory.openSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+            task.run(session);
+            transaction.commit();
+        } catch (RuntimeException e) {
+            if (transaction != null && transaction.isActive()) {
+                try { transaction.rollback(); } catch (Exception ex) {}
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Replica lag at the last heartbeat in ms, or -1 if unknown
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Routed reads that failed on the replica and were retried on the primary
+     */
+    public long getReplicaFailures() {
+        return replicaFailures.get();
+    }
+
+    /**
+     * One-line summary of routing
+     */
+    public String getStats() {
+        return (healthy ? "routing to replica" : "on primary")
+                + ", lag=" + (lagMillis >= 0 ? lagMillis + "ms" : "unknown")
+                + ", replicaReads=" + replicaReads.get()
+                + ", primaryFallbacks=" + primaryFallbacks.get()
+                + ", replicaFailures=" + replicaFailures.get();
+    }
+
+    public void shutdown() {
+        heartbeatTimer.cancel();
+        System.out.println("[REPLICA] Stopped (" + getStats() + ")");
+    }
+}
@@ -0,0 +1,35 @@
+package util;
+
+/**
+ * Prints the sale summary that processSale used to print inline, for
+ * single sales and every line of a basket.
+ *
+ * @author andyb
+ */
+public class SaleAuditLogger implements SaleEventListener {
+    
+    @Override
+    public void onSaleCommitted(SaleCommitted event) {
+        String productName = event.getProductName() != null ? event.getProductName() : "Unknown Product";
+        String employeeName = event.getEmployeeName() != null ? event.getEmployeeName() : "Unknown Employee";
+        String customerName = event.getCustomerName() != null ? event.getCustomerName() : "Unknown Customer";
+        
+        StringBuilder out = new StringBuilder();
+        out.append("========================================\n");
+        out.append("SALE PROCESSED SUCCESSFULLY!\n");
+        out.append("Sale ID: ").append(event.getSaleId()).append('\n');
+        out.append("Product: ").append(productName).append('\n');
+        out.append("Quantity: ").append(event.getQuantity()).append('\n');
+        out.append("Unit Price: RWF ").append(String.format("%.2f", event.getUnitPrice())).append('\n');
+        out.append("Total Amount: RWF ").append(String.format("%.2f", event.getTotalAmount())).append('\n');
+        out.append("Stock After: ").append(event.getStockAfter()).append('\n');
+        out.append("Sold By: ").append(employeeName).append('\n');
+        out.append("Sold To: ").append(customerName).append('\n');
+        if (event.getBasketSize() > 1) {
+            out.append("Basket: ").append(event.getBasketId())
+                    .append(" (").append(event.getBasketSize()).append(" lines)\n");
+        }
+        out.append("========================================");
+        System.out.println(out);
+    }
+}
@@ -0,0 +1,75 @@
+package util;
+
+import java.util.Date;
+
+/**
+ * Event published once a sale line is committed (or, in group-commit
+ * mode, durably logged). Immutable, so subscribers can keep it.
+ *
+ * The lines of one basket checkout share a basketId (the first line's
+ * sale ID) and carry the basket's line count; a single sale is a basket
+ * of one.
+ *
+ * @author andyb
+ */
+public final class SaleCommitted {
+    
+    private final int saleId;
+    private final int productId;
+    private final String productName;
+    private final int customerId;
+    private final String customerName;
+    private final int employeeId;
+    private final String employeeName;
+    private final int quantity;
+    private final double unitPrice;
+    private final double totalAmount;
+    private final int stockAfter;
+    private final int reorderLevel;
+    private final Date saleDate;
+    private final int basketId;
+    private final int basketSize;
+
+    public SaleCommitted(int saleId, int productId, String productName, int customerId, String customerName,
+                         int employeeId, String employeeName, int quantity, double unitPrice, double totalAmount,
+                         int stockAfter, int reorderLevel, Date saleDate) {
+        this(saleId, productId, productName, customerId, customerName, employeeId, employeeName, quantity,
+                unitPrice, totalAmount, stockAfter, reorderLevel, saleDate, saleId, 1);
+    }
+
+    public SaleCommitted(int saleId, int productId, String productName, int customerId, String customerName,
+                         int employeeId, String employeeName, int quantity, double unitPrice, double totalAmount,
+                         int stockAfter, int reorderLevel, Date saleDate, int basketId, int basketSize) {
+        this.saleId = saleId;
+        this.productId = productId;
+        this.productName = productName;
+        this.customerId = customerId;
+        this.customerName = customerName;
+        this.employeeId = employeeId;
+        this.employeeName = employeeName;
+        this.quantity = quantity;
+        this.unitPrice = unitPrice;
+        this.totalAmount = totalAmount;
+        this.stockAfter = stockAfter;
+        this.reorderLevel = reorderLevel;
+        this.saleDate = saleDate;
+        this.basketId = basketId;
+        this.basketSize = basketSize;
+    }
+
+    public int getSaleId() { return saleId; }
+    public int getProductId() { return productId; }
+    public String getProductName() { return productName; }
+    public int getCustomerId() { return customerId; }
+    public String getCustomerName() { return customerName; }
+    public int getEmployeeId() { return employeeId; }
+    public String getEmployeeName() { return employeeName; }
+    public int getQuantity() { return quantity; }
+    public double getUnitPrice() { return unitPrice; }
+    public double getTotalAmount() { return totalAmount; }
+    public int getStockAfter() { return stockAfter; }
+    public int getReorderLevel() { return reorderLevel; }
+    public Date getSaleDate() { return saleDate; }
+    public int getBasketId() { return basketId; }
+    public int getBasketSize() { return basketSize; }
+}
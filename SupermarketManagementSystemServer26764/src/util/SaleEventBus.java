@@ -0,0 +1,93 @@
+package util;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process bus for committed sales.
+ *
+ * The sale path only drops a SaleCommitted into a fixed-size ring buffer;
+ * one background thread hands each event to every subscriber. Console
+ * audit output, dashboard counters and low-stock checks therefore run off
+ * the request thread. If the buffer is full the event is dropped and
+ * counted rather than making the till wait.
+ *
+ * @author andyb
+ */
+public class SaleEventBus {
+    
+    // Singleton instance
+    private static SaleEventBus instance;
+    
+    private final BlockingQueue<SaleCommitted> ring;
+    private final List<SaleEventListener> listeners;
+    private final AtomicLong dropped;
+    private final Thread dispatcher;
+    
+    private SaleEventBus() {
+        ring = new ArrayBlockingQueue<>(ServerConfig.getInt("sales.events.bufferSize", 8192));
+        listeners = new CopyOnWriteArrayList<>();
+        dropped = new AtomicLong();
+        dispatcher = new Thread(this::dispatch, "SaleEventBus");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+    
+    /**
+     * Get singleton instance
+     */
+    public static synchronized SaleEventBus getInstance() {
+        if (instance == null) {
+            instance = new SaleEventBus();
+        }
+        return instance;
+    }
+    
+    public void subscribe(SaleEventListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void unsubscribe(SaleEventListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Queue an event for the subscribers. Never blocks.
+     */
+    public void publish(SaleCommitted event) {
+        if (!ring.offer(event)) {
+            long total = dropped.incrementAndGet();
+            if (total == 1 || total % 1000 == 0) {
+                System.err.println("[SALE EVENTS] Buffer full, " + total + " events dropped so far");
+            }
+        }
+    }
+    
+    /**
+     * Events lost because the buffer was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+    
+    private void dispatch() {
+        while (true) {
+            SaleCommitted event;
+            try {
+                event = ring.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (SaleEventListener listener : listeners) {
+                try {
+                    listener.onSaleCommitted(event);
+                } catch (Exception e) {
+                    System.err.println("[SALE EVENTS] " + listener.getClass().getSimpleName() + " failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package util;
+
+/**
+ * Subscriber to {@link SaleEventBus}. Called on the bus thread, one event
+ * at a time, so implementations do not need to be thread-safe against
+ * each other but must not block for long.
+ *
+ * @author andyb
+ */
+public interface SaleEventListener {
+    
+    void onSaleCommitted(SaleCommitted event);
+}
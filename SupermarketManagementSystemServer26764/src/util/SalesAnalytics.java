@@ -0,0 +1,371 @@
+package util;
+
+import dao.SalesRollupDao;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import model.ProductPair;
+import model.ProductRank;
+
+/**
+ * Best sellers and "bought together" figures kept in memory from the sale
+ * event stream, so the dashboard (DashboardService.getTopProducts,
+ * getTopProductsInCategory, getProductsBoughtTogether) and the best sellers
+ * report never group the sales table.
+ *
+ * Units sold are counted in Space-Saving summaries of analytics.topCapacity
+ * products each: one for the current hour, one for today and one per
+ * category for today (at most analytics.maxCategories categories, later
+ * ones share "Other"). Basket checkouts are put back together from their
+ * lines, and each pair of distinct products in a basket (the first
+ * analytics.maxBasketLines of them) is counted in a Count-Min sketch, with
+ * a Space-Saving summary of analytics.pairCapacity pairs to find the most
+ * common ones. Memory is fixed by these settings however many products,
+ * sales and baskets there are (getMemoryEstimate()).
+ *
+ * Figures are upper bounds and carry a lower bound. Today's products are
+ * seeded from the product rollup at startup; the hour and the pairs count
+ * from startup on. Sales dated before the current hour or day (offline
+ * tills) only count towards pairs.
+ *
+ * @author andyb
+ */
+public class SalesAnalytics implements SaleEventListener {
+
+    // Singleton instance
+    private static SalesAnalytics instance;
+
+    private static final String OTHER_CATEGORY = "Other";
+    // Rough heap per Space-Saving counter (counter, map entry, boxed key, tree node)
+    private static final int BYTES_PER_COUNTER = 150;
+    private static final int BYTES_PER_BASKET_LINE = 40;
+
+    public enum Period { HOUR, DAY }
+
+    private final int topCapacity;
+    private final int maxCategories;
+    private final int maxBasketLines;
+    private final int maxOpenBaskets;
+
+    // Guarded by this
+    private Date hourStart;
+    private SpaceSaving hour;
+    private Date dayStart;
+    private SpaceSaving day;
+    private final Map<String, SpaceSaving> categories = new HashMap<>();
+    private final CountMinSketch pairCounts;
+    private final SpaceSaving pairs;
+    private final Map<Integer, Basket> openBaskets;
+    private long baskets;
+    private final Date since = new Date();
+
+    private SalesAnalytics() {
+        topCapacity = Math.max(10, ServerConfig.getInt("analytics.topCapacity", 200));
+        maxCategories = Math.max(1, ServerConfig.getInt("analytics.maxCategories", 50));
+        maxBasketLines = Math.max(2, ServerConfig.getInt("analytics.maxBasketLines", 30));
+        maxOpenBaskets = Math.max(1, ServerConfig.getInt("analytics.maxOpenBaskets", 1000));
+        pairCounts = new CountMinSketch(ServerConfig.getInt("analytics.sketchDepth", 4),
+                ServerConfig.getInt("analytics.sketchWidth", 32768));
+        pairs = new SpaceSaving(ServerConfig.getInt("analytics.pairCapacity", 5000));
+        openBaskets = new LinkedHashMap<Integer, Basket>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Basket> eldest) {
+                if (size() > maxOpenBaskets) {
+                    // Lines were lost (event buffer full); count what arrived
+                    countBasket(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        roll(new Date());
+        System.out.println("[ANALYTICS] Started: at most ~" + getMemoryEstimate() / 1024 + " KB");
+    }
+
+    /**
+     * True unless analytics.enabled=false
+     */
+    public static boolean isEnabled() {
+        return ServerConfig.getBoolean("analytics.enabled", true);
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized SalesAnalytics getInstance() {
+        if (instance == null) {
+            instance = new SalesAnalytics();
+        }
+        return instance;
+    }
+
+    /**
+     * Count today's units per product from the product rollup. Subscribe to
+     * the sale event bus first.
+     */
+    public void seed() {
+        if (!SalesRollups.isEnabled()) {
+            return;
+        }
+        Date today = SalesRollupDao.startOfDay(new Date());
+        // Most sold first, so only the products that fit are needed
+        List<Object[]> rows = new SalesRollupDao().getProductUnits(today);
+        synchronized (this) {
+            roll(new Date());
+            if (!today.equals(dayStart)) {
+                return;
+            }
+            for (Object[] row : rows) {
+                long productId = ((Number) row[0]).longValue();
+                long units = ((Number) row[2]).longValue();
+                if (day.size() < day.getCapacity()) {
+                    day.add(productId, units);
+                }
+                SpaceSaving category = categorySummary((String) row[1]);
+                if (category.size() < category.getCapacity()) {
+                    category.add(productId, units);
+                }
+            }
+        }
+        System.out.println("[ANALYTICS] Seeded today's best sellers from " + rows.size() + " products");
+    }
+
+    @Override
+    public void onSaleCommitted(SaleCommitted event) {
+        // Looked up before locking; usually cached by the sale itself
+        CatalogCache.ProductInfo product = CatalogCache.getInstance().getProduct(event.getProductId());
+        String category = product != null ? product.getCategory() : null;
+
+        synchronized (this) {
+            roll(new Date());
+            Date sold = event.getSaleDate();
+            if (!sold.before(dayStart)) {
+                day.add(event.getProductId(), event.getQuantity());
+                categorySummary(category).add(event.getProductId(), event.getQuantity());
+                if (!sold.before(hourStart)) {
+                    hour.add(event.getProductId(), event.getQuantity());
+                }
+            }
+
+            if (event.getBasketSize() > 1) {
+                Basket basket = openBaskets.get(event.getBasketId());
+                if (basket == null) {
+                    basket = new Basket(event.getBasketSize());
+                    openBaskets.put(event.getBasketId(), basket);
+                }
+                if (basket.products.size() < maxBasketLines) {
+                    basket.products.add(event.getProductId());
+                }
+                if (++basket.linesSeen >= basket.lines) {
+                    openBaskets.remove(event.getBasketId());
+                    countBasket(basket);
+                }
+            }
+        }
+    }
+
+    /**
+     * Best sellers of the current hour or today, most units first
+     */
+    public List<ProductRank> getTopProducts(Period period, int limit) {
+        List<SpaceSaving.Counter> top;
+        synchronized (this) {
+            roll(new Date());
+            top = (period == Period.HOUR ? hour : day).top(limit);
+        }
+        return ranks(top);
+    }
+
+    /**
+     * Today's best sellers in one category, most units first
+     */
+    public List<ProductRank> getTopProductsInCategory(String category, int limit) {
+        List<SpaceSaving.Counter> top;
+        synchronized (this) {
+            roll(new Date());
+            SpaceSaving summary = categories.get(category != null ? category : OTHER_CATEGORY);
+            top = summary != null ? summary.top(limit) : new ArrayList<>();
+        }
+        return ranks(top);
+    }
+
+    /**
+     * Today's categories, most units first
+     */
+    public synchronized List<String> getCategories() {
+        roll(new Date());
+        List<Map.Entry<String, SpaceSaving>> entries = new ArrayList<>(categories.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().getTotal(), a.getValue().getTotal()));
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, SpaceSaving> entry : entries) {
+            names.add(entry.getKey());
+        }
+        return names;
+    }
+
+    /**
+     * Products most often in the same basket as productId, or the most
+     * common pairs overall if productId is 0
+     */
+    public List<ProductPair> getProductsBoughtTogether(int productId, int limit) {
+        List<long[]> found = new ArrayList<>();
+        synchronized (this) {
+            for (SpaceSaving.Counter pair : pairs.top(pairs.size())) {
+                int first = (int) (pair.getKey() >>> 32);
+                int second = (int) pair.getKey();
+                if (productId > 0 && first != productId && second != productId) {
+                    continue;
+                }
+                // Both are upper bounds, the smaller is closer
+                long baskets = Math.min(pair.getCount(), pairCounts.estimate(pair.getKey()));
+                if (productId > 0 && second == productId) {
+                    found.add(new long[]{second, first, baskets, pair.getGuaranteed()});
+                } else {
+                    found.add(new long[]{first, second, baskets, pair.getGuaranteed()});
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong((long[] pair) -> pair[2]).reversed());
+
+        List<ProductPair> result = new ArrayList<>();
+        for (long[] row : found.subList(0, Math.min(limit, found.size()))) {
+            ProductPair pair = new ProductPair();
+            pair.setProductId((int) row[0]);
+            pair.setProductName(productName((int) row[0]));
+            pair.setOtherProductId((int) row[1]);
+            pair.setOtherProductName(productName((int) row[1]));
+            pair.setBaskets(row[2]);
+            pair.setMinBaskets(Math.min(row[3], row[2]));
+            result.add(pair);
+        }
+        return result;
+    }
+
+    /**
+     * Basket checkouts counted since startup
+     */
+    public synchronized long getBasketCount() {
+        return baskets;
+    }
+
+    public Date getSince() {
+        return since;
+    }
+
+    /**
+     * Upper bound, in bytes, of the memory the summaries and open baskets
+     * can take with the current settings
+     */
+    public long getMemoryEstimate() {
+        long summaries = (2L + maxCategories + 1) * topCapacity + pairs.getCapacity();
+        return summaries * BYTES_PER_COUNTER
+                + (long) pairCounts.getDepth() * pairCounts.getWidth() * Long.BYTES
+                + (long) maxOpenBaskets * (maxBasketLines * BYTES_PER_BASKET_LINE + BYTES_PER_COUNTER);
+    }
+
+    /**
+     * Start new hour and day summaries when the clock passes into them
+     * (caller holds the lock)
+     */
+    private void roll(Date now) {
+        Date today = SalesRollupDao.startOfDay(now);
+        if (!today.equals(dayStart)) {
+            dayStart = today;
+            day = new SpaceSaving(topCapacity);
+            categories.clear();
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(now);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        if (!calendar.getTime().equals(hourStart)) {
+            hourStart = calendar.getTime();
+            hour = new SpaceSaving(topCapacity);
+        }
+    }
+
+    /**
+     * Today's summary for the category (caller holds the lock)
+     */
+    private SpaceSaving categorySummary(String category) {
+        String name = category != null && !category.trim().isEmpty() ? category : OTHER_CATEGORY;
+        SpaceSaving summary = categories.get(name);
+        if (summary == null) {
+            if (categories.size() >= maxCategories) {
+                name = OTHER_CATEGORY;
+                summary = categories.get(name);
+            }
+            if (summary == null) {
+                summary = new SpaceSaving(topCapacity);
+                categories.put(name, summary);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Count every pair of distinct products in the basket (caller holds the lock)
+     */
+    private void countBasket(Basket basket) {
+        if (basket.products.size() < 2) {
+            return;
+        }
+        baskets++;
+        int[] products = new int[basket.products.size()];
+        int i = 0;
+        for (Integer productId : basket.products) {
+            products[i++] = productId;
+        }
+        Arrays.sort(products);
+        for (int a = 0; a < products.length; a++) {
+            for (int b = a + 1; b < products.length; b++) {
+                long key = ((long) products[a] << 32) | (products[b] & 0xFFFFFFFFL);
+                pairCounts.add(key, 1);
+                pairs.add(key, 1);
+            }
+        }
+    }
+
+    private static List<ProductRank> ranks(List<SpaceSaving.Counter> counters) {
+        List<ProductRank> ranks = new ArrayList<>();
+        for (SpaceSaving.Counter counter : counters) {
+            int productId = (int) counter.getKey();
+            CatalogCache.ProductInfo product = CatalogCache.getInstance().getProduct(productId);
+            ProductRank rank = new ProductRank();
+            rank.setProductId(productId);
+            rank.setProductName(product != null ? product.getProductName() : "Product #" + productId);
+            rank.setCategory(product != null ? product.getCategory() : null);
+            rank.setUnits(counter.getCount());
+            rank.setMinUnits(counter.getGuaranteed());
+            ranks.add(rank);
+        }
+        return ranks;
+    }
+
+    private static String productName(int productId) {
+        CatalogCache.ProductInfo product = CatalogCache.getInstance().getProduct(productId);
+        return product != null ? product.getProductName() : "Product #" + productId;
+    }
+
+    /**
+     * Lines of one checkout received so far
+     */
+    private static class Basket {
+        final int lines;
+        int linesSeen;
+        final Set<Integer> products = new LinkedHashSet<>();
+
+        Basket(int lines) {
+            this.lines = lines;
+        }
+    }
+}
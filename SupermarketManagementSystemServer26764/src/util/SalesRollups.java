@@ -0,0 +1,247 @@
+package util;
+
+import dao.SalesRollupDao;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Keeps the sales rollup tables (SalesRollupDao) up to date.
+ *
+ * Committed sales arrive from the sale event stream and are only queued;
+ * every rollup.flushIntervalMs the queue is added up per bucket and written
+ * in one transaction, so a busy till adds one row update per bucket per
+ * flush rather than one per sale, and never waits for it. If the write
+ * fails the sales stay queued for the next flush.
+ *
+ * Sales the event stream never delivered (buffer full, server stopped
+ * before a flush, rows written by other tools) are corrected by the
+ * rebuild: at startup the last rollup.rebuildDays days are recomputed from
+ * the sales table (all of them if the rollups are empty), and again every
+ * rollup.rebuildIntervalMs. main() backfills everything, e.g. after
+ * DataGenerator; run it while the server is stopped.
+ *
+ * A rebuild counts the sales made before it started and keeps the queued
+ * sales made after; a sale still committing when it starts may be left
+ * out until the next rebuild. Write-behind sales are drained into the
+ * sales table first, and any still in its log stay queued.
+ *
+ * @author andyb
+ */
+public class SalesRollups implements SaleEventListener {
+
+    // Singleton instance
+    private static SalesRollups instance;
+
+    private final SalesRollupDao rollupDao = new SalesRollupDao();
+    // Sales waiting for the next flush, guarded by pendingLock
+    private List<SaleCommitted> pending = new ArrayList<>();
+    private final Object pendingLock = new Object();
+    // Held while the tables are written, so a flush never runs during a rebuild
+    private final Object writeLock = new Object();
+    private Timer timer;
+
+    private SalesRollups() {
+    }
+
+    /**
+     * True unless rollup.enabled=false; when off, charts group the sales
+     * table as before
+     */
+    public static boolean isEnabled() {
+        return ServerConfig.getBoolean("rollup.enabled", true);
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized SalesRollups getInstance() {
+        if (instance == null) {
+            instance = new SalesRollups();
+        }
+        return instance;
+    }
+
+    /**
+     * Rebuild the recent days (or backfill if the tables are empty) and
+     * start the flush and rebuild timers. Subscribe to the sale event bus
+     * first so no sale is missed.
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        if (rollupDao.isEmpty()) {
+            backfill();
+        } else {
+            rebuildRecent();
+        }
+
+        timer = new Timer("SalesRollups", true);
+        long flushInterval = Math.max(100, ServerConfig.getLong("rollup.flushIntervalMs", 1000));
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval);
+        long rebuildInterval = ServerConfig.getLong("rollup.rebuildIntervalMs", 3600000);
+        if (rebuildInterval > 0) {
+            timer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    rebuildRecent();
+                }
+            }, rebuildInterval, rebuildInterval);
+        }
+    }
+
+    @Override
+    public void onSaleCommitted(SaleCommitted event) {
+        synchronized (pendingLock) {
+            pending.add(event);
+        }
+    }
+
+    /**
+     * Write the queued sales to the rollups now
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            List<SaleCommitted> batch = takePending();
+            if (batch.isEmpty()) {
+                return;
+            }
+            SalesRollupDao.Totals totals = new SalesRollupDao.Totals();
+            for (SaleCommitted sale : batch) {
+                totals.add(sale.getSaleDate(), sale.getProductId(), sale.getEmployeeId(), 1,
+                        sale.getQuantity(), sale.getTotalAmount());
+            }
+            if (!rollupDao.add(totals)) {
+                // Keep them, in order, for the next flush
+                synchronized (pendingLock) {
+                    batch.addAll(pending);
+                    pending = batch;
+                }
+            }
+        }
+    }
+
+    /**
+     * Recompute the last rollup.rebuildDays days (today included)
+     */
+    public void rebuildRecent() {
+        int days = Math.max(1, ServerConfig.getInt("rollup.rebuildDays", 2));
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(SalesRollupDao.startOfDay(new Date()));
+        calendar.add(Calendar.DAY_OF_MONTH, 1 - days);
+        rebuild(calendar.getTime());
+    }
+
+    /**
+     * Recompute every day from the first sale on
+     */
+    public void backfill() {
+        Date first = rollupDao.getFirstSaleDate();
+        if (first == null) {
+            System.out.println("[ROLLUP] No sales to roll up");
+            return;
+        }
+        rebuild(SalesRollupDao.startOfDay(first));
+    }
+
+    /**
+     * Replace the rollups from the given day up to now, rollup.backfillChunkDays
+     * days per transaction
+     * @return sales counted, or -1 if a chunk failed (earlier chunks stay)
+     */
+    public long rebuild(Date fromDay) {
+        synchronized (writeLock) {
+            long started = System.currentTimeMillis();
+            // Write-behind sales are published before their rows are
+            // inserted; get the logged ones into the table first
+            SalesWriteBehind writeBehind = SalesWriteBehind.getRunningInstance();
+            if (writeBehind != null && !writeBehind.drain()) {
+                System.err.println("[ROLLUP] Logged sales not inserted yet, they will be added from the queue");
+            }
+            Date cutoff = new Date(System.currentTimeMillis());
+            // Queued sales made before the cutoff are in the sales table, and
+            // flushing them now keeps them out of the filter below
+            flush();
+
+            int chunkDays = Math.max(1, ServerConfig.getInt("rollup.backfillChunkDays", 31));
+            long total = 0;
+            Date from = fromDay;
+            while (from.before(cutoff)) {
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(from);
+                calendar.add(Calendar.DAY_OF_MONTH, chunkDays);
+                Date to = calendar.getTime().before(cutoff) ? calendar.getTime() : cutoff;
+                long sales = rollupDao.rebuild(from, to);
+                if (sales < 0) {
+                    System.err.println("[ROLLUP] Rebuild failed from " + from + ", rollups may be off until the next rebuild");
+                    total = -1;
+                    break;
+                }
+                total += sales;
+                from = to;
+            }
+
+            // Sales queued during the rebuild but made before the cutoff were
+            // counted from the table, unless their row is still waiting in
+            // the write-behind log; the rest are still to be added
+            synchronized (pendingLock) {
+                Set<Integer> notInserted = writeBehind != null
+                        ? writeBehind.getQueuedSaleIds() : Collections.<Integer>emptySet();
+                List<SaleCommitted> later = new ArrayList<>();
+                for (SaleCommitted sale : pending) {
+                    if (total < 0 || !sale.getSaleDate().before(cutoff) || sale.getSaleDate().before(fromDay)
+                            || notInserted.contains(sale.getSaleId())) {
+                        later.add(sale);
+                    }
+                }
+                pending = later;
+            }
+            System.out.println("[ROLLUP] Rebuilt from " + new java.sql.Date(fromDay.getTime()) + ": "
+                    + (total < 0 ? "failed" : total + " sales") + " in " + (System.currentTimeMillis() - started) + " ms");
+            return total;
+        }
+    }
+
+    private List<SaleCommitted> takePending() {
+        synchronized (pendingLock) {
+            List<SaleCommitted> batch = pending;
+            pending = new ArrayList<>();
+            return batch;
+        }
+    }
+
+    /**
+     * Flush what is queued and stop the timers
+     */
+    public synchronized void shutdown() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        flush();
+    }
+
+    /**
+     * Backfill every rollup from the sales table, e.g. after loading data
+     * with DataGenerator. Run it while the server is stopped.
+     */
+    public static void main(String[] args) {
+        HibernateUtil.getSessionFactory();
+        SchemaMigrations.run();
+        Date first = getInstance().rollupDao.getFirstSaleDate();
+        long sales = getInstance().rebuild(SalesRollupDao.startOfDay(first != null ? first : new Date()));
+        HibernateUtil.shutdown();
+        System.exit(sales < 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,708 @@
+package util;
+
+import dao.SalesDao;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group-commit write-behind for sales.
+ *
+ * A sale is appended to a local write-ahead log and the till gets its sale
+ * ID as soon as the log is on disk. One writer thread fsyncs whatever
+ * arrived while the previous fsync was running, so many cashiers share one
+ * disk flush. A second stage inserts the logged sales into MySQL with JDBC
+ * batching every few milliseconds; each batch writes the Sales rows, the
+ * InventoryTransaction rows and the stock change in one transaction.
+ *
+ * Sale IDs are handed out here (MAX(sale_id) + 1 onwards) so the till can
+ * be answered before the row exists. The writer thread assigns them as it
+ * writes, so IDs follow log and insert order. On startup the logged IDs
+ * are looked up in the sales table and any that are missing are replayed.
+ *
+ * A batch that keeps failing is inserted one sale at a time. If the
+ * database answers but a sale still cannot be inserted (a constraint
+ * error), that sale is moved to the dead-letter file and an alert is
+ * printed, so one bad row cannot hold back every sale behind it; its stock
+ * change is still written through the ledger. A "D,saleId" line is then
+ * appended to the log so the sale is not replayed after a restart, and a
+ * logged sale that cannot be replayed at startup is dead-lettered the
+ * same way.
+ *
+ * A group submitted with a client request ID stays findable by that ID
+ * (findLogged) until its first row, which also stores the request ID in
+ * sale_requests, is committed; a second group with the same ID is refused.
+ *
+ * Stock is checked by StockLedger, so this mode needs stock.ledger.enabled.
+ *
+ * @author andyb
+ */
+public class SalesWriteBehind {
+
+    // Singleton instance
+    private static SalesWriteBehind instance;
+
+    // Log line prefix marking a sale as dead-lettered
+    private static final String DEAD_LETTERED = "D,";
+
+    private final SalesDao salesDao;
+    private final File walFile;
+    private final File deadLetterFile;
+    private final int batchSize;
+    private final long maxWalBytes;
+    private final int maxBatchRetries;
+    // Failures in a row of the batch at the head of toInsert
+    private int headFailures;
+
+    private final AtomicInteger nextSaleId;
+
+    // Submitted but not yet on disk
+    private final BlockingQueue<Group> toLog;
+
+    // On disk but not yet in the database
+    private final ConcurrentLinkedQueue<Entry> toInsert;
+
+    // Request ID -> its group, until the request is recorded in the database
+    private final Map<String, List<Entry>> pendingRequests = new ConcurrentHashMap<>();
+
+    private final Object walLock = new Object();
+    private RandomAccessFile wal;
+    private FileChannel walChannel;
+
+    private Thread writerThread;
+    private Timer insertTimer;
+    private volatile boolean running;
+
+    private SalesWriteBehind() throws IOException {
+        salesDao = new SalesDao();
+        walFile = new File(ServerConfig.getString("sales.groupCommit.walFile", "sales-wal.log"));
+        batchSize = ServerConfig.getInt("sales.groupCommit.batchSize", 500);
+        maxWalBytes = ServerConfig.getLong("sales.groupCommit.maxWalBytes", 16L * 1024 * 1024);
+        deadLetterFile = new File(ServerConfig.getString("sales.groupCommit.deadLetterFile", "sales-deadletter.log"));
+        maxBatchRetries = Math.max(1, ServerConfig.getInt("sales.groupCommit.maxBatchRetries", 3));
+        toLog = new LinkedBlockingQueue<>();
+        toInsert = new ConcurrentLinkedQueue<>();
+
+        // Opened first so recovery can mark the sales it dead-letters
+        wal = new RandomAccessFile(walFile, "rw");
+        walChannel = wal.getChannel();
+        walChannel.position(walChannel.size());
+        int maxSaleId;
+        try {
+            maxSaleId = recover();
+        } catch (IOException e) {
+            wal.close();
+            throw e;
+        }
+        nextSaleId = new AtomicInteger(maxSaleId + 1);
+        walChannel.truncate(0);
+
+        running = true;
+        startWriter();
+        startInserter();
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized SalesWriteBehind getInstance() {
+        if (instance == null) {
+            try {
+                instance = new SalesWriteBehind();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open sales write-ahead log", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * The instance if it has been started, without starting it
+     */
+    public static synchronized SalesWriteBehind getRunningInstance() {
+        return instance;
+    }
+
+    /**
+     * Whether sales should be acknowledged from the write-ahead log
+     * (sales.groupCommit.enabled, which also needs the stock ledger)
+     */
+    public static boolean isEnabled() {
+        return ServerConfig.getBoolean("sales.groupCommit.enabled", false) && StockLedger.isEnabled();
+    }
+
+    /**
+     * Log sales durably and assign their sale IDs.
+     * All entries go into the same fsync, so a basket is logged whole.
+     * Stock for every entry must already be reserved in StockLedger.
+     * @return the entries with sale IDs set, or null if the log write failed
+     *         or the first entry's request ID is already logged
+     */
+    public List<Entry> submit(List<Entry> entries) {
+        if (!running) {
+            return null;
+        }
+        String requestId = entries.get(0).requestId;
+        if (requestId != null && pendingRequests.putIfAbsent(requestId, entries) != null) {
+            System.err.println("[SALES WAL] Request " + requestId + " is already logged");
+            return null;
+        }
+        Group group = new Group(entries);
+        toLog.add(group);
+        boolean logged;
+        try {
+            try {
+                logged = group.done.get(30, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                // Only give up if the writer has not taken the group; once
+                // taken it will be logged (and inserted) or fail, so wait
+                if (toLog.remove(group)) {
+                    System.err.println("[SALES WAL] Write not started after 30 s, sale not logged");
+                    logged = false;
+                } else {
+                    logged = group.done.get();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[SALES WAL] Write not acknowledged: " + e.getMessage());
+            logged = false;
+        }
+        if (!logged) {
+            if (requestId != null) {
+                pendingRequests.remove(requestId, entries);
+            }
+            return null;
+        }
+        for (Entry entry : entries) {
+            StockLedger.getInstance().handOff(entry.productId, entry.quantity);
+        }
+        return entries;
+    }
+
+    /**
+     * Sale IDs of a group logged under the request ID whose request is not
+     * recorded in the database yet. An ID is 0 while the group is still
+     * being written.
+     * @return the IDs in line order, or null if no such group is pending
+     */
+    public List<Integer> findLogged(String requestId) {
+        List<Entry> entries = pendingRequests.get(requestId);
+        if (entries == null) {
+            return null;
+        }
+        List<Integer> saleIds = new ArrayList<>();
+        for (Entry entry : entries) {
+            saleIds.add(entry.saleId);
+        }
+        return saleIds;
+    }
+
+    /**
+     * Insert the sales logged so far now rather than on the next timer run,
+     * e.g. before the sales table is read for a rollup rebuild. Sales logged
+     * while it runs may be left for the timer.
+     * @return true if they are all in the database, false if an insert
+     *         failed and some are still queued
+     */
+    public boolean drain() {
+        int loggedBefore = nextSaleId.get();
+        while (true) {
+            Entry head = toInsert.peek();
+            if (head == null || head.saleId >= loggedBefore) {
+                return true;
+            }
+            if (!insertBatch()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Sale IDs logged but not yet in the database. A sale's event is
+     * published only after it is queued here, so a published sale that is
+     * not in the set has been inserted (or dead-lettered).
+     */
+    public Set<Integer> getQueuedSaleIds() {
+        Set<Integer> saleIds = new HashSet<>();
+        for (Entry entry : toInsert) {
+            saleIds.add(entry.saleId);
+        }
+        return saleIds;
+    }
+
+    /**
+     * Number of logged sales still waiting for the database
+     */
+    public int getBacklog() {
+        return toInsert.size();
+    }
+
+    /**
+     * Stop accepting sales, write everything logged so far and close the log
+     */
+    public void shutdown() {
+        running = false;
+        if (writerThread != null) {
+            try {
+                writerThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (insertTimer != null) {
+            insertTimer.cancel();
+        }
+        while (!toInsert.isEmpty() && insertBatch()) {
+            // drain
+        }
+        synchronized (walLock) {
+            try {
+                if (toInsert.isEmpty()) {
+                    walChannel.truncate(0);
+                }
+                wal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        System.out.println("[SALES WAL] Write-behind shut down (" + toInsert.size() + " sales left in log)");
+    }
+
+    private void startWriter() {
+        writerThread = new Thread(() -> {
+            List<Group> groups = new ArrayList<>();
+            while (running || !toLog.isEmpty()) {
+                try {
+                    Group first = toLog.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    groups.add(first);
+                    toLog.drainTo(groups);
+                    writeGroups(groups);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    groups.clear();
+                }
+            }
+        }, "SalesWalWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private void writeGroups(List<Group> groups) {
+        if (groups.isEmpty()) {
+            return;
+        }
+        // IDs in log order; only this thread assigns them
+        StringBuilder lines = new StringBuilder();
+        for (Group group : groups) {
+            for (Entry entry : group.entries) {
+                entry.saleId = nextSaleId.getAndIncrement();
+                lines.append(entry.toLogLine()).append('\n');
+            }
+        }
+        boolean ok;
+        synchronized (walLock) {
+            long start = -1;
+            try {
+                start = walChannel.position();
+                ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    walChannel.write(buffer);
+                }
+                walChannel.force(false);
+                for (Group group : groups) {
+                    toInsert.addAll(group.entries);
+                }
+                ok = true;
+            } catch (IOException e) {
+                System.err.println("[SALES WAL] Write failed: " + e.getMessage());
+                ok = false;
+                // Cut off a partial write so it is not replayed after a restart
+                if (start >= 0) {
+                    try {
+                        walChannel.truncate(start);
+                    } catch (IOException truncateFailed) {
+                        System.err.println("[SALES WAL] Could not cut off failed write: " + truncateFailed.getMessage());
+                    }
+                }
+            }
+        }
+        for (Group group : groups) {
+            group.done.complete(ok);
+        }
+    }
+
+    private void startInserter() {
+        long interval = ServerConfig.getLong("sales.groupCommit.intervalMs", 5);
+        insertTimer = new Timer("SalesBatchInsert", true);
+        insertTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    while (toInsert.size() >= batchSize && insertBatch()) {
+                        // keep up under load
+                    }
+                    if (!toInsert.isEmpty()) {
+                        insertBatch();
+                    }
+                    compactLog();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Insert up to batchSize logged sales. Entries stay queued on failure;
+     * after maxBatchRetries failures the batch is split (see insertOneByOne).
+     */
+    private synchronized boolean insertBatch() {
+        List<Entry> batch = new ArrayList<>();
+        for (Entry entry : toInsert) {
+            batch.add(entry);
+            if (batch.size() >= batchSize) {
+                break;
+            }
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+        if (salesDao.insertWriteBehindBatch(batch)) {
+            headFailures = 0;
+            inserted(batch);
+            return true;
+        }
+        if (++headFailures < maxBatchRetries) {
+            System.err.println("[SALES WAL] Batch insert failed, " + batch.size() + " sales will be retried");
+            return false;
+        }
+        return insertOneByOne(batch);
+    }
+
+    /**
+     * Insert a failing batch one sale at a time. Sales that still fail while
+     * the database can be read are dead-lettered; if it cannot be read
+     * (outage) they stay queued.
+     */
+    private boolean insertOneByOne(List<Entry> batch) {
+        List<Entry> failed = new ArrayList<>();
+        for (Entry entry : batch) {
+            if (salesDao.insertWriteBehindBatch(Collections.singletonList(entry))) {
+                inserted(Collections.singletonList(entry));
+            } else {
+                failed.add(entry);
+            }
+        }
+        if (failed.isEmpty()) {
+            headFailures = 0;
+            return true;
+        }
+        List<Integer> failedIds = new ArrayList<>();
+        for (Entry entry : failed) {
+            failedIds.add(entry.saleId);
+        }
+        Set<Integer> present = salesDao.findExistingSaleIds(failedIds);
+        if (present == null) {
+            System.err.println("[SALES WAL] Database unavailable, " + failed.size() + " sales will be retried");
+            return false;
+        }
+        for (Entry entry : failed) {
+            if (present.contains(entry.saleId)) {
+                // Its ID is taken by another row, so it cannot go in as logged
+                System.err.println("[SALES WAL] Sale ID " + entry.saleId + " already in use");
+            }
+            deadLetter(entry, true);
+        }
+        headFailures = 0;
+        return true;
+    }
+
+    /**
+     * Take inserted sales off the queue and tell the ledger
+     */
+    private void inserted(List<Entry> entries) {
+        Map<Integer, Integer> written = new HashMap<>();
+        for (Entry entry : entries) {
+            toInsert.remove(entry);
+            if (entry.requestId != null) {
+                pendingRequests.remove(entry.requestId);
+            }
+            Integer current = written.get(entry.productId);
+            written.put(entry.productId, (current != null ? current : 0) - entry.quantity);
+        }
+        if (StockLedger.isEnabled()) {
+            StockLedger.getInstance().settle(written);
+        }
+    }
+
+    /**
+     * Move a sale that cannot be inserted to the dead-letter file for
+     * manual repair, mark it in the log so it is not replayed, and alert.
+     * The units stay sold: the stock change goes to the ledger's flush task.
+     * @param handedOff whether the ledger holds the sale as handed off
+     *        (false for a sale replayed at startup)
+     * @return false if the sale could not be moved and stays in the log
+     */
+    private boolean deadLetter(Entry entry, boolean handedOff) {
+        try (FileWriter writer = new FileWriter(deadLetterFile, true)) {
+            writer.write(entry.toLogLine() + "\n");
+        } catch (IOException e) {
+            // Keep it queued rather than lose it
+            System.err.println("[SALES WAL] Could not write dead-letter file " + deadLetterFile + ": " + e.getMessage());
+            return false;
+        }
+        synchronized (walLock) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap((DEAD_LETTERED + entry.saleId + "\n").getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    walChannel.write(buffer);
+                }
+                walChannel.force(false);
+            } catch (IOException e) {
+                System.err.println("[SALES WAL] Could not mark sale " + entry.saleId + " as dead-lettered: " + e.getMessage());
+                return false;
+            }
+            // Under the log lock so a compaction cannot write it back
+            toInsert.remove(entry);
+        }
+        if (entry.requestId != null) {
+            pendingRequests.remove(entry.requestId);
+        }
+        if (handedOff) {
+            StockLedger.getInstance().takeBack(entry.productId, entry.quantity);
+        } else {
+            StockLedger.getInstance().charge(entry.productId, entry.quantity);
+        }
+        System.err.println("[SALES WAL] ALERT: sale " + entry.saleId + " (product " + entry.productId
+                + ", employee " + entry.employeeId + ") could not be inserted and was moved to " + deadLetterFile);
+        return true;
+    }
+
+    /**
+     * Keep the log from growing forever: once it is past maxWalBytes,
+     * rewrite it with only the sales that are not in the database yet.
+     */
+    private void compactLog() throws IOException {
+        synchronized (walLock) {
+            if (walChannel.size() < maxWalBytes) {
+                return;
+            }
+            StringBuilder lines = new StringBuilder();
+            for (Entry entry : toInsert) {
+                lines.append(entry.toLogLine()).append('\n');
+            }
+            walChannel.truncate(0);
+            walChannel.position(0);
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                walChannel.write(buffer);
+            }
+            walChannel.force(false);
+        }
+    }
+
+    /**
+     * Replay sales that were logged but never inserted. Each logged ID is
+     * looked up in the table, so a sale is replayed only if its own row is
+     * missing, whatever order the batches committed in. Sales marked as
+     * dead-lettered are skipped, and a sale that still cannot be inserted
+     * is dead-lettered.
+     * @return the highest sale ID in use
+     * @throws IOException if the log cannot be read or the database is
+     *         unavailable (the log is kept for the next attempt)
+     */
+    private int recover() throws IOException {
+        int maxSaleId = salesDao.getMaxSaleId();
+        if (maxSaleId < 0) {
+            throw new IOException("Could not read the highest sale ID");
+        }
+
+        List<Entry> logged = new ArrayList<>();
+        Set<Integer> deadLettered = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(walFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(DEAD_LETTERED)) {
+                    try {
+                        deadLettered.add(Integer.parseInt(line.substring(DEAD_LETTERED.length())));
+                    } catch (NumberFormatException e) {
+                        // Torn mark; the sale is replayed
+                    }
+                    continue;
+                }
+                Entry entry = Entry.fromLogLine(line);
+                // A torn last line from a crash mid-write was never acknowledged
+                if (entry != null) {
+                    logged.add(entry);
+                }
+            }
+        }
+
+        List<Integer> loggedIds = new ArrayList<>();
+        for (Entry entry : logged) {
+            loggedIds.add(entry.saleId);
+        }
+        Set<Integer> inserted = salesDao.findExistingSaleIds(loggedIds);
+        if (inserted == null) {
+            throw new IOException("Could not check " + logged.size() + " logged sales from " + walFile);
+        }
+        List<Entry> missing = new ArrayList<>();
+        for (Entry entry : logged) {
+            if (!inserted.contains(entry.saleId) && !deadLettered.contains(entry.saleId)) {
+                missing.add(entry);
+            }
+        }
+
+        int highest = maxSaleId;
+        for (Entry entry : logged) {
+            highest = Math.max(highest, entry.saleId);
+        }
+        int failed = 0;
+        for (int from = 0; from < missing.size(); from += batchSize) {
+            List<Entry> batch = missing.subList(from, Math.min(missing.size(), from + batchSize));
+            if (!salesDao.insertWriteBehindBatch(batch)) {
+                failed += replayOneByOne(batch);
+            }
+        }
+        if (!missing.isEmpty()) {
+            System.out.println("[SALES WAL] Replayed " + (missing.size() - failed) + " sales from " + walFile
+                    + (failed > 0 ? ", " + failed + " dead-lettered" : ""));
+        }
+        return highest;
+    }
+
+    /**
+     * Replay a batch that failed one sale at a time, dead-lettering the
+     * sales the database rejects
+     * @return number dead-lettered
+     */
+    private int replayOneByOne(List<Entry> batch) throws IOException {
+        int failed = 0;
+        for (Entry entry : batch) {
+            if (salesDao.insertWriteBehindBatch(Collections.singletonList(entry))) {
+                continue;
+            }
+            if (salesDao.findExistingSaleIds(Collections.singletonList(entry.saleId)) == null) {
+                throw new IOException("Database unavailable, could not replay logged sales from " + walFile);
+            }
+            if (!deadLetter(entry, false)) {
+                throw new IOException("Could not dead-letter logged sale " + entry.saleId);
+            }
+            failed++;
+        }
+        return failed;
+    }
+
+    private static class Group {
+        final List<Entry> entries;
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+
+        Group(List<Entry> entries) {
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * One logged sale. The first entry of a group submitted under a client
+     * request ID carries that ID and the group's line count.
+     */
+    public static class Entry {
+        private int saleId;
+        private final int customerId;
+        private final int employeeId;
+        private final int productId;
+        private final int quantity;
+        private final double totalAmount;
+        private final Date saleDate;
+        private final String requestId;
+        private final int requestLines;
+
+        public Entry(int customerId, int employeeId, int productId, int quantity, double totalAmount, Date saleDate) {
+            this(customerId, employeeId, productId, quantity, totalAmount, saleDate, null, 0);
+        }
+
+        /**
+         * @param requestId client request ID (see SaleRequestDao.isRecordable), or null
+         * @param requestLines entries in the group, whose sale IDs follow this one's
+         */
+        public Entry(int customerId, int employeeId, int productId, int quantity, double totalAmount, Date saleDate,
+                     String requestId, int requestLines) {
+            this.customerId = customerId;
+            this.employeeId = employeeId;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.totalAmount = totalAmount;
+            this.saleDate = saleDate;
+            this.requestId = requestId;
+            this.requestLines = requestLines;
+        }
+
+        public int getSaleId() { return saleId; }
+        public int getCustomerId() { return customerId; }
+        public int getEmployeeId() { return employeeId; }
+        public int getProductId() { return productId; }
+        public int getQuantity() { return quantity; }
+        public double getTotalAmount() { return totalAmount; }
+        public Date getSaleDate() { return saleDate; }
+        public String getRequestId() { return requestId; }
+        public int getRequestLines() { return requestLines; }
+
+        // saleId,customerId,employeeId,productId,qty,total,saleDate[,requestId,lines]
+        String toLogLine() {
+            String line = saleId + "," + customerId + "," + employeeId + "," + productId + ","
+                    + quantity + "," + totalAmount + "," + saleDate.getTime();
+            return requestId != null ? line + "," + requestId + "," + requestLines : line;
+        }
+
+        static Entry fromLogLine(String line) {
+            String[] parts = line.split(",");
+            if (parts.length != 7 && parts.length != 9) {
+                return null;
+            }
+            try {
+                Entry entry = new Entry(
+                        Integer.parseInt(parts[1]),
+                        Integer.parseInt(parts[2]),
+                        Integer.parseInt(parts[3]),
+                        Integer.parseInt(parts[4]),
+                        Double.parseDouble(parts[5]),
+                        new Date(Long.parseLong(parts[6])),
+                        parts.length == 9 ? parts[7] : null,
+                        parts.length == 9 ? Integer.parseInt(parts[8]) : 0);
+                entry.saleId = Integer.parseInt(parts[0]);
+                return entry;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
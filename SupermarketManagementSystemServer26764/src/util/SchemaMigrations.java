@@ -0,0 +1,324 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.hibernate.Session;
+
+/**
+ * Versioned schema changes that hbm2ddl does not make, run once at startup.
+ *
+ * hbm2ddl.auto=update creates tables and columns from the annotations but
+ * no secondary indexes, so the indexes the hot HQL predicates need are
+ * defined here, along with any other DDL the server needs (a migration is
+ * plain SQL statements, a set of indexes, or statements then indexes).
+ * Each migration has a version; the ones already applied are recorded in
+ * schema_migrations and never run again. New migrations are appended to
+ * MIGRATIONS with the next version number, never edited once released.
+ *
+ * Migrations run in autocommit (MySQL commits DDL anyway), so one that
+ * fails half way is not recorded and runs again at the next startup. Every
+ * step must therefore be safe to repeat: CREATE TABLE IF NOT EXISTS,
+ * inserts guarded with NOT EXISTS, and indexes are skipped when their name
+ * already exists.
+ *
+ * After migrating, checkIndexes() compares every index the migrations
+ * define with the live schema and warns about any that are missing (e.g.
+ * migrations turned off, or an index dropped by hand). An index counts as
+ * present when any index on the table starts with the same columns.
+ *
+ * @author andyb
+ */
+public class SchemaMigrations {
+
+    private static final String HISTORY_TABLE = "schema_migrations";
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+        new Migration(1, "Indexes for sales history and reports",
+            // findByDateRange, the dashboard trend and keyset paging (saleDate DESC, salesId DESC)
+            new IndexDef("idx_sales_date_id", "sales", "sale_date", "sale_id"),
+            // getSalesByEmployee / revenue and count per employee, newest first
+            new IndexDef("idx_sales_employee_date", "sales", "employee_id", "sale_date")),
+        new Migration(2, "Indexes for inventory history and employee lookups",
+            // findByProduct ORDER BY transactionDate DESC, per-product counts
+            new IndexDef("idx_inv_tx_product_date", "inventory_transactions", "product_id", "transaction_date"),
+            // findByRole ORDER BY fullName, getCountByRole
+            new IndexDef("idx_employees_role_name", "employees", "role", "full_name"),
+            // login and username checks (the unique constraint already gives one)
+            new IndexDef("idx_employees_username", "employees", "username")),
+        new Migration(3, "Heartbeat row for measuring read replica lag",
+            // ReplicaRouter writes beat_at on the primary and reads it back from the replica
+            "CREATE TABLE IF NOT EXISTS replica_heartbeat (id INT NOT NULL PRIMARY KEY, beat_at BIGINT NOT NULL)",
+            "INSERT INTO replica_heartbeat (id, beat_at) SELECT 1, 0 FROM DUAL "
+                + "WHERE NOT EXISTS (SELECT 1 FROM replica_heartbeat WHERE id = 1)"),
+        new Migration(4, "Sales rollup tables per day, hour, product and employee",
+            // Maintained by SalesRollups; charts read these instead of grouping sales
+            "CREATE TABLE IF NOT EXISTS rollup_sales_daily (sale_day DATE NOT NULL, sales_count BIGINT NOT NULL, "
+                + "units BIGINT NOT NULL, revenue DOUBLE NOT NULL, PRIMARY KEY (sale_day))",
+            "CREATE TABLE IF NOT EXISTS rollup_sales_hourly (sale_day DATE NOT NULL, sale_hour INT NOT NULL, "
+                + "sales_count BIGINT NOT NULL, units BIGINT NOT NULL, revenue DOUBLE NOT NULL, "
+                + "PRIMARY KEY (sale_day, sale_hour))",
+            "CREATE TABLE IF NOT EXISTS rollup_product_daily (sale_day DATE NOT NULL, product_id INT NOT NULL, "
+                + "sales_count BIGINT NOT NULL, units BIGINT NOT NULL, revenue DOUBLE NOT NULL, "
+                + "PRIMARY KEY (sale_day, product_id))",
+            "CREATE TABLE IF NOT EXISTS rollup_employee_daily (sale_day DATE NOT NULL, employee_id INT NOT NULL, "
+                + "sales_count BIGINT NOT NULL, units BIGINT NOT NULL, revenue DOUBLE NOT NULL, "
+                + "PRIMARY KEY (sale_day, employee_id))"),
+        new Migration(5, "Per-employee sales and transaction totals",
+            // Kept up to date by the sale and inventory write paths (EmployeeStatsDao)
+            "CREATE TABLE IF NOT EXISTS employee_stats (employee_id INT NOT NULL PRIMARY KEY, sales_count BIGINT NOT NULL, "
+                + "revenue DOUBLE NOT NULL, transaction_count BIGINT NOT NULL, last_sale_at TIMESTAMP NULL)",
+            "INSERT INTO employee_stats (employee_id, sales_count, revenue, transaction_count, last_sale_at) "
+                + "SELECT e.employee_id, "
+                + "(SELECT COUNT(*) FROM sales s WHERE s.employee_id = e.employee_id), "
+                + "(SELECT COALESCE(SUM(s.total_amount), 0) FROM sales s WHERE s.employee_id = e.employee_id), "
+                + "(SELECT COUNT(*) FROM inventory_transactions t WHERE t.employee_id = e.employee_id), "
+                + "(SELECT MAX(s.sale_date) FROM sales s WHERE s.employee_id = e.employee_id) "
+                + "FROM employees e "
+                + "WHERE NOT EXISTS (SELECT 1 FROM employee_stats x WHERE x.employee_id = e.employee_id)"),
+        new Migration(6, "Client request IDs of recorded sales",
+            // Written in the sale transaction (SaleRequestDao); offline ingest checks it for duplicates
+            new String[] {"CREATE TABLE IF NOT EXISTS sale_requests (request_id VARCHAR(64) NOT NULL PRIMARY KEY, "
+                + "sale_ids VARCHAR(8000) NOT NULL, created_at TIMESTAMP NOT NULL)"},
+            // SaleRequestDao.purgeBefore
+            new IndexDef("idx_sale_requests_created", "sale_requests", "created_at"))
+    );
+
+    private SchemaMigrations() {
+    }
+
+    /**
+     * Apply pending migrations (unless db.migrations.enabled=false), then
+     * check the expected indexes (unless db.indexCheck.enabled=false)
+     */
+    public static void run() {
+        Session session = null;
+        try {
+            session = HibernateUtil.getSessionFactory().openSession();
+            session.doWork(connection -> {
+                if (ServerConfig.getBoolean("db.migrations.enabled", true)) {
+                    migrate(connection);
+                }
+                if (ServerConfig.getBoolean("db.indexCheck.enabled", true)) {
+                    checkIndexes(connection);
+                }
+            });
+        } catch (Exception e) {
+            System.err.println("[SCHEMA] Migration failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    private static void migrate(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(true);
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS " + HISTORY_TABLE + " ("
+                        + "version INT NOT NULL PRIMARY KEY, "
+                        + "description VARCHAR(255), "
+                        + "applied_at TIMESTAMP NULL)");
+            }
+
+            Set<Integer> applied = new HashSet<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT version FROM " + HISTORY_TABLE)) {
+                while (rs.next()) {
+                    applied.add(rs.getInt(1));
+                }
+            }
+
+            int count = 0;
+            for (Migration migration : MIGRATIONS) {
+                if (applied.contains(migration.version)) {
+                    continue;
+                }
+                System.out.println("[SCHEMA] Applying V" + migration.version + ": " + migration.description);
+                for (String sql : migration.statements) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute(sql);
+                    }
+                }
+                for (IndexDef index : migration.indexes) {
+                    // Skip an index someone already created under this name,
+                    // so the migration does not fail half way
+                    if (findIndexNames(connection, index.table).contains(index.name.toLowerCase())) {
+                        System.out.println("[SCHEMA]   " + index.name + " already exists");
+                        continue;
+                    }
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute(index.createSql());
+                    }
+                    System.out.println("[SCHEMA]   created " + index.name);
+                }
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO " + HISTORY_TABLE + " (version, description, applied_at) VALUES (?, ?, ?)")) {
+                    insert.setInt(1, migration.version);
+                    insert.setString(2, migration.description);
+                    insert.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                    insert.executeUpdate();
+                }
+                count++;
+            }
+            System.out.println("[SCHEMA] " + (count == 0 ? "Schema is up to date" : count + " migration(s) applied")
+                    + " (version " + latestVersion() + ")");
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Warn about every expected index the live schema does not have
+     * @return the missing indexes
+     */
+    public static List<IndexDef> checkIndexes(Connection connection) throws SQLException {
+        List<IndexDef> missing = new ArrayList<>();
+        for (Migration migration : MIGRATIONS) {
+            for (IndexDef index : migration.indexes) {
+                if (!hasIndexStartingWith(connection, index)) {
+                    missing.add(index);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            System.out.println("[SCHEMA] All expected indexes present");
+        } else {
+            System.err.println("[SCHEMA] WARNING: " + missing.size() + " expected index(es) missing, "
+                    + "queries on these columns will scan the table:");
+            for (IndexDef index : missing) {
+                System.err.println("[SCHEMA]   " + index.createSql() + ";");
+            }
+        }
+        return missing;
+    }
+
+    private static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    private static boolean hasIndexStartingWith(Connection connection, IndexDef expected) throws SQLException {
+        for (List<String> columns : readIndexes(connection, expected.table).values()) {
+            if (columns.size() >= expected.columns.length) {
+                boolean matches = true;
+                for (int i = 0; i < expected.columns.length && matches; i++) {
+                    matches = expected.columns[i].equalsIgnoreCase(columns.get(i));
+                }
+                if (matches) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> findIndexNames(Connection connection, String table) throws SQLException {
+        Set<String> names = new HashSet<>();
+        for (String name : readIndexes(connection, table).keySet()) {
+            names.add(name.toLowerCase());
+        }
+        return names;
+    }
+
+    /**
+     * Index name -> columns in index order, for one table
+     */
+    private static Map<String, List<String>> readIndexes(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        Map<String, List<String>> indexes = new LinkedHashMap<>();
+        // MySQL keeps table names as written, H2 upper-cases them
+        for (String name : new String[] {table, table.toUpperCase()}) {
+            try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, name, false, true)) {
+                while (rs.next()) {
+                    String indexName = rs.getString("INDEX_NAME");
+                    String column = rs.getString("COLUMN_NAME");
+                    if (indexName == null || column == null) {
+                        continue;
+                    }
+                    int position = rs.getShort("ORDINAL_POSITION");
+                    if (position < 1) {
+                        continue;
+                    }
+                    List<String> columns = indexes.computeIfAbsent(indexName, k -> new ArrayList<>());
+                    while (columns.size() < position) {
+                        columns.add(null);
+                    }
+                    columns.set(position - 1, column);
+                }
+            }
+            if (!indexes.isEmpty()) {
+                break;
+            }
+        }
+        return indexes;
+    }
+
+    private static class Migration {
+        final int version;
+        final String description;
+        final IndexDef[] indexes;
+        final String[] statements;
+
+        Migration(int version, String description, IndexDef... indexes) {
+            this.version = version;
+            this.description = description;
+            this.indexes = indexes;
+            this.statements = new String[0];
+        }
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.indexes = new IndexDef[0];
+            this.statements = statements;
+        }
+
+        /**
+         * Statements (e.g. CREATE TABLE) first, then indexes on their tables
+         */
+        Migration(int version, String description, String[] statements, IndexDef... indexes) {
+            this.version = version;
+            this.description = description;
+            this.indexes = indexes;
+            this.statements = statements;
+        }
+    }
+
+    /**
+     * One secondary index: name, table and columns in index order
+     */
+    public static class IndexDef {
+        final String name;
+        final String table;
+        final String[] columns;
+
+        IndexDef(String name, String table, String... columns) {
+            this.name = name;
+            this.table = table;
+            this.columns = columns;
+        }
+
+        String createSql() {
+            return "CREATE INDEX " + name + " ON " + table + " (" + String.join(", ", columns) + ")";
+        }
+
+        @Override
+        public String toString() {
+            return name + " ON " + table + " (" + String.join(", ", columns) + ")";
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package util;
+
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Server tuning switches.
+ * 
+ * Values are read from server.properties on the classpath (next to
+ * hibernate.cfg.xml). A JVM system property with the same key wins, so a
+ * setting can be flipped for one run with -Dkey=value.
+ *
+ * @author andyb
+ */
+public class ServerConfig {
+    
+    private static final String CONFIG_FILE = "server.properties";
+    
+    private static final Properties properties = new Properties();
+    
+    static {
+        try (InputStream in = ServerConfig.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                properties.load(in);
+                System.out.println("[SERVER CONFIG] Loaded " + CONFIG_FILE);
+            } else {
+                System.out.println("[SERVER CONFIG] " + CONFIG_FILE + " not found, using defaults");
+            }
+        } catch (Exception e) {
+            System.err.println("[SERVER CONFIG] Could not read " + CONFIG_FILE + ": " + e.getMessage());
+        }
+    }
+    
+    private ServerConfig() {
+    }
+    
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = properties.getProperty(key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+    
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("[SERVER CONFIG] Invalid number for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+    
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value != null ? Long.parseLong(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("[SERVER CONFIG] Invalid number for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+    
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+    
+    /**
+     * Every key that starts with the prefix, from the file and from system
+     * properties (system properties win), e.g. all hibernate.* settings
+     */
+    public static Properties getProperties(String prefix) {
+        Properties matching = new Properties();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                matching.setProperty(key, properties.getProperty(key).trim());
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                matching.setProperty(key, System.getProperty(key).trim());
+            }
+        }
+        return matching;
+    }
+}
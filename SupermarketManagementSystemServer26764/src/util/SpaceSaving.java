@@ -0,0 +1,108 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving summary: the heaviest keys of a stream in a fixed number of
+ * counters (Metwally et al.).
+ *
+ * When every counter is taken, a new key replaces the smallest one and
+ * starts from its count, remembering that count as its possible error. So
+ * a reported count is never below the key's true weight and at most error
+ * above it, and any key heavier than total/capacity is always present.
+ *
+ * Not thread-safe; the owner synchronizes.
+ *
+ * @author andyb
+ */
+public class SpaceSaving {
+
+    private final int capacity;
+    private final Map<Long, Counter> counters;
+    // Smallest count first
+    private final TreeSet<Counter> byCount = new TreeSet<>((a, b) -> a.count != b.count
+            ? Long.compare(a.count, b.count) : Long.compare(a.key, b.key));
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        counters = new HashMap<>(this.capacity * 2);
+    }
+
+    public void add(long key, long weight) {
+        total += weight;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += weight;
+        } else if (counters.size() < capacity) {
+            counter = new Counter(key, weight, 0);
+            counters.put(key, counter);
+        } else {
+            Counter smallest = byCount.pollFirst();
+            counters.remove(smallest.key);
+            counter = new Counter(key, smallest.count + weight, smallest.count);
+            counters.put(key, counter);
+        }
+        byCount.add(counter);
+    }
+
+    /**
+     * Up to limit keys, heaviest first
+     */
+    public List<Counter> top(int limit) {
+        List<Counter> top = new ArrayList<>(Math.min(limit, counters.size()));
+        Iterator<Counter> heaviest = byCount.descendingIterator();
+        while (heaviest.hasNext() && top.size() < limit) {
+            top.add(heaviest.next().copy());
+        }
+        return top;
+    }
+
+    /**
+     * Total weight added
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * One tracked key
+     */
+    public static final class Counter {
+        private final long key;
+        private long count;
+        private final long error;
+
+        Counter(long key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        Counter copy() {
+            return new Counter(key, count, error);
+        }
+
+        public long getKey() { return key; }
+        // Upper bound of the key's weight
+        public long getCount() { return count; }
+        // How much of count may belong to keys it replaced
+        public long getError() { return error; }
+        // Lower bound of the key's weight
+        public long getGuaranteed() { return count - error; }
+    }
+}
@@ -0,0 +1,25 @@
+package util;
+
+import org.hibernate.EmptyInterceptor;
+
+/**
+ * Session interceptor that counts the SQL statements one session prepares.
+ * BaseDao opens every session with a fresh counter and hands the count to
+ * DaoTimings, so each DAO operation reports how many statements it costs.
+ *
+ * @author andyb
+ */
+public class StatementCounter extends EmptyInterceptor {
+
+    private int statements;
+
+    @Override
+    public String onPrepareStatement(String sql) {
+        statements++;
+        return sql;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+}
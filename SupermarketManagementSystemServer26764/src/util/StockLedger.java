@@ -0,0 +1,313 @@
+package util;
+
+import dao.ProductDao;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * In-memory stock counters that sit in front of products.stock_quantity.
+ *
+ * Sales reserve units with a compare-and-set on an AtomicInteger instead of
+ * taking a PESSIMISTIC_WRITE lock on the product row, so tills selling the
+ * same hot SKU no longer queue on one MySQL row. Every reservation is also
+ * added to a pending delta, and a background task writes all pending deltas
+ * back to the database in one transaction every few hundred milliseconds.
+ *
+ * Counters are seeded lazily from the database on first use. Any code that
+ * changes stock outside the sale path must call {@link #invalidate(int)}
+ * afterwards so the next reservation re-reads the row.
+ *
+ * A counter and its product's deltas change together under the counter's
+ * own lock, and invalidate removes a counter under that lock, so a seed
+ * never sees a reservation in one and not the other. Tills selling
+ * different products never share a lock.
+ *
+ * @author andyb
+ */
+public class StockLedger {
+
+    // Singleton instance
+    private static StockLedger instance;
+
+    // productId -> units available for sale right now
+    private final Map<Integer, AtomicInteger> available;
+
+    // productId -> stock change not yet written to the database
+    private final Map<Integer, AtomicInteger> pendingDeltas;
+
+    // productId -> stock change handed to SalesWriteBehind, not yet inserted
+    private final Map<Integer, AtomicInteger> inFlight;
+
+    private final ProductDao productDao;
+
+    private Timer flushTimer;
+
+    private StockLedger() {
+        available = new ConcurrentHashMap<>();
+        pendingDeltas = new ConcurrentHashMap<>();
+        inFlight = new ConcurrentHashMap<>();
+        productDao = new ProductDao();
+        startFlushTask();
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized StockLedger getInstance() {
+        if (instance == null) {
+            instance = new StockLedger();
+        }
+        return instance;
+    }
+
+    /**
+     * Whether sales should go through the ledger (stock.ledger.enabled)
+     */
+    public static boolean isEnabled() {
+        return ServerConfig.getBoolean("stock.ledger.enabled", false);
+    }
+
+    /**
+     * Take units out of the available stock.
+     * @return false if the product does not exist or has too little stock
+     */
+    public boolean reserve(int productId, int quantity) {
+        if (quantity <= 0) {
+            return false;
+        }
+        while (true) {
+            AtomicInteger counter = counterFor(productId);
+            if (counter == null) {
+                return false;
+            }
+            synchronized (counter) {
+                if (available.get(productId) != counter) {
+                    // Invalidated meanwhile; take the freshly seeded one
+                    continue;
+                }
+                if (counter.get() < quantity) {
+                    return false;
+                }
+                counter.addAndGet(-quantity);
+                pendingDelta(productId).addAndGet(-quantity);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back units from a reservation whose sale was not committed
+     */
+    public void release(int productId, int quantity) {
+        withCounter(productId, counter -> {
+            if (counter != null) {
+                counter.addAndGet(quantity);
+            }
+            pendingDelta(productId).addAndGet(quantity);
+        });
+    }
+
+    /**
+     * Move a reservation out of the flush task's hands. Used by
+     * SalesWriteBehind, which writes the stock change in the same
+     * transaction as the sale rows so a crash cannot split them.
+     */
+    public void handOff(int productId, int quantity) {
+        withCounter(productId, counter -> {
+            pendingDelta(productId).addAndGet(quantity);
+            inFlight.computeIfAbsent(productId, id -> new AtomicInteger()).addAndGet(-quantity);
+        });
+    }
+
+    /**
+     * Called once handed-off stock changes are committed
+     * @param written productId -> change that is now in the database
+     */
+    public synchronized void settle(Map<Integer, Integer> written) {
+        for (Map.Entry<Integer, Integer> entry : written.entrySet()) {
+            AtomicInteger counter = inFlight.get(entry.getKey());
+            if (counter != null) {
+                counter.addAndGet(-entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Undo a hand-off whose sale will not be inserted (a dead-lettered
+     * write-behind sale). The units stay sold; the flush task writes the
+     * stock change instead.
+     */
+    public synchronized void takeBack(int productId, int quantity) {
+        inFlight.computeIfAbsent(productId, id -> new AtomicInteger()).addAndGet(quantity);
+        pendingDelta(productId).addAndGet(-quantity);
+    }
+
+    /**
+     * Set a product's stock to a counted figure (a manual stock take). It
+     * is applied as the change from the current counter, so sales that are
+     * reserved but not yet written are not taken off the new figure again.
+     * @return false if the product does not exist
+     */
+    public synchronized boolean setStock(int productId, int newStock) {
+        if (counterFor(productId) == null) {
+            return false;
+        }
+        // Still there: only invalidate removes counters, and it needs this lock
+        withCounter(productId, counter ->
+                pendingDelta(productId).addAndGet(newStock - counter.getAndSet(newStock)));
+        return true;
+    }
+
+    /**
+     * Take units sold without a reservation (a logged sale dead-lettered
+     * at startup); the flush task writes the stock change
+     */
+    public void charge(int productId, int quantity) {
+        release(productId, -quantity);
+    }
+
+    /**
+     * Units currently available, or -1 if the product is not tracked yet
+     */
+    public int getAvailable(int productId) {
+        AtomicInteger counter = available.get(productId);
+        return counter != null ? counter.get() : -1;
+    }
+
+    /**
+     * Forget the counter for a product after its stock was changed
+     * elsewhere (restock, manual edit, delete). Pending sales are written
+     * first so they are not lost. Locked so a counter seeded from the old
+     * row cannot be added after it is removed.
+     */
+    public synchronized void invalidate(int productId) {
+        flush();
+        AtomicInteger counter = available.get(productId);
+        if (counter != null) {
+            // Not while a reservation is halfway through it
+            synchronized (counter) {
+                available.remove(productId, counter);
+            }
+        }
+    }
+
+    /**
+     * Write all pending stock changes to the database.
+     * Synchronized with counter seeding so a counter is never seeded from a
+     * row that is missing a delta that has already been taken out of the map.
+     */
+    public synchronized void flush() {
+        Map<Integer, Integer> batch = new HashMap<>();
+        for (Map.Entry<Integer, AtomicInteger> entry : pendingDeltas.entrySet()) {
+            int delta = entry.getValue().getAndSet(0);
+            if (delta != 0) {
+                batch.put(entry.getKey(), delta);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (!productDao.applyStockDeltas(batch)) {
+            // Put the deltas back and try again on the next tick
+            for (Map.Entry<Integer, Integer> entry : batch.entrySet()) {
+                pendingDelta(entry.getKey()).addAndGet(entry.getValue());
+            }
+            System.err.println("[STOCK LEDGER] Flush failed, " + batch.size() + " products will be retried");
+        }
+    }
+
+    /**
+     * Flush and stop the background task
+     */
+    public void shutdown() {
+        if (flushTimer != null) {
+            flushTimer.cancel();
+        }
+        flush();
+        System.out.println("[STOCK LEDGER] Stock ledger shut down");
+    }
+
+    private AtomicInteger counterFor(int productId) {
+        AtomicInteger counter = available.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+        return seed(productId);
+    }
+
+    /**
+     * Read the product's stock and add its counter. The row is read under
+     * the ledger lock (so no flush runs in between) but outside the map, so
+     * a slow read never blocks reservations of other products.
+     */
+    private synchronized AtomicInteger seed(int productId) {
+        AtomicInteger counter = available.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+        Integer stock = productDao.getStockQuantity(productId);
+        if (stock == null) {
+            return null;
+        }
+        // Deltas still pending or in flight are not in the row yet
+        AtomicInteger pending = pendingDeltas.get(productId);
+        AtomicInteger handedOff = inFlight.get(productId);
+        counter = new AtomicInteger(stock
+                + (pending != null ? pending.get() : 0)
+                + (handedOff != null ? handedOff.get() : 0));
+        AtomicInteger existing = available.putIfAbsent(productId, counter);
+        return existing != null ? existing : counter;
+    }
+
+    /**
+     * Run a change to the product's counter or deltas under the lock of
+     * its current counter, or under the ledger lock if it has none (so no
+     * counter is seeded halfway through the change)
+     * @param change gets the counter, or null
+     */
+    private void withCounter(int productId, Consumer<AtomicInteger> change) {
+        while (true) {
+            AtomicInteger counter = available.get(productId);
+            if (counter == null) {
+                synchronized (this) {
+                    if (available.get(productId) == null) {
+                        change.accept(null);
+                        return;
+                    }
+                }
+                continue;
+            }
+            synchronized (counter) {
+                if (available.get(productId) == counter) {
+                    change.accept(counter);
+                    return;
+                }
+            }
+        }
+    }
+
+    private AtomicInteger pendingDelta(int productId) {
+        return pendingDeltas.computeIfAbsent(productId, id -> new AtomicInteger());
+    }
+
+    private void startFlushTask() {
+        long interval = ServerConfig.getLong("stock.ledger.flushIntervalMs", 500);
+        flushTimer = new Timer("StockLedgerFlush", true);
+        flushTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }, interval, interval);
+    }
+}